@@ -0,0 +1,137 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.api.mgmt;
+
+import org.xipki.util.Args;
+import org.xipki.util.ConfPairs;
+
+/**
+ * Control of the verification of the signature of the issued certificates.
+ * Example configuration
+ *<pre>
+ * verifySignature.mode=&lt;always|sample|first|async&gt;[,verifySignature.n=&lt;n&gt;]
+ *</pre>
+ * <ul>
+ *   <li>always: the signature of every certificate is verified before the certificate is
+ *     returned. This is the default.</li>
+ *   <li>sample: the signature of one of n certificates is verified before the certificate
+ *     is returned.</li>
+ *   <li>first: the signatures of the first n certificates after the start of the CA are
+ *     verified before the certificates are returned.</li>
+ *   <li>async: the signature of every certificate is verified in background. An invalid
+ *     signature is logged, audited and reported by the health check.</li>
+ * </ul>
+ * The default n is 100.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class SignatureVerificationControl {
+
+  public enum Mode {
+    ALWAYS,
+    SAMPLE,
+    FIRST,
+    ASYNC;
+
+    public static Mode forName(String name) {
+      Args.notNull(name, "name");
+      for (Mode mode : values()) {
+        if (mode.name().equalsIgnoreCase(name)) {
+          return mode;
+        }
+      }
+
+      throw new IllegalArgumentException("invalid SignatureVerificationControl.Mode " + name);
+    }
+
+  } // enum Mode
+
+  public static final String KEY_MODE = "verifySignature.mode";
+
+  public static final String KEY_N = "verifySignature.n";
+
+  public static final SignatureVerificationControl ALWAYS =
+      new SignatureVerificationControl(Mode.ALWAYS, 1);
+
+  private static final int DFLT_N = 100;
+
+  private final Mode mode;
+
+  private final int n;
+
+  public SignatureVerificationControl(Mode mode, int n) {
+    this.mode = Args.notNull(mode, "mode");
+    this.n = Args.positive(n, "n");
+  }
+
+  /**
+   * Reads the control from the extra control of a CA.
+   * @param extraControl
+   *          Extra control of the CA. Could be {@code null}.
+   * @return the control, {@link #ALWAYS} if it is not configured.
+   */
+  public static SignatureVerificationControl getInstance(ConfPairs extraControl) {
+    String str = (extraControl == null) ? null : extraControl.value(KEY_MODE);
+    if (str == null) {
+      return ALWAYS;
+    }
+
+    Mode mode = Mode.forName(str.trim());
+    str = extraControl.value(KEY_N);
+    int n = (str == null) ? DFLT_N : Integer.parseInt(str.trim());
+    return new SignatureVerificationControl(mode, n);
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public int getN() {
+    return n;
+  }
+
+  @Override
+  public String toString() {
+    ConfPairs pairs = new ConfPairs();
+    pairs.putPair(KEY_MODE, mode.name().toLowerCase());
+    if (mode == Mode.SAMPLE || mode == Mode.FIRST) {
+      pairs.putPair(KEY_N, Integer.toString(n));
+    }
+    return pairs.getEncoded();
+  }
+
+  @Override
+  public int hashCode() {
+    return toString().hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    } else if (!(obj instanceof SignatureVerificationControl)) {
+      return false;
+    }
+
+    SignatureVerificationControl obj2 = (SignatureVerificationControl) obj;
+    return mode == obj2.mode && n == obj2.n;
+  }
+
+}
@@ -19,6 +19,8 @@ package org.xipki.ca.api.publisher;
 
 import java.io.Closeable;
 import java.security.cert.X509CRL;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.xipki.ca.api.CertWithDbId;
@@ -78,6 +80,26 @@ public abstract class CertPublisher implements Closeable {
    */
   public abstract boolean certificateAdded(CertificateInfo certInfo);
 
+  /**
+   * Publishes certificates. The default implementation publishes them one by one via
+   * {@link #certificateAdded(CertificateInfo)}, and stops at the first failure. Publishers
+   * which can write several certificates at once should overwrite it.
+   *
+   * @param certInfos
+   *          Certificates to be published. Must not be {@code null}.
+   * @return the certificates which have not been published, empty if all are published.
+   * @since 5.0.1
+   */
+  public List<CertificateInfo> certificatesAdded(List<CertificateInfo> certInfos) {
+    final int n = certInfos.size();
+    for (int i = 0; i < n; i++) {
+      if (!certificateAdded(certInfos.get(i))) {
+        return certInfos.subList(i, n);
+      }
+    }
+    return Collections.emptyList();
+  }
+
   /**
    * Publishes the revocation of a certificate.
    *
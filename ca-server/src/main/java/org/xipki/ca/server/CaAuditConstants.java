@@ -156,4 +156,6 @@ public class CaAuditConstants {
 
   public static final String TYPE_revoke_suspendedCert = "revoke_suspended_cert";
 
+  public static final String TYPE_verify_cert_signature = "verify_cert_signature";
+
 }
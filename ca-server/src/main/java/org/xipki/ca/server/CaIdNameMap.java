@@ -17,8 +17,8 @@
 
 package org.xipki.ca.server;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xipki.ca.api.NameId;
 
@@ -30,21 +30,21 @@ import org.xipki.ca.api.NameId;
 
 public class CaIdNameMap {
 
-  private final Map<Integer, NameId> idCertprofileMap = new HashMap<>();
+  private final Map<Integer, NameId> idCertprofileMap = new ConcurrentHashMap<>();
 
-  private final Map<Integer, NameId> idPublisherMap = new HashMap<>();
+  private final Map<Integer, NameId> idPublisherMap = new ConcurrentHashMap<>();
 
-  private final Map<Integer, NameId> idRequestorMap = new HashMap<>();
+  private final Map<Integer, NameId> idRequestorMap = new ConcurrentHashMap<>();
 
-  private final Map<Integer, NameId> idCaMap = new HashMap<>();
+  private final Map<Integer, NameId> idCaMap = new ConcurrentHashMap<>();
 
-  private final Map<String, NameId> nameCertprofileMap = new HashMap<>();
+  private final Map<String, NameId> nameCertprofileMap = new ConcurrentHashMap<>();
 
-  private final Map<String, NameId> namePublisherMap = new HashMap<>();
+  private final Map<String, NameId> namePublisherMap = new ConcurrentHashMap<>();
 
-  private final Map<String, NameId> nameRequestorMap = new HashMap<>();
+  private final Map<String, NameId> nameRequestorMap = new ConcurrentHashMap<>();
 
-  private final Map<String, NameId> nameCaMap = new HashMap<>();
+  private final Map<String, NameId> nameCaMap = new ConcurrentHashMap<>();
 
   public void addCertprofile(NameId nameId) {
     idCertprofileMap.put(nameId.getId(), nameId);
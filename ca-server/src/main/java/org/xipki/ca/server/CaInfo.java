@@ -24,6 +24,7 @@ import java.security.cert.X509Certificate;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -43,12 +44,15 @@ import org.xipki.ca.api.mgmt.PermissionConstants;
 import org.xipki.ca.api.mgmt.ProtocolSupport;
 import org.xipki.ca.api.mgmt.RevokeSuspendedCertsControl;
 import org.xipki.ca.api.mgmt.ScepControl;
+import org.xipki.ca.api.mgmt.SignatureVerificationControl;
 import org.xipki.ca.api.mgmt.ValidityMode;
 import org.xipki.ca.api.profile.Certprofile;
 import org.xipki.ca.api.PublicCaInfo;
 import org.xipki.ca.server.store.CertStore;
+import org.xipki.security.BatchSigner;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.NoIdleSignerException;
 import org.xipki.security.SecurityFactory;
 import org.xipki.security.SignerConf;
 import org.xipki.security.X509Cert;
@@ -93,8 +97,13 @@ public class CaInfo {
 
   private ConcurrentContentSigner dfltSigner;
 
+  private Map<ConcurrentContentSigner, BatchSigner> batchSigners = Collections.emptyMap();
+
   private RevokeSuspendedCertsControl revokeSuspendedCertsControl;
 
+  private SignatureVerificationControl signatureVerificationControl =
+      SignatureVerificationControl.ALWAYS;
+
   public CaInfo(MgmtEntry.Ca caEntry, CertStore certStore) throws OperationException {
     this.caEntry = Args.notNull(caEntry, "caEntry");
     this.certStore = Args.notNull(certStore, "certStore");
@@ -362,7 +371,18 @@ public class CaInfo {
     return null;
   }
 
-  public boolean initSigner(SecurityFactory securityFactory) throws XiSecurityException {
+  /**
+   * Returns the batch signer of the given signer.
+   * @param signer
+   *          Signer of this CA.
+   * @return the batch signer, {@code null} if batch signing is not activated.
+   */
+  public BatchSigner getBatchSigner(ConcurrentContentSigner signer) {
+    return batchSigners.get(signer);
+  }
+
+  public boolean initSigner(SecurityFactory securityFactory, int batchSize, int batchConcurrency)
+      throws XiSecurityException {
     if (signers != null) {
       return true;
     }
@@ -395,6 +415,24 @@ public class CaInfo {
       }
     }
 
+    if (batchSize > 0) {
+      Map<ConcurrentContentSigner, BatchSigner> tmpBatchSigners = new IdentityHashMap<>();
+      for (ConcurrentContentSigner signer : tmpSigners.values()) {
+        if (!signer.isBatchSignEfficient()) {
+          LOG.info("signer {} does not sign batches more efficiently, ignore "
+              + "ca.signer.batchSize", signer.getName());
+          continue;
+        }
+
+        try {
+          tmpBatchSigners.put(signer, new BatchSigner(signer, batchSize, batchConcurrency));
+        } catch (NoIdleSignerException ex) {
+          throw new XiSecurityException("could not initialize the CA batch signer", ex);
+        }
+      }
+      this.batchSigners = tmpBatchSigners;
+    }
+
     this.signers = Collections.unmodifiableMap(tmpSigners);
     return true;
   } // method initSigner
@@ -416,4 +454,14 @@ public class CaInfo {
     this.revokeSuspendedCertsControl = revokeSuspendedCertsControl;
   }
 
+  public SignatureVerificationControl getSignatureVerificationControl() {
+    return signatureVerificationControl;
+  }
+
+  public void setSignatureVerificationControl(
+      SignatureVerificationControl signatureVerificationControl) {
+    this.signatureVerificationControl = Args.notNull(signatureVerificationControl,
+        "signatureVerificationControl");
+  }
+
 }
@@ -27,6 +27,7 @@ import java.math.BigInteger;
 import java.net.SocketException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateEncodingException;
@@ -46,6 +47,8 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.Deflater;
@@ -86,6 +89,7 @@ import org.xipki.ca.api.mgmt.MgmtEntry;
 import org.xipki.ca.api.mgmt.PermissionConstants;
 import org.xipki.ca.api.mgmt.RequestorInfo;
 import org.xipki.ca.api.mgmt.RevokeSuspendedCertsControl;
+import org.xipki.ca.api.mgmt.SignatureVerificationControl;
 import org.xipki.ca.api.mgmt.CaConfType.NameTypeConf;
 import org.xipki.ca.api.RequestType;
 import org.xipki.ca.api.profile.Certprofile;
@@ -95,6 +99,7 @@ import org.xipki.ca.api.profile.CertprofileFactoryRegister;
 import org.xipki.ca.api.publisher.CertPublisher;
 import org.xipki.ca.api.publisher.CertPublisherException;
 import org.xipki.ca.api.publisher.CertPublisherFactoryRegister;
+import org.xipki.ca.server.CaManagerQueryExecutor.ConfChangeTransaction;
 import org.xipki.ca.server.SelfSignedCertBuilder.GenerateSelfSignedResult;
 import org.xipki.ca.server.cmp.CmpResponder;
 import org.xipki.ca.server.store.CertStore;
@@ -197,6 +202,11 @@ public class CaManagerImpl implements CaManager, Closeable {
 
     private boolean inProcess;
 
+    /**
+     * Time in seconds of the last change event which has been applied incrementally.
+     */
+    private long lastReloadTime;
+
     @Override
     public void run() {
       if (inProcess) {
@@ -205,15 +215,22 @@ public class CaManagerImpl implements CaManager, Closeable {
 
       inProcess = true;
       try {
+        // the users are changed without any event to restart the CA.
+        invalidateChangedUsers();
+
         SystemEvent event = queryExecutor.getSystemEvent(EVENT_CACHAGNE);
         long caChangedTime = (event == null) ? 0 : event.getEventTime();
 
         LOG.info("check the restart CA system event: changed at={}, lastStartTime={}",
             new Date(caChangedTime * 1000L), lastStartTime);
 
-        if (caChangedTime > lastStartTime.getTime() / 1000L) {
-          LOG.info("received event to restart CA");
-          restartCaSystem();
+        if (caChangedTime > Math.max(lastReloadTime, lastStartTime.getTime() / 1000L)) {
+          if (reloadChangedConf()) {
+            lastReloadTime = caChangedTime;
+          } else {
+            LOG.info("received event to restart CA");
+            restartCaSystem();
+          }
         } else {
           LOG.debug("received no event to restart CA");
         }
@@ -234,6 +251,11 @@ public class CaManagerImpl implements CaManager, Closeable {
 
   private static final String EVENT_CACHAGNE = "CA_CHANGE";
 
+  /**
+   * The recorded changes of the CA configuration are kept for 7 days.
+   */
+  private static final long CONF_CHANGE_KEEP_SECONDS = 7L * 24 * 60 * 60;
+
   private final String lockInstanceId;
 
   private final CaIdNameMap idNameMap = new CaIdNameMap();
@@ -246,6 +268,34 @@ public class CaManagerImpl implements CaManager, Closeable {
 
   private boolean masterMode;
 
+  private int signerBatchSize;
+
+  private int signerBatchConcurrency;
+
+  private boolean deltaCrlInMemory;
+
+  private int certBatchSize;
+
+  private int certBatchConcurrency;
+
+  private KeypairPool keypairPool;
+
+  private int publisherThreads;
+
+  private long fpFilterCapacity;
+
+  private File crlCacheDir;
+
+  private UserAuthCache userAuthCache;
+
+  private ExecutorService publisherExecutor;
+
+  private int certGenThreads;
+
+  private ExecutorService certGenExecutor;
+
+  private ExecutorService crlExecutor;
+
   private Map<String, String> datasourceNameConfFileMap;
 
   private final Map<String, CaInfo> caInfos = new ConcurrentHashMap<>();
@@ -307,6 +357,18 @@ public class CaManagerImpl implements CaManager, Closeable {
 
   private Date lastStartTime;
 
+  /**
+   * ID of the last change of the CA configuration known by this CA system, -1 if the table
+   * CONF_CHANGE is not available.
+   */
+  private volatile long lastConfChangeId = -1;
+
+  /**
+   * ID of the last change of the CA configuration whose changed users have been removed from
+   * the {@link #userAuthCache}.
+   */
+  private long lastUserConfChangeId = -1;
+
   private CertprofileFactoryRegister certprofileFactoryRegister;
 
   private CertPublisherFactoryRegister certPublisherFactoryRegister;
@@ -357,6 +419,85 @@ public class CaManagerImpl implements CaManager, Closeable {
     return securityFactory;
   }
 
+  int getSignerBatchSize() {
+    return signerBatchSize;
+  }
+
+  int getSignerBatchConcurrency() {
+    return signerBatchConcurrency;
+  }
+
+  boolean isDeltaCrlInMemory() {
+    return deltaCrlInMemory;
+  }
+
+  /**
+   * Returns the number of certificates per CA the filters of the fingerprints of the issued
+   * certificates are sized for.
+   * @return the capacity, 0 if the duplicates are checked in the database only.
+   */
+  long getFpFilterCapacity() {
+    return fpFilterCapacity;
+  }
+
+  /**
+   * Returns the directory of the memory-mapped files of the current CRLs.
+   * @return the directory, {@code null} if the current CRLs are cached in the heap.
+   */
+  File getCrlCacheDir() {
+    return crlCacheDir;
+  }
+
+  /**
+   * Returns the cache of the successful authentications of users by password.
+   * @return the cache, {@code null} if the authentications are not cached.
+   */
+  UserAuthCache getUserAuthCache() {
+    return userAuthCache;
+  }
+
+  KeypairPool getKeypairPool() {
+    return keypairPool;
+  }
+
+  /**
+   * Returns the executor to publish the certificates in PUBLISHQUEUE as soon as they are
+   * queued.
+   * @return the executor, {@code null} if they are published only periodically.
+   */
+  ExecutorService getPublisherExecutor() {
+    return publisherExecutor;
+  }
+
+  /**
+   * Returns the executor to generate the certificates of one request in parallel.
+   * @return the executor, {@code null} if they are generated sequentially.
+   */
+  ExecutorService getCertGenExecutor() {
+    return certGenExecutor;
+  }
+
+  /**
+   * Returns the executor shared by all CAs to read the revoked certificates for the CRLs.
+   * @return the executor, {@code null} if the CA system is not started.
+   */
+  ExecutorService getCrlExecutor() {
+    return crlExecutor;
+  }
+
+  private int getIntProperty(String name, int defaultValue) throws CaMgmtException {
+    String str = confProperties.getProperty(name);
+    if (StringUtil.isBlank(str)) {
+      return defaultValue;
+    }
+
+    try {
+      return Integer.parseInt(str.trim());
+    } catch (NumberFormatException ex) {
+      throw new CaMgmtException(concat("invalid ", name, " '", str, "'"));
+    }
+  }
+
   public void setSecurityFactory(SecurityFactory securityFactory) {
     this.securityFactory = securityFactory;
   }
@@ -432,6 +573,91 @@ public class CaManagerImpl implements CaManager, Closeable {
       throw new CaMgmtException("ca.shardId is not in [0, 127]");
     }
 
+    signerBatchSize = getIntProperty("ca.signer.batchSize", 0);
+    signerBatchConcurrency = getIntProperty("ca.signer.batchConcurrency", 4);
+    if (signerBatchSize < 0 || signerBatchConcurrency < 1) {
+      throw new CaMgmtException("invalid ca.signer.batchSize or ca.signer.batchConcurrency");
+    }
+    LOG.info("ca.signer.batchSize: {}, ca.signer.batchConcurrency: {}",
+        signerBatchSize, signerBatchConcurrency);
+
+    certBatchSize = getIntProperty("ca.certstore.batchSize", 0);
+    certBatchConcurrency = getIntProperty("ca.certstore.batchConcurrency", 2);
+    if (certBatchSize < 0 || certBatchConcurrency < 1) {
+      throw new CaMgmtException(
+          "invalid ca.certstore.batchSize or ca.certstore.batchConcurrency");
+    }
+    LOG.info("ca.certstore.batchSize: {}, ca.certstore.batchConcurrency: {}",
+        certBatchSize, certBatchConcurrency);
+
+    publisherThreads = getIntProperty("ca.publisher.threads", 2);
+    if (publisherThreads < 0) {
+      throw new CaMgmtException("invalid ca.publisher.threads");
+    }
+    LOG.info("ca.publisher.threads: {}", publisherThreads);
+
+    certGenThreads = getIntProperty("ca.generateCerts.threads",
+        Runtime.getRuntime().availableProcessors());
+    if (certGenThreads < 0) {
+      throw new CaMgmtException("invalid ca.generateCerts.threads");
+    }
+    LOG.info("ca.generateCerts.threads: {}", certGenThreads);
+
+    String str = confProperties.getProperty("ca.crl.deltaInMemory");
+    deltaCrlInMemory = StringUtil.isNotBlank(str) && Boolean.parseBoolean(str.trim());
+    LOG.info("ca.crl.deltaInMemory: {}", deltaCrlInMemory);
+
+    fpFilterCapacity = getIntProperty("ca.fpFilter.capacity", 0);
+    // at most 2^32 bits with 10 bits per certificate
+    if (fpFilterCapacity < 0 || fpFilterCapacity > 400_000_000) {
+      throw new CaMgmtException("ca.fpFilter.capacity is not in [0, 400000000]");
+    }
+    LOG.info("ca.fpFilter.capacity: {}", fpFilterCapacity);
+
+    str = confProperties.getProperty("ca.crlCache.dir");
+    if (StringUtil.isBlank(str)) {
+      crlCacheDir = null;
+    } else {
+      crlCacheDir = new File(IoUtil.expandFilepath(str.trim()));
+      if (!crlCacheDir.isDirectory() && !crlCacheDir.mkdirs()) {
+        throw new CaMgmtException("could not create directory " + crlCacheDir.getPath()
+            + " of ca.crlCache.dir");
+      }
+    }
+    LOG.info("ca.crlCache.dir: {}", crlCacheDir);
+
+    int userAuthCacheSize = getIntProperty("ca.userAuthCache.size", 1000);
+    int userAuthCacheTtl = getIntProperty("ca.userAuthCache.ttl", 300);
+    if (userAuthCacheSize < 0 || userAuthCacheTtl < 1) {
+      throw new CaMgmtException("invalid ca.userAuthCache.size or ca.userAuthCache.ttl");
+    }
+    userAuthCache = (userAuthCacheSize == 0) ? null
+        : new UserAuthCache(userAuthCacheSize, userAuthCacheTtl);
+    LOG.info("ca.userAuthCache.size: {}, ca.userAuthCache.ttl: {}",
+        userAuthCacheSize, userAuthCacheTtl);
+
+    if (keypairPool == null) {
+      int highWatermark = getIntProperty("ca.keypairPool.highWatermark", 0);
+      if (highWatermark > 0) {
+        int lowWatermark = getIntProperty("ca.keypairPool.lowWatermark", highWatermark / 2);
+        int threads = getIntProperty("ca.keypairPool.threads", 1);
+        if (lowWatermark < 0 || lowWatermark > highWatermark || threads < 1) {
+          throw new CaMgmtException(
+              "invalid ca.keypairPool.lowWatermark or ca.keypairPool.threads");
+        }
+
+        str = confProperties.getProperty("ca.keypairPool.encrypt");
+        boolean encrypt = StringUtil.isBlank(str) || Boolean.parseBoolean(str.trim());
+        try {
+          keypairPool = new KeypairPool(lowWatermark, highWatermark, threads, encrypt);
+        } catch (GeneralSecurityException ex) {
+          throw new CaMgmtException("could not initialize keypair pool", ex);
+        }
+        LOG.info("ca.keypairPool: lowWatermark {}, highWatermark {}, threads {}, encrypt {}",
+            lowWatermark, highWatermark, threads, encrypt);
+      }
+    }
+
     if (this.datasourceNameConfFileMap == null) {
       this.datasourceNameConfFileMap = new ConcurrentHashMap<>();
       for (Object objKey : confProperties.keySet()) {
@@ -467,10 +693,22 @@ public class CaManagerImpl implements CaManager, Closeable {
 
     try {
       this.certstore = new CertStore(datasource, idGen);
+      this.certstore.setCertBatch(certBatchSize, certBatchConcurrency);
     } catch (DataAccessException ex) {
       throw new CaMgmtException(ex.getMessage(), ex);
     }
 
+    try {
+      // read before the configuration, the changes in between are applied again later.
+      lastConfChangeId = queryExecutor.getMaxConfChangeId();
+      lastUserConfChangeId = lastConfChangeId;
+    } catch (CaMgmtException ex) {
+      lastConfChangeId = -1;
+      lastUserConfChangeId = -1;
+      LogUtil.warn(LOG, ex, "table CONF_CHANGE is not available, "
+          + "the slave CA systems will be restarted on any change");
+    }
+
     initCaAliases();
     initCertprofiles();
     initPublishers();
@@ -579,6 +817,9 @@ public class CaManagerImpl implements CaManager, Closeable {
   @Override
   public void notifyCaChange() throws CaMgmtException {
     try {
+      // the slave CA systems cannot reload the changed entries only.
+      queryExecutor.addLostConfChange();
+
       SystemEvent systemEvent = new SystemEvent(EVENT_CACHAGNE, lockInstanceId,
           System.currentTimeMillis() / 1000L);
       queryExecutor.changeSystemEvent(systemEvent);
@@ -587,8 +828,24 @@ public class CaManagerImpl implements CaManager, Closeable {
       LogUtil.warn(LOG, ex, "could not notify slave CAs to restart");
       throw ex;
     }
+
+    if (lastConfChangeId >= 0) {
+      try {
+        int num = queryExecutor.deleteConfChanges(
+            System.currentTimeMillis() / 1000L - CONF_CHANGE_KEEP_SECONDS);
+        LOG.debug("deleted {} old entries from CONF_CHANGE", num);
+      } catch (CaMgmtException ex) {
+        LogUtil.warn(LOG, ex, "could not delete old entries from CONF_CHANGE");
+      }
+    }
   } // method notifyCaChange
 
+  private ConfChangeTransaction beginConfChange(ConfChange.Type type, String name)
+      throws CaMgmtException {
+    // the changes are not recorded if the table CONF_CHANGE is not available
+    return queryExecutor.beginConfChange(type, name, lastConfChangeId >= 0);
+  }
+
   public void startCaSystem() {
     boolean caSystemStarted = false;
     try {
@@ -628,6 +885,13 @@ public class CaManagerImpl implements CaManager, Closeable {
 
       scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(10);
       scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
+      if (publisherThreads > 0) {
+        publisherExecutor = Executors.newFixedThreadPool(publisherThreads);
+      }
+      if (certGenThreads > 0) {
+        certGenExecutor = Executors.newFixedThreadPool(certGenThreads);
+      }
+      crlExecutor = Executors.newFixedThreadPool(X509Ca.CRL_READ_THREADS);
 
       List<String> startedCaNames = new LinkedList<>();
       List<String> failedCaNames = new LinkedList<>();
@@ -703,7 +967,7 @@ public class CaManagerImpl implements CaManager, Closeable {
         persistentScheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1);
         persistentScheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
         persistentScheduledThreadPoolExecutor.scheduleAtFixedRate(new CaRestarter(),
-            300, 300, TimeUnit.SECONDS);
+            60, 60, TimeUnit.SECONDS);
       }
     }
 
@@ -735,6 +999,17 @@ public class CaManagerImpl implements CaManager, Closeable {
       }
     }
 
+    try {
+      caEntry.setSignatureVerificationControl(
+          SignatureVerificationControl.getInstance(extraControl));
+    } catch (IllegalArgumentException ex) {
+      LogUtil.error(LOG, ex, concat("invalid ", SignatureVerificationControl.KEY_MODE, " or ",
+          SignatureVerificationControl.KEY_N, " (ca=", caName, ")"));
+      return false;
+    }
+    LOG.info("signature verification of CA {}: {}", caName,
+        caEntry.getSignatureVerificationControl());
+
     X509Ca ca;
     try {
       ca = new X509Ca(this, caEntry, certstore);
@@ -744,6 +1019,10 @@ public class CaManagerImpl implements CaManager, Closeable {
     }
 
     x509cas.put(caName, ca);
+    if (keypairPool != null) {
+      ca.warmUpKeypairPool(keypairPool);
+    }
+
     CmpResponder caResponder;
     try {
       caResponder = new CmpResponder(this, caName);
@@ -791,6 +1070,11 @@ public class CaManagerImpl implements CaManager, Closeable {
       }
     }
 
+    if (keypairPool != null) {
+      keypairPool.close();
+      keypairPool = null;
+    }
+
     if (caLockedByMe) {
       try {
         unlockCa();
@@ -1073,6 +1357,17 @@ public class CaManagerImpl implements CaManager, Closeable {
   } // method initCas
 
   private boolean createCa(String name) throws CaMgmtException {
+    unloadCa(name);
+
+    CaInfo ca = queryExecutor.createCaInfo(name, masterMode, certstore);
+    LOG.info("created CA {}: {}", name, ca.toString(false));
+    caInfos.put(name, ca);
+    idNameMap.addCa(ca.getIdent());
+    createCaHasEntries(name, ca.getIdent());
+    return true;
+  } // method createCa
+
+  private void unloadCa(String name) {
     caInfos.remove(name);
     idNameMap.removeCa(name);
     caHasProfiles.remove(name);
@@ -1084,12 +1379,10 @@ public class CaManagerImpl implements CaManager, Closeable {
     if (oldCa != null) {
       oldCa.close();
     }
+  } // method unloadCa
 
-    CaInfo ca = queryExecutor.createCaInfo(name, masterMode, certstore);
-    LOG.info("created CA {}: {}", name, ca.toString(false));
-    caInfos.put(name, ca);
-    idNameMap.addCa(ca.getIdent());
-    Set<MgmtEntry.CaHasRequestor> caReqEntries = queryExecutor.createCaHasRequestors(ca.getIdent());
+  private void createCaHasEntries(String name, NameId caIdent) throws CaMgmtException {
+    Set<MgmtEntry.CaHasRequestor> caReqEntries = queryExecutor.createCaHasRequestors(caIdent);
     caHasRequestors.put(name, caReqEntries);
     if (LOG.isInfoEnabled()) {
       StringBuilder sb = new StringBuilder();
@@ -1099,7 +1392,7 @@ public class CaManagerImpl implements CaManager, Closeable {
       LOG.info("CA {} is associated with following requestors:{}", name, sb);
     }
 
-    Set<Integer> profileIds = queryExecutor.createCaHasProfiles(ca.getIdent());
+    Set<Integer> profileIds = queryExecutor.createCaHasProfiles(caIdent);
     Set<String> profileNames = new HashSet<>();
     for (Integer id : profileIds) {
       profileNames.add(idNameMap.getCertprofileName(id));
@@ -1107,16 +1400,312 @@ public class CaManagerImpl implements CaManager, Closeable {
     caHasProfiles.put(name, profileNames);
     LOG.info("CA {} is associated with following profiles: {}", name, profileNames);
 
-    Set<Integer> publisherIds = queryExecutor.createCaHasPublishers(ca.getIdent());
+    Set<Integer> publisherIds = queryExecutor.createCaHasPublishers(caIdent);
     Set<String> publisherNames = new HashSet<>();
     for (Integer id : publisherIds) {
       publisherNames.add(idNameMap.getPublisherName(id));
     }
     caHasPublishers.put(name, publisherNames);
     LOG.info("CA {} is associated with following publishers: {}", name, publisherNames);
+  } // method createCaHasEntries
+
+  /**
+   * Applies the changes of the CA configuration recorded in the table CONF_CHANGE since the
+   * last start or reload. Only the changed entries are reloaded, the other entries, especially
+   * the unchanged CAs, are not interrupted.
+   * @return whether the changes have been applied, {@code false} if the CA system must be
+   *     restarted.
+   */
+  private boolean reloadChangedConf() {
+    if (lastConfChangeId < 0) {
+      return false;
+    }
+
+    List<ConfChange> changes;
+    try {
+      changes = queryExecutor.getConfChanges(lastConfChangeId);
+    } catch (CaMgmtException ex) {
+      LogUtil.warn(LOG, ex, "could not retrieve the changes of CA configuration");
+      return false;
+    }
+
+    Map<ConfChange.Type, Set<String>> changedNames =
+        ConfChange.groupByType(lastConfChangeId, changes);
+    if (changedNames == null) {
+      LOG.info("could not reload CA configuration incrementally, {} changes after {}",
+          changes.size(), lastConfChangeId);
+      return false;
+    }
+
+    LOG.info("reloading changed CA configuration: {}", changedNames);
+    try {
+      for (ConfChange.Type type : changedNames.keySet()) {
+        Set<String> names = changedNames.get(type);
+        switch (type) {
+          case SIGNER:
+            reloadSigners(names);
+            break;
+          case REQUESTOR:
+            reloadRequestors(names);
+            break;
+          case PROFILE:
+            reloadCertprofiles(names);
+            break;
+          case PUBLISHER:
+            reloadPublishers(names);
+            break;
+          case CA:
+            reloadCas(names);
+            break;
+          case CA_HAS:
+            for (String name : names) {
+              CaInfo caInfo = caInfos.get(name);
+              if (caInfo != null) {
+                createCaHasEntries(name, caInfo.getIdent());
+              }
+            }
+            break;
+          case CAALIAS:
+            caAliasesInitialized = false;
+            initCaAliases();
+            break;
+          case USER:
+            if (userAuthCache != null) {
+              for (String name : names) {
+                userAuthCache.invalidate(name);
+              }
+            }
+            break;
+          default:
+            throw new IllegalStateException("unknown ConfChange.Type " + type);
+        }
+      }
+    } catch (CaMgmtException | RuntimeException ex) {
+      LogUtil.error(LOG, ex, "could not reload changed CA configuration");
+      return false;
+    }
 
+    if (!changes.isEmpty()) {
+      lastConfChangeId = changes.get(changes.size() - 1).getId();
+    }
+
+    LOG.info("reloaded changed CA configuration");
+    auditLogPciEvent(true, "CA_CHANGE");
     return true;
-  } // method createCa
+  } // method reloadChangedConf
+
+  /**
+   * Removes the users changed since the last call from the {@link #userAuthCache}, so that
+   * a slave CA system does not accept disabled users or old passwords until the cached
+   * authentications expire.
+   */
+  private void invalidateChangedUsers() {
+    if (userAuthCache == null || lastUserConfChangeId < 0) {
+      return;
+    }
+
+    List<ConfChange> changes;
+    try {
+      changes = queryExecutor.getConfChanges(lastUserConfChangeId);
+    } catch (CaMgmtException ex) {
+      LogUtil.warn(LOG, ex, "could not retrieve the changes of CA configuration");
+      return;
+    }
+
+    if (changes.isEmpty()) {
+      return;
+    }
+
+    long expectedId = lastUserConfChangeId + 1;
+    for (ConfChange change : changes) {
+      // a gap means that the changes have been deleted.
+      if (change.getId() != expectedId || change.getType() == ConfChange.Type.ALL) {
+        LOG.info("invalidate all cached authentications of users, change {}", change);
+        userAuthCache.invalidateAll();
+        break;
+      }
+
+      expectedId++;
+      if (change.getType() == ConfChange.Type.USER) {
+        LOG.info("invalidate the cached authentications of user {}", change.getName());
+        userAuthCache.invalidate(change.getName());
+      }
+    }
+
+    lastUserConfChangeId = changes.get(changes.size() - 1).getId();
+  } // method invalidateChangedUsers
+
+  private void reloadSigners(Set<String> names) throws CaMgmtException {
+    List<String> dbNames = queryExecutor.namesFromTable("SIGNER");
+    for (String name : names) {
+      if (!dbNames.contains(name)) {
+        for (CaInfo caInfo : caInfos.values()) {
+          if (name.equals(caInfo.getCmpResponderName())) {
+            caInfo.setCmpResponderName(null);
+          }
+
+          if (name.equals(caInfo.getScepResponderName())) {
+            caInfo.setScepResponderName(null);
+          }
+
+          if (name.equals(caInfo.getCrlSignerName())) {
+            caInfo.setCrlSignerName(null);
+          }
+        }
+
+        signerDbEntries.remove(name);
+        signers.remove(name);
+        LOG.info("removed signer {}", name);
+        continue;
+      }
+
+      MgmtEntry.Signer entry = queryExecutor.createSigner(name);
+      entry.setConfFaulty(true);
+      SignerEntryWrapper signer = null;
+      try {
+        signer = createSigner(entry);
+        entry.setConfFaulty(false);
+      } catch (CaMgmtException ex) {
+        LogUtil.error(LOG, ex, "could not load signer " + name);
+      }
+
+      signerDbEntries.put(name, entry);
+      if (signer == null) {
+        signers.remove(name);
+        continue;
+      }
+
+      signers.put(name, signer);
+      for (String caName : scepResponders.keySet()) {
+        if (name.equals(getCa(caName).getScepResponderName())) {
+          scepResponders.get(caName).setResponder(signer);
+        }
+      }
+      LOG.info("reloaded signer {}", name);
+    }
+  } // method reloadSigners
+
+  private void reloadRequestors(Set<String> names) throws CaMgmtException {
+    List<String> dbNames = queryExecutor.namesFromTable("REQUESTOR");
+    for (String name : names) {
+      if (RequestorInfo.NAME_BY_CA.equals(name) || RequestorInfo.NAME_BY_USER.equals(name)) {
+        continue;
+      }
+
+      if (!dbNames.contains(name)) {
+        MgmtEntry.Requestor oldEntry = requestorDbEntries.remove(name);
+        if (oldEntry != null) {
+          idNameMap.removeRequestor(oldEntry.getIdent().getId());
+        }
+        requestors.remove(name);
+        LOG.info("removed requestor {}", name);
+        continue;
+      }
+
+      MgmtEntry.Requestor entry = queryExecutor.createRequestor(name);
+      RequestorEntryWrapper requestor = new RequestorEntryWrapper();
+      requestor.setDbEntry(entry, securityFactory.getPasswordResolver());
+
+      idNameMap.addRequestor(entry.getIdent());
+      requestorDbEntries.put(name, entry);
+      requestors.put(name, requestor);
+      LOG.info("reloaded requestor {}", name);
+    }
+  } // method reloadRequestors
+
+  private void reloadCertprofiles(Set<String> names) throws CaMgmtException {
+    List<String> dbNames = queryExecutor.namesFromTable("PROFILE");
+    for (String name : names) {
+      IdentifiedCertprofile oldProfile;
+      if (!dbNames.contains(name)) {
+        MgmtEntry.Certprofile oldEntry = certprofileDbEntries.remove(name);
+        if (oldEntry != null) {
+          idNameMap.removeCertprofile(oldEntry.getIdent().getId());
+        }
+        oldProfile = certprofiles.remove(name);
+        LOG.info("removed certprofile {}", name);
+      } else {
+        MgmtEntry.Certprofile entry = queryExecutor.createCertprofile(name);
+        idNameMap.addCertprofile(entry.getIdent());
+        entry.setFaulty(true);
+        IdentifiedCertprofile profile = null;
+        try {
+          profile = createCertprofile(entry);
+          entry.setFaulty(false);
+        } catch (CaMgmtException ex) {
+          LOG.error("could not load certprofile {}", name);
+        }
+
+        certprofileDbEntries.put(name, entry);
+        if (profile == null) {
+          oldProfile = certprofiles.remove(name);
+        } else {
+          oldProfile = certprofiles.put(name, profile);
+          LOG.info("reloaded certprofile {}", name);
+        }
+      }
+
+      shutdownCertprofile(oldProfile);
+    }
+  } // method reloadCertprofiles
+
+  private void reloadPublishers(Set<String> names) throws CaMgmtException {
+    List<String> dbNames = queryExecutor.namesFromTable("PUBLISHER");
+    for (String name : names) {
+      IdentifiedCertPublisher oldPublisher;
+      if (!dbNames.contains(name)) {
+        MgmtEntry.Publisher oldEntry = publisherDbEntries.remove(name);
+        if (oldEntry != null) {
+          idNameMap.removePublisher(oldEntry.getIdent().getId());
+        }
+        oldPublisher = publishers.remove(name);
+        LOG.info("removed publisher {}", name);
+      } else {
+        MgmtEntry.Publisher entry = queryExecutor.createPublisher(name);
+        idNameMap.addPublisher(entry.getIdent());
+        entry.setFaulty(true);
+        IdentifiedCertPublisher publisher = null;
+        try {
+          publisher = createPublisher(entry);
+          entry.setFaulty(false);
+        } catch (CaMgmtException ex) {
+          LOG.error("could not load publisher {}", name);
+        }
+
+        publisherDbEntries.put(name, entry);
+        if (publisher == null) {
+          oldPublisher = publishers.remove(name);
+        } else {
+          oldPublisher = publishers.put(name, publisher);
+          LOG.info("reloaded publisher {}", name);
+        }
+      }
+
+      shutdownPublisher(oldPublisher);
+    }
+  } // method reloadPublishers
+
+  private void reloadCas(Set<String> names) throws CaMgmtException {
+    List<String> dbNames = queryExecutor.namesFromTable("CA");
+    for (String name : names) {
+      if (!dbNames.contains(name)) {
+        unloadCa(name);
+        LOG.info("removed CA {}", name);
+        continue;
+      }
+
+      createCa(name);
+      if (CaStatus.ACTIVE != caInfos.get(name).getCaEntry().getStatus()) {
+        continue;
+      }
+
+      if (startCa(name)) {
+        LOG.info("started CA {}", name);
+      } else {
+        LOG.error("could not start CA {}", name);
+      }
+    }
+  } // method reloadCas
 
   public void commitNextCrlNo(NameId ca, long nextCrlNo) throws OperationException {
     try {
@@ -1173,7 +1762,10 @@ public class CaManagerImpl implements CaManager, Closeable {
         concat("could not create signer for new CA ", name, ": ", ex.getMessage()), ex);
     }
 
-    queryExecutor.addCa(caEntry);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.CA, name)) {
+      queryExecutor.addCa(caEntry);
+      tx.commit();
+    }
     if (createCa(name)) {
       if (startCa(name)) {
         LOG.info("started CA {}", name);
@@ -1203,7 +1795,10 @@ public class CaManagerImpl implements CaManager, Closeable {
 
     entry.getIdent().setId(ident.getId());
 
-    queryExecutor.changeCa(entry, caInfos.get(name).getCaEntry(), securityFactory);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.CA, name)) {
+      queryExecutor.changeCa(entry, caInfos.get(name).getCaEntry(), securityFactory);
+      tx.commit();
+    }
 
     if (createCa(name)) {
       CaInfo caInfo = caInfos.get(name);
@@ -1227,7 +1822,10 @@ public class CaManagerImpl implements CaManager, Closeable {
     caName = Args.toNonBlankLower(caName, "caName");
     asssertMasterMode();
 
-    queryExecutor.removeCertprofileFromCa(profileName, caName);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.CA_HAS, caName)) {
+      queryExecutor.removeCertprofileFromCa(profileName, caName);
+      tx.commit();
+    }
 
     if (caHasProfiles.containsKey(caName)) {
       Set<String> set = caHasProfiles.get(caName);
@@ -1268,7 +1866,10 @@ public class CaManagerImpl implements CaManager, Closeable {
       throw new CaMgmtException(concat("certprofile '", profileName, "' is faulty"));
     }
 
-    queryExecutor.addCertprofileToCa(ident, caIdent);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.CA_HAS, caName)) {
+      queryExecutor.addCertprofileToCa(ident, caIdent);
+      tx.commit();
+    }
     set.add(profileName);
   } // method addCertprofileToCa
 
@@ -1278,7 +1879,10 @@ public class CaManagerImpl implements CaManager, Closeable {
     caName = Args.toNonBlankLower(caName, "caName");
     asssertMasterMode();
 
-    queryExecutor.removePublisherFromCa(publisherName, caName);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.CA_HAS, caName)) {
+      queryExecutor.removePublisherFromCa(publisherName, caName);
+      tx.commit();
+    }
 
     Set<String> publisherNames = caHasPublishers.get(caName);
     if (publisherNames != null) {
@@ -1318,7 +1922,10 @@ public class CaManagerImpl implements CaManager, Closeable {
       throw new CaMgmtException(concat("publisher '", publisherName, "' is faulty"));
     }
 
-    queryExecutor.addPublisherToCa(idNameMap.getPublisher(publisherName), caIdent);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.CA_HAS, caName)) {
+      queryExecutor.addPublisherToCa(idNameMap.getPublisher(publisherName), caIdent);
+      tx.commit();
+    }
     publisherNames.add(publisherName);
     caHasPublishers.get(caName).add(publisherName);
 
@@ -1372,7 +1979,10 @@ public class CaManagerImpl implements CaManager, Closeable {
     RequestorEntryWrapper requestor = new RequestorEntryWrapper();
     requestor.setDbEntry(requestorEntry, pwdResolver);
 
-    queryExecutor.addRequestor(requestorEntry);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.REQUESTOR, name)) {
+      queryExecutor.addRequestor(requestorEntry);
+      tx.commit();
+    }
     idNameMap.addRequestor(requestorEntry.getIdent());
     requestorDbEntries.put(name, requestorEntry);
     requestors.put(name, requestor);
@@ -1397,8 +2007,11 @@ public class CaManagerImpl implements CaManager, Closeable {
       }
     }
 
-    if (!queryExecutor.deleteRowWithName(name, "REQUESTOR")) {
-      throw new CaMgmtException("unknown requestor " + name);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.REQUESTOR, name)) {
+      if (!queryExecutor.deleteRowWithName(name, "REQUESTOR")) {
+        throw new CaMgmtException("unknown requestor " + name);
+      }
+      tx.commit();
     }
 
     idNameMap.removeRequestor(requestorDbEntries.get(name).getIdent().getId());
@@ -1420,8 +2033,12 @@ public class CaManagerImpl implements CaManager, Closeable {
       throw logAndCreateException(concat("unknown requestor ", name));
     }
 
-    RequestorEntryWrapper requestor = queryExecutor.changeRequestor(ident, type, conf,
-        securityFactory.getPasswordResolver());
+    RequestorEntryWrapper requestor;
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.REQUESTOR, name)) {
+      requestor = queryExecutor.changeRequestor(ident, type, conf,
+          securityFactory.getPasswordResolver());
+      tx.commit();
+    }
 
     requestorDbEntries.remove(name);
     requestors.remove(name);
@@ -1441,7 +2058,10 @@ public class CaManagerImpl implements CaManager, Closeable {
       throw new CaMgmtException(concat("removing requestor ", requestorName, " is not permitted"));
     }
 
-    queryExecutor.removeRequestorFromCa(requestorName, caName);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.CA_HAS, caName)) {
+      queryExecutor.removeRequestorFromCa(requestorName, caName);
+      tx.commit();
+    }
     if (caHasRequestors.containsKey(caName)) {
       Set<MgmtEntry.CaHasRequestor> entries = caHasRequestors.get(caName);
       MgmtEntry.CaHasRequestor entry = null;
@@ -1492,7 +2112,10 @@ public class CaManagerImpl implements CaManager, Closeable {
     }
 
     cmpRequestors.add(requestor);
-    queryExecutor.addRequestorToCa(requestor, caIdent);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.CA_HAS, caName)) {
+      queryExecutor.addRequestorToCa(requestor, caIdent);
+      tx.commit();
+    }
     caHasRequestors.get(caName).add(requestor);
   } // method addRequestorToCa
 
@@ -1540,9 +2163,11 @@ public class CaManagerImpl implements CaManager, Closeable {
       }
     }
 
-    boolean bo = queryExecutor.deleteRowWithName(name, "PROFILE");
-    if (!bo) {
-      throw new CaMgmtException("unknown profile " + name);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.PROFILE, name)) {
+      if (!queryExecutor.deleteRowWithName(name, "PROFILE")) {
+        throw new CaMgmtException("unknown profile " + name);
+      }
+      tx.commit();
     }
 
     LOG.info("removed profile '{}'", name);
@@ -1569,7 +2194,11 @@ public class CaManagerImpl implements CaManager, Closeable {
 
     asssertMasterMode();
 
-    IdentifiedCertprofile profile = queryExecutor.changeCertprofile(ident, type, conf, this);
+    IdentifiedCertprofile profile;
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.PROFILE, name)) {
+      profile = queryExecutor.changeCertprofile(ident, type, conf, this);
+      tx.commit();
+    }
 
     certprofileDbEntries.remove(name);
     IdentifiedCertprofile oldProfile = certprofiles.remove(name);
@@ -1598,7 +2227,10 @@ public class CaManagerImpl implements CaManager, Closeable {
 
     certprofileEntry.setFaulty(false);
     certprofiles.put(name, profile);
-    queryExecutor.addCertprofile(certprofileEntry);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.PROFILE, name)) {
+      queryExecutor.addCertprofile(certprofileEntry);
+      tx.commit();
+    }
     idNameMap.addCertprofile(certprofileEntry.getIdent());
     certprofileDbEntries.put(name, certprofileEntry);
   } // method addCertprofile
@@ -1621,7 +2253,10 @@ public class CaManagerImpl implements CaManager, Closeable {
     }
 
     SignerEntryWrapper signer = createSigner(signerEntry);
-    queryExecutor.addSigner(signerEntry);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.SIGNER, name)) {
+      queryExecutor.addSigner(signerEntry);
+      tx.commit();
+    }
     signers.put(name, signer);
     signerDbEntries.put(name, signerEntry);
   } // method addResponder
@@ -1630,9 +2265,11 @@ public class CaManagerImpl implements CaManager, Closeable {
   public void removeSigner(String name) throws CaMgmtException {
     name = Args.toNonBlankLower(name, "name");
     asssertMasterMode();
-    boolean bo = queryExecutor.deleteRowWithName(name, "SIGNER");
-    if (!bo) {
-      throw new CaMgmtException("unknown signer " + name);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.SIGNER, name)) {
+      if (!queryExecutor.deleteRowWithName(name, "SIGNER")) {
+        throw new CaMgmtException("unknown signer " + name);
+      }
+      tx.commit();
     }
 
     for (String caName : caInfos.keySet()) {
@@ -1669,8 +2306,12 @@ public class CaManagerImpl implements CaManager, Closeable {
       type = type.toLowerCase();
     }
 
-    SignerEntryWrapper newResponder = queryExecutor.changeSigner(name, type, conf,
-        base64Cert, this, securityFactory);
+    SignerEntryWrapper newResponder;
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.SIGNER, name)) {
+      newResponder = queryExecutor.changeSigner(name, type, conf,
+          base64Cert, this, securityFactory);
+      tx.commit();
+    }
 
     signers.remove(name);
     signerDbEntries.remove(name);
@@ -1707,7 +2348,10 @@ public class CaManagerImpl implements CaManager, Closeable {
     IdentifiedCertPublisher publisher = createPublisher(entry);
     entry.setFaulty(false);
 
-    queryExecutor.addPublisher(entry);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.PUBLISHER, name)) {
+      queryExecutor.addPublisher(entry);
+      tx.commit();
+    }
 
     publishers.put(name, publisher);
     idNameMap.addPublisher(entry.getIdent());
@@ -1746,9 +2390,11 @@ public class CaManagerImpl implements CaManager, Closeable {
       }
     }
 
-    boolean bo = queryExecutor.deleteRowWithName(name, "PUBLISHER");
-    if (!bo) {
-      throw new CaMgmtException("unknown publisher " + name);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.PUBLISHER, name)) {
+      if (!queryExecutor.deleteRowWithName(name, "PUBLISHER")) {
+        throw new CaMgmtException("unknown publisher " + name);
+      }
+      tx.commit();
     }
 
     LOG.info("removed publisher '{}'", name);
@@ -1768,7 +2414,11 @@ public class CaManagerImpl implements CaManager, Closeable {
       type = type.toLowerCase();
     }
 
-    IdentifiedCertPublisher publisher = queryExecutor.changePublisher(name, type, conf, this);
+    IdentifiedCertPublisher publisher;
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.PUBLISHER, name)) {
+      publisher = queryExecutor.changePublisher(name, type, conf, this);
+      tx.commit();
+    }
 
     IdentifiedCertPublisher oldPublisher = publishers.remove(name);
     shutdownPublisher(oldPublisher);
@@ -1812,7 +2462,10 @@ public class CaManagerImpl implements CaManager, Closeable {
       throw new CaMgmtException("unknown CA alias " + aliasName);
     }
 
-    queryExecutor.addCaAlias(aliasName, ca.getCaIdent());
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.CAALIAS, aliasName)) {
+      queryExecutor.addCaAlias(aliasName, ca.getCaIdent());
+      tx.commit();
+    }
     caAliases.put(aliasName, ca.getCaIdent().getId());
   } // method addCaAlias
 
@@ -1820,7 +2473,10 @@ public class CaManagerImpl implements CaManager, Closeable {
   public void removeCaAlias(String name) throws CaMgmtException {
     name = Args.toNonBlankLower(name, "name");
     asssertMasterMode();
-    queryExecutor.removeCaAlias(name);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.CAALIAS, name)) {
+      queryExecutor.removeCaAlias(name);
+      tx.commit();
+    }
     caAliases.remove(name);
   }
 
@@ -1874,21 +2530,13 @@ public class CaManagerImpl implements CaManager, Closeable {
     name = Args.toNonBlankLower(name, "name");
     asssertMasterMode();
 
-    queryExecutor.removeCa(name);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.CA, name)) {
+      queryExecutor.removeCa(name);
+      tx.commit();
+    }
 
     LOG.info("removed CA '{}'", name);
-    caInfos.remove(name);
-    idNameMap.removeCa(name);
-    idNameMap.removeCa(name);
-    caHasProfiles.remove(name);
-    caHasPublishers.remove(name);
-    caHasRequestors.remove(name);
-    X509Ca ca = x509cas.remove(name);
-    cmpResponders.remove(name);
-    scepResponders.remove(name);
-    if (ca != null) {
-      ca.close();
-    }
+    unloadCa(name);
   } // method removeCa
 
   @Override
@@ -1930,7 +2578,10 @@ public class CaManagerImpl implements CaManager, Closeable {
       }
     }
 
-    queryExecutor.revokeCa(caName, revocationInfo);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.CA, caName)) {
+      queryExecutor.revokeCa(caName, revocationInfo);
+      tx.commit();
+    }
 
     try {
       ca.revokeCa(revocationInfo, CaAuditConstants.MSGID_ca_mgmt);
@@ -1952,7 +2603,10 @@ public class CaManagerImpl implements CaManager, Closeable {
 
     LOG.info("unrevoking of CA '{}'", caName);
 
-    queryExecutor.unrevokeCa(caName);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.CA, caName)) {
+      queryExecutor.unrevokeCa(caName);
+      tx.commit();
+    }
 
     X509Ca ca = x509cas.get(caName);
     try {
@@ -2018,19 +2672,33 @@ public class CaManagerImpl implements CaManager, Closeable {
   } // method clearPublishQueue
 
   private void shutdownScheduledThreadPoolExecutor() {
-    if (scheduledThreadPoolExecutor == null) {
-      return;
+    if (publisherExecutor != null) {
+      publisherExecutor.shutdown();
+      publisherExecutor = null;
     }
 
-    scheduledThreadPoolExecutor.shutdown();
-    while (!scheduledThreadPoolExecutor.isTerminated()) {
-      try {
-        Thread.sleep(100);
-      } catch (InterruptedException ex) {
-        LOG.error("interrupted: {}", ex.getMessage());
+    if (certGenExecutor != null) {
+      certGenExecutor.shutdown();
+      certGenExecutor = null;
+    }
+
+    if (scheduledThreadPoolExecutor != null) {
+      scheduledThreadPoolExecutor.shutdown();
+      while (!scheduledThreadPoolExecutor.isTerminated()) {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException ex) {
+          LOG.error("interrupted: {}", ex.getMessage());
+        }
       }
+      scheduledThreadPoolExecutor = null;
+    }
+
+    // after the scheduled CRL generations, which use it, have been finished
+    if (crlExecutor != null) {
+      crlExecutor.shutdown();
+      crlExecutor = null;
     }
-    scheduledThreadPoolExecutor = null;
   } // method shutdownScheduledThreadPoolExecutor
 
   @Override
@@ -2365,16 +3033,34 @@ public class CaManagerImpl implements CaManager, Closeable {
   @Override
   public void changeUser(MgmtEntry.ChangeUser changeUserEntry) throws CaMgmtException {
     asssertMasterMode();
-    queryExecutor.changeUser(changeUserEntry);
+    String username = changeUserEntry.getIdent().getName().toLowerCase();
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.USER, username)) {
+      queryExecutor.changeUser(changeUserEntry);
+      tx.commit();
+    }
+
+    if (userAuthCache != null) {
+      userAuthCache.invalidate(username);
+    }
+    // if the change could not be recorded, the slave CA systems drop all cached users.
+    queryExecutor.addLostConfChange();
   }
 
   @Override
   public void removeUser(String username) throws CaMgmtException {
     username = Args.toNonBlankLower(username, "username");
     asssertMasterMode();
-    if (!queryExecutor.deleteRowWithName(username, "TUSER")) {
-      throw new CaMgmtException("unknown user " + username);
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.USER, username)) {
+      if (!queryExecutor.deleteRowWithName(username, "TUSER")) {
+        throw new CaMgmtException("unknown user " + username);
+      }
+      tx.commit();
+    }
+
+    if (userAuthCache != null) {
+      userAuthCache.invalidate(username);
     }
+    queryExecutor.addLostConfChange();
   }
 
   @Override
@@ -20,9 +20,11 @@ package org.xipki.ca.server;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
@@ -32,6 +34,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +54,7 @@ import org.xipki.ca.api.profile.Certprofile.CertValidity;
 import org.xipki.ca.server.SqlColumn.ColumnType;
 import org.xipki.ca.server.store.CertStore;
 import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataAccessException.Reason;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.password.PasswordResolver;
 import org.xipki.password.PasswordResolverException;
@@ -63,6 +67,7 @@ import org.xipki.util.Args;
 import org.xipki.util.Base64;
 import org.xipki.util.ConfPairs;
 import org.xipki.util.InvalidConfException;
+import org.xipki.util.LogUtil;
 import org.xipki.util.ObjectCreationException;
 import org.xipki.util.StringUtil;
 
@@ -73,14 +78,112 @@ import org.xipki.util.StringUtil;
  */
 class CaManagerQueryExecutor {
 
+  /**
+   * Transaction changing the CA configuration. The change is recorded in the table CONF_CHANGE
+   * in the same transaction, so that the slave CA systems see either both or none of them.
+   * The transaction is bound to the current thread, all statements of this executor in the
+   * thread use its connection. It is rolled back on {@link #close()} if not committed.
+   */
+  class ConfChangeTransaction implements AutoCloseable {
+
+    private final ConfChange.Type type;
+
+    private final String name;
+
+    private final boolean record;
+
+    private final Connection conn;
+
+    private Boolean origAutoCommit;
+
+    private boolean committed;
+
+    private ConfChangeTransaction(ConfChange.Type type, String name, boolean record,
+        Connection conn) {
+      this.type = type;
+      this.name = name;
+      this.record = record;
+      this.conn = conn;
+    }
+
+    /**
+     * Records the change and commits the transaction. If the change could not be recorded,
+     * the change itself is still committed, and an ALL entry will be recorded by
+     * {@link CaManagerQueryExecutor#addLostConfChange()}.
+     * @throws CaMgmtException
+     *            If the transaction could not be committed.
+     */
+    void commit() throws CaMgmtException {
+      try {
+        if (record) {
+          if (recordConfChange(conn, type, name)) {
+            if (type == ConfChange.Type.ALL) {
+              confChangeLost = false;
+            }
+          } else if (type == ConfChange.Type.ALL) {
+            throw new CaMgmtException("could not record the change of the whole configuration");
+          } else {
+            confChangeLost = true;
+          }
+        }
+
+        conn.commit();
+        committed = true;
+      } catch (SQLException ex) {
+        throw new CaMgmtException(datasource.translate(null, ex));
+      }
+    } // method commit
+
+    @Override
+    public void close() {
+      confConnection.remove();
+      try {
+        if (origAutoCommit != null && !committed) {
+          try {
+            conn.rollback();
+          } catch (SQLException ex) {
+            LOG.warn("could not rollback the transaction: {}", ex.getMessage());
+          }
+        }
+
+        if (origAutoCommit != null) {
+          try {
+            conn.setAutoCommit(origAutoCommit);
+          } catch (SQLException ex) {
+            LOG.warn("could not restore the auto-commit mode: {}", ex.getMessage());
+          }
+        }
+        datasource.returnConnection(conn);
+      } finally {
+        confChangeLock.unlock();
+      }
+    } // method close
+
+  } // class ConfChangeTransaction
+
   private static final Logger LOG = LoggerFactory.getLogger(CaManagerQueryExecutor.class);
 
+  private static final int CONF_CHANGE_ATTEMPTS = 3;
+
   private static final ColumnType INT = ColumnType.INT;
   private static final ColumnType BOOL = ColumnType.BOOL;
   private static final ColumnType STRING = ColumnType.STRING;
 
   private final DataSourceWrapper datasource;
 
+  /**
+   * Connection of the {@link ConfChangeTransaction} of the current thread.
+   */
+  private final ThreadLocal<Connection> confConnection = new ThreadLocal<>();
+
+  /**
+   * Serializes the changes of the CA configuration, so that they do not compete for the IDs of
+   * CONF_CHANGE.
+   */
+  private final ReentrantLock confChangeLock = new ReentrantLock();
+
+  private volatile boolean confChangeLost;
+
   private final String sqlSelectProfileId;
   private final String sqlSelectProfile;
   private final String sqlSelectPublisherId;
@@ -135,21 +238,29 @@ class CaManagerQueryExecutor {
   } // method generateCert
 
   private Statement createStatement() throws CaMgmtException {
+    Connection conn = confConnection.get();
     try {
-      return datasource.createStatement();
+      return (conn == null) ? datasource.createStatement() : datasource.createStatement(conn);
     } catch (DataAccessException ex) {
       throw new CaMgmtException(ex);
     }
   } // method createStatement
 
   private PreparedStatement prepareStatement(String sql) throws CaMgmtException {
+    Connection conn = confConnection.get();
     try {
-      return datasource.prepareStatement(sql);
+      return (conn == null) ? datasource.prepareStatement(sql)
+          : datasource.prepareStatement(conn, sql);
     } catch (DataAccessException ex) {
       throw new CaMgmtException(ex);
     }
   } // method prepareStatement
 
+  private void releaseResources(Statement stmt, ResultSet rs) {
+    // the connection of a ConfChangeTransaction is returned when the transaction is closed
+    datasource.releaseResources(stmt, rs, confConnection.get() == null);
+  }
+
   /**
    * Retrieve the system event.
    * @param eventName Event name
@@ -175,7 +286,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, rs);
+      releaseResources(ps, rs);
     }
   } // method getSystemEvent
 
@@ -190,7 +301,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method deleteSystemEvent
 
@@ -214,7 +325,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method addSystemEvent
 
@@ -223,6 +334,176 @@ class CaManagerQueryExecutor {
     addSystemEvent(systemEvent);
   }
 
+  /**
+   * Returns the ID of the last change of the CA configuration.
+   * @return the ID of the last change, 0 if no change has been recorded.
+   * @throws CaMgmtException
+   *            If error occurs, e.g. the table CONF_CHANGE does not exist.
+   */
+  long getMaxConfChangeId() throws CaMgmtException {
+    try {
+      return datasource.getMax(confConnection.get(), "CONF_CHANGE", "ID");
+    } catch (DataAccessException ex) {
+      throw new CaMgmtException(ex);
+    }
+  } // method getMaxConfChangeId
+
+  /**
+   * Begins a transaction changing the CA configuration. The changes of the configuration are
+   * serialized, the next one begins after this one is closed.
+   * @param type Type of the changed entry.
+   * @param name Name of the changed entry.
+   * @param record Whether to record the change in the table CONF_CHANGE.
+   * @return the transaction, never {@code null}.
+   * @throws CaMgmtException
+   *            If error occurs.
+   */
+  ConfChangeTransaction beginConfChange(ConfChange.Type type, String name, boolean record)
+      throws CaMgmtException {
+    if (confChangeLock.isHeldByCurrentThread()) {
+      throw new IllegalStateException("nested change of the CA configuration");
+    }
+
+    confChangeLock.lock();
+    ConfChangeTransaction tx;
+    try {
+      tx = new ConfChangeTransaction(type, name, record, datasource.getConnection());
+    } catch (DataAccessException ex) {
+      confChangeLock.unlock();
+      throw new CaMgmtException(ex);
+    }
+
+    try {
+      tx.origAutoCommit = tx.conn.getAutoCommit();
+      tx.conn.setAutoCommit(false);
+    } catch (SQLException ex) {
+      tx.close();
+      throw new CaMgmtException(datasource.translate(null, ex));
+    }
+
+    confConnection.set(tx.conn);
+    return tx;
+  } // method beginConfChange
+
+  /**
+   * Adds an ALL entry to the table CONF_CHANGE if a change of the CA configuration could not
+   * be recorded, so that the slave CA systems reload the whole configuration.
+   * @throws CaMgmtException
+   *            If the entry could not be added.
+   */
+  void addLostConfChange() throws CaMgmtException {
+    if (!confChangeLost) {
+      return;
+    }
+
+    try (ConfChangeTransaction tx = beginConfChange(ConfChange.Type.ALL, null, true)) {
+      tx.commit();
+    }
+  } // method addLostConfChange
+
+  /**
+   * Adds the change to the table CONF_CHANGE with the next ID. On a key conflict, e.g. with
+   * another CA system, the insertion is rolled back to the savepoint and retried.
+   * @return whether the change has been recorded.
+   */
+  private boolean recordConfChange(Connection conn, ConfChange.Type type, String name)
+      throws SQLException {
+    final String sql = "INSERT INTO CONF_CHANGE (ID,TYPE,NAME,EVENT_TIME) VALUES (?,?,?,?)";
+
+    for (int i = 1; ; i++) {
+      Savepoint savepoint = conn.setSavepoint();
+      PreparedStatement ps = null;
+      DataAccessException dex;
+      try {
+        long id = datasource.getMax(conn, "CONF_CHANGE", "ID") + 1;
+        ps = datasource.prepareStatement(conn, sql);
+        ps.setLong(1, id);
+        ps.setString(2, type.name());
+        ps.setString(3, name);
+        ps.setLong(4, System.currentTimeMillis() / 1000L);
+        ps.executeUpdate();
+        return true;
+      } catch (DataAccessException ex) {
+        dex = ex;
+      } catch (SQLException ex) {
+        dex = datasource.translate(sql, ex);
+      } finally {
+        datasource.releaseResources(ps, null, false);
+      }
+
+      conn.rollback(savepoint);
+      if (i < CONF_CHANGE_ATTEMPTS
+          && dex.getReason().isDescendantOrSelfOf(Reason.DataIntegrityViolation)) {
+        LOG.info("ID of CONF_CHANGE used concurrently, retry: {}", dex.getMessage());
+        continue;
+      }
+
+      LogUtil.warn(LOG, dex, "could not record the change of " + type + " " + name);
+      return false;
+    }
+  } // method recordConfChange
+
+  /**
+   * Retrieves the changes of the CA configuration after the given one.
+   * @param afterId ID of the last known change.
+   * @return the changes ordered by the ID, never {@code null}.
+   * @throws CaMgmtException
+   *            If error occurs.
+   */
+  List<ConfChange> getConfChanges(long afterId) throws CaMgmtException {
+    final String sql = "SELECT ID,TYPE,NAME FROM CONF_CHANGE WHERE ID>? ORDER BY ID";
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+
+    try {
+      ps = prepareStatement(sql);
+      ps.setLong(1, afterId);
+      rs = ps.executeQuery();
+
+      List<ConfChange> changes = new LinkedList<>();
+      while (rs.next()) {
+        ConfChange.Type type;
+        try {
+          type = ConfChange.Type.valueOf(rs.getString("TYPE"));
+        } catch (IllegalArgumentException ex) {
+          // written by a newer version, reload everything.
+          type = ConfChange.Type.ALL;
+        }
+        changes.add(new ConfChange(rs.getLong("ID"), type, rs.getString("NAME")));
+      }
+      return changes;
+    } catch (SQLException ex) {
+      throw new CaMgmtException(datasource.translate(sql, ex));
+    } finally {
+      releaseResources(ps, rs);
+    }
+  } // method getConfChanges
+
+  /**
+   * Deletes the changes of the CA configuration recorded before the given time. The last
+   * change is kept, so that the IDs are not reused.
+   * @param eventTime Time in seconds since January 1, 1970, 00:00:00 GMT.
+   * @return the number of deleted changes.
+   * @throws CaMgmtException
+   *            If error occurs.
+   */
+  int deleteConfChanges(long eventTime) throws CaMgmtException {
+    final String sql = "DELETE FROM CONF_CHANGE WHERE EVENT_TIME<? AND ID<?";
+    long maxId = getMaxConfChangeId();
+
+    PreparedStatement ps = null;
+    try {
+      ps = prepareStatement(sql);
+      ps.setLong(1, eventTime);
+      ps.setLong(2, maxId);
+      return ps.executeUpdate();
+    } catch (SQLException ex) {
+      throw new CaMgmtException(datasource.translate(sql, ex));
+    } finally {
+      releaseResources(ps, null);
+    }
+  } // method deleteConfChanges
+
   Map<String, Integer> createCaAliases() throws CaMgmtException {
     Map<String, Integer> map = new HashMap<>();
 
@@ -240,7 +521,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(stmt, rs);
+      releaseResources(stmt, rs);
     }
 
     return map;
@@ -264,7 +545,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(stmt, rs);
+      releaseResources(stmt, rs);
     }
   } // method createCertprofile
 
@@ -292,7 +573,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(stmt, rs);
+      releaseResources(stmt, rs);
     }
   } // method getNamesFromTable
 
@@ -314,7 +595,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(stmt, rs);
+      releaseResources(stmt, rs);
     }
   } // method createPublisher
 
@@ -336,7 +617,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(stmt, rs);
+      releaseResources(stmt, rs);
     }
   }
 
@@ -359,7 +640,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(stmt, rs);
+      releaseResources(stmt, rs);
     }
   } // method createRequestor
 
@@ -382,7 +663,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(stmt, rs);
+      releaseResources(stmt, rs);
     }
   } // method createResponder
 
@@ -478,7 +759,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(stmt, rs);
+      releaseResources(stmt, rs);
     }
   } // method createCaInfo
 
@@ -513,7 +794,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(stmt, rs);
+      releaseResources(stmt, rs);
     }
   } // method createCaHasRequestors
 
@@ -535,7 +816,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(stmt, rs);
+      releaseResources(stmt, rs);
     }
   } // method createCaHasProfiles
 
@@ -557,7 +838,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(stmt, rs);
+      releaseResources(stmt, rs);
     }
   } // method createCaHasNames
 
@@ -576,7 +857,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method deleteRowWithName
 
@@ -584,7 +865,7 @@ class CaManagerQueryExecutor {
     Args.notNull(caEntry, "caEntry");
 
     try {
-      int id = (int) datasource.getMax(null, "CA", "ID");
+      int id = (int) datasource.getMax(confConnection.get(), "CA", "ID");
       caEntry.getIdent().setId(id + 1);
     } catch (DataAccessException ex) {
       throw new CaMgmtException(ex);
@@ -655,7 +936,7 @@ class CaManagerQueryExecutor {
     } catch (CertificateEncodingException ex) {
       throw new CaMgmtException(ex);
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method addCa
 
@@ -676,7 +957,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method addCaAlias
 
@@ -685,7 +966,7 @@ class CaManagerQueryExecutor {
     final String sql = "INSERT INTO PROFILE (ID,NAME,TYPE,CONF) VALUES (?,?,?,?)";
 
     try {
-      int id = (int) datasource.getMax(null, "PROFILE", "ID");
+      int id = (int) datasource.getMax(confConnection.get(), "PROFILE", "ID");
       dbEntry.getIdent().setId(id + 1);
     } catch (DataAccessException ex) {
       throw new CaMgmtException(ex);
@@ -708,7 +989,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method addCertprofile
 
@@ -730,7 +1011,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method addCertprofileToCa
 
@@ -738,7 +1019,7 @@ class CaManagerQueryExecutor {
     Args.notNull(dbEntry, "dbEntry");
 
     try {
-      int id = (int) datasource.getMax(null, "REQUESTOR", "ID");
+      int id = (int) datasource.getMax(confConnection.get(), "REQUESTOR", "ID");
       dbEntry.getIdent().setId(id + 1);
     } catch (DataAccessException ex) {
       throw new CaMgmtException(ex);
@@ -762,7 +1043,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method addRequestor
 
@@ -777,11 +1058,11 @@ class CaManagerQueryExecutor {
       if (rs.next()) {
         return;
       }
-      datasource.releaseResources(stmt, rs);
+      releaseResources(stmt, rs);
       stmt = null;
       rs = null;
 
-      int id = (int) datasource.getMax(null, "REQUESTOR", "ID");
+      int id = (int) datasource.getMax(confConnection.get(), "REQUESTOR", "ID");
 
       sql = "INSERT INTO REQUESTOR (ID,NAME,TYPE,CONF) VALUES (?,?,?,?)";
       stmt = prepareStatement(sql);
@@ -798,7 +1079,7 @@ class CaManagerQueryExecutor {
     } catch (DataAccessException ex) {
       throw new CaMgmtException(ex);
     } finally {
-      datasource.releaseResources(stmt, rs);
+      releaseResources(stmt, rs);
     }
   }
 
@@ -831,7 +1112,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method addRequestorToCa
 
@@ -840,7 +1121,7 @@ class CaManagerQueryExecutor {
     final String sql = "INSERT INTO PUBLISHER (ID,NAME,TYPE,CONF) VALUES (?,?,?,?)";
 
     try {
-      int id = (int) datasource.getMax(null, "PUBLISHER", "ID");
+      int id = (int) datasource.getMax(confConnection.get(), "PUBLISHER", "ID");
       dbEntry.getIdent().setId(id + 1);
     } catch (DataAccessException ex) {
       throw new CaMgmtException(ex);
@@ -864,7 +1145,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method addPublisher
 
@@ -883,7 +1164,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method addPublisherToCa
 
@@ -960,7 +1241,7 @@ class CaManagerQueryExecutor {
       } catch (SQLException ex) {
         throw new CaMgmtException(datasource.translate(sql, ex));
       } finally {
-        datasource.releaseResources(stmt, rs);
+        releaseResources(stmt, rs);
       }
     } // end if (signerType)
 
@@ -1075,7 +1356,7 @@ class CaManagerQueryExecutor {
       } catch (SQLException ex) {
         throw new CaMgmtException(datasource.translate(sql, ex));
       } finally {
-        datasource.releaseResources(ps, rs);
+        releaseResources(ps, rs);
       }
 
       if (nextCrlNoInDb < nextCrlNo) {
@@ -1090,7 +1371,7 @@ class CaManagerQueryExecutor {
         }
       }
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method commitNextCrlNoIfLess
 
@@ -1176,7 +1457,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   }
 
@@ -1305,7 +1586,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method removeCa
 
@@ -1323,7 +1604,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method removeCaAlias
 
@@ -1345,7 +1626,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method removeCertprofileFromCa
 
@@ -1368,7 +1649,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method removeRequestorFromCa
 
@@ -1391,7 +1672,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method removePublisherFromCa
 
@@ -1410,7 +1691,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method revokeCa
 
@@ -1434,7 +1715,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method addSigner
 
@@ -1450,7 +1731,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(stmt, null);
+      releaseResources(stmt, null);
     }
   } // method unlockCa
 
@@ -1470,7 +1751,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method unrevokeCa
 
@@ -1493,7 +1774,7 @@ class CaManagerQueryExecutor {
 
     long id;
     try {
-      long maxId = datasource.getMax(null, "TUSER", "ID");
+      long maxId = datasource.getMax(confConnection.get(), "TUSER", "ID");
       id = maxId + 1;
     } catch (DataAccessException ex) {
       throw new CaMgmtException(ex);
@@ -1516,7 +1797,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
 
     LOG.info("added user '{}'", name);
@@ -1561,7 +1842,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method removeRequestorFromCa
 
@@ -1582,7 +1863,7 @@ class CaManagerQueryExecutor {
 
     long maxId;
     try {
-      maxId = datasource.getMax(null, "CA_HAS_USER", "ID");
+      maxId = datasource.getMax(confConnection.get(), "CA_HAS_USER", "ID");
     } catch (DataAccessException ex) {
       throw new CaMgmtException(ex);
     }
@@ -1608,7 +1889,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, null);
+      releaseResources(ps, null);
     }
   } // method addUserToCa
 
@@ -1644,7 +1925,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, rs);
+      releaseResources(ps, rs);
     }
   }  // method getCaHasUsersForUser
 
@@ -1679,7 +1960,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, rs);
+      releaseResources(ps, rs);
     }
   } // method getCaHasUsersForCa
 
@@ -1713,7 +1994,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, rs);
+      releaseResources(ps, rs);
     }
   } // method getUser
 
@@ -1749,7 +2030,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, rs);
+      releaseResources(ps, rs);
     }
   }
 
@@ -1768,7 +2049,7 @@ class CaManagerQueryExecutor {
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
-      datasource.releaseResources(ps, rs);
+      releaseResources(ps, rs);
     }
 
     return ret;
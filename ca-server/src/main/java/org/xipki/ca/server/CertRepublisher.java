@@ -59,16 +59,16 @@ class CertRepublisher {
 
   }
 
-  private class SerialWithIdQueueEntry implements QueueEntry {
+  private class SerialWithIdsQueueEntry implements QueueEntry {
 
-    private final SerialWithId serialWithId;
+    private final List<SerialWithId> serialWithIds;
 
-    public SerialWithIdQueueEntry(SerialWithId serialWithId) {
-      this.serialWithId = Args.notNull(serialWithId, "serialWithId");
+    public SerialWithIdsQueueEntry(List<SerialWithId> serialWithIds) {
+      this.serialWithIds = Args.notEmpty(serialWithIds, "serialWithIds");
     }
 
-    public SerialWithId serialWithId() {
-      return serialWithId;
+    public List<SerialWithId> serialWithIds() {
+      return serialWithIds;
     }
 
   }
@@ -94,7 +94,11 @@ class CertRepublisher {
             if (sid.getId() > maxId) {
               maxId = sid.getId();
             }
-            queue.put(new SerialWithIdQueueEntry(sid));
+          }
+
+          if (!serials.isEmpty()) {
+            // the certificates are republished in batches
+            queue.put(new SerialWithIdsQueueEntry(serials));
           }
 
           startId = maxId + 1;
@@ -149,12 +153,16 @@ class CertRepublisher {
           break;
         }
 
-        SerialWithId sid = ((SerialWithIdQueueEntry) entry).serialWithId();
+        List<SerialWithId> sids = ((SerialWithIdsQueueEntry) entry).serialWithIds();
+        List<Long> certIds = new ArrayList<>(sids.size());
+        for (SerialWithId sid : sids) {
+          certIds.add(sid.getId());
+        }
 
-        CertificateInfo certInfo;
+        List<CertificateInfo> certInfos;
 
         try {
-          certInfo = certstore.getCertForId(ca, caCert, sid.getId(), caIdNameMap);
+          certInfos = certstore.getCertsForIds(ca, caCert, certIds, caIdNameMap);
         } catch (OperationException | CertificateException ex) {
           LogUtil.error(LOG, ex);
           failed = true;
@@ -163,14 +171,25 @@ class CertRepublisher {
 
         boolean allSucc = true;
         for (IdentifiedCertPublisher publisher : publishers) {
-          if (!certInfo.isRevoked() && !publisher.publishsGoodCert()) {
+          List<CertificateInfo> toPublish = certInfos;
+          if (!publisher.publishsGoodCert()) {
+            toPublish = new ArrayList<>(certInfos.size());
+            for (CertificateInfo certInfo : certInfos) {
+              if (certInfo.isRevoked()) {
+                toPublish.add(certInfo);
+              }
+            }
+          }
+
+          if (toPublish.isEmpty()) {
             continue;
           }
 
-          boolean successful = publisher.certificateAdded(certInfo);
-          if (!successful) {
+          List<CertificateInfo> failedCertInfos = publisher.certificatesAdded(toPublish);
+          for (CertificateInfo certInfo : failedCertInfos) {
             LOG.error("republish certificate serial={} to publisher {} failed",
-                LogUtil.formatCsn(sid.getSerial()), publisher.getIdent());
+                LogUtil.formatCsn(certInfo.getCert().getCert().getSerialNumber()),
+                publisher.getIdent());
             allSucc = false;
           }
         }
@@ -178,7 +197,7 @@ class CertRepublisher {
         if (!allSucc) {
           break;
         }
-        processLog.addNumProcessed(1);
+        processLog.addNumProcessed(sids.size());
       }
     }
 
@@ -0,0 +1,200 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.Closeable;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.mgmt.SignatureVerificationControl;
+import org.xipki.util.Args;
+import org.xipki.util.HealthCheckResult;
+
+/**
+ * Verifies the signature of the issued certificates as configured by the
+ * {@link SignatureVerificationControl} of the CA.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CertSignatureVerifier implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CertSignatureVerifier.class);
+
+  /**
+   * Maximal number of certificates waiting for the verification in background. Further
+   * certificates are not verified.
+   */
+  private static final int ASYNC_QUEUE_SIZE = 10000;
+
+  private final SignatureVerificationControl control;
+
+  private final PublicKey caPublicKey;
+
+  private final Consumer<X509Certificate> failureListener;
+
+  private final ThreadPoolExecutor asyncExecutor;
+
+  private final AtomicLong numIssued = new AtomicLong(0);
+
+  private final AtomicLong numVerified = new AtomicLong(0);
+
+  /**
+   * Number of certificates with invalid signature found before issuing them. These
+   * certificates are rejected.
+   */
+  private final AtomicLong numFailed = new AtomicLong(0);
+
+  /**
+   * Number of certificates with invalid signature found in background, after issuing them.
+   */
+  private final AtomicLong numAsyncFailed = new AtomicLong(0);
+
+  private final AtomicLong numSkipped = new AtomicLong(0);
+
+  /**
+   * Constructor.
+   * @param control
+   *          Control of the verification. Must not be {@code null}.
+   * @param caPublicKey
+   *          Public key of the CA. Must not be {@code null}.
+   * @param failureListener
+   *          Listener of the certificates whose signature is invalid in background. Must not
+   *          be {@code null}.
+   */
+  public CertSignatureVerifier(SignatureVerificationControl control, PublicKey caPublicKey,
+      Consumer<X509Certificate> failureListener) {
+    this.control = Args.notNull(control, "control");
+    this.caPublicKey = Args.notNull(caPublicKey, "caPublicKey");
+    this.failureListener = Args.notNull(failureListener, "failureListener");
+    this.asyncExecutor = (control.getMode() != SignatureVerificationControl.Mode.ASYNC) ? null
+        : new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(ASYNC_QUEUE_SIZE));
+  }
+
+  public SignatureVerificationControl getControl() {
+    return control;
+  }
+
+  /**
+   * Verifies the signature of an issued certificate if required by the control.
+   * @param cert
+   *          The issued certificate. Must not be {@code null}.
+   * @return {@code false} if the signature has been verified and is invalid, {@code true}
+   *     otherwise.
+   */
+  public boolean verify(final X509Certificate cert) {
+    Args.notNull(cert, "cert");
+    long num = numIssued.incrementAndGet();
+
+    switch (control.getMode()) {
+      case ALWAYS:
+        return verifySync(cert);
+      case SAMPLE:
+        // the first certificate is verified as well
+        return ((num - 1) % control.getN() != 0) || verifySync(cert);
+      case FIRST:
+        return (num > control.getN()) || verifySync(cert);
+      case ASYNC:
+        try {
+          asyncExecutor.execute(() -> {
+            if (!verify0(cert)) {
+              numAsyncFailed.incrementAndGet();
+              failureListener.accept(cert);
+            }
+          });
+        } catch (RejectedExecutionException ex) {
+          numSkipped.incrementAndGet();
+        }
+        return true;
+      default:
+        throw new IllegalStateException("unknown mode " + control.getMode());
+    }
+  } // method verify
+
+  private boolean verifySync(X509Certificate cert) {
+    if (verify0(cert)) {
+      return true;
+    }
+
+    numFailed.incrementAndGet();
+    return false;
+  }
+
+  private boolean verify0(X509Certificate cert) {
+    try {
+      cert.verify(caPublicKey);
+      numVerified.incrementAndGet();
+      return true;
+    } catch (SignatureException | InvalidKeyException | CertificateException
+        | NoSuchAlgorithmException | NoSuchProviderException ex) {
+      LOG.debug("{} while verifying signature: {}", ex.getClass().getName(), ex.getMessage());
+      return false;
+    }
+  } // method verify0
+
+  /**
+   * Returns the health of the issued certificates. It is unhealthy if a certificate with
+   * invalid signature has been issued since the start of the CA, i.e. found in background.
+   * The certificates rejected because of invalid signature are only counted in the status
+   * {@code failed}, the CA did not issue them.
+   * @return the health check result.
+   */
+  public HealthCheckResult healthCheck() {
+    HealthCheckResult result = new HealthCheckResult();
+    result.setName("CertSignatureVerification");
+    result.setHealthy(numAsyncFailed.get() == 0);
+
+    Map<String, Object> statuses = new HashMap<>();
+    statuses.put("control", control.toString());
+    statuses.put("issued", numIssued.get());
+    statuses.put("verified", numVerified.get());
+    statuses.put("failed", numFailed.get());
+    if (asyncExecutor != null) {
+      statuses.put("asyncFailed", numAsyncFailed.get());
+      statuses.put("pending", asyncExecutor.getQueue().size());
+      statuses.put("skipped", numSkipped.get());
+    }
+    result.setStatuses(statuses);
+    return result;
+  } // method healthCheck
+
+  @Override
+  public void close() {
+    if (asyncExecutor != null) {
+      asyncExecutor.shutdown();
+    }
+  }
+
+}
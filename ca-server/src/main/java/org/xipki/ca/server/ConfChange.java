@@ -0,0 +1,111 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xipki.util.Args;
+
+/**
+ * Change of the CA configuration, as recorded in the table CONF_CHANGE by the master CA
+ * system. The slave CA systems reload only the changed entries.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class ConfChange {
+
+  /**
+   * Type of the changed entry. The order is also the order in which the changes are applied.
+   */
+  enum Type {
+    SIGNER,
+    REQUESTOR,
+    PROFILE,
+    PUBLISHER,
+    CA,
+    // the associations of the CA with the profiles, publishers and requestors
+    CA_HAS,
+    CAALIAS,
+    // the user, only the cached authentications of the user are invalidated.
+    USER,
+    // the change cannot be applied incrementally, the CA system must be restarted.
+    ALL
+  }
+
+  private final long id;
+
+  private final Type type;
+
+  private final String name;
+
+  ConfChange(long id, Type type, String name) {
+    this.id = id;
+    this.type = Args.notNull(type, "type");
+    this.name = name;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Groups the names of the changed entries by type.
+   * @param lastId
+   *          ID of the last applied change.
+   * @param changes
+   *          Changes after the last applied change, ordered by ID. Must not be {@code null}.
+   * @return the names of the changed entries by type, iterated in the order in which the
+   *     changes must be applied, or {@code null} if the changes cannot be applied
+   *     incrementally: the IDs have a gap because changes have been deleted, or a change of
+   *     type {@link Type#ALL} is present.
+   */
+  static Map<Type, Set<String>> groupByType(long lastId, List<ConfChange> changes) {
+    Args.notNull(changes, "changes");
+    Map<Type, Set<String>> changedNames = new EnumMap<>(Type.class);
+    long expectedId = lastId + 1;
+    for (ConfChange change : changes) {
+      if (change.getId() != expectedId || change.getType() == Type.ALL) {
+        return null;
+      }
+
+      expectedId++;
+      changedNames.computeIfAbsent(change.getType(), k -> new HashSet<>()).add(change.getName());
+    }
+    return changedNames;
+  }
+
+  @Override
+  public String toString() {
+    return id + ": " + type + (name == null ? "" : " " + name);
+  }
+
+}
@@ -0,0 +1,255 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.OperationException;
+import org.xipki.ca.server.store.CertStore;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Cache of the DER-encoded current CRL of a CA, held in memory or in a memory-mapped file.
+ * A cached CRL is immutable and is replaced atomically by the next one.
+ *
+ * <p>In master mode the cache is updated by the generation of the CRLs. In slave mode it is
+ * checked against the database at most every 10 seconds.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class CrlCache implements Closeable {
+
+  static class CachedCrl {
+
+    private final long id;
+
+    private final long thisUpdate;
+
+    private final String etag;
+
+    private final ByteBuffer content;
+
+    private final File file;
+
+    CachedCrl(long id, long thisUpdate, ByteBuffer content, File file) {
+      this.id = id;
+      this.thisUpdate = thisUpdate;
+      this.etag = "\"" + Long.toHexString(id) + "-" + Long.toHexString(thisUpdate / 1000) + "\"";
+      this.content = content;
+      this.file = file;
+    }
+
+    /**
+     * Returns the thisUpdate of the CRL.
+     * @return the thisUpdate in milliseconds since January 1, 1970, 00:00:00 GMT.
+     */
+    long getThisUpdate() {
+      return thisUpdate;
+    }
+
+    String getEtag() {
+      return etag;
+    }
+
+    int getSize() {
+      return content.capacity();
+    }
+
+    /**
+     * Returns the DER-encoded CRL. The content must not be modified.
+     * @return a new buffer sharing the content of the CRL.
+     */
+    ByteBuffer getContent() {
+      return content.duplicate();
+    }
+
+  } // class CachedCrl
+
+  private static final Logger LOG = LoggerFactory.getLogger(CrlCache.class);
+
+  private static final long CHECK_INTERVAL_MS = 10 * 1000L;
+
+  private final NameId caIdent;
+
+  private final CertStore certstore;
+
+  private final File dir;
+
+  private final boolean masterMode;
+
+  private volatile CachedCrl crl;
+
+  private volatile long lastCheck;
+
+  /**
+   * Constructor.
+   * @param dir
+   *          Directory of the memory-mapped CRL files. {@code null} to keep the CRLs in the
+   *          heap.
+   * @param masterMode
+   *          Whether the CRLs are generated by this CA system.
+   */
+  CrlCache(NameId caIdent, CertStore certstore, File dir, boolean masterMode) {
+    this.caIdent = Args.notNull(caIdent, "caIdent");
+    this.certstore = Args.notNull(certstore, "certstore");
+    this.dir = dir;
+    this.masterMode = masterMode;
+
+    if (dir != null) {
+      // remove the files left by the previous run
+      File[] files = dir.listFiles(
+          (d, name) -> name.startsWith(caIdent.getName() + "-") && name.endsWith(".crl"));
+      if (files != null) {
+        for (File file : files) {
+          deleteFile(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the current CRL.
+   * @return the current CRL, {@code null} if the CA has no CRL.
+   * @throws OperationException
+   *           if the CRL could not be read from the database.
+   */
+  CachedCrl getCrl() throws OperationException {
+    CachedCrl crl0 = crl;
+    if (crl0 != null && isUpToDate()) {
+      return crl0;
+    }
+
+    return refresh();
+  }
+
+  private boolean isUpToDate() {
+    return masterMode || System.currentTimeMillis() - lastCheck < CHECK_INTERVAL_MS;
+  }
+
+  private synchronized CachedCrl refresh() throws OperationException {
+    CachedCrl crl0 = crl;
+    if (crl0 != null && isUpToDate()) {
+      // refreshed by another thread
+      return crl0;
+    }
+
+    long now = System.currentTimeMillis();
+    long[] idAndThisUpdate = certstore.getCurrentCrlId(caIdent);
+    if (idAndThisUpdate == null) {
+      return null;
+    }
+
+    if (crl0 == null || crl0.id != idAndThisUpdate[0]) {
+      byte[] encodedCrl = certstore.getEncodedCrlForId(idAndThisUpdate[0]);
+      if (encodedCrl != null) {
+        crl0 = update(idAndThisUpdate[0], idAndThisUpdate[1] * 1000, encodedCrl);
+      }
+    }
+
+    lastCheck = now;
+    return crl0;
+  } // method refresh
+
+  /**
+   * Replaces the cached CRL.
+   * @param id
+   *          ID of the CRL in the database.
+   * @param thisUpdate
+   *          thisUpdate of the CRL in milliseconds since January 1, 1970, 00:00:00 GMT.
+   * @param encodedCrl
+   *          DER-encoded CRL. Must not be {@code null}.
+   * @return the cached CRL.
+   */
+  synchronized CachedCrl update(long id, long thisUpdate, byte[] encodedCrl) {
+    Args.notNull(encodedCrl, "encodedCrl");
+    CachedCrl oldCrl = crl;
+    if (oldCrl != null && oldCrl.id >= id) {
+      return oldCrl;
+    }
+
+    ByteBuffer content = null;
+    File file = null;
+    if (dir != null) {
+      file = new File(dir, caIdent.getName() + "-" + id + ".crl");
+      try {
+        content = mapFile(file, encodedCrl);
+      } catch (IOException ex) {
+        LogUtil.warn(LOG, ex, "could not map CRL to file " + file.getPath()
+            + ", keep it in memory");
+        deleteFile(file);
+        file = null;
+      }
+    }
+
+    if (content == null) {
+      content = ByteBuffer.wrap(encodedCrl);
+    }
+
+    CachedCrl newCrl = new CachedCrl(id, thisUpdate, content, file);
+    this.crl = newCrl;
+    LOG.info("cached CRL of CA {}: id={}, size={}", caIdent.getName(), id, encodedCrl.length);
+
+    // the mapping of the old file remains valid till it is garbage collected.
+    if (oldCrl != null && oldCrl.file != null) {
+      deleteFile(oldCrl.file);
+    }
+    return newCrl;
+  } // method update
+
+  private static ByteBuffer mapFile(File file, byte[] encodedCrl) throws IOException {
+    Path path = file.toPath();
+    Path tmpPath = new File(file.getPath() + ".tmp").toPath();
+    Files.write(tmpPath, encodedCrl);
+    Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  private static void deleteFile(File file) {
+    if (file.exists() && !file.delete()) {
+      LOG.debug("could not delete file {}", file.getPath());
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    CachedCrl crl0 = crl;
+    crl = null;
+    if (crl0 != null && crl0.file != null) {
+      deleteFile(crl0.file);
+    }
+  }
+
+}
@@ -0,0 +1,128 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.CrlReason;
+import org.xipki.util.Args;
+
+/**
+ * In-memory entries of the next delta CRL of a CA, ordered by the serial number. Only the
+ * latest change of a certificate is kept.
+ *
+ * <p>The table DELTACRL_CACHE is still written for durability, and is read only to initialize
+ * this cache.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class DeltaCrlCache {
+
+  private final ConcurrentSkipListMap<BigInteger, CertRevInfoWithSerial> entries =
+      new ConcurrentSkipListMap<>();
+
+  /**
+   * Sequence number of the last change. The sequence number is incremented and the entry
+   * is put atomically, so that an entry with a sequence number not greater than the one
+   * returned by {@link #getSequence()} is visible to the caller.
+   */
+  private long sequence;
+
+  /**
+   * Adds the entry read from the table DELTACRL_CACHE.
+   * @param entry
+   *          Entry to be added. Must not be {@code null}.
+   */
+  void add(CertRevInfoWithSerial entry) {
+    Args.notNull(entry, "entry");
+    put(entry.getSerial(), entry.getReason(), entry.getRevocationTime(),
+        entry.getInvalidityTime());
+  }
+
+  void certificateRevoked(BigInteger serialNumber, CertRevocationInfo revInfo) {
+    Args.notNull(revInfo, "revInfo");
+    put(serialNumber, revInfo.getReason(), revInfo.getRevocationTime(),
+        revInfo.getInvalidityTime());
+  }
+
+  void certificateUnrevoked(BigInteger serialNumber, Date time) {
+    put(serialNumber, CrlReason.REMOVE_FROM_CRL, time, null);
+  }
+
+  /**
+   * The removed certificate will not appear in the next delta CRL, as in the case of the
+   * DELTACRL_CACHE entries whose certificate does not exist.
+   * @param serialNumber
+   *          Serial number of the removed certificate. Must not be {@code null}.
+   */
+  void certificateRemoved(BigInteger serialNumber) {
+    entries.remove(Args.notNull(serialNumber, "serialNumber"));
+  }
+
+  /**
+   * Returns the current sequence number. The entries changed until now have a sequence number
+   * not greater than it.
+   * @return the current sequence number.
+   */
+  synchronized long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Returns the entries ordered by the serial number. The ID of the entry is its sequence
+   * number.
+   * @return the entries.
+   */
+  List<CertRevInfoWithSerial> getEntries() {
+    return new ArrayList<>(entries.values());
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * Removes the entries which have not been changed after the given sequence number.
+   * @param maxSequence
+   *          The maximal sequence number of the entries to be removed.
+   */
+  void clear(long maxSequence) {
+    for (Map.Entry<BigInteger, CertRevInfoWithSerial> entry : entries.entrySet()) {
+      if (entry.getValue().getId() <= maxSequence) {
+        // only removed if it has not been replaced meanwhile.
+        entries.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  private synchronized void put(BigInteger serialNumber, CrlReason reason, Date revocationTime,
+      Date invalidityTime) {
+    Args.notNull(serialNumber, "serialNumber");
+    entries.put(serialNumber, new CertRevInfoWithSerial(++sequence, serialNumber,
+        reason, revocationTime, invalidityTime));
+  }
+
+}
@@ -0,0 +1,128 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.xipki.util.Args;
+
+/**
+ * Lock-free bloom filter of the fingerprints (as computed by {@code FpIdCalculator}) of the
+ * issued certificates. If {@link #mightContain(long)} returns {@code false}, no certificate
+ * with the given fingerprint has been added. Until the filter is marked as loaded, it might
+ * contain every fingerprint.
+ *
+ * <p>The entries cannot be removed, a fingerprint of a removed certificate results only
+ * in a false positive.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class FpBloomFilter {
+
+  private static final int BITS_PER_ENTRY = 10;
+
+  // optimal for 10 bits per entry, the false positive rate is about 0.8%.
+  private static final int NUM_HASHES = 7;
+
+  private final AtomicLongArray words;
+
+  private final long numBits;
+
+  private volatile boolean loaded;
+
+  /**
+   * Constructor.
+   * @param capacity
+   *          Expected number of fingerprints. Must be positive.
+   */
+  FpBloomFilter(long capacity) {
+    Args.positive(capacity, "capacity");
+    long numWords = (capacity * BITS_PER_ENTRY + 63) / 64;
+    // at most 2^32 bits, see index(long)
+    if (numWords > (1L << 26)) {
+      throw new IllegalArgumentException("capacity too large: " + capacity);
+    }
+    this.words = new AtomicLongArray((int) numWords);
+    this.numBits = numWords * 64;
+  }
+
+  void add(long fp) {
+    long h1 = fp;
+    long h2 = mix(fp);
+    for (int i = 0; i < NUM_HASHES; i++) {
+      long index = index(h1 + i * h2);
+      int wordIndex = (int) (index >>> 6);
+      long mask = 1L << index;
+
+      long word = words.get(wordIndex);
+      while ((word & mask) == 0) {
+        if (words.compareAndSet(wordIndex, word, word | mask)) {
+          break;
+        }
+        word = words.get(wordIndex);
+      }
+    }
+  }
+
+  boolean mightContain(long fp) {
+    if (!loaded) {
+      return true;
+    }
+
+    long h1 = fp;
+    long h2 = mix(fp);
+    for (int i = 0; i < NUM_HASHES; i++) {
+      long index = index(h1 + i * h2);
+      if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  boolean isLoaded() {
+    return loaded;
+  }
+
+  void setLoaded() {
+    this.loaded = true;
+  }
+
+  long getNumBits() {
+    return numBits;
+  }
+
+  private long index(long hash) {
+    // maps the upper 32 bits of the hash to [0, numBits)
+    return ((hash >>> 32) * numBits) >>> 32;
+  }
+
+  private static long mix(long value) {
+    // finalizer of MurmurHash3, the second hash must be odd
+    long h = value;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h | 1;
+  }
+
+}
@@ -0,0 +1,504 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.interfaces.DSAPrivateKey;
+import java.security.interfaces.DSAPublicKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.RSAKeyGenParameterSpec;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.asn1.pkcs.RSAPrivateKey;
+import org.bouncycastle.asn1.pkcs.RSAPublicKey;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.crypto.RuntimeCryptoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.profile.KeypairGenControl;
+import org.xipki.security.util.KeyUtil;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Pool of keypairs generated in advance for the enrollments in which the CA generates the
+ * keypair. There is one pool for each keysize and public exponent (RSA) or curve (EC). A
+ * pool is filled when a CA using it is started or at the first request, and refilled by
+ * background threads up to the high watermark once its depth drops below the low watermark.
+ * DSA keypairs are always generated on demand.
+ *
+ * <p>The private keys may be kept encrypted in memory with an AES key generated at startup.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class KeypairPool implements Closeable {
+
+  static class GeneratedKeypair {
+
+    private final SubjectPublicKeyInfo publicKeyInfo;
+
+    private final PrivateKeyInfo privateKeyInfo;
+
+    GeneratedKeypair(SubjectPublicKeyInfo publicKeyInfo, PrivateKeyInfo privateKeyInfo) {
+      this.publicKeyInfo = publicKeyInfo;
+      this.privateKeyInfo = privateKeyInfo;
+    }
+
+    SubjectPublicKeyInfo getPublicKeyInfo() {
+      return publicKeyInfo;
+    }
+
+    PrivateKeyInfo getPrivateKeyInfo() {
+      return privateKeyInfo;
+    }
+
+  } // class GeneratedKeypair
+
+  private static class PooledKeypair {
+
+    private final SubjectPublicKeyInfo publicKeyInfo;
+
+    /**
+     * DER-encoded PrivateKeyInfo, encrypted if {@link #iv} is not {@code null}.
+     */
+    private final byte[] privateKeyInfo;
+
+    private final byte[] iv;
+
+    PooledKeypair(SubjectPublicKeyInfo publicKeyInfo, byte[] privateKeyInfo, byte[] iv) {
+      this.publicKeyInfo = publicKeyInfo;
+      this.privateKeyInfo = privateKeyInfo;
+      this.iv = iv;
+    }
+
+  } // class PooledKeypair
+
+  private class Pool {
+
+    private final String name;
+
+    private final KeypairGenControl control;
+
+    private final ConcurrentLinkedQueue<PooledKeypair> keypairs = new ConcurrentLinkedQueue<>();
+
+    // size() of ConcurrentLinkedQueue is not a constant-time operation.
+    private final AtomicInteger depth = new AtomicInteger(0);
+
+    // depth plus the number of keypairs being generated.
+    private final AtomicInteger reserved = new AtomicInteger(0);
+
+    private final AtomicInteger fillers = new AtomicInteger(0);
+
+    private final AtomicLong hits = new AtomicLong(0);
+
+    private final AtomicLong misses = new AtomicLong(0);
+
+    Pool(String name, KeypairGenControl control) {
+      this.name = name;
+      this.control = control;
+    }
+
+    PooledKeypair poll() {
+      PooledKeypair keypair = keypairs.poll();
+      if (keypair == null) {
+        misses.incrementAndGet();
+      } else {
+        hits.incrementAndGet();
+        depth.decrementAndGet();
+        reserved.decrementAndGet();
+      }
+
+      if (depth.get() < lowWatermark) {
+        fill();
+      }
+      return keypair;
+    }
+
+    private void fill() {
+      while (true) {
+        int num = fillers.get();
+        if (num >= threads || executor.isShutdown()) {
+          return;
+        }
+
+        if (fillers.compareAndSet(num, num + 1)) {
+          try {
+            executor.execute(this::fill0);
+          } catch (RejectedExecutionException ex) {
+            // the pool is being closed
+            fillers.decrementAndGet();
+            return;
+          }
+        }
+      }
+    }
+
+    private void fill0() {
+      try {
+        KeyPairGenerator kpGen = newKeyPairGenerator(control);
+        while (!executor.isShutdown()) {
+          // reserve the slot before generating, so that the fillers do not overshoot
+          int num = reserved.get();
+          if (num >= highWatermark) {
+            break;
+          } else if (!reserved.compareAndSet(num, num + 1)) {
+            continue;
+          }
+
+          boolean added = false;
+          try {
+            keypairs.add(toPooledKeypair(toGeneratedKeypair(control, kpGen.generateKeyPair())));
+            depth.incrementAndGet();
+            added = true;
+          } finally {
+            if (!added) {
+              reserved.decrementAndGet();
+            }
+          }
+        }
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "could not fill keypair pool " + name);
+      } finally {
+        if (fillers.decrementAndGet() == 0) {
+          LOG.info("filled keypair pool {}: depth {}, hits {}, misses {}",
+              name, depth.get(), hits.get(), misses.get());
+        }
+      }
+    }
+
+  } // class Pool
+
+  private static final Logger LOG = LoggerFactory.getLogger(KeypairPool.class);
+
+  private static final int GCM_TAG_BITS = 128;
+
+  private final int lowWatermark;
+
+  private final int highWatermark;
+
+  private final int threads;
+
+  private final SecretKey encryptionKey;
+
+  private final SecureRandom random = new SecureRandom();
+
+  private final ExecutorService executor;
+
+  private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   * @param lowWatermark
+   *          A pool is refilled once its depth drops below this value.
+   * @param highWatermark
+   *          A pool is refilled up to this depth.
+   * @param threads
+   *          Number of threads to fill the pools.
+   * @param encrypt
+   *          Whether the private keys are encrypted in memory.
+   * @throws GeneralSecurityException
+   *           If the encryption key could not be generated.
+   */
+  KeypairPool(int lowWatermark, int highWatermark, int threads, boolean encrypt)
+      throws GeneralSecurityException {
+    this.lowWatermark = Args.notNegative(lowWatermark, "lowWatermark");
+    this.highWatermark = Args.min(highWatermark, "highWatermark", Math.max(1, lowWatermark));
+    this.threads = Args.positive(threads, "threads");
+
+    if (encrypt) {
+      KeyGenerator keyGen = KeyGenerator.getInstance("AES");
+      keyGen.init(256, random);
+      this.encryptionKey = keyGen.generateKey();
+    } else {
+      this.encryptionKey = null;
+    }
+
+    this.executor = Executors.newFixedThreadPool(threads);
+  }
+
+  /**
+   * Fills the pool for the given control in background, if the keypairs of the control are
+   * pooled.
+   * @param control
+   *          Control of the keypair generation. Must not be {@code null}.
+   */
+  void warmUp(KeypairGenControl control) {
+    String name = getPoolName(Args.notNull(control, "control"));
+    if (name != null) {
+      Pool pool = pools.computeIfAbsent(name, k -> new Pool(k, control));
+      if (pool.reserved.get() < highWatermark) {
+        LOG.info("warming up keypair pool {}", name);
+        pool.fill();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of keypairs in the pool for the given control.
+   * @param control
+   *          Control of the keypair generation. Must not be {@code null}.
+   * @return the number of keypairs in the pool, 0 if there is no pool for the control.
+   */
+  int getDepth(KeypairGenControl control) {
+    String name = getPoolName(Args.notNull(control, "control"));
+    Pool pool = (name == null) ? null : pools.get(name);
+    return (pool == null) ? 0 : pool.depth.get();
+  }
+
+  /**
+   * Returns a keypair from the pool for the given control, or generates it if the pool is
+   * empty.
+   * @param control
+   *          Control of the keypair generation. Must not be {@code null}.
+   * @return the keypair.
+   * @throws GeneralSecurityException
+   *           If the keypair could not be generated or decrypted.
+   * @throws IOException
+   *           If the keypair could not be encoded.
+   */
+  GeneratedKeypair getKeypair(KeypairGenControl control)
+      throws GeneralSecurityException, IOException {
+    String name = getPoolName(Args.notNull(control, "control"));
+    if (name == null) {
+      return generateKeypair(control, random);
+    }
+
+    Pool pool = pools.computeIfAbsent(name, k -> new Pool(k, control));
+    PooledKeypair keypair = pool.poll();
+    if (keypair == null) {
+      return generateKeypair(control, random);
+    }
+
+    byte[] encodedPrivateKeyInfo = keypair.privateKeyInfo;
+    if (keypair.iv != null) {
+      Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+      cipher.init(Cipher.DECRYPT_MODE, encryptionKey,
+          new GCMParameterSpec(GCM_TAG_BITS, keypair.iv));
+      encodedPrivateKeyInfo = cipher.doFinal(encodedPrivateKeyInfo);
+    }
+
+    // the pooled keypairs are shared by the controls with different key algorithms.
+    AlgorithmIdentifier keyAlgorithm = getKeyAlgorithm(control);
+    return new GeneratedKeypair(
+        new SubjectPublicKeyInfo(keyAlgorithm, keypair.publicKeyInfo.getPublicKeyData().getBytes()),
+        new PrivateKeyInfo(keyAlgorithm,
+            PrivateKeyInfo.getInstance(encodedPrivateKeyInfo).parsePrivateKey()));
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      LOG.error("interrupted: {}", ex.getMessage());
+    }
+    pools.clear();
+  }
+
+  static GeneratedKeypair generateKeypair(KeypairGenControl control, SecureRandom random)
+      throws GeneralSecurityException, IOException {
+    KeyPair kp;
+    if (control instanceof KeypairGenControl.RSAKeypairGenControl) {
+      KeypairGenControl.RSAKeypairGenControl tkg =
+          (KeypairGenControl.RSAKeypairGenControl) control;
+      kp = KeyUtil.generateRSAKeypair(tkg.getKeysize(), tkg.getPublicExponent(), random);
+    } else if (control instanceof KeypairGenControl.ECKeypairGenControl) {
+      kp = KeyUtil.generateECKeypair(
+          ((KeypairGenControl.ECKeypairGenControl) control).getCurveOid(), random);
+    } else if (control instanceof KeypairGenControl.DSAKeypairGenControl) {
+      kp = KeyUtil.generateDSAKeypair(
+          ((KeypairGenControl.DSAKeypairGenControl) control).getParameterSpec(), random);
+    } else {
+      throw new RuntimeCryptoException("unknown KeyPairGenControl " + control);
+    }
+
+    return toGeneratedKeypair(control, kp);
+  }
+
+  private static GeneratedKeypair toGeneratedKeypair(KeypairGenControl control, KeyPair kp)
+      throws IOException {
+    if (control instanceof KeypairGenControl.RSAKeypairGenControl) {
+      KeypairGenControl.RSAKeypairGenControl tkg =
+          (KeypairGenControl.RSAKeypairGenControl) control;
+      java.security.interfaces.RSAPublicKey rsaPubKey =
+          (java.security.interfaces.RSAPublicKey) kp.getPublic();
+
+      SubjectPublicKeyInfo publicKeyInfo = new SubjectPublicKeyInfo(tkg.getKeyAlgorithm(),
+          new RSAPublicKey(rsaPubKey.getModulus(), rsaPubKey.getPublicExponent()));
+
+      /*
+       * RSA private keys are BER-encoded according to PKCS #1’s RSAPrivateKey ASN.1 type.
+       *
+       * RSAPrivateKey ::= SEQUENCE {
+       *   version           Version,
+       *   modulus           INTEGER,  -- n
+       *   publicExponent    INTEGER,  -- e
+       *   privateExponent   INTEGER,  -- d
+       *   prime1            INTEGER,  -- p
+       *   prime2            INTEGER,  -- q
+       *   exponent1         INTEGER,  -- d mod (p-1)
+       *   exponent2         INTEGER,  -- d mod (q-1)
+       *   coefficient       INTEGER,  -- (inverse of q) mod p
+       *   otherPrimeInfos   OtherPrimeInfos OPTIONAL.
+       * }
+       */
+      RSAPrivateCrtKey priv = (RSAPrivateCrtKey) kp.getPrivate();
+      PrivateKeyInfo privateKeyInfo = new PrivateKeyInfo(tkg.getKeyAlgorithm(),
+          new RSAPrivateKey(priv.getModulus(),
+              priv.getPublicExponent(), priv.getPrivateExponent(),
+              priv.getPrimeP(), priv.getPrimeQ(),
+              priv.getPrimeExponentP(), priv.getPrimeExponentQ(),
+              priv.getCrtCoefficient()));
+      return new GeneratedKeypair(publicKeyInfo, privateKeyInfo);
+    } else if (control instanceof KeypairGenControl.ECKeypairGenControl) {
+      KeypairGenControl.ECKeypairGenControl tkg = (KeypairGenControl.ECKeypairGenControl) control;
+      ECPublicKey pub = (ECPublicKey) kp.getPublic();
+      int orderBitLength = pub.getParams().getOrder().bitLength();
+
+      byte[] keyData = KeyUtil.getUncompressedEncodedECPoint(pub.getW(), orderBitLength);
+      SubjectPublicKeyInfo publicKeyInfo = new SubjectPublicKeyInfo(tkg.getKeyAlgorithm(),
+          keyData);
+
+      /*
+       * ECPrivateKey ::= SEQUENCE {
+       *   Version INTEGER { ecPrivkeyVer1(1) }
+       *                   (ecPrivkeyVer1),
+       *   privateKey      OCTET STRING,
+       *   parameters [0]  Parameters OPTIONAL,
+       *   publicKey  [1]  BIT STRING OPTIONAL
+       * }
+       *
+       * Since the EC domain parameters are placed in the PKCS #8’s privateKeyAlgorithm field,
+       * the optional parameters field in an ECPrivateKey must be omitted. A Cryptoki
+       * application must be able to unwrap an ECPrivateKey that contains the optional publicKey
+       * field; however, what is done with this publicKey field is outside the scope of
+       * Cryptoki.
+       */
+      ECPrivateKey priv = (ECPrivateKey) kp.getPrivate();
+      PrivateKeyInfo privateKeyInfo = new PrivateKeyInfo(tkg.getKeyAlgorithm(),
+          new org.bouncycastle.asn1.sec.ECPrivateKey(orderBitLength, priv.getS()));
+      return new GeneratedKeypair(publicKeyInfo, privateKeyInfo);
+    } else if (control instanceof KeypairGenControl.DSAKeypairGenControl) {
+      KeypairGenControl.DSAKeypairGenControl tkg =
+          (KeypairGenControl.DSAKeypairGenControl) control;
+      SubjectPublicKeyInfo publicKeyInfo = new SubjectPublicKeyInfo(tkg.getKeyAlgorithm(),
+          new ASN1Integer(((DSAPublicKey) kp.getPublic()).getY()));
+
+      // DSA private keys are represented as BER-encoded ASN.1 type INTEGER.
+      DSAPrivateKey priv = (DSAPrivateKey) kp.getPrivate();
+      PrivateKeyInfo privateKeyInfo = new PrivateKeyInfo(publicKeyInfo.getAlgorithm(),
+          new ASN1Integer(priv.getX()));
+      return new GeneratedKeypair(publicKeyInfo, privateKeyInfo);
+    } else {
+      throw new RuntimeCryptoException("unknown KeyPairGenControl " + control);
+    }
+  }
+
+  private PooledKeypair toPooledKeypair(GeneratedKeypair keypair)
+      throws GeneralSecurityException, IOException {
+    byte[] encodedPrivateKeyInfo = keypair.privateKeyInfo.getEncoded();
+    if (encryptionKey == null) {
+      return new PooledKeypair(keypair.publicKeyInfo, encodedPrivateKeyInfo, null);
+    }
+
+    byte[] iv = new byte[12];
+    random.nextBytes(iv);
+    Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+    return new PooledKeypair(keypair.publicKeyInfo, cipher.doFinal(encodedPrivateKeyInfo), iv);
+  }
+
+  /**
+   * Returns a new generator for the pool, so that the pools are filled in parallel and not
+   * serialized by the shared generators of {@link KeyUtil}.
+   */
+  private KeyPairGenerator newKeyPairGenerator(KeypairGenControl control)
+      throws GeneralSecurityException {
+    if (control instanceof KeypairGenControl.RSAKeypairGenControl) {
+      KeypairGenControl.RSAKeypairGenControl tkg =
+          (KeypairGenControl.RSAKeypairGenControl) control;
+      BigInteger publicExponent = tkg.getPublicExponent();
+      if (publicExponent == null) {
+        publicExponent = RSAKeyGenParameterSpec.F4;
+      }
+
+      KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA", "BC");
+      kpGen.initialize(new RSAKeyGenParameterSpec(tkg.getKeysize(), publicExponent), random);
+      return kpGen;
+    } else {
+      ECGenParameterSpec spec = new ECGenParameterSpec(
+          ((KeypairGenControl.ECKeypairGenControl) control).getCurveOid().getId());
+      KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC", "BC");
+      kpGen.initialize(spec, random);
+      return kpGen;
+    }
+  }
+
+  /**
+   * Returns the name of the pool for the given control, {@code null} if the keypair is not
+   * pooled.
+   */
+  private static String getPoolName(KeypairGenControl control) {
+    if (control instanceof KeypairGenControl.RSAKeypairGenControl) {
+      KeypairGenControl.RSAKeypairGenControl tkg =
+          (KeypairGenControl.RSAKeypairGenControl) control;
+      return "RSA/" + tkg.getKeysize() + "/" + tkg.getPublicExponent();
+    } else if (control instanceof KeypairGenControl.ECKeypairGenControl) {
+      return "EC/" + ((KeypairGenControl.ECKeypairGenControl) control).getCurveOid().getId();
+    } else {
+      return null;
+    }
+  }
+
+  private static AlgorithmIdentifier getKeyAlgorithm(KeypairGenControl control) {
+    if (control instanceof KeypairGenControl.RSAKeypairGenControl) {
+      return ((KeypairGenControl.RSAKeypairGenControl) control).getKeyAlgorithm();
+    } else {
+      return ((KeypairGenControl.ECKeypairGenControl) control).getKeyAlgorithm();
+    }
+  }
+
+}
@@ -0,0 +1,379 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.OperationException;
+import org.xipki.ca.server.store.CertStore;
+import org.xipki.security.X509Cert;
+import org.xipki.util.Args;
+import org.xipki.util.CollectionUtil;
+import org.xipki.util.LogUtil;
+
+/**
+ * Publishes the certificates in the table PUBLISHQUEUE of a CA. The queue of a publisher is
+ * drained as soon as an entry is added to it, by at most one task at a time. The drains of
+ * all publishers share one executor, which bounds the parallelism. A failed drain is retried
+ * with an exponential backoff.
+ *
+ * <p>The certificates are read, published and removed from the queue in chunks.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class PublishQueueProcessor {
+
+  /**
+   * Access to the PUBLISHQUEUE of a CA and to its certificates.
+   */
+  interface QueueStore {
+
+    List<Long> getEntries(NameId publisher, int numEntries) throws OperationException;
+
+    List<CertificateInfo> getCerts(List<Long> certIds)
+        throws OperationException, CertificateException;
+
+    void removeEntries(NameId publisher, List<Long> certIds) throws OperationException;
+
+    long getSize(NameId publisher) throws OperationException;
+
+  } // interface QueueStore
+
+  private static class CertStoreQueueStore implements QueueStore {
+
+    private final NameId caIdent;
+
+    private final X509Cert caCert;
+
+    private final CertStore certstore;
+
+    private final CaIdNameMap caIdNameMap;
+
+    CertStoreQueueStore(NameId caIdent, X509Cert caCert, CertStore certstore,
+        CaIdNameMap caIdNameMap) {
+      this.caIdent = Args.notNull(caIdent, "caIdent");
+      this.caCert = Args.notNull(caCert, "caCert");
+      this.certstore = Args.notNull(certstore, "certstore");
+      this.caIdNameMap = Args.notNull(caIdNameMap, "caIdNameMap");
+    }
+
+    @Override
+    public List<Long> getEntries(NameId publisher, int numEntries) throws OperationException {
+      return certstore.getPublishQueueEntries(caIdent, publisher, numEntries);
+    }
+
+    @Override
+    public List<CertificateInfo> getCerts(List<Long> certIds)
+        throws OperationException, CertificateException {
+      return certstore.getCertsForIds(caIdent, caCert, certIds, caIdNameMap);
+    }
+
+    @Override
+    public void removeEntries(NameId publisher, List<Long> certIds) throws OperationException {
+      certstore.removeFromPublishQueue(publisher, certIds);
+    }
+
+    @Override
+    public long getSize(NameId publisher) throws OperationException {
+      return certstore.getPublishQueueSize(caIdent, publisher);
+    }
+
+  } // class CertStoreQueueStore
+
+  private class PublisherQueue {
+
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private volatile IdentifiedCertPublisher publisher;
+
+    /**
+     * Time in milliseconds since when the queue is not empty, 0 if it is empty.
+     */
+    private volatile long pendingSince;
+
+    private volatile long backlog;
+
+    // guarded by this
+    private int failures;
+
+    PublisherQueue(IdentifiedCertPublisher publisher) {
+      this.publisher = publisher;
+    }
+
+    void schedule(long delayMs) {
+      if (!scheduled.compareAndSet(false, true)) {
+        // the scheduled drain will see the new entries.
+        return;
+      }
+
+      if (delayMs == 0) {
+        execute();
+        return;
+      }
+
+      try {
+        scheduler.schedule(this::execute, delayMs, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException ex) {
+        rejected(ex);
+      }
+    } // method schedule
+
+    private void execute() {
+      try {
+        executor.execute(() -> {
+          scheduled.set(false);
+          drain();
+        });
+      } catch (RejectedExecutionException ex) {
+        rejected(ex);
+      }
+    }
+
+    private void rejected(RejectedExecutionException ex) {
+      // the CA system is being shutdown, the entries remain in the queue.
+      scheduled.set(false);
+      LOG.debug("could not schedule publishing certificates in PUBLISHQUEUE: {}",
+          ex.getMessage());
+    }
+
+    synchronized boolean drain() {
+      IdentifiedCertPublisher publisher0 = publisher;
+      String name = publisher0.getIdent().getName();
+      long since = pendingSince;
+
+      int[] published = new int[1];
+      boolean successful = publishQueue(publisher0, published);
+      if (successful) {
+        failures = 0;
+        backlog = 0;
+        pendingSince = 0;
+        if (published[0] > 0) {
+          LOG.info("published {} certificates of CA {} in PUBLISHQUEUE to publisher {}, "
+              + "lag {} ms", published[0], caIdent.getName(), name,
+              since == 0 ? 0 : System.currentTimeMillis() - since);
+        }
+        return true;
+      }
+
+      failures++;
+      try {
+        backlog = store.getSize(publisher0.getIdent());
+      } catch (OperationException ex) {
+        LogUtil.warn(LOG, ex, "could not get the size of PUBLISHQUEUE");
+      }
+
+      LOG.warn("publishing certificates of CA {} in PUBLISHQUEUE to publisher {} failed "
+          + "({} times), backlog {}, lag {} ms", caIdent.getName(), name, failures, backlog,
+          since == 0 ? 0 : System.currentTimeMillis() - since);
+
+      if (executor != null) {
+        // retry after 1, 2, 4, ... seconds, at most MAX_RETRY_DELAY_MS
+        schedule(Math.min(MAX_RETRY_DELAY_MS, 1000L << Math.min(failures - 1, 16)));
+      }
+      return false;
+    } // method drain
+
+  } // class PublisherQueue
+
+  private static final Logger LOG = LoggerFactory.getLogger(PublishQueueProcessor.class);
+
+  /**
+   * Number of entries read from the PUBLISHQUEUE per query.
+   */
+  private static final int NUM_ENTRIES = 500;
+
+  private static final long MAX_RETRY_DELAY_MS = 60 * 1000L;
+
+  private final NameId caIdent;
+
+  private final QueueStore store;
+
+  private final Executor executor;
+
+  private final ScheduledExecutorService scheduler;
+
+  private final ConcurrentHashMap<String, PublisherQueue> queues = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   * @param executor
+   *          Executor to drain the queues. {@code null} to drain them only if
+   *          {@link #publish(IdentifiedCertPublisher)} is called.
+   * @param scheduler
+   *          Scheduler to retry the failed drains. Must not be {@code null}.
+   */
+  PublishQueueProcessor(NameId caIdent, X509Cert caCert, CertStore certstore,
+      CaIdNameMap caIdNameMap, Executor executor, ScheduledExecutorService scheduler) {
+    this(caIdent, new CertStoreQueueStore(caIdent, caCert, certstore, caIdNameMap), executor,
+        scheduler);
+  }
+
+  /**
+   * Constructor.
+   * @param store
+   *          Store of the PUBLISHQUEUE. Must not be {@code null}.
+   * @param executor
+   *          Executor to drain the queues. {@code null} to drain them only if
+   *          {@link #publish(IdentifiedCertPublisher)} is called.
+   * @param scheduler
+   *          Scheduler to retry the failed drains. Must not be {@code null}.
+   */
+  PublishQueueProcessor(NameId caIdent, QueueStore store, Executor executor,
+      ScheduledExecutorService scheduler) {
+    this.caIdent = Args.notNull(caIdent, "caIdent");
+    this.store = Args.notNull(store, "store");
+    this.executor = executor;
+    this.scheduler = Args.notNull(scheduler, "scheduler");
+  }
+
+  /**
+   * Notifies that an entry has been added to the PUBLISHQUEUE of the given publisher.
+   * @param publisher
+   *          Publisher. Must not be {@code null}.
+   */
+  void entryAdded(IdentifiedCertPublisher publisher) {
+    PublisherQueue queue = getQueue(publisher);
+    if (queue.pendingSince == 0) {
+      queue.pendingSince = System.currentTimeMillis();
+    }
+
+    if (executor != null) {
+      queue.schedule(0);
+    }
+  }
+
+  /**
+   * Publishes the certificates in the PUBLISHQUEUE of the given publisher in the current
+   * thread.
+   * @param publisher
+   *          Publisher. Must not be {@code null}.
+   * @return whether all certificates are published.
+   */
+  boolean publish(IdentifiedCertPublisher publisher) {
+    return getQueue(publisher).drain();
+  }
+
+  /**
+   * Returns the number of entries in the PUBLISHQUEUE of the given publisher, as counted
+   * after the last failed drain.
+   * @param publisherName
+   *          Name of the publisher.
+   * @return the number of entries, 0 if the last drain was successful.
+   */
+  long getBacklog(String publisherName) {
+    PublisherQueue queue = queues.get(publisherName);
+    return queue == null ? 0 : queue.backlog;
+  }
+
+  /**
+   * Returns since how long the PUBLISHQUEUE of the given publisher is not empty.
+   * @param publisherName
+   *          Name of the publisher.
+   * @return the lag in milliseconds, 0 if the queue is empty.
+   */
+  long getLag(String publisherName) {
+    PublisherQueue queue = queues.get(publisherName);
+    long since = (queue == null) ? 0 : queue.pendingSince;
+    return since == 0 ? 0 : System.currentTimeMillis() - since;
+  }
+
+  private PublisherQueue getQueue(IdentifiedCertPublisher publisher) {
+    Args.notNull(publisher, "publisher");
+    PublisherQueue queue = queues.computeIfAbsent(publisher.getIdent().getName(),
+        k -> new PublisherQueue(publisher));
+    // the publisher may have been replaced by the reconfiguration.
+    queue.publisher = publisher;
+    return queue;
+  }
+
+  private boolean publishQueue(IdentifiedCertPublisher publisher, int[] published) {
+    NameId publisherIdent = publisher.getIdent();
+
+    while (true) {
+      List<Long> certIds;
+      List<CertificateInfo> certInfos;
+      try {
+        certIds = store.getEntries(publisherIdent, NUM_ENTRIES);
+        if (CollectionUtil.isEmpty(certIds)) {
+          return true;
+        }
+
+        certInfos = store.getCerts(certIds);
+      } catch (OperationException | CertificateException | RuntimeException ex) {
+        // a RuntimeException would end the drain without retry
+        LogUtil.error(LOG, ex);
+        return false;
+      }
+
+      List<CertificateInfo> failedCertInfos;
+      try {
+        failedCertInfos = certInfos.isEmpty() ? certInfos
+            : publisher.certificatesAdded(certInfos);
+      } catch (RuntimeException ex) {
+        LogUtil.error(LOG, ex, "could not publish certificates to the publisher "
+            + publisherIdent.getName());
+        return false;
+      }
+
+      // the entries of the removed certificates are removed as well.
+      Set<Long> failedCertIds = new HashSet<>();
+      for (CertificateInfo certInfo : failedCertInfos) {
+        failedCertIds.add(certInfo.getCert().getCertId());
+      }
+
+      List<Long> publishedCertIds = new ArrayList<>(certIds.size());
+      for (Long certId : certIds) {
+        if (!failedCertIds.contains(certId)) {
+          publishedCertIds.add(certId);
+        }
+      }
+
+      try {
+        store.removeEntries(publisherIdent, publishedCertIds);
+      } catch (OperationException ex) {
+        LogUtil.warn(LOG, ex, "could not remove republished certificates of publisher "
+            + publisherIdent.getName() + " from PUBLISHQUEUE");
+        return false;
+      }
+
+      published[0] += certInfos.size() - failedCertInfos.size();
+      if (!failedCertIds.isEmpty()) {
+        LOG.error("republishing {} certificates to publisher {} failed",
+            failedCertIds.size(), publisherIdent.getName());
+        return false;
+      }
+    } // end while
+  } // method publishQueue
+
+}
@@ -23,10 +23,17 @@ import static org.xipki.audit.AuditStatus.FAILED;
 
 import java.io.EOFException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 import org.bouncycastle.asn1.pkcs.CertificationRequest;
@@ -107,6 +114,10 @@ public class RestResponder {
 
   private static final int OK = 200;
 
+  private static final int PARTIAL_CONTENT = 206;
+
+  private static final int NOT_MODIFIED = 304;
+
   private static final int BAD_REQUEST = 400;
 
   private static final int UNAUTHORIZED = 401;
@@ -117,12 +128,18 @@ public class RestResponder {
 
   private static final int UNSUPPORTED_MEDIA_TYPE = 415;
 
+  private static final int RANGE_NOT_SATISFIABLE = 416;
+
   private static final int INTERNAL_SERVER_ERROR = 500;
 
   private static final int SERVICE_UNAVAILABLE = 503;
 
   private static final Logger LOG = LoggerFactory.getLogger(RestResponder.class);
 
+  private static final DateTimeFormatter HTTP_DATE_FORMATTER =
+      DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+        .withZone(ZoneOffset.UTC);
+
   private final CaManagerImpl responderManager;
 
   public RestResponder(CaManagerImpl responderManager) {
@@ -385,6 +402,17 @@ public class RestResponder {
           }
         }
 
+        if (crlNumber == null) {
+          CrlCache.CachedCrl crl = ca.getCachedCurrentCrl();
+          if (crl == null) {
+            String message = "could not get CRL";
+            LOG.warn(message);
+            throw new HttpRespAuditException(INTERNAL_SERVER_ERROR, message, INFO, FAILED);
+          }
+
+          return getCrlResponse(crl, httpRetriever);
+        }
+
         X509CRL crl = ca.getCrl(crlNumber);
         if (crl == null) {
           String message = "could not get CRL";
@@ -528,6 +556,129 @@ public class RestResponder {
     }
   } // method service
 
+  /**
+   * Builds the response of the cached current CRL. The conditional requests (If-None-Match and
+   * If-Modified-Since) and requests of a single byte range (Range and If-Range) are supported.
+   */
+  static RestResponse getCrlResponse(CrlCache.CachedCrl crl,
+      HttpRequestMetadataRetriever httpRetriever) {
+    String etag = crl.getEtag();
+    String lastModified = HTTP_DATE_FORMATTER.format(Instant.ofEpochMilli(crl.getThisUpdate()));
+
+    Map<String, String> headers = new HashMap<>();
+    headers.put(RestAPIConstants.HEADER_PKISTATUS, RestAPIConstants.PKISTATUS_accepted);
+    headers.put("ETag", etag);
+    headers.put("Last-Modified", lastModified);
+    headers.put("Accept-Ranges", "bytes");
+
+    String ifNoneMatch = httpRetriever.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+          return new RestResponse(NOT_MODIFIED, null, headers, null);
+        }
+      }
+    } else {
+      Long ifModifiedSince = parseHttpDate(httpRetriever.getHeader("If-Modified-Since"));
+      if (ifModifiedSince != null && crl.getThisUpdate() / 1000 <= ifModifiedSince / 1000) {
+        return new RestResponse(NOT_MODIFIED, null, headers, null);
+      }
+    }
+
+    ByteBuffer content = crl.getContent();
+    final int size = content.remaining();
+
+    String range = httpRetriever.getHeader("Range");
+    String ifRange = httpRetriever.getHeader("If-Range");
+    if (range != null && (ifRange == null || ifRange.trim().equals(etag)
+        || ifRange.trim().equals(lastModified))) {
+      int[] firstAndLast = parseRange(range, size);
+      if (firstAndLast != null) {
+        if (firstAndLast.length == 0) {
+          headers.put("Content-Range", "bytes */" + size);
+          return new RestResponse(RANGE_NOT_SATISFIABLE, null, headers, null);
+        }
+
+        content.limit(firstAndLast[1] + 1);
+        content.position(firstAndLast[0]);
+        headers.put("Content-Range",
+            "bytes " + firstAndLast[0] + "-" + firstAndLast[1] + "/" + size);
+        RestResponse resp = new RestResponse(PARTIAL_CONTENT, RestAPIConstants.CT_pkix_crl,
+            headers, null);
+        resp.setBodyBuffer(content);
+        return resp;
+      }
+    }
+
+    RestResponse resp = new RestResponse(OK, RestAPIConstants.CT_pkix_crl, headers, null);
+    resp.setBodyBuffer(content);
+    return resp;
+  } // method getCrlResponse
+
+  /**
+   * Parses the value of the header Range, only a single byte range is supported.
+   * @return the first and last positions of the range, an empty array if the range is not
+   *     satisfiable, or {@code null} if the range is ignored.
+   */
+  private static int[] parseRange(String range, int size) {
+    range = range.trim();
+    if (!range.startsWith("bytes=") || range.indexOf(',') != -1) {
+      return null;
+    }
+
+    String spec = range.substring("bytes=".length()).trim();
+    int sepIndex = spec.indexOf('-');
+    if (sepIndex == -1) {
+      return null;
+    }
+
+    String firstStr = spec.substring(0, sepIndex).trim();
+    String lastStr = spec.substring(sepIndex + 1).trim();
+
+    long first;
+    long last;
+    try {
+      if (firstStr.isEmpty()) {
+        // suffix range: the last n bytes
+        long suffixLength = Long.parseLong(lastStr);
+        if (suffixLength < 0) {
+          return null;
+        } else if (suffixLength == 0) {
+          return new int[0];
+        }
+        first = Math.max(0, size - suffixLength);
+        last = size - 1;
+      } else {
+        first = Long.parseLong(firstStr);
+        last = lastStr.isEmpty() ? Long.MAX_VALUE : Long.parseLong(lastStr);
+        if (first < 0 || last < first) {
+          return null;
+        }
+      }
+    } catch (NumberFormatException ex) {
+      return null;
+    }
+
+    if (first >= size) {
+      return new int[0];
+    }
+
+    return new int[]{(int) first, (int) Math.min(last, size - 1)};
+  } // method parseRange
+
+  private static Long parseHttpDate(String str) {
+    if (str == null) {
+      return null;
+    }
+
+    try {
+      return ZonedDateTime.parse(str.trim(), HTTP_DATE_FORMATTER).toInstant().toEpochMilli();
+    } catch (DateTimeParseException ex) {
+      return null;
+    }
+  }
+
   private static BigInteger toBigInt(String str) {
     String tmpStr = str.trim();
     if (tmpStr.startsWith("0x") || tmpStr.startsWith("0X")) {
@@ -17,6 +17,7 @@
 
 package org.xipki.ca.server;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -36,6 +37,8 @@ public class RestResponse {
 
   private byte[] body;
 
+  private ByteBuffer bodyBuffer;
+
   public RestResponse(int statusCode, String contentType, Map<String, String> headers,
       byte[] body) {
     this.statusCode = statusCode;
@@ -77,4 +80,22 @@ public class RestResponse {
     this.body = body;
   }
 
+  /**
+   * Returns the body as buffer, used instead of {@link #getBody()} if not {@code null}.
+   * @return the body as buffer.
+   */
+  public ByteBuffer getBodyBuffer() {
+    return bodyBuffer;
+  }
+
+  /**
+   * Sets the body as buffer, which may be shared with other responses.
+   * @param bodyBuffer
+   *          The body between the position and limit of the buffer. Its content must not be
+   *          modified.
+   */
+  public void setBodyBuffer(ByteBuffer bodyBuffer) {
+    this.bodyBuffer = bodyBuffer;
+  }
+
 }
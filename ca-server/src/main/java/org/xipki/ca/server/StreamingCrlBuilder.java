@@ -0,0 +1,390 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509CRL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentSigner;
+import org.xipki.security.CrlReason;
+import org.xipki.security.util.X509Util;
+import org.xipki.util.Args;
+
+/**
+ * Builds the X.509 CRL without holding the revoked certificates in memory.
+ *
+ * <p>The entries are added in chunks, possibly by several threads concurrently. Each chunk is
+ * sorted by the serial number and written to a temporary run file. While building the CRL,
+ * the run files are merged into a file of DER-encoded CRL entries sorted by the serial number,
+ * and the TBSCertList is streamed from this file to the signer and to the CRL file.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class StreamingCrlBuilder implements Closeable {
+
+  /**
+   * Reads the entries of a run file.
+   */
+  private static class RunReader implements Closeable {
+
+    private final DataInputStream in;
+
+    private BigInteger serial;
+
+    private long revocationTime;
+
+    private int reason;
+
+    private long invalidityTime;
+
+    RunReader(File file) throws IOException {
+      this.in = new DataInputStream(
+          new BufferedInputStream(Files.newInputStream(file.toPath()), BUFFER_SIZE));
+    }
+
+    boolean next() throws IOException {
+      int len;
+      try {
+        len = in.readInt();
+      } catch (EOFException ex) {
+        return false;
+      }
+
+      byte[] bytes = new byte[len];
+      in.readFully(bytes);
+      serial = new BigInteger(bytes);
+      revocationTime = in.readLong();
+      reason = in.readInt();
+      invalidityTime = in.readLong();
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+  } // class RunReader
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final X500Name issuer;
+
+  private final Date thisUpdate;
+
+  private final Date nextUpdate;
+
+  private final File tmpDir;
+
+  private final AtomicInteger runIndex = new AtomicInteger(0);
+
+  private final List<File> runFiles = Collections.synchronizedList(new ArrayList<File>());
+
+  private final ExtensionsGenerator extensionsGenerator = new ExtensionsGenerator();
+
+  private X500Name certificateIssuer;
+
+  private File entriesFile;
+
+  private long entriesLength;
+
+  private long numEntries;
+
+  StreamingCrlBuilder(X500Name issuer, Date thisUpdate, Date nextUpdate) throws IOException {
+    this.issuer = Args.notNull(issuer, "issuer");
+    this.thisUpdate = Args.notNull(thisUpdate, "thisUpdate");
+    this.nextUpdate = nextUpdate;
+    this.tmpDir = Files.createTempDirectory("xipki-crl-").toFile();
+  }
+
+  /**
+   * Sets the certificate issuer of an indirect CRL. It is added to the first entry only.
+   * @param certificateIssuer
+   *          Issuer of the revoked certificates. Could be {@code null}.
+   */
+  void setCertificateIssuer(X500Name certificateIssuer) {
+    this.certificateIssuer = certificateIssuer;
+  }
+
+  void addExtension(ASN1ObjectIdentifier oid, boolean critical, ASN1Encodable value)
+      throws IOException {
+    extensionsGenerator.addExtension(oid, critical, value);
+  }
+
+  /**
+   * Adds the revoked certificates. This method is thread-safe.
+   * @param entries
+   *          Revoked certificates, the reason and invalidity time are used as they are.
+   *          Will be sorted by the serial number.
+   * @throws IOException
+   *         if the entries could not be written to the temporary file.
+   */
+  void addEntries(List<CertRevInfoWithSerial> entries) throws IOException {
+    if (entries.isEmpty()) {
+      return;
+    }
+
+    Collections.sort(entries);
+    File runFile = new File(tmpDir, "run-" + runIndex.getAndIncrement());
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(runFile.toPath()), BUFFER_SIZE))) {
+      for (CertRevInfoWithSerial entry : entries) {
+        byte[] serial = entry.getSerial().toByteArray();
+        out.writeInt(serial.length);
+        out.write(serial);
+        out.writeLong(entry.getRevocationTime().getTime());
+        out.writeInt(entry.getReason().getCode());
+        Date invalidityTime = entry.getInvalidityTime();
+        out.writeLong(invalidityTime == null ? -1 : invalidityTime.getTime());
+      }
+    }
+    runFiles.add(runFile);
+  }
+
+  long getNumEntries() {
+    return numEntries;
+  }
+
+  /**
+   * Builds and signs the CRL.
+   * @param signer
+   *          Signer to sign the CRL. Must not be {@code null}.
+   * @return the CRL.
+   * @throws IOException
+   *         if the temporary files could not be read or written.
+   * @throws CRLException
+   *         if the generated CRL could not be parsed.
+   * @throws CertificateException
+   *         if the generated CRL could not be parsed.
+   */
+  X509CRL build(ContentSigner signer) throws IOException, CRLException, CertificateException {
+    Args.notNull(signer, "signer");
+    mergeRuns();
+
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    // version v2
+    vec.add(new ASN1Integer(1));
+    vec.add(signer.getAlgorithmIdentifier());
+    vec.add(issuer);
+    vec.add(new Time(thisUpdate));
+    if (nextUpdate != null) {
+      vec.add(new Time(nextUpdate));
+    }
+
+    byte[] tbsPrefix = encodeContent(vec);
+    byte[] encodedExtensions = extensionsGenerator.isEmpty() ? new byte[0]
+        : new DERTaggedObject(true, 0, extensionsGenerator.generate()).getEncoded();
+
+    OutputStream signerOut = signer.getOutputStream();
+    long tbsLength = writeTbsCertList(signerOut, tbsPrefix, encodedExtensions);
+    signerOut.close();
+
+    byte[] encodedAlgId = signer.getAlgorithmIdentifier().getEncoded();
+    byte[] encodedSignature = new DERBitString(signer.getSignature()).getEncoded();
+
+    File crlFile = new File(tmpDir, "crl");
+    try (OutputStream out =
+        new BufferedOutputStream(Files.newOutputStream(crlFile.toPath()), BUFFER_SIZE)) {
+      out.write(encodeHeader(0x30, tbsLength + encodedAlgId.length + encodedSignature.length));
+      writeTbsCertList(out, tbsPrefix, encodedExtensions);
+      out.write(encodedAlgId);
+      out.write(encodedSignature);
+    }
+
+    try (InputStream in =
+        new BufferedInputStream(Files.newInputStream(crlFile.toPath()), BUFFER_SIZE)) {
+      return X509Util.parseCrl(in);
+    }
+  }
+
+  @Override
+  public void close() {
+    File[] files = tmpDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    tmpDir.delete();
+  }
+
+  /**
+   * Merges the sorted run files into the file of DER-encoded CRL entries.
+   */
+  private void mergeRuns() throws IOException {
+    entriesFile = new File(tmpDir, "entries");
+    entriesLength = 0;
+    numEntries = 0;
+
+    PriorityQueue<RunReader> queue =
+        new PriorityQueue<>(Math.max(1, runFiles.size()), (a, b) -> a.serial.compareTo(b.serial));
+    try (OutputStream out =
+        new BufferedOutputStream(Files.newOutputStream(entriesFile.toPath()), BUFFER_SIZE)) {
+      for (File runFile : runFiles) {
+        RunReader reader = new RunReader(runFile);
+        if (reader.next()) {
+          queue.add(reader);
+        } else {
+          reader.close();
+        }
+      }
+
+      while (!queue.isEmpty()) {
+        RunReader reader = queue.poll();
+        byte[] encoded = encodeEntry(reader, numEntries == 0 ? certificateIssuer : null);
+        out.write(encoded);
+        entriesLength += encoded.length;
+        numEntries++;
+
+        if (reader.next()) {
+          queue.add(reader);
+        } else {
+          reader.close();
+        }
+      }
+    } finally {
+      for (RunReader reader : queue) {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * Writes the DER-encoded TBSCertList.
+   * @return the length of the TBSCertList.
+   */
+  private long writeTbsCertList(OutputStream out, byte[] tbsPrefix, byte[] encodedExtensions)
+      throws IOException {
+    byte[] revokedCertsHeader = (numEntries == 0) ? new byte[0]
+        : encodeHeader(0x30, entriesLength);
+    long contentLength = tbsPrefix.length + revokedCertsHeader.length
+        + (numEntries == 0 ? 0 : entriesLength) + encodedExtensions.length;
+    byte[] tbsHeader = encodeHeader(0x30, contentLength);
+
+    out.write(tbsHeader);
+    out.write(tbsPrefix);
+    if (numEntries > 0) {
+      out.write(revokedCertsHeader);
+      try (InputStream in = Files.newInputStream(entriesFile.toPath())) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+      }
+    }
+    out.write(encodedExtensions);
+    return tbsHeader.length + contentLength;
+  }
+
+  private static byte[] encodeEntry(RunReader entry, X500Name certificateIssuer)
+      throws IOException {
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    vec.add(new ASN1Integer(entry.serial));
+    vec.add(new Time(new Date(entry.revocationTime)));
+
+    List<Extension> extensions = new ArrayList<>(3);
+    if (entry.reason != CrlReason.UNSPECIFIED.getCode()) {
+      extensions.add(new Extension(Extension.reasonCode, false,
+          CRLReason.lookup(entry.reason).getEncoded()));
+    }
+
+    if (entry.invalidityTime != -1) {
+      extensions.add(new Extension(Extension.invalidityDate, false,
+          new ASN1GeneralizedTime(new Date(entry.invalidityTime)).getEncoded()));
+    }
+
+    if (certificateIssuer != null) {
+      extensions.add(new Extension(Extension.certificateIssuer, true,
+          new GeneralNames(new GeneralName(certificateIssuer)).getEncoded()));
+    }
+
+    if (!extensions.isEmpty()) {
+      vec.add(new Extensions(extensions.toArray(new Extension[0])));
+    }
+
+    return new DERSequence(vec).getEncoded();
+  }
+
+  private static byte[] encodeContent(ASN1EncodableVector vec) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < vec.size(); i++) {
+      out.write(vec.get(i).toASN1Primitive().getEncoded(ASN1Encoding.DER));
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] encodeHeader(int tag, long length) {
+    if (length < 0x80) {
+      return new byte[]{(byte) tag, (byte) length};
+    }
+
+    int numLenBytes = 0;
+    for (long len = length; len > 0; len >>>= 8) {
+      numLenBytes++;
+    }
+
+    byte[] header = new byte[2 + numLenBytes];
+    header[0] = (byte) tag;
+    header[1] = (byte) (0x80 | numLenBytes);
+    for (int i = 0; i < numLenBytes; i++) {
+      header[header.length - 1 - i] = (byte) (length >>> (8 * i));
+    }
+    return header;
+  }
+
+}
@@ -0,0 +1,182 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.xipki.ca.api.NameId;
+import org.xipki.util.Args;
+import org.xipki.util.HealthCheckResult;
+
+/**
+ * Cache of the successful authentications of users by password, so that repeated
+ * authentications require neither the database query nor the PBKDF2 derivation. Only a
+ * salted SHA-256 hash of the password is cached.
+ *
+ * <p>The entries expire after the configured time-to-live, and are removed if the user is
+ * changed or removed by this CA system. A slave CA system removes them when it reads the
+ * change from the table CONF_CHANGE, at the latest one minute later.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class UserAuthCache {
+
+  private static class Entry {
+
+    private final NameId ident;
+
+    private final byte[] passwordHash;
+
+    private final long expiresAt;
+
+    Entry(NameId ident, byte[] passwordHash, long expiresAt) {
+      this.ident = ident;
+      this.passwordHash = passwordHash;
+      this.expiresAt = expiresAt;
+    }
+
+  } // class Entry
+
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+  private final byte[] salt = new byte[16];
+
+  private final int maxSize;
+
+  private final long ttlMs;
+
+  /**
+   * Incremented by each invalidation, so that an authentication which started before an
+   * invalidation is not cached.
+   */
+  private final AtomicLong generation = new AtomicLong(0);
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Constructor.
+   * @param maxSize
+   *          Maximal number of cached users. Must be positive.
+   * @param ttlSeconds
+   *          Time-to-live of the entries in seconds. Must be positive.
+   */
+  UserAuthCache(int maxSize, int ttlSeconds) {
+    this.maxSize = Args.positive(maxSize, "maxSize");
+    this.ttlMs = 1000L * Args.positive(ttlSeconds, "ttlSeconds");
+    new SecureRandom().nextBytes(salt);
+  }
+
+  long getGeneration() {
+    return generation.get();
+  }
+
+  /**
+   * Returns the identifier of the user if the password has been verified recently.
+   * @param user
+   *          Name of the user in lower case.
+   * @param password
+   *          Password.
+   * @return the identifier of the user, {@code null} if not cached.
+   */
+  NameId get(String user, byte[] password) {
+    Entry entry = entries.get(user);
+    if (entry != null) {
+      if (System.currentTimeMillis() > entry.expiresAt) {
+        entries.remove(user, entry);
+      } else if (MessageDigest.isEqual(entry.passwordHash, hash(password))) {
+        hits.increment();
+        return entry.ident;
+      }
+    }
+
+    misses.increment();
+    return null;
+  }
+
+  /**
+   * Caches the successful authentication of a user.
+   * @param generation
+   *          The generation returned by {@link #getGeneration()} before the authentication.
+   */
+  void put(String user, byte[] password, NameId ident, long generation) {
+    long now = System.currentTimeMillis();
+    if (entries.size() >= maxSize && !entries.containsKey(user)) {
+      evict(now);
+    }
+
+    entries.put(user, new Entry(ident, hash(password), now + ttlMs));
+    if (this.generation.get() != generation) {
+      // the user may have been changed meanwhile.
+      entries.remove(user);
+    }
+  }
+
+  void invalidate(String user) {
+    generation.incrementAndGet();
+    entries.remove(user);
+  }
+
+  void invalidateAll() {
+    generation.incrementAndGet();
+    entries.clear();
+  }
+
+  private void evict(long now) {
+    entries.values().removeIf(entry -> now > entry.expiresAt);
+    Iterator<String> it = entries.keySet().iterator();
+    while (entries.size() >= maxSize && it.hasNext()) {
+      it.next();
+      it.remove();
+    }
+  }
+
+  private byte[] hash(byte[] password) {
+    SHA256Digest digest = new SHA256Digest();
+    digest.update(salt, 0, salt.length);
+    digest.update(password, 0, password.length);
+    byte[] hash = new byte[digest.getDigestSize()];
+    digest.doFinal(hash, 0);
+    return hash;
+  }
+
+  HealthCheckResult healthCheck() {
+    HealthCheckResult result = new HealthCheckResult();
+    result.setName("UserAuthCache");
+    result.setHealthy(true);
+
+    Map<String, Object> statuses = new HashMap<>();
+    statuses.put("size", entries.size());
+    statuses.put("hits", hits.sum());
+    statuses.put("misses", misses.sum());
+    result.setStatuses(statuses);
+    return result;
+  }
+
+}
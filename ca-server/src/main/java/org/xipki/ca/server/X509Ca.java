@@ -32,43 +32,37 @@ import static org.xipki.ca.api.OperationException.ErrorCode.UNKNOWN_CERT_PROFILE
 import java.io.Closeable;
 import java.io.IOException;
 import java.math.BigInteger;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
-import java.security.KeyPair;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
-import java.security.PublicKey;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
-import java.security.SignatureException;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
-import java.security.interfaces.DSAPrivateKey;
-import java.security.interfaces.DSAPublicKey;
-import java.security.interfaces.ECPrivateKey;
-import java.security.interfaces.ECPublicKey;
-import java.security.interfaces.RSAPrivateCrtKey;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
 
 import org.bouncycastle.asn1.ASN1EncodableVector;
-import org.bouncycastle.asn1.ASN1GeneralizedTime;
 import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1Sequence;
@@ -79,31 +73,23 @@ import org.bouncycastle.asn1.DERTaggedObject;
 import org.bouncycastle.asn1.pkcs.CertificationRequest;
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
-import org.bouncycastle.asn1.pkcs.RSAPrivateKey;
-import org.bouncycastle.asn1.pkcs.RSAPublicKey;
 import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
 import org.bouncycastle.asn1.x509.CRLDistPoint;
-import org.bouncycastle.asn1.x509.CRLReason;
 import org.bouncycastle.asn1.x509.Certificate;
 import org.bouncycastle.asn1.x509.CertificateList;
 import org.bouncycastle.asn1.x509.DistributionPointName;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.Extensions;
-import org.bouncycastle.asn1.x509.GeneralName;
-import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
 import org.bouncycastle.asn1.x509.ReasonFlags;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.asn1.x509.Time;
 import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
-import org.bouncycastle.cert.CertIOException;
-import org.bouncycastle.cert.X509CRLHolder;
 import org.bouncycastle.cert.X509CertificateHolder;
-import org.bouncycastle.cert.X509v2CRLBuilder;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
-import org.bouncycastle.crypto.RuntimeCryptoException;
+import org.bouncycastle.operator.RuntimeOperatorException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.audit.AuditEvent;
@@ -138,6 +124,7 @@ import org.xipki.ca.api.profile.ExtensionValues;
 import org.xipki.ca.api.profile.KeypairGenControl;
 import org.xipki.ca.server.cmp.CmpRequestorInfo;
 import org.xipki.ca.server.store.CertStore;
+import org.xipki.security.BatchSigner;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.ConcurrentBagEntrySigner;
 import org.xipki.security.ConcurrentContentSigner;
@@ -148,7 +135,6 @@ import org.xipki.security.NoIdleSignerException;
 import org.xipki.security.ObjectIdentifiers;
 import org.xipki.security.X509Cert;
 import org.xipki.security.XiSecurityException;
-import org.xipki.security.util.KeyUtil;
 import org.xipki.security.util.RSABrokenKey;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
@@ -183,6 +169,8 @@ public class X509Ca implements Closeable {
     private X500Name grantedSubject;
     private String grantedSubjectText;
     private long fpSubject;
+    private boolean keyInProcess;
+    private boolean subjectInProcess;
 
     public GrantedCertTemplate(Extensions extensions, IdentifiedCertprofile certprofile,
         Date grantedNotBefore, Date grantedNotAfter, X500Name requestedSubject,
@@ -367,6 +355,7 @@ public class X509Ca implements Closeable {
       }
 
       long maxIdOfDeltaCrlCache;
+      long deltaCrlCacheSequence = (deltaCrlCache == null) ? 0 : deltaCrlCache.getSequence();
       try {
         maxIdOfDeltaCrlCache = certstore.getMaxIdOfDeltaCrlCache(caIdent);
         generateCrl(deltaCrl, thisUpdate, nextUpdate, CaAuditConstants.MSGID_ca_routine);
@@ -375,11 +364,7 @@ public class X509Ca implements Closeable {
         return;
       }
 
-      try {
-        certstore.clearDeltaCrlCache(caIdent, maxIdOfDeltaCrlCache);
-      } catch (Throwable th) {
-        LogUtil.error(LOG, th, "could not clear DeltaCRLCache of CA " + caIdent);
-      }
+      clearDeltaCrlCache(maxIdOfDeltaCrlCache, deltaCrlCacheSequence);
     } // method run0
 
   } // class CrlGenerationService
@@ -428,6 +413,26 @@ public class X509Ca implements Closeable {
 
   private static final long MAX_CERT_TIME_MS = 253402300799982L; //9999-12-31-23-59-59
 
+  /**
+   * Number of threads reading the revoked certificates for the CRL.
+   */
+  static final int CRL_READ_THREADS = 4;
+
+  /**
+   * Minimal size of the ID range read by one thread for the CRL.
+   */
+  private static final long CRL_MIN_ID_RANGE_SIZE = 100000;
+
+  /**
+   * Number of revoked certificates retrieved in one database query for the CRL.
+   */
+  private static final int CRL_FETCH_SIZE = 1000;
+
+  /**
+   * Number of CRL entries sorted in memory and written to one temporary file.
+   */
+  private static final int CRL_RUN_SIZE = 50000;
+
   private static final Logger LOG = LoggerFactory.getLogger(X509Ca.class);
 
   private final CaInfo caInfo;
@@ -447,6 +452,31 @@ public class X509Ca implements Closeable {
 
   private final CaManagerImpl caManager;
 
+  /**
+   * Entries of the next delta CRL, {@code null} if the table DELTACRL_CACHE is used.
+   */
+  private final DeltaCrlCache deltaCrlCache;
+
+  private final PublishQueueProcessor publishQueueProcessor;
+
+  private final CertSignatureVerifier certSignatureVerifier;
+
+  private final CrlCache crlCache;
+
+  /**
+   * Fingerprints of the public keys of the issued certificates, {@code null} if the
+   * duplicate keys are checked in the database only.
+   */
+  private final FpBloomFilter keyFpFilter;
+
+  /**
+   * Fingerprints of the subjects of the issued certificates, {@code null} if the
+   * duplicate subjects are checked in the database only.
+   */
+  private final FpBloomFilter subjectFpFilter;
+
+  private Future<?> fpFiltersLoader;
+
   private SecureRandom random = new SecureRandom();
 
   private AtomicBoolean crlGenInProcess = new AtomicBoolean(false);
@@ -496,7 +526,8 @@ public class X509Ca implements Closeable {
 
     if (caInfo.isSignerRequired()) {
       try {
-        caInfo.initSigner(caManager.getSecurityFactory());
+        caInfo.initSigner(caManager.getSecurityFactory(), caManager.getSignerBatchSize(),
+            caManager.getSignerBatchConcurrency());
       } catch (XiSecurityException ex) {
         LogUtil.error(LOG, ex, "security.createSigner caSigner for CA " + caIdent);
         throw new OperationException(SYSTEM_FAILURE, ex);
@@ -519,6 +550,28 @@ public class X509Ca implements Closeable {
       }
     }
 
+    if (masterMode && caManager.isDeltaCrlInMemory() && shouldPublishToDeltaCrlCache()) {
+      this.deltaCrlCache = loadDeltaCrlCache();
+    } else {
+      this.deltaCrlCache = null;
+    }
+
+    this.certSignatureVerifier = new CertSignatureVerifier(
+        caInfo.getSignatureVerificationControl(), caCert.getCert().getPublicKey(),
+        this::certSignatureInvalid);
+
+    this.publishQueueProcessor = new PublishQueueProcessor(caIdent, caCert, certstore,
+        caIdNameMap, masterMode ? caManager.getPublisherExecutor() : null,
+        caManager.getScheduledThreadPoolExecutor());
+
+    this.crlCache = new CrlCache(caIdent, certstore, caManager.getCrlCacheDir(), masterMode);
+
+    long fpFilterCapacity = masterMode ? caManager.getFpFilterCapacity() : 0;
+    this.keyFpFilter = (fpFilterCapacity > 0 && !caInfo.isDuplicateKeyPermitted())
+        ? new FpBloomFilter(fpFilterCapacity) : null;
+    this.subjectFpFilter = (fpFilterCapacity > 0 && !caInfo.isDuplicateSubjectPermitted())
+        ? new FpBloomFilter(fpFilterCapacity) : null;
+
     if (!masterMode) {
       return;
     }
@@ -540,8 +593,70 @@ public class X509Ca implements Closeable {
 
     this.suspendedCertsRevoker = executor.scheduleAtFixedRate(
         new SuspendedCertsRevoker(), random.nextInt(60), 60, TimeUnit.MINUTES);
+
+    if (keyFpFilter != null || subjectFpFilter != null) {
+      this.fpFiltersLoader = executor.submit(this::loadFpFilters);
+    }
   } // constructor
 
+  /**
+   * Loads the fingerprints of the certificates in the database into the filters. The
+   * certificates issued meanwhile are added by {@link #publishCert0(CertificateInfo)}.
+   */
+  private void loadFpFilters() {
+    final long start = System.currentTimeMillis();
+    final long[] num = new long[1];
+    LongConsumer keyFps = (keyFpFilter == null) ? fp -> num[0]++ : fp -> {
+      num[0]++;
+      keyFpFilter.add(fp);
+    };
+    LongConsumer subjectFps = (subjectFpFilter == null) ? fp -> { } : subjectFpFilter::add;
+
+    try {
+      long startId = 1;
+      while (!Thread.currentThread().isInterrupted()) {
+        long lastId = certstore.getCertFps(caIdent, startId, keyFps, subjectFps);
+        if (lastId == 0) {
+          break;
+        }
+        startId = lastId + 1;
+      }
+    } catch (OperationException | RuntimeException ex) {
+      LogUtil.error(LOG, ex, "could not load the fingerprints of the certificates of CA "
+          + caIdent.getName() + ", the duplicates are checked in the database only");
+      return;
+    }
+
+    if (Thread.currentThread().isInterrupted()) {
+      return;
+    }
+
+    if (keyFpFilter != null) {
+      keyFpFilter.setLoaded();
+    }
+    if (subjectFpFilter != null) {
+      subjectFpFilter.setLoaded();
+    }
+
+    long capacity = caManager.getFpFilterCapacity();
+    if (num[0] > capacity) {
+      LOG.warn("CA {} has {} certificates, more than ca.fpFilter.capacity {}",
+          caIdent.getName(), num[0], capacity);
+    }
+    LOG.info("loaded the fingerprints of {} certificates of CA {} in {} ms",
+        num[0], caIdent.getName(), System.currentTimeMillis() - start);
+  } // method loadFpFilters
+
+  private boolean isCertForKeyIssued(long fpPublicKey) throws OperationException {
+    return (keyFpFilter == null || keyFpFilter.mightContain(fpPublicKey))
+        && certstore.isCertForKeyIssued(caIdent, fpPublicKey);
+  }
+
+  private boolean isCertForSubjectIssued(long fpSubject) throws OperationException {
+    return (subjectFpFilter == null || subjectFpFilter.mightContain(fpSubject))
+        && certstore.isCertForSubjectIssued(caIdent, fpSubject);
+  }
+
   public CaInfo getCaInfo() {
     return caInfo;
   }
@@ -601,7 +716,23 @@ public class X509Ca implements Closeable {
   }
 
   public NameId authenticateUser(String user, byte[] password) throws OperationException {
-    return certstore.authenticateUser(user.toLowerCase(), password);
+    user = user.toLowerCase();
+    UserAuthCache cache = caManager.getUserAuthCache();
+    if (cache == null) {
+      return certstore.authenticateUser(user, password);
+    }
+
+    NameId ident = cache.get(user, password);
+    if (ident != null) {
+      return ident;
+    }
+
+    long generation = cache.getGeneration();
+    ident = certstore.authenticateUser(user, password);
+    if (ident != null) {
+      cache.put(user, password, ident, generation);
+    }
+    return ident;
   }
 
   public NameId getUserIdent(int userId) throws OperationException {
@@ -648,6 +779,14 @@ public class X509Ca implements Closeable {
     }
   } // method getCrl
 
+  /**
+   * Returns the current CRL from the cache without parsing it.
+   * @return the current CRL, {@code null} if the CA has no CRL.
+   */
+  CrlCache.CachedCrl getCachedCurrentCrl() throws OperationException {
+    return crlCache.getCrl();
+  }
+
   public CertificateList getBcCurrentCrl() throws OperationException {
     return getBcCrl(null);
   }
@@ -727,23 +866,77 @@ public class X509Ca implements Closeable {
         nextUpdate = null;
       }
 
+      long deltaCrlCacheSequence = (deltaCrlCache == null) ? 0 : deltaCrlCache.getSequence();
       long maxIdOfDeltaCrlCache = certstore.getMaxIdOfDeltaCrlCache(caIdent);
       X509CRL crl = generateCrl(false, thisUpdate, nextUpdate, msgId);
       if (crl == null) {
         return null;
       }
 
-      try {
-        certstore.clearDeltaCrlCache(caIdent, maxIdOfDeltaCrlCache);
-      } catch (Throwable th) {
-        LogUtil.error(LOG, th, "could not clear DeltaCRLCache of CA " + caIdent);
-      }
+      clearDeltaCrlCache(maxIdOfDeltaCrlCache, deltaCrlCacheSequence);
       return crl;
     } finally {
       crlGenInProcess.set(false);
     }
   } // method generateCrlOnDemand
 
+  private void clearDeltaCrlCache(long maxIdOfDeltaCrlCache, long deltaCrlCacheSequence) {
+    if (deltaCrlCache != null) {
+      deltaCrlCache.clear(deltaCrlCacheSequence);
+    }
+
+    try {
+      certstore.clearDeltaCrlCache(caIdent, maxIdOfDeltaCrlCache);
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "could not clear DeltaCRLCache of CA " + caIdent);
+    }
+  }
+
+  private DeltaCrlCache loadDeltaCrlCache() throws OperationException {
+    CrlControl control = caInfo.getCrlControl();
+    DeltaCrlCache cache = new DeltaCrlCache();
+    List<CertRevInfoWithSerial> revInfos;
+    long startId = 1;
+
+    do {
+      revInfos = certstore.getCertsForDeltaCrl(caIdent, startId, CRL_FETCH_SIZE,
+          control.isOnlyContainsCaCerts(), control.isOnlyContainsUserCerts());
+
+      for (CertRevInfoWithSerial revInfo : revInfos) {
+        startId = Math.max(startId, revInfo.getId() + 1);
+        cache.add(revInfo);
+      }
+    } while (revInfos.size() >= CRL_FETCH_SIZE);
+
+    LOG.info("loaded {} entries of the next delta CRL of CA {}", cache.size(),
+        caIdent.getName());
+    return cache;
+  }
+
+  /**
+   * Updates the in-memory entries of the next delta CRL.
+   * @param cert the revoked or unrevoked certificate.
+   * @param revInfo the revocation information, {@code null} if the certificate is unrevoked.
+   */
+  private void updateDeltaCrlCache(X509Cert cert, CertRevocationInfo revInfo) {
+    if (deltaCrlCache == null || !shouldPublishToDeltaCrlCache()) {
+      return;
+    }
+
+    CrlControl control = caInfo.getCrlControl();
+    boolean ee = cert.getCert().getBasicConstraints() == -1;
+    if ((control.isOnlyContainsCaCerts() && ee) || (control.isOnlyContainsUserCerts() && !ee)) {
+      return;
+    }
+
+    BigInteger serialNumber = cert.getCert().getSerialNumber();
+    if (revInfo == null) {
+      deltaCrlCache.certificateUnrevoked(serialNumber, new Date());
+    } else {
+      deltaCrlCache.certificateRevoked(serialNumber, revInfo);
+    }
+  }
+
   private X509CRL generateCrl(boolean deltaCrl, Date thisUpdate, Date nextUpdate, String msgId)
       throws OperationException {
     boolean successful = false;
@@ -781,6 +974,7 @@ public class X509Ca implements Closeable {
 
     boolean successful = false;
 
+    StreamingCrlBuilder crlBuilder = null;
     try {
       SignerEntryWrapper crlSigner = getCrlSigner();
       PublicCaInfo pci = caInfo.getPublicCaInfo();
@@ -788,12 +982,15 @@ public class X509Ca implements Closeable {
       boolean indirectCrl = (crlSigner != null);
       X500Name crlIssuer = indirectCrl ? crlSigner.getSubjectAsX500Name() : pci.getX500Subject();
 
-      X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(crlIssuer, thisUpdate);
-      if (nextUpdate != null) {
-        crlBuilder.setNextUpdate(nextUpdate);
+      try {
+        crlBuilder = new StreamingCrlBuilder(crlIssuer, thisUpdate, nextUpdate);
+      } catch (IOException ex) {
+        throw new OperationException(CRL_FAILURE, ex);
       }
 
-      final int numEntries = 100;
+      if (indirectCrl) {
+        crlBuilder.setCertificateIssuer(pci.getX500Subject());
+      }
 
       Date notExpireAt;
       if (control.isIncludeExpiredCerts()) {
@@ -803,105 +1000,22 @@ public class X509Ca implements Closeable {
         notExpireAt = new Date(thisUpdate.getTime() - 600L * MS_PER_SECOND);
       }
 
-      long startId = 1;
-
-      // we have to cache the serial entries to sort them
-      List<CertRevInfoWithSerial> allRevInfos = new LinkedList<>();
-
-      List<CertRevInfoWithSerial> revInfos;
-
-      do {
+      // the entries are sorted by the serial number in the crlBuilder
+      try {
         if (deltaCrl) {
-          revInfos = certstore.getCertsForDeltaCrl(caIdent, startId, numEntries,
-              control.isOnlyContainsCaCerts(), control.isOnlyContainsUserCerts());
+          addCertsForDeltaCrl(crlBuilder, control);
         } else {
-          revInfos = certstore.getRevokedCerts(caIdent, notExpireAt, startId, numEntries,
-              control.isOnlyContainsCaCerts(), control.isOnlyContainsUserCerts());
-        }
-        allRevInfos.addAll(revInfos);
-
-        long maxId = 1;
-        for (CertRevInfoWithSerial revInfo : revInfos) {
-          if (revInfo.getId() > maxId) {
-            maxId = revInfo.getId();
-          }
-        } // end for
-        startId = maxId + 1;
-      } while (revInfos.size() >= numEntries); // end do
-
-      if (revInfos != null) { // free the memory
-        revInfos.clear();
-      }
-
-      // sort the list by SerialNumber ASC
-      Collections.sort(allRevInfos);
-
-      boolean isFirstCrlEntry = true;
-      CrlControl crlControl = caInfo.getCrlControl();
-
-      for (CertRevInfoWithSerial revInfo : allRevInfos) {
-        CrlReason reason = revInfo.getReason();
-        if (crlControl.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
-          reason = CrlReason.UNSPECIFIED;
-        }
-
-        Date revocationTime = revInfo.getRevocationTime();
-        Date invalidityTime = revInfo.getInvalidityTime();
-
-        switch (crlControl.getInvalidityDateMode()) {
-          case forbidden:
-            invalidityTime = null;
-            break;
-          case optional:
-            break;
-          case required:
-            if (invalidityTime == null) {
-              invalidityTime = revocationTime;
-            }
-            break;
-          default:
-            throw new IllegalStateException(
-                "unknown TripleState " + crlControl.getInvalidityDateMode());
+          addRevokedCerts(crlBuilder, control, notExpireAt);
         }
-
-        BigInteger serial = revInfo.getSerial();
-        LOG.debug("added cert ca={} serial={} to CRL", caIdent, serial);
-
-        if (!indirectCrl || !isFirstCrlEntry) {
-          if (invalidityTime != null) {
-            crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode(),
-                invalidityTime);
-          } else {
-            crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode());
-          }
-          continue;
-        }
-
-        List<Extension> extensions = new ArrayList<>(3);
-        if (reason != CrlReason.UNSPECIFIED) {
-          Extension ext = createReasonExtension(reason.getCode());
-          extensions.add(ext);
-        }
-        if (invalidityTime != null) {
-          Extension ext = createInvalidityDateExtension(invalidityTime);
-          extensions.add(ext);
-        }
-
-        Extension ext = createCertificateIssuerExtension(pci.getX500Subject());
-        extensions.add(ext);
-
-        crlBuilder.addCRLEntry(serial, revocationTime,
-            new Extensions(extensions.toArray(new Extension[0])));
-        isFirstCrlEntry = false;
+      } catch (IOException ex) {
+        throw new OperationException(CRL_FAILURE, ex);
       }
 
-      allRevInfos.clear(); // free the memory
-
       BigInteger crlNumber = caInfo.nextCrlNumber();
       event.addEventData(CaAuditConstants.NAME_crl_number, crlNumber);
 
-      boolean onlyUserCerts = crlControl.isOnlyContainsUserCerts();
-      boolean onlyCaCerts = crlControl.isOnlyContainsCaCerts();
+      boolean onlyUserCerts = control.isOnlyContainsUserCerts();
+      boolean onlyCaCerts = control.isOnlyContainsCaCerts();
       if (onlyUserCerts && onlyCaCerts) {
         throw new IllegalStateException(
             "should not reach here, onlyUserCerts and onlyCACerts are both true");
@@ -938,7 +1052,7 @@ public class X509Ca implements Closeable {
               crlIssuer);
           crlBuilder.addExtension(Extension.freshestCRL, false, cdp);
         }
-      } catch (CertIOException | CertificateEncodingException ex) {
+      } catch (IOException | CertificateEncodingException ex) {
         LogUtil.error(LOG, ex, "crlBuilder.addExtension");
         throw new OperationException(INVALID_EXTENSION, ex);
       }
@@ -956,38 +1070,189 @@ public class X509Ca implements Closeable {
         throw new OperationException(SYSTEM_FAILURE, "NoIdleSignerException: " + ex.getMessage());
       }
 
-      X509CRLHolder crlHolder;
+      X509CRL crl;
       try {
-        crlHolder = crlBuilder.build(signer0.value());
+        crl = crlBuilder.build(signer0.value());
+      } catch (IOException | CRLException | CertificateException ex) {
+        throw new OperationException(CRL_FAILURE, ex);
       } finally {
         concurrentSigner.requiteSigner(signer0);
       }
 
-      try {
-        X509CRL crl = X509Util.toX509Crl(crlHolder.toASN1Structure());
-        caInfo.getCaEntry().setNextCrlNumber(crlNumber.longValue() + 1);
-        caManager.commitNextCrlNo(caIdent, caInfo.getCaEntry().getNextCrlNumber());
-        publishCrl(crl);
+      caInfo.getCaEntry().setNextCrlNumber(crlNumber.longValue() + 1);
+      caManager.commitNextCrlNo(caIdent, caInfo.getCaEntry().getNextCrlNumber());
+      publishCrl(crl);
 
-        successful = true;
-        LOG.info("SUCCESSFUL generateCrl: ca={}, crlNumber={}, thisUpdate={}", caIdent.getName(),
-            crlNumber, crl.getThisUpdate());
+      successful = true;
+      LOG.info("SUCCESSFUL generateCrl: ca={}, crlNumber={}, thisUpdate={}, entries={}",
+          caIdent.getName(), crlNumber, crl.getThisUpdate(), crlBuilder.getNumEntries());
 
-        if (!deltaCrl) {
-          // clean up the CRL
-          cleanupCrlsWithoutException(msgId);
-        }
-        return crl;
-      } catch (CRLException | CertificateException ex) {
-        throw new OperationException(CRL_FAILURE, ex);
+      if (!deltaCrl) {
+        // clean up the CRL
+        cleanupCrlsWithoutException(msgId);
       }
+      return crl;
     } finally {
+      if (crlBuilder != null) {
+        crlBuilder.close();
+      }
+
       if (!successful) {
         LOG.info("    FAILED generateCrl: ca={}", caIdent.getName());
       }
     }
   } // method generateCrl
 
+  /**
+   * Adds the revoked certificates to the CRL. The ID ranges are read in parallel.
+   */
+  private void addRevokedCerts(StreamingCrlBuilder crlBuilder, CrlControl control,
+      Date notExpireAt) throws OperationException, IOException {
+    long maxId = certstore.getMaxCertId();
+    long rangeSize = Math.max(CRL_MIN_ID_RANGE_SIZE,
+        (maxId + CRL_READ_THREADS * 4 - 1) / (CRL_READ_THREADS * 4));
+    int numRanges = (int) ((maxId + rangeSize - 1) / rangeSize);
+    ExecutorService executor = caManager.getCrlExecutor();
+    if (numRanges <= 1 || executor == null) {
+      addRevokedCerts(crlBuilder, control, notExpireAt, 1, Long.MAX_VALUE);
+      return;
+    }
+
+    List<Future<Void>> futures = new ArrayList<>(numRanges);
+    try {
+      for (int i = 0; i < numRanges; i++) {
+        final long startId = 1 + i * rangeSize;
+        // the last range covers also the certificates added in the meantime
+        final long endId = (i == numRanges - 1) ? Long.MAX_VALUE : startId + rangeSize - 1;
+        futures.add(executor.submit(() -> {
+          addRevokedCerts(crlBuilder, control, notExpireAt, startId, endId);
+          return null;
+        }));
+      }
+
+      for (Future<Void> future : futures) {
+        try {
+          future.get();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new OperationException(CRL_FAILURE, "interrupted");
+        } catch (ExecutionException ex) {
+          Throwable cause = ex.getCause();
+          if (cause instanceof OperationException) {
+            throw (OperationException) cause;
+          } else if (cause instanceof IOException) {
+            throw (IOException) cause;
+          } else {
+            throw new OperationException(CRL_FAILURE, cause);
+          }
+        }
+      }
+    } catch (RejectedExecutionException ex) {
+      throw new OperationException(CRL_FAILURE,
+          "could not read the revoked certificates: " + ex.getMessage());
+    } finally {
+      // stops reading the remaining ranges if one range failed
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+    }
+  } // method addRevokedCerts
+
+  private void addRevokedCerts(StreamingCrlBuilder crlBuilder, CrlControl control,
+      Date notExpireAt, long fromId, long toId) throws OperationException, IOException {
+    List<CertRevInfoWithSerial> run = new ArrayList<>();
+    List<CertRevInfoWithSerial> revInfos;
+    long startId = fromId;
+
+    do {
+      revInfos = certstore.getRevokedCerts(caIdent, notExpireAt, startId, toId, CRL_FETCH_SIZE,
+          control.isOnlyContainsCaCerts(), control.isOnlyContainsUserCerts());
+
+      for (CertRevInfoWithSerial revInfo : revInfos) {
+        startId = Math.max(startId, revInfo.getId() + 1);
+        run.add(toCrlEntry(revInfo, control));
+      }
+
+      if (run.size() >= CRL_RUN_SIZE) {
+        crlBuilder.addEntries(run);
+        run.clear();
+      }
+    } while (revInfos.size() >= CRL_FETCH_SIZE);
+
+    crlBuilder.addEntries(run);
+  }
+
+  private void addCertsForDeltaCrl(StreamingCrlBuilder crlBuilder, CrlControl control)
+      throws OperationException, IOException {
+    if (deltaCrlCache != null) {
+      List<CertRevInfoWithSerial> entries = deltaCrlCache.getEntries();
+      List<CertRevInfoWithSerial> run = new ArrayList<>(Math.min(entries.size(), CRL_RUN_SIZE));
+      for (CertRevInfoWithSerial entry : entries) {
+        run.add(toCrlEntry(entry, control));
+        if (run.size() >= CRL_RUN_SIZE) {
+          crlBuilder.addEntries(run);
+          run.clear();
+        }
+      }
+      crlBuilder.addEntries(run);
+      return;
+    }
+
+    List<CertRevInfoWithSerial> run = new ArrayList<>();
+    List<CertRevInfoWithSerial> revInfos;
+    long startId = 1;
+
+    do {
+      revInfos = certstore.getCertsForDeltaCrl(caIdent, startId, CRL_FETCH_SIZE,
+          control.isOnlyContainsCaCerts(), control.isOnlyContainsUserCerts());
+
+      for (CertRevInfoWithSerial revInfo : revInfos) {
+        startId = Math.max(startId, revInfo.getId() + 1);
+        run.add(toCrlEntry(revInfo, control));
+      }
+
+      if (run.size() >= CRL_RUN_SIZE) {
+        crlBuilder.addEntries(run);
+        run.clear();
+      }
+    } while (revInfos.size() >= CRL_FETCH_SIZE);
+
+    crlBuilder.addEntries(run);
+  }
+
+  /**
+   * Applies the CRL control to the reason and invalidity time.
+   */
+  private static CertRevInfoWithSerial toCrlEntry(CertRevInfoWithSerial revInfo,
+      CrlControl control) {
+    CrlReason reason = revInfo.getReason();
+    if (control.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
+      reason = CrlReason.UNSPECIFIED;
+    }
+
+    Date revocationTime = revInfo.getRevocationTime();
+    Date invalidityTime = revInfo.getInvalidityTime();
+
+    switch (control.getInvalidityDateMode()) {
+      case forbidden:
+        invalidityTime = null;
+        break;
+      case optional:
+        break;
+      case required:
+        if (invalidityTime == null) {
+          invalidityTime = revocationTime;
+        }
+        break;
+      default:
+        throw new IllegalStateException(
+            "unknown TripleState " + control.getInvalidityDateMode());
+    }
+
+    return new CertRevInfoWithSerial(revInfo.getId(), revInfo.getSerial(), reason,
+        revocationTime, invalidityTime);
+  }
+
   /**
    * Add XiPKI extension CrlCertSet.
    *
@@ -1000,7 +1265,7 @@ public class X509Ca implements Closeable {
    *         }
    * </pre>
    */
-  private void addXipkiCertset(X509v2CRLBuilder crlBuilder, boolean deltaCrl, CrlControl control,
+  private void addXipkiCertset(StreamingCrlBuilder crlBuilder, boolean deltaCrl, CrlControl control,
       Date notExpireAt, boolean onlyCaCerts, boolean onlyUserCerts) throws OperationException {
     if (deltaCrl || !control.isXipkiCertsetIncluded()) {
       return;
@@ -1046,8 +1311,8 @@ public class X509Ca implements Closeable {
 
     try {
       crlBuilder.addExtension(ObjectIdentifiers.id_xipki_ext_crlCertset, false, new DERSet(vector));
-    } catch (CertIOException ex) {
-      throw new OperationException(INVALID_EXTENSION, "CertIOException: " + ex.getMessage());
+    } catch (IOException ex) {
+      throw new OperationException(INVALID_EXTENSION, "IOException: " + ex.getMessage());
     }
   }
 
@@ -1084,6 +1349,27 @@ public class X509Ca implements Closeable {
       return 1;
     }
 
+    addToFpFilters(certInfo);
+    return publishCertToPublishers(certInfo) ? 0 : 2;
+  } // method publishCertificate0
+
+  private void addToFpFilters(CertificateInfo certInfo) {
+    if (keyFpFilter != null) {
+      keyFpFilter.add(FpIdCalculator.hash(certInfo.getSubjectPublicKey()));
+    }
+    if (subjectFpFilter != null) {
+      subjectFpFilter.add(
+          X509Util.fpCanonicalizedName(certInfo.getCert().getSubjectAsX500Name()));
+    }
+  }
+
+  /**
+   * Publishes the certificate saved in the certstore to the publishers. The certificate is
+   * added to the PUBLISHQUEUE of the publishers to which it could not be published.
+   * @param certInfo certificate to be published.
+   * @return whether the certificate is published or added to the PUBLISHQUEUE for all publishers.
+   */
+  private boolean publishCertToPublishers(CertificateInfo certInfo) {
     for (IdentifiedCertPublisher publisher : publishers()) {
       if (!publisher.isAsyn()) {
         boolean successful;
@@ -1103,14 +1389,15 @@ public class X509Ca implements Closeable {
       Long certId = certInfo.getCert().getCertId();
       try {
         certstore.addToPublishQueue(publisher.getIdent(), certId.longValue(), caIdent);
+        publishQueueProcessor.entryAdded(publisher);
       } catch (Throwable th) {
         LogUtil.error(LOG, th, "could not add entry to PublishQueue");
-        return 2;
+        return false;
       }
     } // end for
 
-    return 0;
-  } // method publishCertificate0
+    return true;
+  } // method publishCertToPublishers
 
   public boolean republishCerts(List<String> publisherNames, int numThreads) {
     List<IdentifiedCertPublisher> publishers;
@@ -1226,54 +1513,34 @@ public class X509Ca implements Closeable {
   }
 
   private boolean publishCertsInQueue(IdentifiedCertPublisher publisher) {
-    Args.notNull(publisher, "publisher");
-    final int numEntries = 500;
-
-    while (true) {
-      List<Long> certIds;
-      try {
-        certIds = certstore.getPublishQueueEntries(caIdent, publisher.getIdent(), numEntries);
-      } catch (OperationException ex) {
-        LogUtil.error(LOG, ex);
-        return false;
-      }
-
-      if (CollectionUtil.isEmpty(certIds)) {
-        break;
-      }
-
-      for (Long certId : certIds) {
-        CertificateInfo certInfo;
-
-        try {
-          certInfo = certstore.getCertForId(caIdent, caCert, certId, caIdNameMap);
-        } catch (OperationException | CertificateException ex) {
-          LogUtil.error(LOG, ex);
-          return false;
-        }
-
-        boolean successful = publisher.certificateAdded(certInfo);
-        if (!successful) {
-          LOG.error("republishing certificate id={} failed", certId);
-          return false;
-        }
+    return publishQueueProcessor.publish(publisher);
+  }
 
-        try {
-          certstore.removeFromPublishQueue(publisher.getIdent(), certId);
-        } catch (OperationException ex) {
-          LogUtil.warn(LOG, ex, "could not remove republished cert id=" + certId
-              + " and publisher=" + publisher.getIdent().getName());
-          continue;
-        }
-      } // end for
-    } // end while
+  /**
+   * Returns the number of entries in the PUBLISHQUEUE of the given publisher, as counted
+   * after the last failed publication.
+   * @param publisherName
+   *          Name of the publisher.
+   * @return the number of entries, 0 if the last publication was successful.
+   */
+  public long getPublishQueueBacklog(String publisherName) {
+    return publishQueueProcessor.getBacklog(publisherName);
+  }
 
-    return true;
-  } // method publishCertsInQueue
+  /**
+   * Returns since how long the PUBLISHQUEUE of the given publisher is not empty.
+   * @param publisherName
+   *          Name of the publisher.
+   * @return the lag in milliseconds, 0 if the queue is empty.
+   */
+  public long getPublishQueueLag(String publisherName) {
+    return publishQueueProcessor.getLag(publisherName);
+  }
 
   private boolean publishCrl(X509CRL crl) {
+    long crlId;
     try {
-      certstore.addCrl(caIdent, crl);
+      crlId = certstore.addCrl(caIdent, crl);
     } catch (Exception ex) {
       LOG.error("could not add CRL ca={}, thisUpdate={}: {}, ",
           caIdent.getName(), crl.getThisUpdate(), ex.getMessage());
@@ -1281,6 +1548,12 @@ public class X509Ca implements Closeable {
       return false;
     }
 
+    try {
+      crlCache.update(crlId, crl.getThisUpdate().getTime(), crl.getEncoded());
+    } catch (CRLException ex) {
+      LogUtil.warn(LOG, ex, "could not cache CRL of CA " + caIdent.getName());
+    }
+
     for (IdentifiedCertPublisher publisher : publishers()) {
       try {
         publisher.crlAdded(caCert, crl);
@@ -1408,6 +1681,9 @@ public class X509Ca implements Closeable {
     }
 
     certstore.removeCert(caIdent, serialNumber);
+    if (deltaCrlCache != null) {
+      deltaCrlCache.certificateRemoved(serialNumber);
+    }
     return certToRemove;
   } // method removeCertificate0
 
@@ -1432,6 +1708,7 @@ public class X509Ca implements Closeable {
     if (revokedCert == null) {
       return null;
     }
+    updateDeltaCrlCache(revokedCert.getCert(), revokedCert.getRevInfo());
 
     for (IdentifiedCertPublisher publisher : publishers()) {
       if (!publisher.isAsyn()) {
@@ -1453,6 +1730,7 @@ public class X509Ca implements Closeable {
       Long certId = revokedCert.getCert().getCertId();
       try {
         certstore.addToPublishQueue(publisher.getIdent(), certId.longValue(), caIdent);
+        publishQueueProcessor.entryAdded(publisher);
       } catch (Throwable th) {
         LogUtil.error(LOG, th, "could not add entry to PublishQueue");
       }
@@ -1498,6 +1776,7 @@ public class X509Ca implements Closeable {
     if (revokedCert == null) {
       return null;
     }
+    updateDeltaCrlCache(revokedCert.getCert(), revokedCert.getRevInfo());
 
     for (IdentifiedCertPublisher publisher : publishers()) {
       if (!publisher.isAsyn()) {
@@ -1519,6 +1798,7 @@ public class X509Ca implements Closeable {
       Long certId = revokedCert.getCert().getCertId();
       try {
         certstore.addToPublishQueue(publisher.getIdent(), certId.longValue(), caIdent);
+        publishQueueProcessor.entryAdded(publisher);
       } catch (Throwable th) {
         LogUtil.error(LOG, th, "could not add entry to PublishQueue");
       }
@@ -1545,6 +1825,7 @@ public class X509Ca implements Closeable {
     if (unrevokedCert == null) {
       return null;
     }
+    updateDeltaCrlCache(unrevokedCert, null);
 
     for (IdentifiedCertPublisher publisher : publishers()) {
       if (!publisher.isAsyn()) {
@@ -1565,6 +1846,7 @@ public class X509Ca implements Closeable {
       Long certId = unrevokedCert.getCertId();
       try {
         certstore.addToPublishQueue(publisher.getIdent(), certId.longValue(), caIdent);
+        publishQueueProcessor.entryAdded(publisher);
       } catch (Throwable th) {
         LogUtil.error(LOG, th, "could not add entry to PublishQueue");
       }
@@ -1695,62 +1977,166 @@ public class X509Ca implements Closeable {
       }
     }
 
-    List<CertificateInfo> certInfos = new ArrayList<>(n);
-    OperationExceptionWithIndex exception = null;
+    if (n > 1) {
+      return generateCertsInTransaction(gcts, requestor, reqType, transactionId, msgId);
+    }
+
+    GrantedCertTemplate gct = gcts.get(0);
+    logStart(gct);
+    OperationException exception;
+    try {
+      CertificateInfo certInfo = generateCert(gct, requestor, reqType, transactionId, msgId);
+      logSuccessful(gct, certInfo);
+      List<CertificateInfo> certInfos = new ArrayList<>(1);
+      certInfos.add(certInfo);
+      return certInfos;
+    } catch (OperationException ex) {
+      exception = ex;
+    } catch (Throwable th) {
+      exception = new OperationException(SYSTEM_FAILURE, th);
+    }
+
+    logFailed(gct);
+    OperationExceptionWithIndex exceptionWithIndex = new OperationExceptionWithIndex(0, exception);
+    LogUtil.warn(LOG, exceptionWithIndex);
+    throw exceptionWithIndex;
+  } // method generateCerts
 
+  /**
+   * Generates the certificates of several templates. The certificates are signed in parallel,
+   * by at most as many threads as the signers have instances, and saved in one transaction:
+   * either all or none of them are issued.
+   */
+  private List<CertificateInfo> generateCertsInTransaction(final List<GrantedCertTemplate> gcts,
+      final RequestorInfo requestor, final RequestType reqType, final byte[] transactionId,
+      String msgId) throws OperationExceptionWithIndex {
+    final int n = gcts.size();
+    final AuditEvent[] events = new AuditEvent[n];
+    final List<CompletableFuture<CertificateInfo>> futures = new ArrayList<>(n);
+    int parallelism = n;
     for (int i = 0; i < n; i++) {
-      if (exception != null) {
-        break;
-      }
-      GrantedCertTemplate gct = gcts.get(i);
-      final NameId certprofilIdent = gct.certprofile.getIdent();
-      final String subjectText = gct.grantedSubjectText;
-      LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'",
-          caIdent.getName(), certprofilIdent.getName(), subjectText);
+      events[i] = newPerfAuditEvent(CaAuditConstants.TYPE_gen_cert, msgId);
+      futures.add(new CompletableFuture<>());
+      parallelism = Math.min(parallelism, gcts.get(i).signer.getParallelism());
+    }
+
+    final AtomicInteger nextIndex = new AtomicInteger(0);
+    final AtomicBoolean failed = new AtomicBoolean(false);
+    Runnable worker = () -> {
+      for (int i = nextIndex.getAndIncrement(); i < n; i = nextIndex.getAndIncrement()) {
+        if (failed.get()) {
+          // skipped, since the certificates will not be issued.
+          futures.get(i).complete(null);
+          continue;
+        }
 
-      boolean successful = false;
-      try {
-        CertificateInfo certInfo = generateCert(gct, requestor, reqType, transactionId, msgId);
-        successful = true;
-        certInfos.add(certInfo);
+        GrantedCertTemplate gct = gcts.get(i);
+        logStart(gct);
+        try {
+          futures.get(i).complete(signCert(gct, requestor, reqType, transactionId, events[i]));
+        } catch (Throwable th) {
+          failed.set(true);
+          futures.get(i).completeExceptionally(th);
+        }
+      }
+    };
 
-        if (LOG.isInfoEnabled()) {
-          String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
-          CertWithDbId cert = certInfo.getCert();
-          LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
-              prefix, caIdent.getName(), certprofilIdent.getName(), cert.getSubject(),
-              LogUtil.formatCsn(cert.getCert().getSerialNumber()));
+    ExecutorService executor = caManager.getCertGenExecutor();
+    if (executor != null) {
+      for (int i = 1; i < parallelism; i++) {
+        try {
+          executor.execute(worker);
+        } catch (RejectedExecutionException ex) {
+          break;
         }
-      } catch (OperationException ex) {
-        exception = new OperationExceptionWithIndex(i, ex);
-      } catch (Throwable th) {
-        exception = new OperationExceptionWithIndex(i, new OperationException(SYSTEM_FAILURE, th));
-      } finally {
-        if (!successful) {
-          LOG.warn("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
-              caIdent.getName(), certprofilIdent.getName(), subjectText);
+      }
+    }
+    // the current thread processes the templates as well, so that all templates are
+    // processed even if all threads of the executor are busy.
+    worker.run();
+
+    CertificateInfo[] certInfos = new CertificateInfo[n];
+    boolean[] skipped = new boolean[n];
+    OperationExceptionWithIndex exception = null;
+    for (int i = 0; i < n; i++) {
+      try {
+        certInfos[i] = futures.get(i).join();
+        skipped[i] = (certInfos[i] == null);
+      } catch (CompletionException ex) {
+        if (exception == null) {
+          Throwable cause = ex.getCause();
+          exception = new OperationExceptionWithIndex(i, (cause instanceof OperationException)
+              ? (OperationException) cause : new OperationException(SYSTEM_FAILURE, cause));
         }
       }
     }
 
-    if (exception != null) {
-      LOG.error("could not generate certificate for request[{}], reverted all generated"
-          + " certificates", exception.getIndex());
-      // delete generated certificates
-      for (CertificateInfo m : certInfos) {
-        BigInteger serial = m.getCert().getCert().getSerialNumber();
+    List<CertificateInfo> ret = new ArrayList<>(n);
+    try {
+      if (exception == null) {
+        ret.addAll(Arrays.asList(certInfos));
         try {
-          removeCert(serial, msgId);
-        } catch (Throwable thr) {
-          LogUtil.error(LOG, thr, "could not delete certificate serial=" + serial);
+          certstore.addCerts(ret);
+          for (CertificateInfo certInfo : ret) {
+            addToFpFilters(certInfo);
+          }
+        } catch (OperationException ex) {
+          LogUtil.error(LOG, ex, "could not save certificates");
+          exception = new OperationExceptionWithIndex(0,
+              new OperationException(SYSTEM_FAILURE, "could not save certificates"));
+        }
+      }
+    } finally {
+      for (int i = 0; i < n; i++) {
+        if (certInfos[i] != null) {
+          releaseInProcess(gcts.get(i));
         }
       }
+    }
 
+    boolean successful = (exception == null);
+    for (int i = 0; i < n; i++) {
+      if (skipped[i]) {
+        continue;
+      }
+
+      if (successful) {
+        publishCertToPublishers(certInfos[i]);
+        logSuccessful(gcts.get(i), certInfos[i]);
+      } else {
+        logFailed(gcts.get(i));
+      }
+      finish(events[i], successful);
+    }
+
+    if (!successful) {
+      LOG.error("could not generate certificate for request[{}], none of the {} certificates"
+          + " is issued", exception.getIndex(), n);
       LogUtil.warn(LOG, exception);
       throw exception;
     }
 
-    return certInfos;
+    return ret;
+  } // method generateCertsInTransaction
+
+  private void logStart(GrantedCertTemplate gct) {
+    LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'",
+        caIdent.getName(), gct.certprofile.getIdent().getName(), gct.grantedSubjectText);
+  }
+
+  private void logSuccessful(GrantedCertTemplate gct, CertificateInfo certInfo) {
+    if (LOG.isInfoEnabled()) {
+      String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
+      CertWithDbId cert = certInfo.getCert();
+      LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
+          prefix, caIdent.getName(), gct.certprofile.getIdent().getName(), cert.getSubject(),
+          LogUtil.formatCsn(cert.getCert().getSerialNumber()));
+    }
+  }
+
+  private void logFailed(GrantedCertTemplate gct) {
+    LOG.warn("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
+        caIdent.getName(), gct.certprofile.getIdent().getName(), gct.grantedSubjectText);
   }
 
   public CertificateInfo generateCert(CertTemplateData certTemplate, RequestorInfo requestor,
@@ -1776,6 +2162,24 @@ public class X509Ca implements Closeable {
 
   private CertificateInfo generateCert0(GrantedCertTemplate gct, RequestorInfo requestor,
       RequestType reqType, byte[] transactionId, AuditEvent event) throws OperationException {
+    CertificateInfo ret = signCert(gct, requestor, reqType, transactionId, event);
+    try {
+      if (publishCert0(ret) == 1) {
+        throw new OperationException(SYSTEM_FAILURE, "could not save certificate");
+      }
+      return ret;
+    } finally {
+      releaseInProcess(gct);
+    }
+  } // method generateCertificate0
+
+  /**
+   * Generates the certificate without saving it. The public key and subject of the template
+   * remain in process until {@link #releaseInProcess(GrantedCertTemplate)} is called, except
+   * if an exception is thrown.
+   */
+  private CertificateInfo signCert(GrantedCertTemplate gct, RequestorInfo requestor,
+      RequestType reqType, byte[] transactionId, AuditEvent event) throws OperationException {
     Args.notNull(gct, "gct");
 
     event.addEventData(CaAuditConstants.NAME_req_subject,
@@ -1790,27 +2194,26 @@ public class X509Ca implements Closeable {
 
     IdentifiedCertprofile certprofile = gct.certprofile;
 
-    boolean duplicatedKeyNotAllowed = !caInfo.isDuplicateKeyPermitted();
-    boolean duplicatedSubjectNotAllowed = !caInfo.isDuplicateSubjectPermitted();
-    if (duplicatedKeyNotAllowed) {
+    if (!caInfo.isDuplicateKeyPermitted()) {
       if (!publicKeyCertsInProcess.add(gct.fpPublicKey)) {
         // in process already exists a request with given public key.
         throw new OperationException(ALREADY_ISSUED,
             "certificate with the given public key already in process");
       }
+      gct.keyInProcess = true;
     }
 
-    if (duplicatedSubjectNotAllowed) {
+    if (!caInfo.isDuplicateSubjectPermitted()) {
       if (!subjectCertsInProcess.add(gct.fpSubject)) {
         // in process already exists a request with given subject.
-        if (duplicatedKeyNotAllowed) { // remove the added entry from publicKeyCertsInProcess
-          publicKeyCertsInProcess.remove(gct.fpPublicKey);
-        }
+        releaseInProcess(gct);
         throw new OperationException(ALREADY_ISSUED,
             "certificate with the given subject " + gct.grantedSubjectText + " already in process");
       }
+      gct.subjectInProcess = true;
     }
 
+    boolean successful = false;
     try {
       X509v3CertificateBuilder certBuilder = new X509v3CertificateBuilder(
           caInfo.getPublicCaInfo().getX500Subject(), caInfo.nextSerial(), gct.grantedNotBefore,
@@ -1833,18 +2236,27 @@ public class X509Ca implements Closeable {
           }
         }
 
-        ConcurrentBagEntrySigner signer0;
-        try {
-          signer0 = gct.signer.borrowSigner();
-        } catch (NoIdleSignerException ex) {
-          throw new OperationException(SYSTEM_FAILURE, ex);
-        }
-
         X509CertificateHolder certHolder;
-        try {
-          certHolder = certBuilder.build(signer0.value());
-        } finally {
-          gct.signer.requiteSigner(signer0);
+        BatchSigner batchSigner = caInfo.getBatchSigner(gct.signer);
+        if (batchSigner != null) {
+          try {
+            certHolder = certBuilder.build(batchSigner.newContentSigner());
+          } catch (RuntimeOperatorException ex) {
+            throw new OperationException(SYSTEM_FAILURE, ex);
+          }
+        } else {
+          ConcurrentBagEntrySigner signer0;
+          try {
+            signer0 = gct.signer.borrowSigner();
+          } catch (NoIdleSignerException ex) {
+            throw new OperationException(SYSTEM_FAILURE, ex);
+          }
+
+          try {
+            certHolder = certBuilder.build(signer0.value());
+          } finally {
+            gct.signer.requiteSigner(signer0);
+          }
         }
 
         Certificate bcCert = certHolder.toASN1Structure();
@@ -1861,14 +2273,14 @@ public class X509Ca implements Closeable {
 
         X509Certificate cert;
         try {
-          cert = X509Util.toX509Cert(bcCert);
+          cert = X509Util.parseCert(encodedCert);
         } catch (CertificateException ex) {
           String message = "should not happen, could not parse generated certificate";
           LOG.error(message, ex);
           throw new OperationException(SYSTEM_FAILURE, ex);
         }
 
-        if (!verifySignature(cert)) {
+        if (!certSignatureVerifier.verify(cert)) {
           throw new OperationException(SYSTEM_FAILURE,
               "could not verify the signature of generated certificate");
         }
@@ -1882,10 +2294,6 @@ public class X509Ca implements Closeable {
         ret.setReqType(reqType);
         ret.setTransactionId(transactionId);
         ret.setRequestedSubject(gct.requestedSubject);
-
-        if (publishCert0(ret) == 1) {
-          throw new OperationException(SYSTEM_FAILURE, "could not save certificate");
-        }
       } catch (BadCertTemplateException ex) {
         throw new OperationException(BAD_CERT_TEMPLATE, ex);
       } catch (OperationException ex) {
@@ -1899,16 +2307,25 @@ public class X509Ca implements Closeable {
         ret.setWarningMessage(gct.warning);
       }
 
+      successful = true;
       return ret;
     } finally {
-      if (duplicatedKeyNotAllowed) {
-        publicKeyCertsInProcess.remove(gct.fpPublicKey);
-      }
-      if (duplicatedSubjectNotAllowed) {
-        subjectCertsInProcess.remove(gct.fpSubject);
+      if (!successful) {
+        releaseInProcess(gct);
       }
     }
-  } // method generateCertificate0
+  } // method signCert
+
+  private void releaseInProcess(GrantedCertTemplate gct) {
+    if (gct.keyInProcess) {
+      publicKeyCertsInProcess.remove(gct.fpPublicKey);
+      gct.keyInProcess = false;
+    }
+    if (gct.subjectInProcess) {
+      subjectCertsInProcess.remove(gct.fpSubject);
+      gct.subjectInProcess = false;
+    }
+  }
 
   private void adaptGrantedSubejct(GrantedCertTemplate gct) throws OperationException {
     if (caInfo.isDuplicateSubjectPermitted()) {
@@ -1919,7 +2336,7 @@ public class X509Ca implements Closeable {
     String grantedSubjectText = X509Util.getRfc4519Name(gct.grantedSubject);
 
     final boolean incSerial = gct.certprofile.incSerialNumberIfSubjectExists();
-    final boolean certIssued = certstore.isCertForSubjectIssued(caIdent, fpSubject);
+    final boolean certIssued = isCertForSubjectIssued(fpSubject);
     if (certIssued && !incSerial) {
       throw new OperationException(ALREADY_ISSUED,
           "certificate for the given subject " + grantedSubjectText + " already issued");
@@ -1953,8 +2370,7 @@ public class X509Ca implements Closeable {
         throw new OperationException(SYSTEM_FAILURE, ex);
       }
 
-      foundUniqueSubject = !certstore.isCertForSubjectIssued(caIdent,
-          X509Util.fpCanonicalizedName(subject));
+      foundUniqueSubject = !isCertForSubjectIssued(X509Util.fpCanonicalizedName(subject));
       if (foundUniqueSubject) {
         break;
       }
@@ -2065,101 +2481,24 @@ public class X509Ca implements Closeable {
         }
       }
     } else if (certTemplate.isCaGenerateKeypair()) {
-      KeypairGenControl kg = certprofile.getKeypairGenControl();
+      KeypairGenControl kg = getKeypairGenControl(certprofile);
 
       try {
-        if (kg instanceof KeypairGenControl.InheritCAKeypairGenControl) {
-          kg = keypairGenControlByImplictCA;
-        }
-
         if (kg == null || kg instanceof KeypairGenControl.ForbiddenKeypairGenControl) {
           throw new OperationException(BAD_CERT_TEMPLATE, "no public key is specified");
         }
 
-        if (kg instanceof KeypairGenControl.RSAKeypairGenControl) {
-          KeypairGenControl.RSAKeypairGenControl tkg = (KeypairGenControl.RSAKeypairGenControl) kg;
-
-          int keysize = tkg.getKeysize();
-          if (keysize > 4096) {
-            throw new OperationException(BAD_CERT_TEMPLATE, "keysize too large");
-          }
-
-          BigInteger publicExponent = tkg.getPublicExponent();
-
-          KeyPair kp = KeyUtil.generateRSAKeypair(keysize, publicExponent, random);
-          java.security.interfaces.RSAPublicKey rsaPubKey =
-              (java.security.interfaces.RSAPublicKey) kp.getPublic();
-
-          grantedPublicKeyInfo = new SubjectPublicKeyInfo(tkg.getKeyAlgorithm(),
-              new RSAPublicKey(rsaPubKey.getModulus(), rsaPubKey.getPublicExponent()));
-
-          /*
-           * RSA private keys are BER-encoded according to PKCS #1’s RSAPrivateKey ASN.1 type.
-           *
-           * RSAPrivateKey ::= SEQUENCE {
-           *   version           Version,
-           *   modulus           INTEGER,  -- n
-           *   publicExponent    INTEGER,  -- e
-           *   privateExponent   INTEGER,  -- d
-           *   prime1            INTEGER,  -- p
-           *   prime2            INTEGER,  -- q
-           *   exponent1         INTEGER,  -- d mod (p-1)
-           *   exponent2         INTEGER,  -- d mod (q-1)
-           *   coefficient       INTEGER,  -- (inverse of q) mod p
-           *   otherPrimeInfos   OtherPrimeInfos OPTIONAL.
-           * }
-           */
-          RSAPrivateCrtKey priv = (RSAPrivateCrtKey) kp.getPrivate();
-          privateKey = new PrivateKeyInfo(tkg.getKeyAlgorithm(),
-             new RSAPrivateKey(priv.getModulus(),
-                 priv.getPublicExponent(), priv.getPrivateExponent(),
-                 priv.getPrimeP(), priv.getPrimeQ(),
-                 priv.getPrimeExponentP(), priv.getPrimeExponentQ(),
-                 priv.getCrtCoefficient()));
-        } else if (kg instanceof KeypairGenControl.ECKeypairGenControl) {
-          KeypairGenControl.ECKeypairGenControl tkg = (KeypairGenControl.ECKeypairGenControl) kg;
-          ASN1ObjectIdentifier curveOid = tkg.getCurveOid();
-          KeyPair kp = KeyUtil.generateECKeypair(curveOid, random);
-          ECPublicKey pub = (ECPublicKey) kp.getPublic();
-          int orderBitLength = pub.getParams().getOrder().bitLength();
-
-          byte[] keyData = KeyUtil.getUncompressedEncodedECPoint(pub.getW(), orderBitLength);
-          grantedPublicKeyInfo = new SubjectPublicKeyInfo(tkg.getKeyAlgorithm(), keyData);
-
-          /*
-           * ECPrivateKey ::= SEQUENCE {
-           *   Version INTEGER { ecPrivkeyVer1(1) }
-           *                   (ecPrivkeyVer1),
-           *   privateKey      OCTET STRING,
-           *   parameters [0]  Parameters OPTIONAL,
-           *   publicKey  [1]  BIT STRING OPTIONAL
-           * }
-           *
-           * Since the EC domain parameters are placed in the PKCS #8’s privateKeyAlgorithm field,
-           * the optional parameters field in an ECPrivateKey must be omitted. A Cryptoki
-           * application must be able to unwrap an ECPrivateKey that contains the optional publicKey
-           * field; however, what is done with this publicKey field is outside the scope of
-           * Cryptoki.
-           */
-          ECPrivateKey priv = (ECPrivateKey) kp.getPrivate();
-          privateKey = new PrivateKeyInfo(tkg.getKeyAlgorithm(),
-              new org.bouncycastle.asn1.sec.ECPrivateKey(orderBitLength, priv.getS()));
-        } else if (kg instanceof KeypairGenControl.DSAKeypairGenControl) {
-          KeypairGenControl.DSAKeypairGenControl tkg = (KeypairGenControl.DSAKeypairGenControl) kg;
-          KeyPair kp = KeyUtil.generateDSAKeypair(tkg.getParameterSpec(), random);
-
-          grantedPublicKeyInfo = new SubjectPublicKeyInfo(tkg.getKeyAlgorithm(),
-              new ASN1Integer(((DSAPublicKey) kp.getPublic()).getY()));
-
-          // DSA private keys are represented as BER-encoded ASN.1 type INTEGER.
-          DSAPrivateKey priv = (DSAPrivateKey) kp.getPrivate();
-          privateKey = new PrivateKeyInfo(grantedPublicKeyInfo.getAlgorithm(),
-              new ASN1Integer(priv.getX()));
-        } else {
-          throw new RuntimeCryptoException("unknown KeyPairGenControl " + kg);
+        if (kg instanceof KeypairGenControl.RSAKeypairGenControl
+            && ((KeypairGenControl.RSAKeypairGenControl) kg).getKeysize() > 4096) {
+          throw new OperationException(BAD_CERT_TEMPLATE, "keysize too large");
         }
-      } catch (InvalidAlgorithmParameterException | NoSuchAlgorithmException
-          | NoSuchProviderException | IOException ex) {
+
+        KeypairPool keypairPool = caManager.getKeypairPool();
+        KeypairPool.GeneratedKeypair kp = (keypairPool == null)
+            ? KeypairPool.generateKeypair(kg, random) : keypairPool.getKeypair(kg);
+        grantedPublicKeyInfo = kp.getPublicKeyInfo();
+        privateKey = kp.getPrivateKeyInfo();
+      } catch (GeneralSecurityException | IOException ex) {
         throw new OperationException(SYSTEM_FAILURE, ex);
       }
     } else {
@@ -2216,7 +2555,7 @@ public class X509Ca implements Closeable {
       }
     } else {
       if (!duplicateKeyPermitted) {
-        if (certstore.isCertForKeyIssued(caIdent, fpPublicKey)) {
+        if (isCertForKeyIssued(fpPublicKey)) {
           throw new OperationException(ALREADY_ISSUED,
               "certificate for the given public key already issued");
         }
@@ -2372,6 +2711,35 @@ public class X509Ca implements Closeable {
     return caManager;
   }
 
+  /**
+   * Fills the keypair pool for the certprofiles of this CA in which the CA generates the
+   * keypair.
+   * @param keypairPool the keypair pool. Must not be {@code null}.
+   */
+  void warmUpKeypairPool(KeypairPool keypairPool) {
+    Set<String> profileNames = caManager.getCertprofilesForCa(caIdent.getName());
+    if (profileNames == null) {
+      return;
+    }
+
+    for (String profileName : profileNames) {
+      IdentifiedCertprofile certprofile = caManager.getIdentifiedCertprofile(profileName);
+      KeypairGenControl kg = (certprofile == null) ? null : getKeypairGenControl(certprofile);
+      if (kg == null || (kg instanceof KeypairGenControl.RSAKeypairGenControl
+          && ((KeypairGenControl.RSAKeypairGenControl) kg).getKeysize() > 4096)) {
+        continue;
+      }
+
+      keypairPool.warmUp(kg);
+    }
+  }
+
+  private KeypairGenControl getKeypairGenControl(IdentifiedCertprofile certprofile) {
+    KeypairGenControl kg = certprofile.getKeypairGenControl();
+    return (kg instanceof KeypairGenControl.InheritCAKeypairGenControl)
+        ? keypairGenControlByImplictCA : kg;
+  }
+
   private Date getCrlNextUpdate(Date thisUpdate) {
     Args.notNull(thisUpdate, "thisUpdate");
     CrlControl control = caInfo.getCrlControl();
@@ -2567,6 +2935,15 @@ public class X509Ca implements Closeable {
       result.addChildCheck(crlSignerHealth);
     }
 
+    HealthCheckResult verificationHealth = certSignatureVerifier.healthCheck();
+    healthy &= verificationHealth.isHealthy();
+    result.addChildCheck(verificationHealth);
+
+    UserAuthCache userAuthCache = caManager.getUserAuthCache();
+    if (userAuthCache != null) {
+      result.addChildCheck(userAuthCache.healthCheck());
+    }
+
     for (IdentifiedCertPublisher publisher : publishers()) {
       boolean ph = publisher.isHealthy();
       healthy &= ph;
@@ -2603,18 +2980,21 @@ public class X509Ca implements Closeable {
     return event;
   }
 
-  private boolean verifySignature(X509Certificate cert) {
-    Args.notNull(cert, "cert");
-    PublicKey caPublicKey = caCert.getCert().getPublicKey();
-    try {
-      cert.verify(caPublicKey);
-      return true;
-    } catch (SignatureException | InvalidKeyException | CertificateException
-        | NoSuchAlgorithmException | NoSuchProviderException ex) {
-      LOG.debug("{} while verifying signature: {}", ex.getClass().getName(), ex.getMessage());
-      return false;
-    }
-  } // method verifySignature
+  /**
+   * Alarms that the signature of an issued certificate, verified in background, is invalid.
+   */
+  private void certSignatureInvalid(X509Certificate cert) {
+    String serial = LogUtil.formatCsn(cert.getSerialNumber());
+    LOG.error("ALARM: invalid signature of the issued certificate (ca={}, serialNumber={})",
+        caIdent.getName(), serial);
+
+    AuditEvent event = newPerfAuditEvent(CaAuditConstants.TYPE_verify_cert_signature,
+        CaAuditConstants.MSGID_ca_routine);
+    event.addEventData(CaAuditConstants.NAME_serial, serial);
+    event.addEventData(CaAuditConstants.NAME_subject,
+        X509Util.getRfc4519Name(cert.getSubjectX500Principal()));
+    finish(event, false);
+  } // method certSignatureInvalid
 
   private SignerEntryWrapper getCrlSigner() {
     if (caInfo.getCrlControl() == null) {
@@ -2654,36 +3034,17 @@ public class X509Ca implements Closeable {
       suspendedCertsRevoker = null;
     }
 
-    ScheduledThreadPoolExecutor executor = caManager.getScheduledThreadPoolExecutor();
-    if (executor != null) {
-      executor.purge();
-    }
-  }
-
-  private static Extension createReasonExtension(int reasonCode) {
-    CRLReason crlReason = CRLReason.lookup(reasonCode);
-    try {
-      return new Extension(Extension.reasonCode, false, crlReason.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
+    if (fpFiltersLoader != null) {
+      fpFiltersLoader.cancel(true);
+      fpFiltersLoader = null;
     }
-  }
 
-  private static Extension createInvalidityDateExtension(Date invalidityDate) {
-    try {
-      ASN1GeneralizedTime asnTime = new ASN1GeneralizedTime(invalidityDate);
-      return new Extension(Extension.invalidityDate, false, asnTime.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
-    }
-  }
+    certSignatureVerifier.close();
+    crlCache.close();
 
-  private static Extension createCertificateIssuerExtension(X500Name certificateIssuer) {
-    try {
-      GeneralNames generalNames = new GeneralNames(new GeneralName(certificateIssuer));
-      return new Extension(Extension.certificateIssuer, true, generalNames.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
+    ScheduledThreadPoolExecutor executor = caManager.getScheduledThreadPoolExecutor();
+    if (executor != null) {
+      executor.purge();
     }
   }
 
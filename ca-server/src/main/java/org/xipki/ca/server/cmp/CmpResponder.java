@@ -39,6 +39,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
@@ -189,6 +190,7 @@ public class CmpResponder extends BaseCmpResponder {
           serialNumber = remainingCert.getCert().getCert().getSerialNumber();
           ca.revokeCert(serialNumber, CrlReason.CESSATION_OF_OPERATION,
               invalidityDate, CaAuditConstants.MSGID_ca_routine);
+          numTimeoutedRevoked.incrementAndGet();
         } catch (Throwable th) {
           LOG.error("could not revoke certificate (CA={}, serialNumber={}): {}",
               ca.getCaInfo().getIdent(), LogUtil.formatCsn(serialNumber), th.getMessage());
@@ -217,6 +219,11 @@ public class CmpResponder extends BaseCmpResponder {
 
   private final PendingCertificatePool pendingCertPool;
 
+  /**
+   * Number of the certificates revoked since their confirmation has timed out.
+   */
+  private final AtomicLong numTimeoutedRevoked = new AtomicLong(0);
+
   private final KeyGenerator aesKeyGen;
 
   private final String caName;
@@ -288,7 +295,7 @@ public class CmpResponder extends BaseCmpResponder {
     this.caName = caName;
 
     PendingPoolCleaner pendingPoolCleaner = new PendingPoolCleaner();
-    caManager.getScheduledThreadPoolExecutor().scheduleAtFixedRate(pendingPoolCleaner, 10, 10,
+    caManager.getScheduledThreadPoolExecutor().scheduleAtFixedRate(pendingPoolCleaner, 1, 1,
         TimeUnit.MINUTES);
   }
 
@@ -326,6 +333,16 @@ public class CmpResponder extends BaseCmpResponder {
     responderHealth.setHealthy(responderHealthy);
     result.addChildCheck(responderHealth);
 
+    HealthCheckResult pendingCertsHealth = new HealthCheckResult();
+    pendingCertsHealth.setName("PendingCertificates");
+    pendingCertsHealth.setHealthy(true);
+    Map<String, Object> statuses = new HashMap<>();
+    statuses.put("pending", pendingCertPool.getNumPending());
+    statuses.put("timeouted", pendingCertPool.getNumTimeouted());
+    statuses.put("timeoutedRevoked", numTimeoutedRevoked.get());
+    pendingCertsHealth.setStatuses(statuses);
+    result.addChildCheck(pendingCertsHealth);
+
     result.setHealthy(healthy);
     return result;
   }
@@ -18,27 +18,40 @@
 package org.xipki.ca.server.cmp;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.xipki.ca.api.CertificateInfo;
 import org.xipki.security.HashAlgo;
-import org.xipki.util.CollectionUtil;
-import org.xipki.util.Hex;
 import org.xipki.util.Args;
+import org.xipki.util.Hex;
 
 /**
- * TODO.
+ * Certificates waiting for the confirmation. The certificates are indexed by the transaction
+ * in a concurrent map, and ordered by the deadline of the confirmation in a concurrent sorted
+ * set, so that neither the confirmation nor the removal of the timed out certificates
+ * requires a global lock.
+ *
  * @author Lijun Liao
  * @since 2.0.0
  */
 
 class PendingCertificatePool {
 
-  private static class MyEntry {
+  private static class MyEntry implements Comparable<MyEntry> {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong(0);
+
+    private final String hexTid;
 
     private final BigInteger certReqId;
 
@@ -48,33 +61,52 @@ class PendingCertificatePool {
 
     private final byte[] certHash;
 
-    MyEntry(BigInteger certReqId, long waitForConfirmTill, CertificateInfo certInfo) {
+    /**
+     * Makes the entries with the same waitForConfirmTill distinct in the expiry set.
+     */
+    private final long sequence;
+
+    MyEntry(String hexTid, BigInteger certReqId, long waitForConfirmTill,
+        CertificateInfo certInfo) {
+      this.hexTid = hexTid;
       this.certReqId = Args.notNull(certReqId, "certReqId");
       this.certInfo = Args.notNull(certInfo, "certInfo");
       this.waitForConfirmTill = waitForConfirmTill;
       this.certHash = HashAlgo.SHA1.hash(certInfo.getCert().getEncodedCert());
+      this.sequence = SEQUENCE.getAndIncrement();
+    }
+
+    @Override
+    public int compareTo(MyEntry obj) {
+      int diff = Long.compare(waitForConfirmTill, obj.waitForConfirmTill);
+      return (diff != 0) ? diff : Long.compare(sequence, obj.sequence);
     }
 
     @Override
     public int hashCode() {
-      return certReqId.hashCode() + 961 * (int) waitForConfirmTill + 31 * certInfo.hashCode();
+      return Long.hashCode(sequence);
     }
 
     @Override
     public boolean equals(Object obj) {
-      if (this == obj) {
-        return true;
-      } else if (!(obj instanceof MyEntry)) {
-        return false;
-      }
-
-      MyEntry another = (MyEntry) obj;
-      return certReqId.equals(another.certReqId) && certInfo.equals(another.certInfo);
+      return this == obj;
     }
 
   } // class MyEntry
 
-  private final Map<String, Set<MyEntry>> map = new HashMap<>();
+  /**
+   * Map of the hex-encoded transaction id to the entries of the transaction by certReqId. A
+   * certReqId may be used by more than one certificate of a transaction. The inner maps are
+   * only accessed within the atomic operations of the outer map.
+   */
+  private final ConcurrentHashMap<String, Map<BigInteger, List<MyEntry>>> map =
+      new ConcurrentHashMap<>();
+
+  private final ConcurrentSkipListSet<MyEntry> expirySet = new ConcurrentSkipListSet<>();
+
+  private final AtomicInteger numPending = new AtomicInteger(0);
+
+  private final AtomicLong numTimeouted = new AtomicLong(0);
 
   PendingCertificatePool() {
   }
@@ -88,15 +120,17 @@ class PendingCertificatePool {
     }
 
     String hexTid = Hex.encode(transactionId);
-    MyEntry myEntry = new MyEntry(certReqId, waitForConfirmTill, certInfo);
-    synchronized (map) {
-      Set<MyEntry> entries = map.get(hexTid);
+    MyEntry myEntry = new MyEntry(hexTid, certReqId, waitForConfirmTill, certInfo);
+    expirySet.add(myEntry);
+
+    map.compute(hexTid, (k, entries) -> {
       if (entries == null) {
-        entries = new HashSet<>();
-        map.put(hexTid, entries);
+        entries = new HashMap<>();
       }
-      entries.add(myEntry);
-    }
+      entries.computeIfAbsent(certReqId, id -> new ArrayList<>(1)).add(myEntry);
+      return entries;
+    });
+    numPending.incrementAndGet();
   }
 
   CertificateInfo removeCertificate(byte[] transactionId, BigInteger certReqId, byte[] certHash) {
@@ -105,75 +139,114 @@ class PendingCertificatePool {
     Args.notNull(certHash, "certHash");
 
     String hexTid = Hex.encode(transactionId);
-    MyEntry retEntry = null;
+    MyEntry[] found = new MyEntry[1];
+    boolean[] removed = new boolean[1];
 
-    synchronized (map) {
-      Set<MyEntry> entries = map.get(hexTid);
-      if (entries == null) {
-        return null;
+    map.computeIfPresent(hexTid, (k, entries) -> {
+      List<MyEntry> reqEntries = entries.get(certReqId);
+      if (reqEntries == null) {
+        return entries;
       }
 
-      for (MyEntry entry : entries) {
-        if (certReqId.equals(entry.certReqId)) {
-          retEntry = entry;
+      for (MyEntry entry : reqEntries) {
+        if (Arrays.equals(certHash, entry.certHash)) {
+          found[0] = entry;
+          removed[0] = true;
           break;
         }
       }
 
-      if (retEntry != null) {
-        if (Arrays.equals(certHash, retEntry.certHash)) {
-          entries.remove(retEntry);
-
-          if (CollectionUtil.isEmpty(entries)) {
-            map.remove(hexTid);
-          }
-        }
+      if (removed[0]) {
+        removeEntry(entries, found[0]);
+      } else {
+        found[0] = reqEntries.get(0);
       }
+      return entries.isEmpty() ? null : entries;
+    });
+
+    if (removed[0]) {
+      expirySet.remove(found[0]);
+      numPending.decrementAndGet();
     }
 
-    return (retEntry == null) ? null : retEntry.certInfo;
+    return (found[0] == null) ? null : found[0].certInfo;
   }
 
   Set<CertificateInfo> removeCertificates(byte[] transactionId) {
     Args.notNull(transactionId, "transactionId");
 
-    String hexId = Hex.encode(transactionId);
-    Set<MyEntry> entries;
-    synchronized  (map) {
-      entries = map.remove(hexId);
-    }
-
+    Map<BigInteger, List<MyEntry>> entries = map.remove(Hex.encode(transactionId));
     if (entries == null) {
       return null;
     }
 
     Set<CertificateInfo> ret = new HashSet<>();
-    for (MyEntry myEntry :entries) {
-      ret.add(myEntry.certInfo);
+    for (List<MyEntry> reqEntries : entries.values()) {
+      for (MyEntry myEntry : reqEntries) {
+        expirySet.remove(myEntry);
+        ret.add(myEntry.certInfo);
+      }
+      numPending.addAndGet(-reqEntries.size());
     }
     return ret;
   }
 
+  /**
+   * Removes the certificates whose confirmation has timed out.
+   * @return the removed certificates, {@code null} if no certificate has timed out.
+   */
   Set<CertificateInfo> removeConfirmTimeoutedCertificates() {
-    synchronized (map) {
-      if (CollectionUtil.isEmpty(map)) {
-        return null;
-      }
+    long now = System.currentTimeMillis();
+    Set<CertificateInfo> ret = null;
 
-      long now = System.currentTimeMillis();
+    // the entries are ordered by waitForConfirmTill
+    for (MyEntry entry : expirySet) {
+      if (entry.waitForConfirmTill >= now) {
+        break;
+      }
 
-      Set<CertificateInfo> ret = new HashSet<>();
+      if (!expirySet.remove(entry)) {
+        // removed concurrently
+        continue;
+      }
 
-      for (String tid : map.keySet()) {
-        Set<MyEntry> entries = map.get(tid);
-        for (MyEntry entry : entries) {
-          if (entry.waitForConfirmTill < now) {
-            ret.add(entry.certInfo);
-          }
+      boolean[] removed = new boolean[1];
+      map.computeIfPresent(entry.hexTid, (k, entries) -> {
+        removed[0] = removeEntry(entries, entry);
+        return entries.isEmpty() ? null : entries;
+      });
+
+      if (removed[0]) {
+        numPending.decrementAndGet();
+        numTimeouted.incrementAndGet();
+        if (ret == null) {
+          ret = new HashSet<>();
         }
+        ret.add(entry.certInfo);
       }
-      return ret;
     }
+
+    return ret;
+  }
+
+  private static boolean removeEntry(Map<BigInteger, List<MyEntry>> entries, MyEntry entry) {
+    List<MyEntry> reqEntries = entries.get(entry.certReqId);
+    if (reqEntries == null || !reqEntries.remove(entry)) {
+      return false;
+    }
+
+    if (reqEntries.isEmpty()) {
+      entries.remove(entry.certReqId);
+    }
+    return true;
+  }
+
+  int getNumPending() {
+    return numPending.get();
+  }
+
+  long getNumTimeouted() {
+    return numTimeouted.get();
   }
 
 }
@@ -21,7 +21,10 @@ import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509CRL;
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -146,6 +149,30 @@ public class OcspCertPublisher extends CertPublisher {
     }
   }
 
+  @Override
+  public List<CertificateInfo> certificatesAdded(List<CertificateInfo> certInfos) {
+    if (certInfos.size() > 1) {
+      try {
+        queryExecutor.addCerts(certInfos);
+        return Collections.emptyList();
+      } catch (Exception ex) {
+        LOG.warn("could not save {} certificates in one transaction, save them separately: {}",
+            certInfos.size(), ex.getMessage());
+        LOG.debug("could not save certificates in one transaction", ex);
+      }
+    }
+
+    // a single certificate, or the batch failed: save the certificates separately, so that
+    // only the invalid ones fail.
+    List<CertificateInfo> failedCertInfos = new ArrayList<>(0);
+    for (CertificateInfo certInfo : certInfos) {
+      if (!certificateAdded(certInfo)) {
+        failedCertInfos.add(certInfo);
+      }
+    }
+    return failedCertInfos;
+  } // method certificatesAdded
+
   @Override
   public boolean certificateRevoked(X509Cert caCert, CertWithDbId cert,
       String certprofile, CertRevocationInfo revInfo) {
@@ -20,6 +20,7 @@ package org.xipki.ca.server.publisher;
 import java.math.BigInteger;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -28,6 +29,7 @@ import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +37,7 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.CertificateInfo;
 import org.xipki.ca.api.OperationException;
 import org.xipki.ca.api.OperationException.ErrorCode;
 import org.xipki.datasource.DataAccessException;
@@ -121,12 +124,22 @@ class OcspStoreQueryExecutor {
       "INSERT INTO CERT (ID,LUPDATE,SN,NBEFORE,NAFTER,REV,IID,HASH,SUBJECT) "
       + "VALUES (?,?,?,?,?,?,?,?,?)";
 
+  private static final String SQL_UPDATE_CERT =
+      "UPDATE CERT SET LUPDATE=?,REV=?,RT=?,RIT=?,RR=? WHERE ID=?";
+
+  /**
+   * Number of certificates added or updated in one batch by {@link #addCerts(List)}.
+   */
+  private static final int BATCH_SIZE = 100;
+
   private static final Logger LOG = LoggerFactory.getLogger(OcspStoreQueryExecutor.class);
 
   private final DataSourceWrapper datasource;
 
   private final String sqlCertRegistered;
 
+  private final String sqlCertsRegistered;
+
   private final IssuerStore issuerStore;
 
   private final boolean publishGoodCerts;
@@ -145,6 +158,12 @@ class OcspStoreQueryExecutor {
     this.publishGoodCerts = publishGoodCerts;
 
     this.sqlCertRegistered = datasource.buildSelectFirstSql(1, "ID FROM CERT WHERE SN=? AND IID=?");
+
+    StringBuilder sb = new StringBuilder("SELECT ID,SN FROM CERT WHERE IID=? AND SN IN (?");
+    for (int i = 1; i < BATCH_SIZE; i++) {
+      sb.append(",?");
+    }
+    this.sqlCertsRegistered = sb.append(")").toString();
     final String sql = "SELECT NAME,VALUE2 FROM DBSCHEMA";
 
     Map<String, String> variables = new HashMap<>();
@@ -230,40 +249,10 @@ class OcspStoreQueryExecutor {
     final String sql = revoked ? SQL_ADD_REVOKED_CERT : SQL_ADD_CERT;
 
     long certId = certificate.getCertId();
-    byte[] encodedCert = certificate.getEncodedCert();
-    String certHash = certhashAlgo.base64Hash(encodedCert);
-
-    X509Certificate cert = certificate.getCert();
-    long notBeforeSeconds = cert.getNotBefore().getTime() / 1000;
-    long notAfterSeconds = cert.getNotAfter().getTime() / 1000;
-    String cuttedSubject = X509Util.cutText(certificate.getSubject(), maxX500nameLen);
-
     PreparedStatement ps = datasource.prepareStatement(sql);
 
     try {
-      // CERT
-      int idx = 1;
-      ps.setLong(idx++, certId);
-      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
-      ps.setString(idx++, serialNumber.toString(16));
-      ps.setLong(idx++, notBeforeSeconds);
-      ps.setLong(idx++, notAfterSeconds);
-      setBoolean(ps, idx++, revoked);
-      ps.setInt(idx++, issuerId);
-      ps.setString(idx++, certHash);
-      ps.setString(idx++, cuttedSubject);
-
-      if (revoked) {
-        long revTime = revInfo.getRevocationTime().getTime() / 1000;
-        ps.setLong(idx++, revTime);
-        if (revInfo.getInvalidityTime() != null) {
-          ps.setLong(idx++, revInfo.getInvalidityTime().getTime() / 1000);
-        } else {
-          ps.setNull(idx++, Types.BIGINT);
-        }
-        int reasonCode = (revInfo.getReason() == null) ? 0 : revInfo.getReason().getCode();
-        ps.setInt(idx++, reasonCode);
-      }
+      setAddCertParams(ps, issuerId, certificate, revInfo, revoked);
 
       try {
         ps.executeUpdate();
@@ -287,33 +276,57 @@ class OcspStoreQueryExecutor {
     }
   } // method addOrUpdateCert
 
+  /**
+   * Sets the parameters of {@link #SQL_ADD_CERT}, or of {@link #SQL_ADD_REVOKED_CERT} if
+   * {@code withRevInfo} is {@code true}.
+   */
+  private void setAddCertParams(PreparedStatement ps, int issuerId, CertWithDbId certificate,
+      CertRevocationInfo revInfo, boolean withRevInfo) throws SQLException {
+    X509Certificate cert = certificate.getCert();
+    String certHash = certhashAlgo.base64Hash(certificate.getEncodedCert());
+    String cuttedSubject = X509Util.cutText(certificate.getSubject(), maxX500nameLen);
+
+    // CERT
+    int idx = 1;
+    ps.setLong(idx++, certificate.getCertId());
+    ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
+    ps.setString(idx++, cert.getSerialNumber().toString(16));
+    ps.setLong(idx++, cert.getNotBefore().getTime() / 1000);
+    ps.setLong(idx++, cert.getNotAfter().getTime() / 1000);
+    setBoolean(ps, idx++, revInfo != null);
+    ps.setInt(idx++, issuerId);
+    ps.setString(idx++, certHash);
+    ps.setString(idx++, cuttedSubject);
+
+    if (!withRevInfo) {
+      return;
+    }
+
+    if (revInfo != null) {
+      long revTime = revInfo.getRevocationTime().getTime() / 1000;
+      ps.setLong(idx++, revTime);
+      if (revInfo.getInvalidityTime() != null) {
+        ps.setLong(idx++, revInfo.getInvalidityTime().getTime() / 1000);
+      } else {
+        ps.setNull(idx++, Types.BIGINT);
+      }
+      int reasonCode = (revInfo.getReason() == null) ? 0 : revInfo.getReason().getCode();
+      ps.setInt(idx++, reasonCode);
+    } else {
+      ps.setNull(idx++, Types.BIGINT); // rev_time
+      ps.setNull(idx++, Types.BIGINT); // rev_invalidity_time
+      ps.setNull(idx++, Types.INTEGER); // rev_reason
+    }
+  } // method setAddCertParams
+
   private void updateRegisteredCert(long registeredCertId, CertRevocationInfo revInfo)
       throws DataAccessException {
-    boolean revoked = (revInfo != null);
-
-    final String sql = "UPDATE CERT SET LUPDATE=?,REV=?,RT=?,RIT=?,RR=? WHERE ID=?";
+    final String sql = SQL_UPDATE_CERT;
 
     PreparedStatement ps = datasource.prepareStatement(sql);
 
     try {
-      int idx = 1;
-      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
-      setBoolean(ps, idx++, revoked);
-      if (revoked) {
-        long revTime = revInfo.getRevocationTime().getTime() / 1000;
-        ps.setLong(idx++, revTime);
-        if (revInfo.getInvalidityTime() != null) {
-          ps.setLong(idx++, revInfo.getInvalidityTime().getTime() / 1000);
-        } else {
-          ps.setNull(idx++, Types.INTEGER);
-        }
-        ps.setInt(idx++, revInfo.getReason().getCode());
-      } else {
-        ps.setNull(idx++, Types.INTEGER); // rev_time
-        ps.setNull(idx++, Types.INTEGER); // rev_invalidity_time
-        ps.setNull(idx++, Types.INTEGER); // rev_reason
-      }
-      ps.setLong(idx++, registeredCertId);
+      setUpdateCertParams(ps, registeredCertId, revInfo);
       ps.executeUpdate();
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
@@ -322,6 +335,171 @@ class OcspStoreQueryExecutor {
     }
   }
 
+  private static void setUpdateCertParams(PreparedStatement ps, long registeredCertId,
+      CertRevocationInfo revInfo) throws SQLException {
+    boolean revoked = (revInfo != null);
+
+    int idx = 1;
+    ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
+    setBoolean(ps, idx++, revoked);
+    if (revoked) {
+      long revTime = revInfo.getRevocationTime().getTime() / 1000;
+      ps.setLong(idx++, revTime);
+      if (revInfo.getInvalidityTime() != null) {
+        ps.setLong(idx++, revInfo.getInvalidityTime().getTime() / 1000);
+      } else {
+        ps.setNull(idx++, Types.INTEGER);
+      }
+      ps.setInt(idx++, revInfo.getReason().getCode());
+    } else {
+      ps.setNull(idx++, Types.INTEGER); // rev_time
+      ps.setNull(idx++, Types.INTEGER); // rev_invalidity_time
+      ps.setNull(idx++, Types.INTEGER); // rev_reason
+    }
+    ps.setLong(idx++, registeredCertId);
+  } // method setUpdateCertParams
+
+  /**
+   * Adds or updates the given certificates in one transaction, {@link #BATCH_SIZE}
+   * certificates per batch. The registered certificates are read with one query per batch.
+   * The certificates are handled as in {@link #addCert(X509Cert, CertWithDbId,
+   * CertRevocationInfo)}.
+   * @param certInfos
+   *          Certificates to be added. Must not be {@code null}.
+   * @throws DataAccessException
+   *           If error occurs, no certificate has been added or updated.
+   */
+  void addCerts(List<CertificateInfo> certInfos) throws DataAccessException {
+    Args.notNull(certInfos, "certInfos");
+
+    // the certificates of the same issuer are handled together
+    Map<Integer, List<CertificateInfo>> issuerCertsMap = new LinkedHashMap<>();
+    for (CertificateInfo certInfo : certInfos) {
+      int issuerId = getIssuerId(certInfo.getIssuerCert());
+      List<CertificateInfo> issuerCerts = issuerCertsMap.get(issuerId);
+      if (issuerCerts == null) {
+        issuerCerts = new ArrayList<>();
+        issuerCertsMap.put(issuerId, issuerCerts);
+      }
+      issuerCerts.add(certInfo);
+    }
+
+    Connection conn = datasource.getConnection();
+    Boolean origAutoCommit = null;
+    PreparedStatement psSelect = null;
+    PreparedStatement psInsert = null;
+    PreparedStatement psUpdate = null;
+    String sql = null;
+    boolean committed = false;
+
+    try {
+      origAutoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+
+      sql = sqlCertsRegistered;
+      psSelect = datasource.prepareStatement(conn, sql);
+      sql = SQL_ADD_REVOKED_CERT;
+      psInsert = datasource.prepareStatement(conn, sql);
+      sql = SQL_UPDATE_CERT;
+      psUpdate = datasource.prepareStatement(conn, sql);
+
+      for (Integer issuerId : issuerCertsMap.keySet()) {
+        List<CertificateInfo> issuerCerts = issuerCertsMap.get(issuerId);
+        final int n = issuerCerts.size();
+        for (int from = 0; from < n; from += BATCH_SIZE) {
+          List<CertificateInfo> batch = issuerCerts.subList(from, Math.min(n, from + BATCH_SIZE));
+
+          sql = sqlCertsRegistered;
+          Map<String, Long> registeredIds = getCertIds(psSelect, issuerId, batch);
+
+          int numInserts = 0;
+          int numUpdates = 0;
+          for (CertificateInfo certInfo : batch) {
+            CertWithDbId cert = certInfo.getCert();
+            CertRevocationInfo revInfo = certInfo.getRevocationInfo();
+            Long registeredId = registeredIds.get(cert.getCert().getSerialNumber().toString(16));
+            if (registeredId == null) {
+              setAddCertParams(psInsert, issuerId, cert, revInfo, true);
+              psInsert.addBatch();
+              numInserts++;
+            } else if (publishGoodCerts || revInfo != null) {
+              setUpdateCertParams(psUpdate, registeredId, revInfo);
+              psUpdate.addBatch();
+              numUpdates++;
+            }
+          }
+
+          if (numInserts > 0) {
+            sql = SQL_ADD_REVOKED_CERT;
+            psInsert.executeBatch();
+          }
+
+          if (numUpdates > 0) {
+            sql = SQL_UPDATE_CERT;
+            psUpdate.executeBatch();
+          }
+        }
+      }
+
+      conn.commit();
+      committed = true;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(psSelect, null, false);
+      datasource.releaseResources(psInsert, null, false);
+      datasource.releaseResources(psUpdate, null, false);
+
+      // roll back on any failure, also on RuntimeException and Error, so that the connection
+      // is not returned to the pool with an open transaction.
+      if (origAutoCommit != null && !committed) {
+        try {
+          conn.rollback();
+        } catch (SQLException ex) {
+          LOG.warn("could not rollback the transaction: {}", ex.getMessage());
+        }
+      }
+
+      if (origAutoCommit != null) {
+        try {
+          conn.setAutoCommit(origAutoCommit);
+        } catch (SQLException ex) {
+          LOG.warn("could not restore the auto-commit mode: {}", ex.getMessage());
+        }
+      }
+      datasource.returnConnection(conn);
+    }
+  } // method addCerts
+
+  /**
+   * Returns the database Ids of the given certificates which are registered.
+   * @return map of the hex serial number to the database table id.
+   */
+  private static Map<String, Long> getCertIds(PreparedStatement psSelect, int issuerId,
+      List<CertificateInfo> certInfos) throws SQLException {
+    psSelect.setInt(1, issuerId);
+    String sn = null;
+    final int n = certInfos.size();
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      // fill the remaining parameters with the last serial number
+      if (i < n) {
+        sn = certInfos.get(i).getCert().getCert().getSerialNumber().toString(16);
+      }
+      psSelect.setString(2 + i, sn);
+    }
+
+    Map<String, Long> ids = new HashMap<>();
+    ResultSet rs = psSelect.executeQuery();
+    try {
+      while (rs.next()) {
+        ids.put(rs.getString("SN"), rs.getLong("ID"));
+      }
+    } finally {
+      rs.close();
+    }
+    return ids;
+  } // method getCertIds
+
   void revokeCert(X509Cert caCert, CertWithDbId cert, CertRevocationInfo revInfo)
       throws DataAccessException, OperationException {
     addOrUpdateCert(caCert, cert, revInfo);
@@ -30,17 +30,24 @@ import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongConsumer;
 
 import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.DEROctetString;
@@ -92,6 +99,51 @@ import org.xipki.util.StringUtil;
 
 public class CertStore {
 
+  private static class CertRow {
+
+    private long certId;
+
+    private String serialNumber;
+
+    private String subjectText;
+
+    private long fpSubject;
+
+    private Long fpReqSubject;
+
+    private long notBefore;
+
+    private long notAfter;
+
+    private int certprofileId;
+
+    private int caId;
+
+    private int requestorId;
+
+    private Integer userId;
+
+    private long fpPk;
+
+    private boolean ee;
+
+    private int reqType;
+
+    private String tid;
+
+    private String b64FpCert;
+
+    private String reqSubjectText;
+
+    private String b64Cert;
+
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    // whether the row has been taken into a batch, guarded by the lock on pendingCertRows.
+    private boolean polled;
+
+  } // class CertRow
+
   private static final Logger LOG = LoggerFactory.getLogger(CertStore.class);
 
   private static final String SQL_ADD_CERT =
@@ -111,6 +163,24 @@ public class CertStore {
   private static final String SQL_REMOVE_PUBLISHQUEUE =
       "DELETE FROM PUBLISHQUEUE WHERE PID=? AND CID=?";
 
+  private static final String SQL_COUNT_PUBLISHQUEUE =
+      "SELECT COUNT(*) FROM PUBLISHQUEUE WHERE PID=? AND CA_ID=?";
+
+  /**
+   * Number of certificates read by one query in {@link #getCertsForIds}.
+   */
+  private static final int SELECT_IDS_SIZE = 100;
+
+  /**
+   * Maximal time in milliseconds to wait for a free batch.
+   */
+  private static final long CERT_BATCH_TIMEOUT_MS = 60000;
+
+  /**
+   * Number of certificates whose fingerprints are read per query.
+   */
+  private static final int SELECT_FPS_SIZE = 1000;
+
   private static final String SQL_MAXID_DELTACRL_CACHE =
       "SELECT MAX(ID) FROM DELTACRL_CACHE WHERE CA_ID=?";
 
@@ -122,6 +192,8 @@ public class CertStore {
   private static final String SQL_MAX_THISUPDAATE_CRL =
       "SELECT MAX(THISUPDATE) FROM CRL WHERE CA_ID=?";
 
+  private static final String SQL_CRL_FOR_ID = "SELECT CRL FROM CRL WHERE ID=?";
+
   private static final String SQL_ADD_CRL =
       "INSERT INTO CRL (ID,CA_ID,CRL_NO,THISUPDATE,NEXTUPDATE,DELTACRL,BASECRL_NO,CRL)"
       + " VALUES (?,?,?,?,?,?,?,?)";
@@ -143,6 +215,8 @@ public class CertStore {
 
   private final String sqlCertForId;
 
+  private final String sqlCertsForIds;
+
   private final String sqlCertWithRevInfo;
 
   private final String sqlCertInfo;
@@ -165,12 +239,16 @@ public class CertStore {
 
   private final String sqlCertForKeyIssued;
 
+  private final String sqlCertFps;
+
   private final String sqlLatestSerialForSubjectLike;
 
   private final String sqlCrl;
 
   private final String sqlCrlWithNo;
 
+  private final String sqlCrlId;
+
   private final String sqlReqIdForSerial;
 
   private final String sqlReqForId;
@@ -200,6 +278,14 @@ public class CertStore {
 
   private final UniqueIdGenerator idGenerator;
 
+  private final ArrayDeque<CertRow> pendingCertRows = new ArrayDeque<>();
+
+  private int activeCertBatches;
+
+  private int certBatchSize;
+
+  private int certBatchConcurrency = 1;
+
   public CertStore(DataSourceWrapper datasource, UniqueIdGenerator idGenerator)
       throws DataAccessException {
     this.datasource = Args.notNull(datasource, "datasource");
@@ -211,6 +297,13 @@ public class CertStore {
 
     this.sqlCaHasCrl = buildSelectFirstSql("ID FROM CRL WHERE CA_ID=?");
     this.sqlCertForId = buildSelectFirstSql("PID,RID,REV,RR,RT,RIT,CERT FROM CERT WHERE ID=?");
+
+    StringBuilder sb = new StringBuilder("SELECT ID,PID,RID,REV,RR,RT,RIT,CERT FROM CERT "
+        + "WHERE ID IN (?");
+    for (int i = 1; i < SELECT_IDS_SIZE; i++) {
+      sb.append(",?");
+    }
+    this.sqlCertsForIds = sb.append(")").toString();
     this.sqlCertWithRevInfo = buildSelectFirstSql(
         "ID,REV,RR,RT,RIT,PID,CERT FROM CERT WHERE CA_ID=? AND SN=?");
     this.sqlCertInfo = buildSelectFirstSql(
@@ -226,6 +319,8 @@ public class CertStore {
     this.sqlCertStatusForSubjectFp = buildSelectFirstSql("REV FROM CERT WHERE FP_S=? AND CA_ID=?");
     this.sqlCertforSubjectIssued = buildSelectFirstSql("ID FROM CERT WHERE CA_ID=? AND FP_S=?");
     this.sqlCertForKeyIssued = buildSelectFirstSql("ID FROM CERT WHERE CA_ID=? AND FP_K=?");
+    this.sqlCertFps = datasource.buildSelectFirstSql(SELECT_FPS_SIZE, "ID ASC",
+        "ID,FP_K,FP_S FROM CERT WHERE ID>? AND CA_ID=?");
     this.sqlReqIdForSerial = buildSelectFirstSql("REQCERT.RID as REQ_ID FROM REQCERT INNER JOIN "
         + "CERT ON CERT.CA_ID=? AND CERT.SN=? AND REQCERT.CID=CERT.ID");
     this.sqlReqForId = buildSelectFirstSql("DATA FROM REQUEST WHERE ID=?");
@@ -235,8 +330,23 @@ public class CertStore {
         "THISUPDATE,CRL FROM CRL WHERE CA_ID=?");
     this.sqlCrlWithNo = datasource.buildSelectFirstSql(1, "THISUPDATE DESC",
         "THISUPDATE,CRL FROM CRL WHERE CA_ID=? AND CRL_NO=?");
+    this.sqlCrlId = datasource.buildSelectFirstSql(1, "THISUPDATE DESC",
+        "ID,THISUPDATE FROM CRL WHERE CA_ID=?");
   } // constructor
 
+  /**
+   * Sets the batching of the insertion of certificates.
+   * @param batchSize
+   *          Maximal number of certificates added in one transaction. 0 to add each
+   *          certificate in its own transaction.
+   * @param concurrency
+   *          Maximal number of transactions to add certificates concurrently.
+   */
+  public void setCertBatch(int batchSize, int concurrency) {
+    this.certBatchSize = Args.notNegative(batchSize, "batchSize");
+    this.certBatchConcurrency = Args.positive(concurrency, "concurrency");
+  }
+
   private String buildSelectFirstSql(String coreSql) {
     return datasource.buildSelectFirstSql(1, coreSql);
   }
@@ -258,9 +368,58 @@ public class CertStore {
     return true;
   }
 
+  /**
+   * Adds the certificates in one transaction, either all or none of them are added.
+   * @param certInfos
+   *          Certificates to be added. Must not be {@code null}.
+   * @throws OperationException
+   *           If the certificates could not be added.
+   */
+  public void addCerts(List<CertificateInfo> certInfos) throws OperationException {
+    Args.notNull(certInfos, "certInfos");
+    if (certInfos.isEmpty()) {
+      return;
+    }
+
+    List<CertRow> rows = new ArrayList<>(certInfos.size());
+    for (CertificateInfo certInfo : certInfos) {
+      rows.add(toCertRow(certInfo.getIssuer(), certInfo.getCert(),
+          certInfo.getSubjectPublicKey(), certInfo.getProfile(), certInfo.getRequestor(),
+          certInfo.getUser(), certInfo.getReqType(), certInfo.getTransactionId(),
+          certInfo.getRequestedSubject()));
+    }
+
+    try {
+      addCertRows(rows);
+    } catch (DataAccessException | SQLException ex) {
+      LOG.debug("could not add certificates in one transaction", ex);
+      throw new OperationException(DATABASE_FAILURE, "could not add " + rows.size()
+          + " certificates in one transaction: " + ex.getMessage());
+    }
+
+    for (int i = 0; i < rows.size(); i++) {
+      certInfos.get(i).getCert().setCertId(rows.get(i).certId);
+    }
+  } // method addCerts
+
   private void addCert(NameId ca, CertWithDbId certificate, byte[] encodedSubjectPublicKey,
       NameId certprofile, NameId requestor, Integer userId, RequestType reqType,
       byte[] transactionId, X500Name reqSubject) throws DataAccessException, OperationException {
+    CertRow row = toCertRow(ca, certificate, encodedSubjectPublicKey, certprofile, requestor,
+        userId, reqType, transactionId, reqSubject);
+
+    if (certBatchSize > 0) {
+      addCertInBatch(row);
+    } else {
+      addCertRow(row);
+    }
+
+    certificate.setCertId(row.certId);
+  } // method addCert
+
+  private CertRow toCertRow(NameId ca, CertWithDbId certificate, byte[] encodedSubjectPublicKey,
+      NameId certprofile, NameId requestor, Integer userId, RequestType reqType,
+      byte[] transactionId, X500Name reqSubject) {
     Args.notNull(ca, "ca");
     Args.notNull(certificate, "certificate");
     Args.notNull(certprofile, "certprofile");
@@ -283,49 +442,243 @@ public class CertStore {
       }
     }
 
-    String b64FpCert = base64Fp(certificate.getEncodedCert());
-    String b64Cert = Base64.encodeToString(certificate.getEncodedCert());
-    String tid = (transactionId == null) ? null : Base64.encodeToString(transactionId);
-
-    final String sql = SQL_ADD_CERT;
-    PreparedStatement ps = borrowPreparedStatement(sql);
-
+    X509Certificate cert = certificate.getCert();
+    CertRow row = new CertRow();
+    row.certId = certId;
+    row.serialNumber = cert.getSerialNumber().toString(16);
+    row.subjectText = subjectText;
+    row.fpSubject = fpSubject;
+    row.fpReqSubject = fpReqSubject;
+    row.notBefore = cert.getNotBefore().getTime() / 1000;
+    row.notAfter = cert.getNotAfter().getTime() / 1000;
+    row.certprofileId = certprofile.getId();
+    row.caId = ca.getId();
+    row.requestorId = requestor.getId();
+    row.userId = userId;
+    row.fpPk = fpPk;
+    row.ee = cert.getBasicConstraints() == -1;
+    row.reqType = reqType.getCode();
+    row.tid = (transactionId == null) ? null : Base64.encodeToString(transactionId);
+    row.b64FpCert = base64Fp(certificate.getEncodedCert());
+    row.reqSubjectText = reqSubjectText;
+    row.b64Cert = Base64.encodeToString(certificate.getEncodedCert());
+    return row;
+  } // method toCertRow
+
+  private void addCertRow(CertRow row) throws DataAccessException, OperationException {
+    PreparedStatement ps = borrowPreparedStatement(SQL_ADD_CERT);
     try {
-      // cert
-      X509Certificate cert = certificate.getCert();
-      int idx = 1;
-      ps.setLong(idx++, certId);
-      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
-      ps.setString(idx++, cert.getSerialNumber().toString(16));
-      ps.setString(idx++, subjectText);
-      ps.setLong(idx++, fpSubject);
-      setLong(ps, idx++, fpReqSubject);
-      ps.setLong(idx++, cert.getNotBefore().getTime() / 1000); // notBeforeSeconds
-      ps.setLong(idx++, cert.getNotAfter().getTime() / 1000); // notAfterSeconds
-      setBoolean(ps, idx++, false);
-      ps.setInt(idx++, certprofile.getId());
-      ps.setInt(idx++, ca.getId());
-      setInt(ps, idx++, requestor.getId());
-      setInt(ps, idx++, userId);
-      ps.setLong(idx++, fpPk);
-      boolean isEeCert = cert.getBasicConstraints() == -1;
-      ps.setInt(idx++, isEeCert ? 1 : 0);
-      ps.setInt(idx++, reqType.getCode());
-      ps.setString(idx++, tid);
-
-      ps.setString(idx++, b64FpCert);
-      ps.setString(idx++, reqSubjectText);
-      ps.setString(idx++, b64Cert);
-
+      setCertRow(ps, row);
       ps.executeUpdate();
-
-      certificate.setCertId(certId);
     } catch (SQLException ex) {
       throw datasource.translate(null, ex);
     } finally {
       datasource.releaseResources(ps, null);
     }
-  } // method addCert
+  } // method addCertRow
+
+  /**
+   * Adds the certificate together with the certificates of the concurrent callers in one
+   * transaction. As in {@link org.xipki.security.BatchSigner}, no thread is started: if fewer
+   * than {@code certBatchConcurrency} batches are being written, the caller writes its own row
+   * together with the oldest pending rows, otherwise it waits until its row has been written
+   * by another caller or a batch becomes free. A caller writes at most one batch. The method
+   * returns after the transaction containing the row is committed.
+   */
+  private void addCertInBatch(CertRow row) throws DataAccessException, OperationException {
+    long deadline = System.currentTimeMillis() + CERT_BATCH_TIMEOUT_MS;
+    List<CertRow> batch = null;
+    synchronized (pendingCertRows) {
+      pendingCertRows.add(row);
+      while (!row.polled) {
+        if (activeCertBatches < certBatchConcurrency) {
+          activeCertBatches++;
+          batch = pollCertBatch(row);
+          break;
+        }
+
+        long timeout = deadline - System.currentTimeMillis();
+        if (timeout <= 0) {
+          pendingCertRows.remove(row);
+          throw new OperationException(DATABASE_FAILURE,
+              "timeout while waiting to add certificate");
+        }
+
+        try {
+          pendingCertRows.wait(timeout);
+        } catch (InterruptedException ex) {
+          pendingCertRows.remove(row);
+          Thread.currentThread().interrupt();
+          throw new OperationException(DATABASE_FAILURE, "interrupted while adding certificate");
+        }
+      }
+    }
+
+    if (batch != null) {
+      try {
+        addCertBatch(batch);
+      } finally {
+        synchronized (pendingCertRows) {
+          activeCertBatches--;
+          pendingCertRows.notifyAll();
+        }
+      }
+    }
+
+    // wait until the batch containing the row has been written. The row has been polled and
+    // may be committed at any time, hence the wait is neither limited nor interrupted:
+    // reporting a failure here could lead to the certificate being issued twice. The writer
+    // of the batch completes every row.
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          row.done.get();
+          break;
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        }
+      }
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof DataAccessException) {
+        throw (DataAccessException) cause;
+      } else if (cause instanceof OperationException) {
+        throw (OperationException) cause;
+      } else {
+        throw new OperationException(DATABASE_FAILURE, cause.getMessage());
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  } // method addCertInBatch
+
+  // must be called with the lock on pendingCertRows
+  private List<CertRow> pollCertBatch(CertRow row) {
+    pendingCertRows.remove(row);
+    row.polled = true;
+    int size = Math.min(certBatchSize - 1, pendingCertRows.size());
+    List<CertRow> batch = new ArrayList<>(size + 1);
+    batch.add(row);
+    for (int i = 0; i < size; i++) {
+      CertRow pendingRow = pendingCertRows.poll();
+      pendingRow.polled = true;
+      batch.add(pendingRow);
+    }
+    return batch;
+  }
+
+  private void addCertBatch(List<CertRow> batch) {
+    try {
+      if (batch.size() > 1) {
+        boolean succ = false;
+        try {
+          addCertRows(batch);
+          succ = true;
+        } catch (DataAccessException | SQLException ex) {
+          LOG.warn("could not add {} certificates in one transaction, add them separately: {}",
+              batch.size(), ex.getMessage());
+          LOG.debug("could not add certificates in one transaction", ex);
+        }
+
+        if (succ) {
+          for (CertRow row : batch) {
+            row.done.complete(null);
+          }
+          return;
+        }
+      }
+
+      // a single row, or the batch failed: add the rows separately, so that only the
+      // invalid rows fail.
+      for (CertRow row : batch) {
+        try {
+          addCertRow(row);
+          row.done.complete(null);
+        } catch (Throwable th) {
+          row.done.completeExceptionally(th);
+        }
+      }
+    } catch (Throwable th) {
+      // no caller may wait for a row that will never be written
+      LOG.error("could not add {} certificates: {}", batch.size(), th.getMessage());
+      for (CertRow row : batch) {
+        row.done.completeExceptionally(th);
+      }
+    }
+  } // method addCertBatch
+
+  /**
+   * Adds the rows in one transaction, which is rolled back if any row could not be added.
+   */
+  private void addCertRows(List<CertRow> rows) throws DataAccessException, SQLException {
+    Connection conn = null;
+    Boolean origAutoCommit = null;
+    PreparedStatement ps = null;
+    boolean committed = false;
+    try {
+      conn = datasource.getConnection();
+      origAutoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+
+      ps = datasource.prepareStatement(conn, SQL_ADD_CERT);
+      for (CertRow row : rows) {
+        setCertRow(ps, row);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+      conn.commit();
+      committed = true;
+    } finally {
+      datasource.releaseResources(ps, null, false);
+      if (conn != null) {
+        // roll back on any failure, restoring the auto-commit mode would commit the rows
+        if (origAutoCommit != null && !committed) {
+          try {
+            conn.rollback();
+          } catch (SQLException ex) {
+            LOG.warn("could not rollback the transaction: {}", ex.getMessage());
+          }
+        }
+
+        if (origAutoCommit != null) {
+          try {
+            conn.setAutoCommit(origAutoCommit);
+          } catch (SQLException ex) {
+            LOG.warn("could not restore the auto-commit mode: {}", ex.getMessage());
+          }
+        }
+        datasource.returnConnection(conn);
+      }
+    }
+  } // method addCertRows
+
+  private static void setCertRow(PreparedStatement ps, CertRow row) throws SQLException {
+    int idx = 1;
+    ps.setLong(idx++, row.certId);
+    ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
+    ps.setString(idx++, row.serialNumber);
+    ps.setString(idx++, row.subjectText);
+    ps.setLong(idx++, row.fpSubject);
+    setLong(ps, idx++, row.fpReqSubject);
+    ps.setLong(idx++, row.notBefore); // notBeforeSeconds
+    ps.setLong(idx++, row.notAfter); // notAfterSeconds
+    setBoolean(ps, idx++, false);
+    ps.setInt(idx++, row.certprofileId);
+    ps.setInt(idx++, row.caId);
+    setInt(ps, idx++, row.requestorId);
+    setInt(ps, idx++, row.userId);
+    ps.setLong(idx++, row.fpPk);
+    ps.setInt(idx++, row.ee ? 1 : 0);
+    ps.setInt(idx++, row.reqType);
+    ps.setString(idx++, row.tid);
+
+    ps.setString(idx++, row.b64FpCert);
+    ps.setString(idx++, row.reqSubjectText);
+    ps.setString(idx++, row.b64Cert);
+  } // method setCertRow
 
   public void addToPublishQueue(NameId publisher, long certId, NameId ca)
       throws OperationException {
@@ -359,6 +712,60 @@ public class CertStore {
     }
   }
 
+  /**
+   * Removes the given certificates from the publish queue of the publisher in one batch.
+   * @param publisher
+   *          Publisher. Must not be {@code null}.
+   * @param certIds
+   *          Ids of the certificates to be removed. Must not be {@code null}.
+   * @throws OperationException
+   *           If error occurs.
+   */
+  public void removeFromPublishQueue(NameId publisher, List<Long> certIds)
+      throws OperationException {
+    Args.notNull(publisher, "publisher");
+    Args.notNull(certIds, "certIds");
+    if (certIds.isEmpty()) {
+      return;
+    }
+
+    final String sql = SQL_REMOVE_PUBLISHQUEUE;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+    try {
+      for (Long certId : certIds) {
+        ps.setInt(1, publisher.getId());
+        ps.setLong(2, certId);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  } // method removeFromPublishQueue
+
+  public long getPublishQueueSize(NameId ca, NameId publisher) throws OperationException {
+    Args.notNull(ca, "ca");
+    Args.notNull(publisher, "publisher");
+
+    final String sql = SQL_COUNT_PUBLISHQUEUE;
+    ResultSet rs = null;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+
+    try {
+      ps.setInt(1, publisher.getId());
+      ps.setInt(2, ca.getId());
+      rs = ps.executeQuery();
+      rs.next();
+      return rs.getLong(1);
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method getPublishQueueSize
+
   public long getMaxIdOfDeltaCrlCache(NameId ca) throws OperationException {
     Args.notNull(ca, "ca");
 
@@ -486,7 +893,15 @@ public class CertStore {
     }
   }
 
-  public void addCrl(NameId ca, X509CRL crl) throws OperationException, CRLException {
+  /**
+   * Adds the CRL to the database.
+   * @param ca
+   *          CA. Must not be {@code null}.
+   * @param crl
+   *          CRL. Must not be {@code null}.
+   * @return the ID of the CRL in the database.
+   */
+  public long addCrl(NameId ca, X509CRL crl) throws OperationException, CRLException {
     Args.notNull(ca, "ca");
     Args.notNull(crl, "crl");
 
@@ -537,6 +952,8 @@ public class CertStore {
     } finally {
       datasource.releaseResources(ps, null);
     }
+
+    return crlId;
   } // method addCrl
 
   public CertWithRevocationInfo revokeCert(NameId ca, BigInteger serialNumber,
@@ -969,6 +1386,55 @@ public class CertStore {
     return (b64Crl == null) ? null : Base64.decodeFast(b64Crl);
   } // method getEncodedCrl
 
+  /**
+   * Returns the ID and the thisUpdate of the current CRL of the CA without reading the CRL.
+   * @param ca
+   *          CA. Must not be {@code null}.
+   * @return the ID and the thisUpdate (in seconds), {@code null} if the CA has no CRL.
+   */
+  public long[] getCurrentCrlId(NameId ca) throws OperationException {
+    Args.notNull(ca, "ca");
+
+    final String sql = sqlCrlId;
+    ResultSet rs = null;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+
+    long[] ret = null;
+    try {
+      ps.setInt(1, ca.getId());
+      rs = ps.executeQuery();
+      // iterate all entries to make sure that the latest CRL will be returned
+      while (rs.next()) {
+        long thisUpdate = rs.getLong("THISUPDATE");
+        if (ret == null || thisUpdate >= ret[1]) {
+          ret = new long[]{rs.getLong("ID"), thisUpdate};
+        }
+      }
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+
+    return ret;
+  } // method getCurrentCrlId
+
+  public byte[] getEncodedCrlForId(long crlId) throws OperationException {
+    final String sql = SQL_CRL_FOR_ID;
+    ResultSet rs = null;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+
+    try {
+      ps.setLong(1, crlId);
+      rs = ps.executeQuery();
+      return rs.next() ? Base64.decodeFast(rs.getString("CRL")) : null;
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method getEncodedCrlForId
+
   public int cleanupCrls(NameId ca, int numCrls) throws OperationException {
     Args.notNull(ca, "ca");
     Args.positive(numCrls, "numCrls");
@@ -1057,6 +1523,86 @@ public class CertStore {
       datasource.releaseResources(ps, rs);
     }
 
+    return toCertificateInfo(ca, caCert, certId, b64Cert, certprofileId, requestorId,
+        revoked, revReason, revTime, revInvTime, idNameMap);
+  } // method getCertForId
+
+  /**
+   * Retrieves the certificates with the given ids, {@link #SELECT_IDS_SIZE} certificates
+   * per query.
+   * @param ca
+   *          CA. Must not be {@code null}.
+   * @param caCert
+   *          Certificate of the CA. Must not be {@code null}.
+   * @param certIds
+   *          Ids of the certificates. Must not be {@code null}.
+   * @param idNameMap
+   *          Map of the ids and names. Must not be {@code null}.
+   * @return the found certificates, in the order of the given ids. The certificates which
+   *     do not exist are ignored.
+   * @throws OperationException
+   *           If error occurs while reading from the database.
+   * @throws CertificateException
+   *           If a certificate could not be parsed.
+   */
+  public List<CertificateInfo> getCertsForIds(NameId ca, X509Cert caCert, List<Long> certIds,
+      CaIdNameMap idNameMap) throws OperationException, CertificateException {
+    Args.notNull(ca, "ca");
+    Args.notNull(caCert, "caCert");
+    Args.notNull(certIds, "certIds");
+    Args.notNull(idNameMap, "idNameMap");
+
+    final String sql = sqlCertsForIds;
+    Map<Long, CertificateInfo> certInfos = new HashMap<>();
+
+    final int n = certIds.size();
+    for (int from = 0; from < n; from += SELECT_IDS_SIZE) {
+      int to = Math.min(n, from + SELECT_IDS_SIZE);
+      ResultSet rs = null;
+      PreparedStatement ps = borrowPreparedStatement(sql);
+      try {
+        long certId = 0;
+        for (int i = 0; i < SELECT_IDS_SIZE; i++) {
+          // fill the remaining parameters with the last id
+          if (from + i < to) {
+            certId = certIds.get(from + i);
+          }
+          ps.setLong(1 + i, certId);
+        }
+
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          long id = rs.getLong("ID");
+          boolean revoked = rs.getBoolean("REV");
+          int revReason = revoked ? rs.getInt("RR") : 0;
+          long revTime = revoked ? rs.getLong("RT") : 0;
+          long revInvTime = revoked ? rs.getLong("RIT") : 0;
+
+          certInfos.put(id, toCertificateInfo(ca, caCert, id, rs.getString("CERT"),
+              rs.getInt("PID"), rs.getInt("RID"), revoked, revReason, revTime, revInvTime,
+              idNameMap));
+        }
+      } catch (SQLException ex) {
+        throw new OperationException(DATABASE_FAILURE,
+            datasource.translate(sql, ex).getMessage());
+      } finally {
+        datasource.releaseResources(ps, rs);
+      }
+    }
+
+    List<CertificateInfo> ret = new ArrayList<>(certInfos.size());
+    for (Long certId : certIds) {
+      CertificateInfo certInfo = certInfos.remove(certId);
+      if (certInfo != null) {
+        ret.add(certInfo);
+      }
+    }
+    return ret;
+  } // method getCertsForIds
+
+  private static CertificateInfo toCertificateInfo(NameId ca, X509Cert caCert, long certId,
+      String b64Cert, int certprofileId, int requestorId, boolean revoked, int revReason,
+      long revTime, long revInvTime, CaIdNameMap idNameMap) throws CertificateException {
     byte[] encodedCert = Base64.decodeFast(b64Cert);
     X509Certificate cert = X509Util.parseCert(encodedCert);
     CertWithDbId certWithMeta = new CertWithDbId(cert, encodedCert);
@@ -1067,13 +1613,13 @@ public class CertStore {
     if (!revoked) {
       return certInfo;
     }
+
     Date invalidityTime = (revInvTime == 0 || revInvTime == revTime) ? null
         : new Date(revInvTime * 1000);
-    CertRevocationInfo revInfo = new CertRevocationInfo(revReason,
-        new Date(revTime * 1000), invalidityTime);
-    certInfo.setRevocationInfo(revInfo);
+    certInfo.setRevocationInfo(new CertRevocationInfo(revReason,
+        new Date(revTime * 1000), invalidityTime));
     return certInfo;
-  } // method getCertForId
+  } // method toCertificateInfo
 
   public CertWithRevocationInfo getCertWithRevocationInfo(int caId, BigInteger serial,
       CaIdNameMap idNameMap) throws OperationException {
@@ -1545,8 +2091,20 @@ public class CertStore {
     }
   } // method knowsCertForSerial
 
+  public long getMaxCertId() throws OperationException {
+    try {
+      return datasource.getMax(null, "CERT", "ID");
+    } catch (DataAccessException ex) {
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
+    }
+  }
+
+  /**
+   * Retrieves the revoked certificates with ID in the range [startId, endId], ordered by ID.
+   */
   public List<CertRevInfoWithSerial> getRevokedCerts(NameId ca, Date notExpiredAt, long startId,
-      int numEntries, boolean onlyCaCerts, boolean onlyUserCerts) throws OperationException {
+      long endId, int numEntries, boolean onlyCaCerts, boolean onlyUserCerts)
+      throws OperationException {
     Args.notNull(ca, "ca");
     Args.notNull(notExpiredAt, "notExpiredAt");
     Args.positive(numEntries, "numEntries");
@@ -1563,11 +2121,13 @@ public class CertStore {
     try {
       int idx = 1;
       ps.setLong(idx++, startId - 1);
+      ps.setLong(idx++, endId);
       ps.setInt(idx++, ca.getId());
       ps.setLong(idx++, notExpiredAt.getTime() / 1000 + 1);
       if (withEe) {
         setBoolean(ps, idx++, onlyUserCerts);
       }
+      ps.setFetchSize(numEntries);
       rs = ps.executeQuery();
 
       List<CertRevInfoWithSerial> ret = new LinkedList<>();
@@ -1724,6 +2284,52 @@ public class CertStore {
     }
   }
 
+  /**
+   * Reads the fingerprints of the public key and subject of the certificates with id not less
+   * than {@code startId}, ordered by the id. At most {@link #SELECT_FPS_SIZE} certificates are
+   * read per call.
+   * @param ca
+   *          CA. Must not be {@code null}.
+   * @param startId
+   *          The smallest id of the certificates.
+   * @param keyFps
+   *          Consumer of the fingerprints of the public keys. Must not be {@code null}.
+   * @param subjectFps
+   *          Consumer of the fingerprints of the subjects. Must not be {@code null}.
+   * @return the id of the last read certificate, 0 if no certificate has been read.
+   * @throws OperationException
+   *           If error occurs.
+   */
+  public long getCertFps(NameId ca, long startId, LongConsumer keyFps, LongConsumer subjectFps)
+      throws OperationException {
+    Args.notNull(ca, "ca");
+    Args.notNull(keyFps, "keyFps");
+    Args.notNull(subjectFps, "subjectFps");
+
+    final String sql = sqlCertFps;
+    ResultSet rs = null;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+
+    try {
+      ps.setLong(1, startId - 1);
+      ps.setInt(2, ca.getId());
+      rs = ps.executeQuery();
+
+      long lastId = 0;
+      int num = 0;
+      while (rs.next() && num++ < SELECT_FPS_SIZE) {
+        lastId = rs.getLong("ID");
+        keyFps.accept(rs.getLong("FP_K"));
+        subjectFps.accept(rs.getLong("FP_S"));
+      }
+      return lastId;
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method getCertFps
+
   private String base64Fp(byte[] data) {
     return HashAlgo.SHA1.base64Hash(data);
   }
@@ -1892,7 +2498,7 @@ public class CertStore {
     String sql = cache.get(numEntries);
     if (sql == null) {
       String coreSql =
-          "ID,SN,RR,RT,RIT FROM CERT WHERE ID>? AND CA_ID=? AND REV=1 AND NAFTER>?";
+          "ID,SN,RR,RT,RIT FROM CERT WHERE ID>? AND ID<=? AND CA_ID=? AND REV=1 AND NAFTER>?";
       if (withEe) {
         coreSql += " AND EE=?";
       }
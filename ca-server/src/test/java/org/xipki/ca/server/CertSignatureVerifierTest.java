@@ -0,0 +1,157 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.api.mgmt.SignatureVerificationControl;
+import org.xipki.ca.api.mgmt.SignatureVerificationControl.Mode;
+import org.xipki.util.HealthCheckResult;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CertSignatureVerifierTest {
+
+  private static KeyPair caKeypair;
+
+  private static X509Certificate validCert;
+
+  private static X509Certificate invalidCert;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    caKeypair = generateKeypair();
+    validCert = issueCert(caKeypair.getPrivate());
+    // signed by another key
+    invalidCert = issueCert(generateKeypair().getPrivate());
+  }
+
+  @Test
+  public void testRejectedCertKeepsHealthy() {
+    CertSignatureVerifier verifier = newVerifier(SignatureVerificationControl.ALWAYS, null);
+    try {
+      Assert.assertTrue("valid signature", verifier.verify(validCert));
+      Assert.assertFalse("invalid signature", verifier.verify(invalidCert));
+
+      // the certificate with invalid signature is rejected, not issued
+      HealthCheckResult health = verifier.healthCheck();
+      Assert.assertTrue("healthy", health.isHealthy());
+      Assert.assertEquals("failed", 1L, health.getStatuses().get("failed"));
+      Assert.assertEquals("verified", 1L, health.getStatuses().get("verified"));
+    } finally {
+      verifier.close();
+    }
+  }
+
+  @Test
+  public void testSample() {
+    CertSignatureVerifier verifier = newVerifier(new SignatureVerificationControl(Mode.SAMPLE, 3),
+        null);
+    try {
+      for (int i = 0; i < 7; i++) {
+        Assert.assertEquals("certificate " + i, i % 3 != 0, verifier.verify(invalidCert));
+      }
+
+      HealthCheckResult health = verifier.healthCheck();
+      Assert.assertTrue("healthy", health.isHealthy());
+      Assert.assertEquals("issued", 7L, health.getStatuses().get("issued"));
+      Assert.assertEquals("failed", 3L, health.getStatuses().get("failed"));
+    } finally {
+      verifier.close();
+    }
+  }
+
+  @Test
+  public void testFirst() {
+    CertSignatureVerifier verifier = newVerifier(new SignatureVerificationControl(Mode.FIRST, 2),
+        null);
+    try {
+      Assert.assertFalse("certificate 1", verifier.verify(invalidCert));
+      Assert.assertFalse("certificate 2", verifier.verify(invalidCert));
+      Assert.assertTrue("certificate 3", verifier.verify(invalidCert));
+      Assert.assertTrue("healthy", verifier.healthCheck().isHealthy());
+    } finally {
+      verifier.close();
+    }
+  }
+
+  @Test
+  public void testAsyncFailureMakesUnhealthy() throws Exception {
+    CountDownLatch failures = new CountDownLatch(1);
+    CertSignatureVerifier verifier = newVerifier(new SignatureVerificationControl(Mode.ASYNC, 1),
+        failures);
+    try {
+      Assert.assertTrue("valid signature", verifier.verify(validCert));
+      // issued before the signature is verified
+      Assert.assertTrue("invalid signature", verifier.verify(invalidCert));
+      Assert.assertTrue("failure listener", failures.await(10, TimeUnit.SECONDS));
+
+      HealthCheckResult health = verifier.healthCheck();
+      Assert.assertFalse("healthy", health.isHealthy());
+      Assert.assertEquals("asyncFailed", 1L, health.getStatuses().get("asyncFailed"));
+      Assert.assertEquals("failed", 0L, health.getStatuses().get("failed"));
+    } finally {
+      verifier.close();
+    }
+  }
+
+  private static CertSignatureVerifier newVerifier(SignatureVerificationControl control,
+      CountDownLatch failures) {
+    return new CertSignatureVerifier(control, caKeypair.getPublic(), cert -> {
+      if (failures != null) {
+        failures.countDown();
+      }
+    });
+  }
+
+  private static KeyPair generateKeypair() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(new ECGenParameterSpec("secp256r1"));
+    return kpGen.generateKeyPair();
+  }
+
+  private static X509Certificate issueCert(PrivateKey signingKey) throws Exception {
+    X500Name issuer = new X500Name("CN=CA,O=xipki");
+    JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(issuer,
+        BigInteger.valueOf(2), new Date(), new Date(System.currentTimeMillis() + 86400000L),
+        new X500Name("CN=EE,O=xipki"), generateKeypair().getPublic());
+    return new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(signingKey)));
+  }
+
+}
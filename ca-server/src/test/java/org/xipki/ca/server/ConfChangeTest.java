@@ -0,0 +1,93 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ca.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.xipki.ca.server.ConfChange.Type;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class ConfChangeTest {
+
+  @Test
+  public void testGroupByType() {
+    List<ConfChange> changes = new ArrayList<>();
+    changes.add(new ConfChange(11, Type.CA, "ca1"));
+    changes.add(new ConfChange(12, Type.PROFILE, "profile1"));
+    changes.add(new ConfChange(13, Type.CA_HAS, "ca1"));
+    changes.add(new ConfChange(14, Type.SIGNER, "signer1"));
+    changes.add(new ConfChange(15, Type.CA, "ca2"));
+    changes.add(new ConfChange(16, Type.CA, "ca1"));
+    changes.add(new ConfChange(17, Type.USER, "user1"));
+
+    Map<Type, Set<String>> changedNames = ConfChange.groupByType(10, changes);
+    Assert.assertNotNull("changedNames", changedNames);
+
+    // the signers are reloaded before the profiles, and these before the CAs
+    Assert.assertEquals("types",
+        Arrays.asList(Type.SIGNER, Type.PROFILE, Type.CA, Type.CA_HAS, Type.USER),
+        new ArrayList<>(changedNames.keySet()));
+    Assert.assertEquals("CA", newSet("ca1", "ca2"), changedNames.get(Type.CA));
+    Assert.assertEquals("SIGNER", newSet("signer1"), changedNames.get(Type.SIGNER));
+  }
+
+  @Test
+  public void testNoChanges() {
+    Map<Type, Set<String>> changedNames = ConfChange.groupByType(10, new ArrayList<>());
+    Assert.assertNotNull("changedNames", changedNames);
+    Assert.assertTrue("no changes", changedNames.isEmpty());
+  }
+
+  @Test
+  public void testGap() {
+    // the change 11 has been deleted
+    List<ConfChange> changes = new ArrayList<>();
+    changes.add(new ConfChange(12, Type.CA, "ca1"));
+    Assert.assertNull("gap at the beginning", ConfChange.groupByType(10, changes));
+
+    changes = new ArrayList<>();
+    changes.add(new ConfChange(11, Type.CA, "ca1"));
+    changes.add(new ConfChange(13, Type.CA, "ca2"));
+    Assert.assertNull("gap", ConfChange.groupByType(10, changes));
+  }
+
+  @Test
+  public void testAll() {
+    List<ConfChange> changes = new ArrayList<>();
+    changes.add(new ConfChange(11, Type.CA, "ca1"));
+    changes.add(new ConfChange(12, Type.ALL, null));
+    Assert.assertNull("ALL", ConfChange.groupByType(10, changes));
+  }
+
+  private static Set<String> newSet(String... values) {
+    return new HashSet<>(Arrays.asList(values));
+  }
+
+}
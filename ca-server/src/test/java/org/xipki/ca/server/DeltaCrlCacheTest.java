@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.CrlReason;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class DeltaCrlCacheTest {
+
+  private static final Date TIME = new Date(1500000000000L);
+
+  @Test
+  public void testDeltaCrlEntries() {
+    DeltaCrlCache cache = new DeltaCrlCache();
+    // entries loaded from the table DELTACRL_CACHE
+    cache.add(new CertRevInfoWithSerial(10, BigInteger.valueOf(5), CrlReason.KEY_COMPROMISE,
+        TIME, null));
+
+    cache.certificateRevoked(BigInteger.valueOf(3), revInfo(CrlReason.CERTIFICATE_HOLD));
+    cache.certificateRevoked(BigInteger.valueOf(7), revInfo(CrlReason.SUPERSEDED));
+    cache.certificateRevoked(BigInteger.valueOf(1), revInfo(CrlReason.CA_COMPROMISE));
+    // only the latest change is kept
+    cache.certificateUnrevoked(BigInteger.valueOf(3), TIME);
+    cache.certificateRemoved(BigInteger.valueOf(7));
+
+    // a delta CRL does not change the entries
+    for (int i = 0; i < 2; i++) {
+      List<CertRevInfoWithSerial> entries = cache.getEntries();
+      assertEntries(entries, 1, 3, 5);
+      Assert.assertEquals("reason of 1", CrlReason.CA_COMPROMISE, entries.get(0).getReason());
+      Assert.assertEquals("reason of 3", CrlReason.REMOVE_FROM_CRL, entries.get(1).getReason());
+      Assert.assertEquals("reason of 5", CrlReason.KEY_COMPROMISE, entries.get(2).getReason());
+    }
+  }
+
+  @Test
+  public void testFullCrlGeneration() {
+    DeltaCrlCache cache = new DeltaCrlCache();
+    cache.certificateRevoked(BigInteger.valueOf(1), revInfo(CrlReason.KEY_COMPROMISE));
+    cache.certificateRevoked(BigInteger.valueOf(2), revInfo(CrlReason.KEY_COMPROMISE));
+    cache.certificateRevoked(BigInteger.valueOf(3), revInfo(CrlReason.CERTIFICATE_HOLD));
+
+    // the full CRL contains the changes until now
+    long sequence = cache.getSequence();
+    Assert.assertEquals("sequence", 3, sequence);
+
+    // changes while the full CRL is being generated
+    cache.certificateUnrevoked(BigInteger.valueOf(3), TIME);
+    cache.certificateRevoked(BigInteger.valueOf(4), revInfo(CrlReason.SUPERSEDED));
+
+    cache.clear(sequence);
+    List<CertRevInfoWithSerial> entries = cache.getEntries();
+    assertEntries(entries, 3, 4);
+    Assert.assertEquals("reason of 3", CrlReason.REMOVE_FROM_CRL, entries.get(0).getReason());
+
+    // the next full CRL
+    cache.clear(cache.getSequence());
+    Assert.assertEquals("size", 0, cache.size());
+  }
+
+  @Test
+  public void testConcurrentFullCrlGeneration() throws Exception {
+    final int threads = 4;
+    final int changesPerThread = 5000;
+    DeltaCrlCache cache = new DeltaCrlCache();
+    CountDownLatch started = new CountDownLatch(threads);
+
+    List<Thread> writers = new ArrayList<>(threads);
+    for (int i = 0; i < threads; i++) {
+      final int threadIdx = i;
+      Thread writer = new Thread(() -> {
+        started.countDown();
+        for (int j = 0; j < changesPerThread; j++) {
+          // each certificate is revoked once
+          BigInteger serial = BigInteger.valueOf((long) j * threads + threadIdx);
+          cache.certificateRevoked(serial, revInfo(CrlReason.KEY_COMPROMISE));
+        }
+      });
+      writers.add(writer);
+      writer.start();
+    }
+
+    started.await();
+    long sequence = cache.getSequence();
+    cache.clear(sequence);
+
+    for (Thread writer : writers) {
+      writer.join();
+    }
+
+    // the changes after the sequence number must survive the clearing
+    List<CertRevInfoWithSerial> entries = cache.getEntries();
+    Assert.assertEquals("size", threads * changesPerThread - sequence, entries.size());
+    for (CertRevInfoWithSerial entry : entries) {
+      Assert.assertTrue("sequence of " + entry.getSerial(), entry.getId() > sequence);
+    }
+  }
+
+  private static CertRevocationInfo revInfo(CrlReason reason) {
+    return new CertRevocationInfo(reason, TIME, null);
+  }
+
+  private static void assertEntries(List<CertRevInfoWithSerial> entries, long... serials) {
+    Assert.assertEquals("size", serials.length, entries.size());
+    for (int i = 0; i < serials.length; i++) {
+      Assert.assertEquals("serial at " + i, BigInteger.valueOf(serials[i]),
+          entries.get(i).getSerial());
+    }
+  }
+
+}
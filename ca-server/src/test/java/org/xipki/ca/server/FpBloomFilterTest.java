@@ -0,0 +1,143 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class FpBloomFilterTest {
+
+  private static final int CAPACITY = 100000;
+
+  @Test
+  public void testNotLoaded() {
+    FpBloomFilter filter = new FpBloomFilter(CAPACITY);
+    filter.add(1);
+    Random random = new Random(1);
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertTrue("mightContain before loaded", filter.mightContain(random.nextLong()));
+    }
+  }
+
+  @Test
+  public void testNoFalseNegatives() throws Exception {
+    final FpBloomFilter filter = new FpBloomFilter(CAPACITY);
+    final int threads = 4;
+    final int numLoaded = CAPACITY / 2;
+    final int numAddedPerThread = CAPACITY / 2 / threads;
+
+    final long[] loadedFps = randomFps(0, numLoaded);
+    final long[][] addedFps = new long[threads][];
+    for (int i = 0; i < threads; i++) {
+      addedFps[i] = randomFps(i + 1, numAddedPerThread);
+    }
+
+    // the certificates issued while the filter is being loaded are added concurrently
+    List<Thread> adders = new ArrayList<>(threads + 1);
+    adders.add(new Thread(() -> {
+      for (long fp : loadedFps) {
+        filter.add(fp);
+      }
+      filter.setLoaded();
+    }));
+
+    for (int i = 0; i < threads; i++) {
+      final long[] fps = addedFps[i];
+      adders.add(new Thread(() -> {
+        for (long fp : fps) {
+          filter.add(fp);
+        }
+      }));
+    }
+
+    for (Thread adder : adders) {
+      adder.start();
+    }
+    for (Thread adder : adders) {
+      adder.join();
+    }
+
+    Assert.assertTrue("loaded", filter.isLoaded());
+    for (long fp : loadedFps) {
+      Assert.assertTrue("loaded fingerprint " + fp, filter.mightContain(fp));
+    }
+
+    for (long[] fps : addedFps) {
+      for (long fp : fps) {
+        Assert.assertTrue("added fingerprint " + fp, filter.mightContain(fp));
+      }
+    }
+
+    // added after loading
+    long[] fps = randomFps(100, 1000);
+    for (long fp : fps) {
+      filter.add(fp);
+      Assert.assertTrue("incrementally added fingerprint " + fp, filter.mightContain(fp));
+    }
+  }
+
+  @Test
+  public void testFalsePositiveRate() {
+    FpBloomFilter filter = new FpBloomFilter(CAPACITY);
+    for (long fp : randomFps(0, CAPACITY)) {
+      filter.add(fp);
+    }
+    filter.setLoaded();
+
+    int falsePositives = 0;
+    for (long fp : randomFps(1, CAPACITY)) {
+      if (filter.mightContain(fp)) {
+        falsePositives++;
+      }
+    }
+
+    // about 0.8% expected
+    Assert.assertTrue("false positives " + falsePositives, falsePositives < CAPACITY / 50);
+  }
+
+  @Test
+  public void testCapacityTooLarge() {
+    try {
+      new FpBloomFilter(1L << 30);
+      Assert.fail("IllegalArgumentException expected");
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+  }
+
+  private static long[] randomFps(long seed, int num) {
+    Random random = new Random(seed);
+    long[] fps = new long[num];
+    for (int i = 0; i < num; i++) {
+      fps[i] = random.nextLong();
+    }
+    return fps;
+  }
+
+}
@@ -0,0 +1,159 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.sec.SECObjectIdentifiers;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.ca.api.profile.KeypairGenControl;
+import org.xipki.security.util.KeyUtil;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class KeypairPoolTest {
+
+  private static final KeypairGenControl P256 =
+      new KeypairGenControl.ECKeypairGenControl(SECObjectIdentifiers.secp256r1);
+
+  private static final byte[] DATA = "data to sign".getBytes();
+
+  @Before
+  public void addBouncyCastleProvider() {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+  }
+
+  @Test
+  public void testEncryptedKeypairs() throws Exception {
+    assertKeypairs(true);
+  }
+
+  @Test
+  public void testUnencryptedKeypairs() throws Exception {
+    assertKeypairs(false);
+  }
+
+  @Test
+  public void testWatermarks() throws Exception {
+    try (KeypairPool pool = new KeypairPool(3, 6, 4, false)) {
+      pool.warmUp(P256);
+      awaitDepth(pool, 6);
+      // the concurrent fillers must not overshoot the high watermark
+      Thread.sleep(200);
+      Assert.assertEquals("depth after warm up", 6, pool.getDepth(P256));
+
+      // not below the low watermark, no refill
+      for (int i = 0; i < 3; i++) {
+        pool.getKeypair(P256);
+      }
+      Thread.sleep(200);
+      Assert.assertEquals("depth at low watermark", 3, pool.getDepth(P256));
+
+      pool.getKeypair(P256);
+      awaitDepth(pool, 6);
+      Thread.sleep(200);
+      Assert.assertEquals("depth after refill", 6, pool.getDepth(P256));
+    }
+  }
+
+  @Test
+  public void testKeyAlgorithmOfControl() throws Exception {
+    KeypairGenControl p256WithOtherAlgo = new KeypairGenControl.ECKeypairGenControl(
+        SECObjectIdentifiers.secp256r1, new ASN1ObjectIdentifier("1.3.132.1.12"));
+    try (KeypairPool pool = new KeypairPool(1, 2, 1, true)) {
+      pool.warmUp(P256);
+      awaitDepth(pool, 2);
+
+      // both controls share the pool, the key algorithm is the one of the control
+      KeypairPool.GeneratedKeypair kp = pool.getKeypair(p256WithOtherAlgo);
+      Assert.assertEquals("public key algorithm", new ASN1ObjectIdentifier("1.3.132.1.12"),
+          kp.getPublicKeyInfo().getAlgorithm().getAlgorithm());
+      Assert.assertEquals("private key algorithm", new ASN1ObjectIdentifier("1.3.132.1.12"),
+          kp.getPrivateKeyInfo().getPrivateKeyAlgorithm().getAlgorithm());
+
+      kp = pool.getKeypair(P256);
+      Assert.assertEquals("public key algorithm", X9ObjectIdentifiers.id_ecPublicKey,
+          kp.getPublicKeyInfo().getAlgorithm().getAlgorithm());
+    }
+  }
+
+  @Test
+  public void testNotPooled() throws Exception {
+    KeypairGenControl dsa = new KeypairGenControl.DSAKeypairGenControl(1024);
+    try (KeypairPool pool = new KeypairPool(1, 2, 1, true)) {
+      pool.warmUp(dsa);
+      Assert.assertEquals("depth", 0, pool.getDepth(dsa));
+      Assert.assertNotNull("keypair", pool.getKeypair(dsa));
+    }
+  }
+
+  private static void assertKeypairs(boolean encrypt) throws Exception {
+    try (KeypairPool pool = new KeypairPool(2, 4, 2, encrypt)) {
+      pool.warmUp(P256);
+      awaitDepth(pool, 4);
+
+      Set<PublicKey> publicKeys = new HashSet<>();
+      for (int i = 0; i < 4; i++) {
+        KeypairPool.GeneratedKeypair kp = pool.getKeypair(P256);
+        PublicKey publicKey = KeyUtil.generatePublicKey(kp.getPublicKeyInfo());
+        PrivateKey privateKey = KeyFactory.getInstance("EC", "BC").generatePrivate(
+            new PKCS8EncodedKeySpec(kp.getPrivateKeyInfo().getEncoded()));
+
+        // the decrypted private key matches the public key
+        Signature signer = Signature.getInstance("SHA256withECDSA", "BC");
+        signer.initSign(privateKey);
+        signer.update(DATA);
+        byte[] signature = signer.sign();
+
+        Signature verifier = Signature.getInstance("SHA256withECDSA", "BC");
+        verifier.initVerify(publicKey);
+        verifier.update(DATA);
+        Assert.assertTrue("signature " + i, verifier.verify(signature));
+        Assert.assertTrue("unique public key " + i, publicKeys.add(publicKey));
+      }
+    }
+  }
+
+  private static void awaitDepth(KeypairPool pool, int depth) throws InterruptedException {
+    for (int i = 0; i < 1000 && pool.getDepth(P256) < depth; i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertTrue("depth " + pool.getDepth(P256) + " < " + depth,
+        pool.getDepth(P256) >= depth);
+  }
+
+}
@@ -0,0 +1,362 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.mgmt.MgmtEntry;
+import org.xipki.ca.api.publisher.CertPublisher;
+import org.xipki.password.PasswordResolver;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.X509Cert;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class PublishQueueProcessorTest {
+
+  /**
+   * PUBLISHQUEUE of one publisher in memory. The entries are returned in ascending order of
+   * the certificate id, as by the ORDER BY of the CertStore.
+   */
+  private static class MemoryQueueStore implements PublishQueueProcessor.QueueStore {
+
+    private final TreeSet<Long> entries = new TreeSet<>();
+
+    private long nextCertId = 1;
+
+    synchronized long addEntry() {
+      long certId = nextCertId++;
+      entries.add(certId);
+      return certId;
+    }
+
+    synchronized Set<Long> getEntries() {
+      return new TreeSet<>(entries);
+    }
+
+    @Override
+    public synchronized List<Long> getEntries(NameId publisher, int numEntries) {
+      List<Long> ret = new ArrayList<>(numEntries);
+      for (Long certId : entries) {
+        if (ret.size() == numEntries) {
+          break;
+        }
+        ret.add(certId);
+      }
+      return ret;
+    }
+
+    @Override
+    public List<CertificateInfo> getCerts(List<Long> certIds) {
+      List<CertificateInfo> certInfos = new ArrayList<>(certIds.size());
+      for (Long certId : certIds) {
+        CertWithDbId cert = new CertWithDbId(certificate);
+        cert.setCertId(certId);
+        certInfos.add(new CertificateInfo(cert, null, CA, caCert,
+            certificate.getPublicKey().getEncoded(), PROFILE, REQUESTOR));
+      }
+      return certInfos;
+    }
+
+    @Override
+    public synchronized void removeEntries(NameId publisher, List<Long> certIds) {
+      entries.removeAll(certIds);
+    }
+
+    @Override
+    public synchronized long getSize(NameId publisher) {
+      return entries.size();
+    }
+
+  } // class MemoryQueueStore
+
+  /**
+   * Publisher recording the order of the published certificates.
+   */
+  private static class RecordingPublisher extends CertPublisher {
+
+    private final List<Long> published = new ArrayList<>();
+
+    private final List<Integer> chunkSizes = new ArrayList<>();
+
+    private final Set<Long> failingCertIds = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger activeCalls = new AtomicInteger();
+
+    private volatile int maxActiveCalls;
+
+    @Override
+    public List<CertificateInfo> certificatesAdded(List<CertificateInfo> certInfos) {
+      int active = activeCalls.incrementAndGet();
+      maxActiveCalls = Math.max(maxActiveCalls, active);
+      try {
+        List<CertificateInfo> failed = new ArrayList<>();
+        synchronized (this) {
+          chunkSizes.add(certInfos.size());
+          for (CertificateInfo certInfo : certInfos) {
+            long certId = certInfo.getCert().getCertId();
+            if (failingCertIds.contains(certId)) {
+              failed.add(certInfo);
+            } else {
+              published.add(certId);
+            }
+          }
+        }
+        Thread.yield();
+        return failed;
+      } finally {
+        activeCalls.decrementAndGet();
+      }
+    }
+
+    synchronized List<Long> getPublished() {
+      return new ArrayList<>(published);
+    }
+
+    @Override
+    public void initialize(String conf, PasswordResolver passwordResolver,
+        Map<String, String> datasourceConfFiles) {
+    }
+
+    @Override
+    public boolean publishsGoodCert() {
+      return true;
+    }
+
+    @Override
+    public boolean isAsyn() {
+      return false;
+    }
+
+    @Override
+    public boolean caAdded(X509Cert caCert) {
+      return true;
+    }
+
+    @Override
+    public boolean certificateAdded(CertificateInfo certInfo) {
+      return certificatesAdded(Collections.singletonList(certInfo)).isEmpty();
+    }
+
+    @Override
+    public boolean certificateRevoked(X509Cert caCert, CertWithDbId cert, String certprofile,
+        CertRevocationInfo revInfo) {
+      return true;
+    }
+
+    @Override
+    public boolean certificateUnrevoked(X509Cert caCert, CertWithDbId cert) {
+      return true;
+    }
+
+    @Override
+    public boolean certificateRemoved(X509Cert caCert, CertWithDbId cert) {
+      return true;
+    }
+
+    @Override
+    public boolean crlAdded(X509Cert caCert, X509CRL crl) {
+      return true;
+    }
+
+    @Override
+    public boolean caRevoked(X509Cert caCert, CertRevocationInfo revInfo) {
+      return true;
+    }
+
+    @Override
+    public boolean caUnrevoked(X509Cert caCert) {
+      return true;
+    }
+
+    @Override
+    public boolean isHealthy() {
+      return true;
+    }
+
+  } // class RecordingPublisher
+
+  private static final NameId CA = new NameId(1, "ca1");
+
+  private static final NameId PROFILE = new NameId(1, "profile1");
+
+  private static final NameId REQUESTOR = new NameId(1, "requestor1");
+
+  private static X509Certificate certificate;
+
+  private static X509Cert caCert;
+
+  private final MemoryQueueStore store = new MemoryQueueStore();
+
+  private final RecordingPublisher certPublisher = new RecordingPublisher();
+
+  private final IdentifiedCertPublisher publisher = new IdentifiedCertPublisher(
+      new MgmtEntry.Publisher(new NameId(1, "publisher1"), "test", null), certPublisher);
+
+  private ScheduledExecutorService scheduler;
+
+  @Before
+  public void init() throws Exception {
+    scheduler = Executors.newScheduledThreadPool(1);
+    if (certificate == null) {
+      KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+      kpGen.initialize(new ECGenParameterSpec("secp256r1"));
+      KeyPair keypair = kpGen.generateKeyPair();
+      X500Name subject = new X500Name("CN=ca1");
+      JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(subject,
+          BigInteger.ONE, new Date(), new Date(System.currentTimeMillis() + 86400000L),
+          subject, keypair.getPublic());
+      certificate = new JcaX509CertificateConverter().getCertificate(builder.build(
+          new JcaContentSignerBuilder("SHA256withECDSA").build(keypair.getPrivate())));
+      caCert = new X509Cert(certificate);
+    }
+  }
+
+  @After
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void testDrainOrder() {
+    for (int i = 0; i < 1200; i++) {
+      store.addEntry();
+    }
+
+    PublishQueueProcessor processor = new PublishQueueProcessor(CA, store, null, scheduler);
+    Assert.assertTrue("published", processor.publish(publisher));
+
+    // the entries are published in the order of the queue, in chunks of 500 entries
+    assertAscending(certPublisher.getPublished(), 1, 1200);
+    Assert.assertEquals("chunks", Arrays.asList(500, 500, 200),
+        certPublisher.chunkSizes);
+    Assert.assertTrue("queue empty", store.getEntries().isEmpty());
+    Assert.assertEquals("backlog", 0, processor.getBacklog("publisher1"));
+  }
+
+  @Test
+  public void testFailedEntryStopsDrain() {
+    for (int i = 0; i < 1200; i++) {
+      store.addEntry();
+    }
+
+    certPublisher.failingCertIds.add(700L);
+    PublishQueueProcessor processor = new PublishQueueProcessor(CA, store, null, scheduler);
+    Assert.assertFalse("published", processor.publish(publisher));
+
+    // the chunk containing the failed entry is removed except the failed entry, and the
+    // drain stops before the next chunk.
+    List<Long> published = certPublisher.getPublished();
+    Assert.assertEquals("published", 999, published.size());
+    Assert.assertFalse("failed entry published", published.contains(700L));
+    Assert.assertEquals("remaining entries", 201, store.getEntries().size());
+    Assert.assertEquals("first remaining entry", 700L,
+        store.getEntries().iterator().next().longValue());
+    Assert.assertEquals("backlog", 201, processor.getBacklog("publisher1"));
+
+    // the failed entry is published first in the next drain
+    certPublisher.failingCertIds.clear();
+    certPublisher.published.clear();
+    Assert.assertTrue("published", processor.publish(publisher));
+    published = certPublisher.getPublished();
+    Assert.assertEquals("first published", 700L, published.get(0).longValue());
+    assertAscending(published.subList(1, published.size()), 1001, 1200);
+    Assert.assertTrue("queue empty", store.getEntries().isEmpty());
+  }
+
+  @Test
+  public void testConcurrentEntries() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      PublishQueueProcessor processor =
+          new PublishQueueProcessor(CA, store, executor, scheduler);
+
+      List<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        Thread thread = new Thread(() -> {
+          for (int j = 0; j < 500; j++) {
+            store.addEntry();
+            processor.entryAdded(publisher);
+          }
+        });
+        threads.add(thread);
+        thread.start();
+      }
+
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      for (int i = 0; i < 1000 && !store.getEntries().isEmpty(); i++) {
+        Thread.sleep(10);
+      }
+
+      // every entry added during a drain is published by this or the next drain
+      Assert.assertTrue("queue empty", store.getEntries().isEmpty());
+      // at most one drain per publisher at a time, so the entries are published in order
+      Assert.assertEquals("concurrent drains", 1, certPublisher.maxActiveCalls);
+      assertAscending(certPublisher.getPublished(), 1, 2000);
+    } finally {
+      executor.shutdownNow();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+
+  private static void assertAscending(List<Long> certIds, long first, long last) {
+    Assert.assertEquals("number of entries", last - first + 1, certIds.size());
+    for (int i = 0; i < certIds.size(); i++) {
+      Assert.assertEquals("entry " + i, first + i, certIds.get(i).longValue());
+    }
+  }
+
+}
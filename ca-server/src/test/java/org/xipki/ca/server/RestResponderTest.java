@@ -0,0 +1,199 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ca.server;
+
+import java.nio.ByteBuffer;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class RestResponderTest {
+
+  private static class HeaderRetriever implements HttpRequestMetadataRetriever {
+
+    private final Map<String, String> headers = new HashMap<>();
+
+    HeaderRetriever(String... namesAndValues) {
+      for (int i = 0; i < namesAndValues.length; i += 2) {
+        headers.put(namesAndValues[i], namesAndValues[i + 1]);
+      }
+    }
+
+    @Override
+    public String getHeader(String headerName) {
+      return headers.get(headerName);
+    }
+
+    @Override
+    public String getParameter(String paramName) {
+      return null;
+    }
+
+    @Override
+    public X509Certificate getTlsClientCert() {
+      return null;
+    }
+
+  } // class HeaderRetriever
+
+  private static final int SIZE = 100;
+
+  // Fri, 14 Jul 2017 02:40:00 GMT
+  private static final long THIS_UPDATE = 1500000000000L;
+
+  private static final String LAST_MODIFIED = "Fri, 14 Jul 2017 02:40:00 GMT";
+
+  private final byte[] encoded = newEncoded();
+
+  private final CrlCache.CachedCrl crl =
+      new CrlCache.CachedCrl(1, THIS_UPDATE, ByteBuffer.wrap(encoded).asReadOnlyBuffer(), null);
+
+  @Test
+  public void testFullResponse() {
+    RestResponse resp = getResponse();
+    assertContent(resp, 200, 0, SIZE - 1);
+    Assert.assertEquals("ETag", crl.getEtag(), resp.getHeaders().get("ETag"));
+    Assert.assertEquals("Last-Modified", LAST_MODIFIED, resp.getHeaders().get("Last-Modified"));
+    Assert.assertEquals("Accept-Ranges", "bytes", resp.getHeaders().get("Accept-Ranges"));
+    Assert.assertNull("Content-Range", resp.getHeaders().get("Content-Range"));
+  }
+
+  @Test
+  public void testIfNoneMatch() {
+    String etag = crl.getEtag();
+    assertNotModified(getResponse("If-None-Match", etag));
+    assertNotModified(getResponse("If-None-Match", "W/" + etag));
+    assertNotModified(getResponse("If-None-Match", "*"));
+    assertNotModified(getResponse("If-None-Match", "\"other\", " + etag));
+    assertContent(getResponse("If-None-Match", "\"other\""), 200, 0, SIZE - 1);
+
+    // If-Modified-Since is ignored if If-None-Match is present
+    assertContent(getResponse("If-None-Match", "\"other\"", "If-Modified-Since", LAST_MODIFIED),
+        200, 0, SIZE - 1);
+  }
+
+  @Test
+  public void testIfModifiedSince() {
+    assertNotModified(getResponse("If-Modified-Since", LAST_MODIFIED));
+    assertNotModified(getResponse("If-Modified-Since", "Fri, 14 Jul 2017 02:40:01 GMT"));
+    assertContent(getResponse("If-Modified-Since", "Fri, 14 Jul 2017 02:39:59 GMT"),
+        200, 0, SIZE - 1);
+    // malformed dates are ignored
+    assertContent(getResponse("If-Modified-Since", "2017-07-14T02:40:00Z"), 200, 0, SIZE - 1);
+  }
+
+  @Test
+  public void testRange() {
+    assertContent(getResponse("Range", "bytes=0-9"), 206, 0, 9);
+    assertContent(getResponse("Range", "bytes= 10 - 19 "), 206, 10, 19);
+    assertContent(getResponse("Range", "bytes=90-"), 206, 90, SIZE - 1);
+    // the last position is limited to the size
+    assertContent(getResponse("Range", "bytes=90-1000"), 206, 90, SIZE - 1);
+    assertContent(getResponse("Range", "bytes=99-99"), 206, 99, 99);
+  }
+
+  @Test
+  public void testSuffixRange() {
+    assertContent(getResponse("Range", "bytes=-5"), 206, SIZE - 5, SIZE - 1);
+    assertContent(getResponse("Range", "bytes=-1000"), 206, 0, SIZE - 1);
+    assertUnsatisfiable(getResponse("Range", "bytes=-0"));
+  }
+
+  @Test
+  public void testUnsatisfiableRange() {
+    assertUnsatisfiable(getResponse("Range", "bytes=100-"));
+    assertUnsatisfiable(getResponse("Range", "bytes=100-200"));
+  }
+
+  @Test
+  public void testMalformedRange() {
+    String[] ranges = {"bytes=a-b", "bytes=5", "bytes=5-3", "bytes=0-1,3-4", "items=0-1",
+      "bytes=--1", "bytes=-", "0-1"};
+    for (String range : ranges) {
+      RestResponse resp = getResponse("Range", range);
+      Assert.assertEquals(range, 200, resp.getStatusCode());
+      assertContent(resp, 200, 0, SIZE - 1);
+    }
+  }
+
+  @Test
+  public void testIfRange() {
+    assertContent(getResponse("Range", "bytes=0-9", "If-Range", crl.getEtag()), 206, 0, 9);
+    assertContent(getResponse("Range", "bytes=0-9", "If-Range", LAST_MODIFIED), 206, 0, 9);
+    // the CRL has changed, the whole CRL is returned
+    assertContent(getResponse("Range", "bytes=0-9", "If-Range", "\"other\""), 200, 0, SIZE - 1);
+  }
+
+  private RestResponse getResponse(String... headerNamesAndValues) {
+    RestResponse resp = RestResponder.getCrlResponse(crl,
+        new HeaderRetriever(headerNamesAndValues));
+    // the cached content is not changed
+    Assert.assertEquals("cached CRL", SIZE, crl.getContent().remaining());
+    return resp;
+  }
+
+  private void assertContent(RestResponse resp, int statusCode, int first, int last) {
+    Assert.assertEquals("status code", statusCode, resp.getStatusCode());
+    Assert.assertEquals("content type", "application/pkix-crl", resp.getContentType());
+
+    ByteBuffer buffer = resp.getBodyBuffer();
+    byte[] body = new byte[buffer.remaining()];
+    buffer.duplicate().get(body);
+    Assert.assertTrue("body", Arrays.equals(Arrays.copyOfRange(encoded, first, last + 1), body));
+
+    String contentRange = resp.getHeaders().get("Content-Range");
+    if (statusCode == 206) {
+      Assert.assertEquals("Content-Range", "bytes " + first + "-" + last + "/" + SIZE,
+          contentRange);
+    } else {
+      Assert.assertNull("Content-Range", contentRange);
+    }
+  }
+
+  private void assertNotModified(RestResponse resp) {
+    Assert.assertEquals("status code", 304, resp.getStatusCode());
+    Assert.assertNull("body", resp.getBodyBuffer());
+    Assert.assertEquals("ETag", crl.getEtag(), resp.getHeaders().get("ETag"));
+  }
+
+  private static void assertUnsatisfiable(RestResponse resp) {
+    Assert.assertEquals("status code", 416, resp.getStatusCode());
+    Assert.assertNull("body", resp.getBodyBuffer());
+    Assert.assertEquals("Content-Range", "bytes */" + SIZE,
+        resp.getHeaders().get("Content-Range"));
+  }
+
+  private static byte[] newEncoded() {
+    byte[] encoded = new byte[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      encoded[i] = (byte) i;
+    }
+    return encoded;
+  }
+
+}
@@ -0,0 +1,194 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.Security;
+import java.security.cert.X509CRL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.security.CrlReason;
+import org.xipki.security.HashAlgo;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class StreamingCrlBuilderTest {
+
+  /**
+   * Deterministic signer, the signature is the SHA-256 hash of the TBSCertList.
+   */
+  private static class HashSigner implements ContentSigner {
+
+    private final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+    @Override
+    public AlgorithmIdentifier getAlgorithmIdentifier() {
+      return new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption,
+          DERNull.INSTANCE);
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return stream;
+    }
+
+    @Override
+    public byte[] getSignature() {
+      return HashAlgo.SHA256.hash(stream.toByteArray());
+    }
+
+  } // class HashSigner
+
+  private static final CrlReason[] REASONS = {CrlReason.UNSPECIFIED,
+    CrlReason.KEY_COMPROMISE, CrlReason.CA_COMPROMISE, CrlReason.SUPERSEDED,
+    CrlReason.CESSATION_OF_OPERATION, CrlReason.CERTIFICATE_HOLD};
+
+  private static final X500Name ISSUER = new X500Name("CN=CRL Issuer,O=xipki");
+
+  private static final X500Name CERT_ISSUER = new X500Name("CN=Other CA,O=xipki");
+
+  // 2049-12-31T23:59:59Z is the last UTCTime, 2050-01-01T00:00:00Z the first GeneralizedTime
+  private static final long LAST_UTC_TIME = 2524607999000L;
+
+  private static final long FIRST_GENERALIZED_TIME = 2524608000000L;
+
+  @Before
+  public void addBouncyCastleProvider() {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+  }
+
+  @Test
+  public void testCrlWithEntries() throws Exception {
+    assertSameAsBc(3000, null, new Date(LAST_UTC_TIME), new Date(FIRST_GENERALIZED_TIME));
+  }
+
+  @Test
+  public void testIndirectCrl() throws Exception {
+    assertSameAsBc(500, CERT_ISSUER, new Date(FIRST_GENERALIZED_TIME), null);
+  }
+
+  @Test
+  public void testEmptyCrl() throws Exception {
+    assertSameAsBc(0, null, new Date(LAST_UTC_TIME), new Date(LAST_UTC_TIME + 86400000L));
+  }
+
+  private static void assertSameAsBc(int numEntries, X500Name certIssuer, Date thisUpdate,
+      Date nextUpdate) throws Exception {
+    Random random = new Random(numEntries);
+    List<CertRevInfoWithSerial> entries = new ArrayList<>(numEntries);
+    for (int i = 0; i < numEntries; i++) {
+      // unique serial numbers of different lengths
+      BigInteger serial = new BigInteger(random.nextInt(144), random).shiftLeft(16)
+          .add(BigInteger.valueOf(i));
+      // dates around the boundary between UTCTime and GeneralizedTime
+      long revTime = (random.nextBoolean() ? LAST_UTC_TIME : FIRST_GENERALIZED_TIME)
+          + (random.nextInt(3) - 1) * 1000L;
+      CrlReason reason = REASONS[i % REASONS.length];
+      Date invalidityTime = (i % 3 == 0) ? new Date(revTime - i * 1000L) : null;
+      entries.add(new CertRevInfoWithSerial(i + 1, serial, reason, new Date(revTime),
+          invalidityTime));
+    }
+
+    X509CRL crl;
+    StreamingCrlBuilder builder = new StreamingCrlBuilder(ISSUER, thisUpdate, nextUpdate);
+    try {
+      builder.setCertificateIssuer(certIssuer);
+      builder.addExtension(Extension.cRLNumber, false, new ASN1Integer(numEntries));
+      // entries are added in unsorted chunks
+      for (int from = 0; from < numEntries; from += 700) {
+        builder.addEntries(new ArrayList<>(entries.subList(from,
+            Math.min(numEntries, from + 700))));
+      }
+      crl = builder.build(new HashSigner());
+      Assert.assertEquals("number of entries", numEntries, builder.getNumEntries());
+    } finally {
+      builder.close();
+    }
+
+    X509v2CRLBuilder bcBuilder = new X509v2CRLBuilder(ISSUER, thisUpdate);
+    if (nextUpdate != null) {
+      bcBuilder.setNextUpdate(nextUpdate);
+    }
+    bcBuilder.addExtension(Extension.cRLNumber, false, new ASN1Integer(numEntries));
+
+    Collections.sort(entries);
+    boolean first = true;
+    for (CertRevInfoWithSerial entry : entries) {
+      ExtensionsGenerator extnGen = new ExtensionsGenerator();
+      if (entry.getReason() != CrlReason.UNSPECIFIED) {
+        extnGen.addExtension(Extension.reasonCode, false,
+            CRLReason.lookup(entry.getReason().getCode()));
+      }
+
+      if (entry.getInvalidityTime() != null) {
+        extnGen.addExtension(Extension.invalidityDate, false,
+            new ASN1GeneralizedTime(entry.getInvalidityTime()));
+      }
+
+      if (first && certIssuer != null) {
+        extnGen.addExtension(Extension.certificateIssuer, true,
+            new GeneralNames(new GeneralName(certIssuer)));
+      }
+      first = false;
+
+      if (extnGen.isEmpty()) {
+        bcBuilder.addCRLEntry(entry.getSerial(), entry.getRevocationTime(),
+            CRLReason.unspecified);
+      } else {
+        bcBuilder.addCRLEntry(entry.getSerial(), entry.getRevocationTime(), extnGen.generate());
+      }
+    }
+
+    X509CRLHolder expected = bcBuilder.build(new HashSigner());
+    Assert.assertTrue("DER encoding differs from X509v2CRLBuilder",
+        Arrays.equals(expected.getEncoded(), crl.getEncoded()));
+  }
+
+}
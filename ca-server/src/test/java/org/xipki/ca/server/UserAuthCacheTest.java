@@ -0,0 +1,109 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ca.server;
+
+import org.junit.Test;
+import org.xipki.ca.api.NameId;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class UserAuthCacheTest {
+
+  private static final byte[] PASSWORD = "password".getBytes();
+
+  private static final NameId USER1 = new NameId(1, "user1");
+
+  private static final NameId USER2 = new NameId(2, "user2");
+
+  @Test
+  public void testGetPut() {
+    UserAuthCache cache = new UserAuthCache(10, 300);
+    Assert.assertNull("not cached", cache.get("user1", PASSWORD));
+
+    cache.put("user1", PASSWORD, USER1, cache.getGeneration());
+    Assert.assertEquals("cached", USER1, cache.get("user1", PASSWORD));
+    Assert.assertNull("wrong password", cache.get("user1", "other".getBytes()));
+    Assert.assertNull("other user", cache.get("user2", PASSWORD));
+  }
+
+  @Test
+  public void testGeneration() {
+    UserAuthCache cache = new UserAuthCache(10, 300);
+
+    // the user is changed while its password is verified against the database
+    long generation = cache.getGeneration();
+    cache.invalidate("user1");
+    Assert.assertTrue("generation incremented", cache.getGeneration() > generation);
+
+    cache.put("user1", PASSWORD, USER1, generation);
+    Assert.assertNull("authentication before the change", cache.get("user1", PASSWORD));
+
+    cache.put("user1", PASSWORD, USER1, cache.getGeneration());
+    Assert.assertEquals("authentication after the change", USER1, cache.get("user1", PASSWORD));
+  }
+
+  @Test
+  public void testInvalidate() {
+    UserAuthCache cache = new UserAuthCache(10, 300);
+    cache.put("user1", PASSWORD, USER1, cache.getGeneration());
+    cache.put("user2", PASSWORD, USER2, cache.getGeneration());
+
+    cache.invalidate("user1");
+    Assert.assertNull("invalidated user", cache.get("user1", PASSWORD));
+    Assert.assertEquals("other user", USER2, cache.get("user2", PASSWORD));
+
+    cache.put("user1", PASSWORD, USER1, cache.getGeneration());
+    cache.invalidateAll();
+    Assert.assertNull("user1 after invalidateAll", cache.get("user1", PASSWORD));
+    Assert.assertNull("user2 after invalidateAll", cache.get("user2", PASSWORD));
+  }
+
+  @Test
+  public void testTtl() throws Exception {
+    UserAuthCache cache = new UserAuthCache(10, 1);
+    cache.put("user1", PASSWORD, USER1, cache.getGeneration());
+    Assert.assertEquals("before expiration", USER1, cache.get("user1", PASSWORD));
+
+    Thread.sleep(1100);
+    Assert.assertNull("after expiration", cache.get("user1", PASSWORD));
+  }
+
+  @Test
+  public void testMaxSize() {
+    UserAuthCache cache = new UserAuthCache(2, 300);
+    for (int i = 0; i < 10; i++) {
+      String user = "user" + i;
+      cache.put(user, PASSWORD, new NameId(i, user), cache.getGeneration());
+    }
+
+    int cached = 0;
+    for (int i = 0; i < 10; i++) {
+      if (cache.get("user" + i, PASSWORD) != null) {
+        cached++;
+      }
+    }
+    Assert.assertTrue("at most 2 cached users", cached <= 2);
+    Assert.assertEquals("last user", "user9", cache.get("user9", PASSWORD).getName());
+  }
+
+}
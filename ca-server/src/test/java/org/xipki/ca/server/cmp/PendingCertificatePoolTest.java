@@ -0,0 +1,137 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.cmp;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.NameId;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.X509Cert;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class PendingCertificatePoolTest {
+
+  private static final NameId CA = new NameId(1, "ca1");
+
+  private static final byte[] TID = new byte[]{1, 2, 3};
+
+  private static KeyPair keypair;
+
+  private static X509Cert caCert;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(new ECGenParameterSpec("secp256r1"));
+    keypair = kpGen.generateKeyPair();
+    caCert = new X509Cert(issueCert(0));
+  }
+
+  @Test
+  public void testDuplicateCertReqId() throws Exception {
+    PendingCertificatePool pool = new PendingCertificatePool();
+    long deadline = System.currentTimeMillis() + 60000;
+    CertificateInfo cert1 = certInfo(1);
+    CertificateInfo cert2 = certInfo(2);
+    CertificateInfo cert3 = certInfo(3);
+    pool.addCertificate(TID, BigInteger.ONE, cert1, deadline);
+    pool.addCertificate(TID, BigInteger.ONE, cert2, deadline);
+    pool.addCertificate(TID, BigInteger.ONE, cert3, deadline);
+    Assert.assertEquals("pending", 3, pool.getNumPending());
+
+    // the certificate with the confirmed hash is removed
+    Assert.assertSame("confirmed", cert2,
+        pool.removeCertificate(TID, BigInteger.ONE, certHash(cert2)));
+    Assert.assertEquals("pending", 2, pool.getNumPending());
+
+    // unknown hash, nothing is removed
+    Assert.assertNotNull("unconfirmed",
+        pool.removeCertificate(TID, BigInteger.ONE, certHash(cert2)));
+    Assert.assertEquals("pending", 2, pool.getNumPending());
+
+    // the unconfirmed certificates are not lost
+    Assert.assertEquals("remaining", new HashSet<>(Arrays.asList(cert1, cert3)),
+        pool.removeCertificates(TID));
+    Assert.assertEquals("pending", 0, pool.getNumPending());
+    Assert.assertNull("removed", pool.removeCertificates(TID));
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    PendingCertificatePool pool = new PendingCertificatePool();
+    long now = System.currentTimeMillis();
+    CertificateInfo cert1 = certInfo(1);
+    CertificateInfo cert2 = certInfo(2);
+    CertificateInfo cert3 = certInfo(3);
+    pool.addCertificate(TID, BigInteger.ONE, cert1, now - 1000);
+    pool.addCertificate(TID, BigInteger.ONE, cert2, now + 60000);
+    pool.addCertificate(TID, BigInteger.valueOf(2), cert3, now - 1000);
+
+    Set<CertificateInfo> timeouted = pool.removeConfirmTimeoutedCertificates();
+    Assert.assertEquals("timeouted", new HashSet<>(Arrays.asList(cert1, cert3)), timeouted);
+    Assert.assertEquals("numTimeouted", 2, pool.getNumTimeouted());
+    Assert.assertEquals("pending", 1, pool.getNumPending());
+    Assert.assertNull("nothing timeouted", pool.removeConfirmTimeoutedCertificates());
+
+    Assert.assertSame("confirmed", cert2,
+        pool.removeCertificate(TID, BigInteger.ONE, certHash(cert2)));
+    Assert.assertEquals("pending", 0, pool.getNumPending());
+  }
+
+  private static CertificateInfo certInfo(int serial) throws Exception {
+    return new CertificateInfo(new CertWithDbId(issueCert(serial)), null, CA, caCert,
+        keypair.getPublic().getEncoded(), new NameId(1, "profile1"), new NameId(1, "requestor1"));
+  }
+
+  private static byte[] certHash(CertificateInfo certInfo) {
+    return HashAlgo.SHA1.hash(certInfo.getCert().getEncodedCert());
+  }
+
+  private static X509Certificate issueCert(int serial) throws Exception {
+    JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(new X500Name("CN=ca1"),
+        BigInteger.valueOf(serial), new Date(), new Date(System.currentTimeMillis() + 86400000L),
+        new X500Name("CN=cert-" + serial), keypair.getPublic());
+    return new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(
+            keypair.getPrivate())));
+  }
+
+}
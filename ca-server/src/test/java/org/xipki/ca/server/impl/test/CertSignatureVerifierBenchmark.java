@@ -0,0 +1,136 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.impl.test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.xipki.ca.api.mgmt.SignatureVerificationControl;
+import org.xipki.ca.api.mgmt.SignatureVerificationControl.Mode;
+import org.xipki.ca.server.CertSignatureVerifier;
+import org.xipki.security.util.X509Util;
+
+/**
+ * Compares the throughput of the issuance of certificates by an EC CA (curve P-256) under
+ * the modes of {@link SignatureVerificationControl}. A certificate is built, signed, parsed
+ * and then passed to {@link CertSignatureVerifier}, as in the CA.
+ *
+ * <p>Usage: {@code CertSignatureVerifierBenchmark [threads [seconds per run]]}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CertSignatureVerifierBenchmark {
+
+  private static final SignatureVerificationControl[] CONTROLS = {
+    new SignatureVerificationControl(Mode.ALWAYS, 1),
+    new SignatureVerificationControl(Mode.SAMPLE, 100),
+    new SignatureVerificationControl(Mode.FIRST, 100),
+    new SignatureVerificationControl(Mode.ASYNC, 1)};
+
+  public static void main(String[] args) throws Exception {
+    int threads = (args.length > 0) ? Integer.parseInt(args[0]) : 1;
+    int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+    Security.addProvider(new BouncyCastleProvider());
+
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(new ECGenParameterSpec("secp256r1"));
+    final KeyPair caKeypair = kpGen.generateKeyPair();
+    final SubjectPublicKeyInfo eeSpki = SubjectPublicKeyInfo.getInstance(
+        kpGen.generateKeyPair().getPublic().getEncoded());
+
+    System.out.println("threads: " + threads + ", duration per run: " + seconds + " s");
+    // warm up
+    run(CONTROLS[0], caKeypair, eeSpki, threads, seconds);
+
+    System.out.println(String.format("%-48s  %16s", "control", "throughput"));
+
+    for (SignatureVerificationControl control : CONTROLS) {
+      long ops = run(control, caKeypair, eeSpki, threads, seconds);
+      System.out.println(String.format("%-48s  %11d op/s", control, ops));
+    }
+  }
+
+  private static long run(SignatureVerificationControl control, final KeyPair caKeypair,
+      final SubjectPublicKeyInfo eeSpki, int threads, int seconds) throws Exception {
+    final CertSignatureVerifier verifier = new CertSignatureVerifier(control,
+        caKeypair.getPublic(), cert -> System.err.println("invalid signature"));
+
+    final X500Name issuer = new X500Name("CN=Benchmark CA");
+    final AtomicBoolean stop = new AtomicBoolean(false);
+    final LongAdder ops = new LongAdder();
+
+    Thread[] workers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      workers[i] = new Thread(() -> {
+        try {
+          ContentSigner signer = new JcaContentSignerBuilder("SHA256withECDSA")
+              .build(caKeypair.getPrivate());
+          long count = 0;
+          while (!stop.get()) {
+            Date notBefore = new Date();
+            X509v3CertificateBuilder builder = new X509v3CertificateBuilder(issuer,
+                BigInteger.valueOf(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE),
+                notBefore, new Date(notBefore.getTime() + 365L * 24 * 3600 * 1000),
+                new X500Name("CN=benchmark-" + count), eeSpki);
+            byte[] encodedCert = builder.build(signer).getEncoded();
+            X509Certificate cert = X509Util.parseCert(encodedCert);
+            if (!verifier.verify(cert)) {
+              throw new IllegalStateException("invalid signature");
+            }
+            count++;
+          }
+          ops.add(count);
+        } catch (Exception ex) {
+          ex.printStackTrace();
+        }
+      });
+    }
+
+    for (Thread worker : workers) {
+      worker.start();
+    }
+
+    Thread.sleep(seconds * 1000L);
+    stop.set(true);
+
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    verifier.close();
+    return ops.sum() / seconds;
+  }
+
+}
@@ -0,0 +1,573 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ca.server.publisher;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.NameId;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.CrlReason;
+import org.xipki.security.X509Cert;
+import org.xipki.util.Base64;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class OcspStoreQueryExecutorTest {
+
+  /**
+   * Tables ISSUER and CERT of the OCSP database in memory, accessed via JDBC. Only the
+   * statements used by {@link OcspStoreQueryExecutor#addCerts(List)} are supported. The
+   * changes of a transaction are applied on commit.
+   */
+  private static class MemoryDatabase implements Driver {
+
+    /**
+     * The columns ID and REV of the table CERT by IID and SN.
+     */
+    private final Map<String, long[]> certs = new HashMap<>();
+
+    /**
+     * Serial numbers of the IN-lists of the executed queries.
+     */
+    private final List<Integer> selectedSerials = new ArrayList<>();
+
+    private volatile String failingSerial;
+
+    synchronized Map<String, long[]> getCerts() {
+      Map<String, long[]> ret = new HashMap<>();
+      for (String key : certs.keySet()) {
+        ret.put(key, certs.get(key).clone());
+      }
+      return ret;
+    }
+
+    synchronized void putCert(String serial, long id, boolean revoked) {
+      certs.put(ISSUER_ID + ":" + serial, new long[]{id, revoked ? 1 : 0});
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) {
+      return acceptsURL(url) ? new MemoryConnection(this).proxy : null;
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+      return JDBC_URL.equals(url);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+      return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+      return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+      return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+      return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+      throw new SQLFeatureNotSupportedException();
+    }
+
+  } // class MemoryDatabase
+
+  private static class MemoryConnection implements InvocationHandler {
+
+    private final MemoryDatabase database;
+
+    private final Connection proxy;
+
+    /**
+     * Changed rows of the current transaction.
+     */
+    private final Map<String, long[]> pendingCerts = new HashMap<>();
+
+    private boolean autoCommit = true;
+
+    private boolean closed;
+
+    MemoryConnection(MemoryDatabase database) {
+      this.database = database;
+      this.proxy = proxy(Connection.class, this);
+    }
+
+    @Override
+    public Object invoke(Object obj, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "createStatement":
+          return proxy(Statement.class, (stmt, stmtMethod, stmtArgs) -> {
+            if ("executeQuery".equals(stmtMethod.getName())) {
+              if (!"SELECT NAME,VALUE2 FROM DBSCHEMA".equals(stmtArgs[0])) {
+                throw new SQLFeatureNotSupportedException((String) stmtArgs[0]);
+              }
+              return resultSet(new String[]{"NAME", "VALUE2"}, new Object[][]{
+                {"VERSION", "4"}, {"X500NAME_MAXLEN", "350"}, {"CERTHASH_ALGO", "SHA256"}});
+            }
+            return "getConnection".equals(stmtMethod.getName())
+                ? proxy : defaultValue(stmt, stmtMethod, stmtArgs);
+          });
+        case "prepareStatement":
+          return prepareStatement((String) args[0]);
+        case "getAutoCommit":
+          return autoCommit;
+        case "setAutoCommit":
+          if ((Boolean) args[0] && !autoCommit) {
+            commit();
+          }
+          autoCommit = (Boolean) args[0];
+          return null;
+        case "commit":
+          commit();
+          return null;
+        case "rollback":
+          pendingCerts.clear();
+          return null;
+        case "isValid":
+          return true;
+        case "isClosed":
+          return closed;
+        case "close":
+          pendingCerts.clear();
+          closed = true;
+          return null;
+        default:
+          return defaultValue(obj, method, args);
+      }
+    }
+
+    private PreparedStatement prepareStatement(String sql) throws SQLException {
+      if (sql.equals("SELECT ID,CERT FROM ISSUER")) {
+        return prepareStatement(params -> resultSet(new String[]{"ID", "CERT"},
+            new Object[][]{{ISSUER_ID, Base64.encodeToString(caCert.getEncodedCert())}}));
+      } else if (sql.startsWith("SELECT ID,SN FROM CERT WHERE IID=? AND SN IN (")) {
+        final int numSerials = sql.split("\\?").length - 2;
+        return prepareStatement(params -> selectCerts(params, numSerials));
+      } else if (sql.startsWith("INSERT INTO CERT ")) {
+        return prepareStatement(params -> {
+          insertCert(params);
+          return null;
+        });
+      } else if (sql.startsWith("UPDATE CERT SET ")) {
+        return prepareStatement(params -> {
+          updateCert(params);
+          return null;
+        });
+      } else {
+        throw new SQLFeatureNotSupportedException(sql);
+      }
+    }
+
+    private PreparedStatement prepareStatement(SqlExecutor executor) {
+      Map<Integer, Object> params = new HashMap<>();
+      List<Map<Integer, Object>> batch = new ArrayList<>();
+      return proxy(PreparedStatement.class, (ps, psMethod, psArgs) -> {
+        String name = psMethod.getName();
+        if (name.equals("setNull")) {
+          params.put((Integer) psArgs[0], null);
+        } else if (name.startsWith("set") && psArgs.length == 2) {
+          params.put((Integer) psArgs[0], psArgs[1]);
+        } else if (name.equals("addBatch")) {
+          batch.add(new HashMap<>(params));
+        } else if (name.equals("executeBatch")) {
+          int[] counts = new int[batch.size()];
+          for (int i = 0; i < counts.length; i++) {
+            executor.execute(batch.get(i));
+            counts[i] = 1;
+          }
+          batch.clear();
+          if (autoCommit) {
+            commit();
+          }
+          return counts;
+        } else if (name.equals("executeQuery")) {
+          return executor.execute(params);
+        } else if (name.equals("getConnection")) {
+          return proxy;
+        } else {
+          return defaultValue(ps, psMethod, psArgs);
+        }
+        return null;
+      });
+    }
+
+    private ResultSet selectCerts(Map<Integer, Object> params, int numSerials)
+        throws SQLException {
+      // column 1: IID, columns 2 to (numSerials + 1): SN
+      if (params.size() != numSerials + 1) {
+        throw new SQLException("not all parameters are set");
+      }
+
+      List<Object[]> rows = new ArrayList<>();
+      synchronized (database) {
+        for (int i = 0; i < numSerials; i++) {
+          String serial = (String) params.get(2 + i);
+          if (serial == null) {
+            throw new SQLException("parameter " + (2 + i) + " is null");
+          }
+          database.selectedSerials.add(Integer.parseInt(serial, 16));
+
+          long[] row = getCert(params.get(1) + ":" + serial);
+          if (row != null) {
+            rows.add(new Object[]{row[0], serial});
+          }
+        }
+      }
+      return resultSet(new String[]{"ID", "SN"}, rows.toArray(new Object[0][]));
+    }
+
+    private void insertCert(Map<Integer, Object> params) throws SQLException {
+      // column 1: ID, column 3: SN, column 6: REV, column 7: IID
+      String serial = (String) params.get(3);
+      String key = params.get(7) + ":" + serial;
+      synchronized (database) {
+        if (getCert(key) != null) {
+          throw new SQLException("duplicate key " + key, "23505", 23505);
+        }
+      }
+
+      if (serial.equals(database.failingSerial)) {
+        throw new SQLException("could not add certificate " + key);
+      }
+
+      pendingCerts.put(key, new long[]{(Long) params.get(1), (Integer) params.get(6)});
+    }
+
+    private void updateCert(Map<Integer, Object> params) throws SQLException {
+      // column 2: REV, column 6: ID
+      long id = (Long) params.get(6);
+      synchronized (database) {
+        Map<String, long[]> certs = new HashMap<>(database.certs);
+        certs.putAll(pendingCerts);
+        for (String key : certs.keySet()) {
+          if (certs.get(key)[0] == id) {
+            pendingCerts.put(key, new long[]{id, (Integer) params.get(2)});
+            return;
+          }
+        }
+      }
+      throw new SQLException("unknown certificate " + id);
+    }
+
+    private long[] getCert(String key) {
+      long[] row = pendingCerts.get(key);
+      return (row != null) ? row : database.certs.get(key);
+    }
+
+    private void commit() {
+      synchronized (database) {
+        database.certs.putAll(pendingCerts);
+      }
+      pendingCerts.clear();
+    }
+
+  } // class MemoryConnection
+
+  private interface SqlExecutor {
+
+    ResultSet execute(Map<Integer, Object> params) throws SQLException;
+
+  } // interface SqlExecutor
+
+  private static final String JDBC_URL = "jdbc:h2:mem:ocspstorequeryexecutortest";
+
+  private static final int ISSUER_ID = 1;
+
+  private static final NameId CA = new NameId(1, "ca1");
+
+  private static KeyPair keypair;
+
+  private static X509Cert caCert;
+
+  private MemoryDatabase database;
+
+  private DataSourceWrapper datasource;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(new ECGenParameterSpec("secp256r1"));
+    keypair = kpGen.generateKeyPair();
+    caCert = new X509Cert(issueCert(0));
+  }
+
+  @Before
+  public void openDatabase() throws Exception {
+    database = new MemoryDatabase();
+    DriverManager.registerDriver(database);
+
+    Properties conf = new Properties();
+    conf.setProperty("jdbcUrl", JDBC_URL);
+    // all transactions use the same connection
+    conf.setProperty("maximumPoolSize", "1");
+    datasource = new DataSourceFactory().createDataSource("ocsp", conf, null);
+  }
+
+  @After
+  public void closeDatabase() throws Exception {
+    datasource.close();
+    DriverManager.deregisterDriver(database);
+  }
+
+  @Test
+  public void testAddCerts() throws Exception {
+    OcspStoreQueryExecutor executor = new OcspStoreQueryExecutor(datasource, true);
+    final int num = 250;
+    List<CertificateInfo> certInfos = new ArrayList<>(num);
+    for (int i = 1; i <= num; i++) {
+      certInfos.add(certInfo(i, i % 10 == 0));
+    }
+    executor.addCerts(certInfos);
+
+    Map<String, long[]> certs = database.getCerts();
+    Assert.assertEquals("certificates", num, certs.size());
+    for (int i = 1; i <= num; i++) {
+      long[] row = certs.get(ISSUER_ID + ":" + Integer.toHexString(i));
+      Assert.assertNotNull("certificate " + i, row);
+      Assert.assertEquals("ID of certificate " + i, i, row[0]);
+      Assert.assertEquals("REV of certificate " + i, (i % 10 == 0) ? 1 : 0, row[1]);
+    }
+
+    // three queries of 100 serial numbers, the last one padded with the last serial number
+    List<Integer> selectedSerials = database.selectedSerials;
+    Assert.assertEquals("selected serials", 300, selectedSerials.size());
+    for (int i = 0; i < 300; i++) {
+      Assert.assertEquals("selected serial " + i, Math.min(i + 1, num),
+          (int) selectedSerials.get(i));
+    }
+  }
+
+  @Test
+  public void testUpdateRegisteredCerts() throws Exception {
+    database.putCert("1", 1001, false);
+    database.putCert("2", 1002, false);
+    database.putCert("3", 1003, true);
+
+    OcspStoreQueryExecutor executor = new OcspStoreQueryExecutor(datasource, true);
+    executor.addCerts(certInfos(false, 1, 3, 4));
+    List<CertificateInfo> revoked = certInfos(true, 2);
+    executor.addCerts(revoked);
+
+    Map<String, long[]> certs = database.getCerts();
+    Assert.assertEquals("certificates", 4, certs.size());
+    // the registered rows keep their IDs
+    assertCert(certs, 1, 1001, false);
+    assertCert(certs, 2, 1002, true);
+    assertCert(certs, 3, 1003, false);
+    assertCert(certs, 4, 4, false);
+  }
+
+  @Test
+  public void testNotPublishGoodCerts() throws Exception {
+    database.putCert("1", 1001, true);
+    database.putCert("2", 1002, false);
+
+    OcspStoreQueryExecutor executor = new OcspStoreQueryExecutor(datasource, false);
+    List<CertificateInfo> certInfos = certInfos(false, 1, 3);
+    certInfos.addAll(certInfos(true, 2));
+    executor.addCerts(certInfos);
+
+    Map<String, long[]> certs = database.getCerts();
+    Assert.assertEquals("certificates", 3, certs.size());
+    // registered good certificates are not updated
+    assertCert(certs, 1, 1001, true);
+    assertCert(certs, 2, 1002, true);
+    assertCert(certs, 3, 3, false);
+  }
+
+  @Test
+  public void testFailedBatchRollsBack() throws Exception {
+    database.putCert("1", 1001, false);
+    OcspStoreQueryExecutor executor = new OcspStoreQueryExecutor(datasource, true);
+
+    List<CertificateInfo> certInfos = new ArrayList<>();
+    for (int i = 1; i <= 150; i++) {
+      certInfos.add(certInfo(i, i == 1));
+    }
+
+    // fails in the second batch
+    database.failingSerial = Integer.toHexString(120);
+    try {
+      executor.addCerts(certInfos);
+      Assert.fail("DataAccessException expected");
+    } catch (DataAccessException ex) {
+      // expected
+    }
+
+    // neither the certificates of the first batch nor the update are committed
+    Map<String, long[]> certs = database.getCerts();
+    Assert.assertEquals("certificates", 1, certs.size());
+    assertCert(certs, 1, 1001, false);
+
+    database.failingSerial = null;
+    executor.addCerts(certInfos);
+    certs = database.getCerts();
+    Assert.assertEquals("certificates", 150, certs.size());
+    assertCert(certs, 1, 1001, true);
+    assertCert(certs, 120, 120, false);
+  }
+
+  private static void assertCert(Map<String, long[]> certs, int serial, long id,
+      boolean revoked) {
+    long[] row = certs.get(ISSUER_ID + ":" + Integer.toHexString(serial));
+    Assert.assertNotNull("certificate " + serial, row);
+    Assert.assertEquals("ID of certificate " + serial, id, row[0]);
+    Assert.assertEquals("REV of certificate " + serial, revoked ? 1 : 0, row[1]);
+  }
+
+  private static List<CertificateInfo> certInfos(boolean revoked, int... serials)
+      throws Exception {
+    List<CertificateInfo> certInfos = new ArrayList<>(serials.length);
+    for (int serial : serials) {
+      certInfos.add(certInfo(serial, revoked));
+    }
+    return certInfos;
+  }
+
+  private static CertificateInfo certInfo(int serial, boolean revoked) throws Exception {
+    CertWithDbId cert = new CertWithDbId(issueCert(serial));
+    cert.setCertId((long) serial);
+    CertificateInfo certInfo = new CertificateInfo(cert, null, CA, caCert,
+        keypair.getPublic().getEncoded(), new NameId(1, "profile1"),
+        new NameId(1, "requestor1"));
+    if (revoked) {
+      certInfo.setRevocationInfo(new CertRevocationInfo(CrlReason.KEY_COMPROMISE, new Date()));
+    }
+    return certInfo;
+  }
+
+  private static X509Certificate issueCert(int serial) throws Exception {
+    JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(new X500Name("CN=ca1"),
+        BigInteger.valueOf(serial), new Date(), new Date(System.currentTimeMillis() + 86400000L),
+        new X500Name("CN=cert-" + serial), keypair.getPublic());
+    return new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(
+            keypair.getPrivate())));
+  }
+
+  private static ResultSet resultSet(String[] columns, Object[][] rows) {
+    final int[] index = {-1};
+    return proxy(ResultSet.class, (rs, rsMethod, rsArgs) -> {
+      switch (rsMethod.getName()) {
+        case "next":
+          return ++index[0] < rows.length;
+        case "getString":
+        case "getInt":
+        case "getLong":
+          Object value = null;
+          for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(rsArgs[0])) {
+              value = rows[index[0]][i];
+            }
+          }
+
+          if (rsMethod.getName().equals("getInt")) {
+            return ((Number) value).intValue();
+          } else if (rsMethod.getName().equals("getLong")) {
+            return ((Number) value).longValue();
+          } else {
+            return value;
+          }
+        default:
+          return defaultValue(rs, rsMethod, rsArgs);
+      }
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return (T) Proxy.newProxyInstance(OcspStoreQueryExecutorTest.class.getClassLoader(),
+        new Class<?>[]{type}, handler);
+  }
+
+  private static Object defaultValue(Object obj, Method method, Object[] args) {
+    switch (method.getName()) {
+      case "toString":
+        return method.getDeclaringClass().getSimpleName() + "@" + System.identityHashCode(obj);
+      case "hashCode":
+        return System.identityHashCode(obj);
+      case "equals":
+        return obj == args[0];
+      default:
+        break;
+    }
+
+    Class<?> type = method.getReturnType();
+    if (type == boolean.class) {
+      return false;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == long.class) {
+      return 0L;
+    } else {
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,417 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.store;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.OperationException;
+import org.xipki.ca.api.RequestType;
+import org.xipki.ca.server.UniqueIdGenerator;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.security.X509Cert;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CertStoreTest {
+
+  /**
+   * Table CERT in memory with the unique constraint on (CA_ID, SN), accessed via JDBC.
+   * Only the statements used by the tests are supported. As in a real database, the pending
+   * rows of a transaction are committed if the auto-commit mode is switched on.
+   */
+  private static class MemoryDatabase implements Driver {
+
+    private final Set<String> certs = new HashSet<>();
+
+    private volatile String failingSerial;
+
+    synchronized Set<String> getCerts() {
+      return new HashSet<>(certs);
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) {
+      return acceptsURL(url) ? new MemoryConnection(this).proxy : null;
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+      return JDBC_URL.equals(url);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+      return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+      return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+      return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+      return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+      throw new SQLFeatureNotSupportedException();
+    }
+
+  } // class MemoryDatabase
+
+  private static class MemoryConnection implements InvocationHandler {
+
+    private final MemoryDatabase database;
+
+    private final Connection proxy;
+
+    private final List<String> pendingCerts = new ArrayList<>();
+
+    private boolean autoCommit = true;
+
+    private boolean closed;
+
+    MemoryConnection(MemoryDatabase database) {
+      this.database = database;
+      this.proxy = proxy(Connection.class, this);
+    }
+
+    @Override
+    public Object invoke(Object obj, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "createStatement":
+          return proxy(Statement.class, (stmt, stmtMethod, stmtArgs) -> {
+            if ("executeQuery".equals(stmtMethod.getName())) {
+              if (!"SELECT NAME,VALUE2 FROM DBSCHEMA".equals(stmtArgs[0])) {
+                throw new SQLFeatureNotSupportedException((String) stmtArgs[0]);
+              }
+              return dbSchema();
+            }
+            return "getConnection".equals(stmtMethod.getName())
+                ? proxy : defaultValue(stmt, stmtMethod, stmtArgs);
+          });
+        case "prepareStatement":
+          if (!((String) args[0]).startsWith("INSERT INTO CERT ")) {
+            throw new SQLFeatureNotSupportedException((String) args[0]);
+          }
+          return prepareAddCert();
+        case "getAutoCommit":
+          return autoCommit;
+        case "setAutoCommit":
+          if ((Boolean) args[0] && !autoCommit) {
+            commit();
+          }
+          autoCommit = (Boolean) args[0];
+          return null;
+        case "commit":
+          commit();
+          return null;
+        case "rollback":
+          pendingCerts.clear();
+          return null;
+        case "isValid":
+          return true;
+        case "isClosed":
+          return closed;
+        case "close":
+          pendingCerts.clear();
+          closed = true;
+          return null;
+        default:
+          return defaultValue(obj, method, args);
+      }
+    }
+
+    private PreparedStatement prepareAddCert() {
+      Map<Integer, Object> params = new HashMap<>();
+      List<Map<Integer, Object>> batch = new ArrayList<>();
+      return proxy(PreparedStatement.class, (ps, psMethod, psArgs) -> {
+        String name = psMethod.getName();
+        if (name.equals("setNull")) {
+          params.put((Integer) psArgs[0], null);
+        } else if (name.startsWith("set") && psArgs.length == 2) {
+          params.put((Integer) psArgs[0], psArgs[1]);
+        } else if (name.equals("addBatch")) {
+          batch.add(new HashMap<>(params));
+        } else if (name.equals("executeBatch")) {
+          int[] counts = new int[batch.size()];
+          for (int i = 0; i < counts.length; i++) {
+            addCert(batch.get(i));
+            counts[i] = 1;
+          }
+          batch.clear();
+          return counts;
+        } else if (name.equals("executeUpdate")) {
+          addCert(params);
+          return 1;
+        } else if (name.equals("getConnection")) {
+          return proxy;
+        } else {
+          return defaultValue(ps, psMethod, psArgs);
+        }
+        return null;
+      });
+    }
+
+    private void addCert(Map<Integer, Object> params) throws SQLException {
+      // column 3: SN, column 11: CA_ID
+      String serial = (String) params.get(3);
+      String cert = params.get(11) + ":" + serial;
+      synchronized (database) {
+        if (database.certs.contains(cert) || pendingCerts.contains(cert)) {
+          throw new SQLException("duplicate key " + cert, "23505", 23505);
+        }
+      }
+
+      if (serial.equals(database.failingSerial)) {
+        throw new IllegalStateException("could not add certificate " + cert);
+      }
+
+      pendingCerts.add(cert);
+      if (autoCommit) {
+        commit();
+      }
+    }
+
+    private void commit() {
+      synchronized (database) {
+        database.certs.addAll(pendingCerts);
+      }
+      pendingCerts.clear();
+    }
+
+    private static ResultSet dbSchema() {
+      final String[][] rows = {{"VERSION", "4"}, {"X500NAME_MAXLEN", "350"}};
+      final int[] index = {-1};
+      return proxy(ResultSet.class, (rs, rsMethod, rsArgs) -> {
+        switch (rsMethod.getName()) {
+          case "next":
+            return ++index[0] < rows.length;
+          case "getString":
+            return rows[index[0]]["NAME".equals(rsArgs[0]) ? 0 : 1];
+          default:
+            return defaultValue(rs, rsMethod, rsArgs);
+        }
+      });
+    }
+
+  } // class MemoryConnection
+
+  private static final String JDBC_URL = "jdbc:h2:mem:certstoretest";
+
+  private static final NameId CA = new NameId(1, "ca1");
+
+  private static final NameId PROFILE = new NameId(1, "profile1");
+
+  private static final NameId REQUESTOR = new NameId(1, "requestor1");
+
+  private static KeyPair keypair;
+
+  private static X509Cert caCert;
+
+  private MemoryDatabase database;
+
+  private DataSourceWrapper datasource;
+
+  private CertStore certStore;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(new ECGenParameterSpec("secp256r1"));
+    keypair = kpGen.generateKeyPair();
+    caCert = new X509Cert(issueCert(BigInteger.ONE));
+  }
+
+  @Before
+  public void openCertStore() throws Exception {
+    database = new MemoryDatabase();
+    DriverManager.registerDriver(database);
+
+    Properties conf = new Properties();
+    conf.setProperty("jdbcUrl", JDBC_URL);
+    // all transactions use the same connection
+    conf.setProperty("maximumPoolSize", "1");
+    datasource = new DataSourceFactory().createDataSource("ca", conf, null);
+    certStore = new CertStore(datasource, new UniqueIdGenerator(1506816000000L, 0));
+  }
+
+  @After
+  public void closeCertStore() throws Exception {
+    datasource.close();
+    DriverManager.deregisterDriver(database);
+  }
+
+  @Test
+  public void testAddCerts() throws Exception {
+    List<CertificateInfo> certInfos = certInfos(2, 3, 4);
+    certStore.addCerts(certInfos);
+
+    Assert.assertEquals("certificates", newSet("1:2", "1:3", "1:4"), database.getCerts());
+    Set<Long> certIds = new HashSet<>();
+    for (CertificateInfo certInfo : certInfos) {
+      certIds.add(certInfo.getCert().getCertId());
+    }
+    Assert.assertEquals("unique certIds", 3, certIds.size());
+  }
+
+  @Test
+  public void testDuplicateRollsBack() throws Exception {
+    certStore.addCerts(certInfos(2));
+
+    try {
+      certStore.addCerts(certInfos(3, 4, 2, 5));
+      Assert.fail("OperationException expected");
+    } catch (OperationException ex) {
+      // expected
+    }
+
+    // none of the certificates of the failed transaction is added
+    Assert.assertEquals("certificates", newSet("1:2"), database.getCerts());
+
+    certStore.addCerts(certInfos(3, 4, 5));
+    Assert.assertEquals("certificates", newSet("1:2", "1:3", "1:4", "1:5"),
+        database.getCerts());
+  }
+
+  @Test
+  public void testRuntimeExceptionRollsBack() throws Exception {
+    database.failingSerial = "4";
+    try {
+      certStore.addCerts(certInfos(2, 3, 4, 5));
+      Assert.fail("IllegalStateException expected");
+    } catch (IllegalStateException ex) {
+      // expected
+    }
+
+    // restoring the auto-commit mode must not commit the rows added before the failure
+    Assert.assertEquals("certificates", newSet(), database.getCerts());
+
+    database.failingSerial = null;
+    certStore.addCerts(certInfos(2, 3));
+    Assert.assertEquals("certificates", newSet("1:2", "1:3"), database.getCerts());
+  }
+
+  private static List<CertificateInfo> certInfos(int... serials) throws Exception {
+    List<CertificateInfo> certInfos = new ArrayList<>(serials.length);
+    for (int serial : serials) {
+      CertWithDbId cert = new CertWithDbId(issueCert(BigInteger.valueOf(serial)));
+      CertificateInfo certInfo = new CertificateInfo(cert, null, CA, caCert,
+          keypair.getPublic().getEncoded(), PROFILE, REQUESTOR);
+      certInfo.setReqType(RequestType.CA);
+      certInfos.add(certInfo);
+    }
+    return certInfos;
+  }
+
+  private static X509Certificate issueCert(BigInteger serial) throws Exception {
+    X500Name subject = new X500Name("CN=cert-" + serial);
+    JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+        new X500Name("CN=ca1"), serial, new Date(),
+        new Date(System.currentTimeMillis() + 86400000L), subject, keypair.getPublic());
+    return new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(
+            keypair.getPrivate())));
+  }
+
+  private static Set<String> newSet(String... values) {
+    return new HashSet<>(Arrays.asList(values));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return (T) Proxy.newProxyInstance(CertStoreTest.class.getClassLoader(),
+        new Class<?>[]{type}, handler);
+  }
+
+  private static Object defaultValue(Object obj, Method method, Object[] args) {
+    switch (method.getName()) {
+      case "toString":
+        return method.getDeclaringClass().getSimpleName() + "@" + System.identityHashCode(obj);
+      case "hashCode":
+        return System.identityHashCode(obj);
+      case "equals":
+        return obj == args[0];
+      default:
+        break;
+    }
+
+    Class<?> type = method.getReturnType();
+    if (type == boolean.class) {
+      return false;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == long.class) {
+      return 0L;
+    } else {
+      return null;
+    }
+  }
+
+}
@@ -18,6 +18,8 @@
 package org.xipki.ca.servlet;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Date;
 import java.util.Map;
 
@@ -83,8 +85,8 @@ public class HttpRestServlet extends HttpServlet {
       RestResponse response = rest.service(path, event, requestBytes, httpRetriever);
 
       resp.setStatus(response.getStatusCode());
-      if (resp.getContentType() != null) {
-        resp.setContentType(resp.getContentType());
+      if (response.getContentType() != null) {
+        resp.setContentType(response.getContentType());
       }
 
       Map<String, String> headers = response.getHeaders();
@@ -94,8 +96,12 @@ public class HttpRestServlet extends HttpServlet {
         }
       }
 
+      ByteBuffer respBodyBuffer = response.getBodyBuffer();
       byte[] respBody = response.getBody();
-      if (respBody == null) {
+      if (respBodyBuffer != null) {
+        resp.setContentLength(respBodyBuffer.remaining());
+        write(respBodyBuffer, resp.getOutputStream());
+      } else if (respBody == null) {
         resp.setContentLength(0);
       } else {
         resp.setContentLength(respBody.length);
@@ -115,4 +121,19 @@ public class HttpRestServlet extends HttpServlet {
     }
   } // method service
 
+  private static void write(ByteBuffer buffer, OutputStream out) throws IOException {
+    if (buffer.hasArray()) {
+      out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      return;
+    }
+
+    // e.g. memory-mapped file
+    byte[] chunk = new byte[Math.min(64 * 1024, buffer.remaining())];
+    while (buffer.hasRemaining()) {
+      int len = Math.min(chunk.length, buffer.remaining());
+      buffer.get(chunk, 0, len);
+      out.write(chunk, 0, len);
+    }
+  }
+
 }
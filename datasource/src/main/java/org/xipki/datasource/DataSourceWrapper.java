@@ -130,6 +130,19 @@ public abstract class DataSourceWrapper implements Closeable {
       return StringUtil.concat("ALTER TABLE ", table, " DROP KEY ", constraintName);
     }
 
+    @Override
+    public String buildUpsertSql(String table, String keyColumn, String... columns) {
+      StringBuilder sb = buildInsertSql(table, keyColumn, columns);
+      sb.append(" ON DUPLICATE KEY UPDATE ");
+      for (int i = 0; i < columns.length; i++) {
+        if (i != 0) {
+          sb.append(",");
+        }
+        sb.append(columns[i]).append("=VALUES(").append(columns[i]).append(")");
+      }
+      return sb.toString();
+    }
+
   } // class MySQL
 
   // CHECKSTYLE:SKIP
@@ -222,6 +235,19 @@ public abstract class DataSourceWrapper implements Closeable {
         "END $$;");
     }
 
+    @Override
+    public String buildUpsertSql(String table, String keyColumn, String... columns) {
+      StringBuilder sb = buildInsertSql(table, keyColumn, columns);
+      sb.append(" ON CONFLICT (").append(keyColumn).append(") DO UPDATE SET ");
+      for (int i = 0; i < columns.length; i++) {
+        if (i != 0) {
+          sb.append(",");
+        }
+        sb.append(columns[i]).append("=EXCLUDED.").append(columns[i]);
+      }
+      return sb.toString();
+    }
+
   } // class PostgreSQL
 
   private static class Oracle extends DataSourceWrapper {
@@ -299,6 +325,19 @@ public abstract class DataSourceWrapper implements Closeable {
       return sb.toString();
     }
 
+    @Override
+    public String buildUpsertSql(String table, String keyColumn, String... columns) {
+      StringBuilder sb = new StringBuilder(200);
+      sb.append("MERGE INTO ").append(table).append(" T USING (SELECT ? ").append(keyColumn);
+      for (String column : columns) {
+        sb.append(",? ").append(column);
+      }
+      sb.append(" FROM DUAL) S ON (T.").append(keyColumn).append("=S.").append(keyColumn);
+      sb.append(")");
+      appendMergeActions(sb, keyColumn, columns);
+      return sb.toString();
+    }
+
   } // class Oracle
 
   private static class H2 extends DataSourceWrapper {
@@ -330,6 +369,21 @@ public abstract class DataSourceWrapper implements Closeable {
       return StringUtil.concat("SELECT NEXTVAL ('", sequenceName, "')");
     }
 
+    @Override
+    public String buildUpsertSql(String table, String keyColumn, String... columns) {
+      StringBuilder sb = new StringBuilder(200);
+      sb.append("MERGE INTO ").append(table).append(" (").append(keyColumn);
+      for (String column : columns) {
+        sb.append(",").append(column);
+      }
+      sb.append(") KEY (").append(keyColumn).append(") VALUES (?");
+      for (int i = 0; i < columns.length; i++) {
+        sb.append(",?");
+      }
+      sb.append(")");
+      return sb.toString();
+    }
+
   } // class H2
 
   // CHECKSTYLE:SKIP
@@ -362,6 +416,22 @@ public abstract class DataSourceWrapper implements Closeable {
       return StringUtil.concat("SELECT NEXTVAL ('", sequenceName, "')");
     }
 
+    @Override
+    public String buildUpsertSql(String table, String keyColumn, String... columns) {
+      StringBuilder sb = new StringBuilder(200);
+      sb.append("MERGE INTO ").append(table).append(" T USING (VALUES(?");
+      for (int i = 0; i < columns.length; i++) {
+        sb.append(",?");
+      }
+      sb.append(")) AS S(").append(keyColumn);
+      for (String column : columns) {
+        sb.append(",").append(column);
+      }
+      sb.append(") ON T.").append(keyColumn).append("=S.").append(keyColumn);
+      appendMergeActions(sb, keyColumn, columns);
+      return sb.toString();
+    }
+
   } // class HSQL
 
   private static final Logger LOG = LoggerFactory.getLogger(DataSourceWrapper.class);
@@ -837,6 +907,56 @@ public abstract class DataSourceWrapper implements Closeable {
     return next;
   } // method nextSeqValue
 
+  /**
+   * Builds the SQL statement to insert a row, or to update it if a row with the same key
+   * exists. The parameters are the key column followed by the other columns.
+   * @param table
+   *          Table name.
+   * @param keyColumn
+   *          Name of the primary key column.
+   * @param columns
+   *          Names of the other columns.
+   * @return the SQL statement, or {@code null} if this database is not supported.
+   */
+  public String buildUpsertSql(String table, String keyColumn, String... columns) {
+    return null;
+  }
+
+  private static StringBuilder buildInsertSql(String table, String keyColumn,
+      String... columns) {
+    StringBuilder sb = new StringBuilder(200);
+    sb.append("INSERT INTO ").append(table).append(" (").append(keyColumn);
+    for (String column : columns) {
+      sb.append(",").append(column);
+    }
+    sb.append(") VALUES (?");
+    for (int i = 0; i < columns.length; i++) {
+      sb.append(",?");
+    }
+    sb.append(")");
+    return sb;
+  }
+
+  private static void appendMergeActions(StringBuilder sb, String keyColumn, String... columns) {
+    sb.append(" WHEN MATCHED THEN UPDATE SET ");
+    for (int i = 0; i < columns.length; i++) {
+      if (i != 0) {
+        sb.append(",");
+      }
+      sb.append(columns[i]).append("=S.").append(columns[i]);
+    }
+
+    sb.append(" WHEN NOT MATCHED THEN INSERT (").append(keyColumn);
+    for (String column : columns) {
+      sb.append(",").append(column);
+    }
+    sb.append(") VALUES (S.").append(keyColumn);
+    for (String column : columns) {
+      sb.append(",S.").append(column);
+    }
+    sb.append(")");
+  }
+
   protected String getSqlToDropPrimaryKey(String primaryKeyName, String table) {
     Args.notBlank(primaryKeyName, "primaryKeyName");
     Args.notBlank(table, "table");
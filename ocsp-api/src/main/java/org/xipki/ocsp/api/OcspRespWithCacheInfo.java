@@ -17,6 +17,10 @@
 
 package org.xipki.ocsp.api;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
 /**
  * TODO.
  * @author Lijun Liao
@@ -51,6 +55,8 @@ public class OcspRespWithCacheInfo {
 
   private byte[] response;
 
+  private ByteBuffer[] responseParts;
+
   private ResponseCacheInfo cacheInfo;
 
   public OcspRespWithCacheInfo(byte[] response, ResponseCacheInfo cacheInfo) {
@@ -58,10 +64,76 @@ public class OcspRespWithCacheInfo {
     this.cacheInfo = cacheInfo;
   }
 
+  /**
+   * Constructor of the response given by its parts, which are concatenated only if
+   * {@link #getResponse()} is called. The buffers of the parts must not be modified
+   * afterwards.
+   * @param responseParts
+   *          Parts of the response, between the position and limit of the buffers.
+   * @param cacheInfo
+   *          Cache information. Could be {@code null}.
+   */
+  public OcspRespWithCacheInfo(ByteBuffer[] responseParts, ResponseCacheInfo cacheInfo) {
+    this.responseParts = responseParts;
+    this.cacheInfo = cacheInfo;
+  }
+
   public byte[] getResponse() {
+    if (response == null && responseParts != null) {
+      byte[] bytes = new byte[getResponseLength()];
+      int offset = 0;
+      for (ByteBuffer part : responseParts) {
+        int len = part.remaining();
+        part.duplicate().get(bytes, offset, len);
+        offset += len;
+      }
+      response = bytes;
+      responseParts = null;
+    }
     return response;
   }
 
+  /**
+   * Returns the length of the response.
+   * @return the length of the response, 0 if there is no response.
+   */
+  public int getResponseLength() {
+    if (response != null) {
+      return response.length;
+    } else if (responseParts != null) {
+      int len = 0;
+      for (ByteBuffer part : responseParts) {
+        len += part.remaining();
+      }
+      return len;
+    } else {
+      return 0;
+    }
+  }
+
+  /**
+   * Writes the response, part by part without concatenating them.
+   * @param out
+   *          Output stream. Must not be {@code null}.
+   * @throws IOException
+   *           if an I/O error occurs.
+   */
+  public void writeResponse(OutputStream out) throws IOException {
+    if (response != null) {
+      out.write(response);
+    } else if (responseParts != null) {
+      for (ByteBuffer part : responseParts) {
+        if (part.hasArray()) {
+          out.write(part.array(), part.arrayOffset() + part.position(), part.remaining());
+        } else {
+          byte[] bytes = new byte[part.remaining()];
+          part.duplicate().get(bytes);
+          out.write(bytes);
+        }
+      }
+    }
+  }
+
   public ResponseCacheInfo getCacheInfo() {
     return cacheInfo;
   }
@@ -20,9 +20,14 @@ package org.xipki.ocsp.api;
 import java.io.Closeable;
 import java.math.BigInteger;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
 
 import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.security.CertRevocationInfo;
 import org.xipki.util.Args;
 
 /**
@@ -71,6 +76,44 @@ public abstract class OcspStore implements Closeable {
    */
   public abstract X509Certificate getIssuerCert(RequestIssuer reqIssuer);
 
+  /**
+   * Returns the revocation information of the given issuer. The default implementation
+   * returns {@code null}.
+   * @param reqIssuer
+   *          Requested issuer
+   * @return the revocation information of the given issuer, {@code null} if the issuer is
+   *     not revoked or unknown.
+   */
+  public CertRevocationInfo getIssuerRevocationInfo(RequestIssuer reqIssuer) {
+    return null;
+  }
+
+  /**
+   * Returns the certificates of all issuers known by this OCSP store. The default
+   * implementation returns an empty list, stores that cannot enumerate their issuers are
+   * skipped by the pre-signing of responses.
+   * @return the issuer certificates.
+   */
+  public List<X509Certificate> getIssuerCerts() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Passes the serial numbers of the certificates issued by the given issuer, whose status
+   * has been updated since the given time, to the consumer. The default implementation
+   * does nothing.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param updatedSince
+   *          Update time in seconds since January 1, 1970, 00:00:00 GMT. 0 for all
+   *          certificates.
+   * @param consumer
+   *          Consumer of the serial numbers.
+   */
+  public void listSerialNumbers(RequestIssuer reqIssuer, long updatedSince,
+      Consumer<BigInteger> consumer) throws OcspStoreException {
+  }
+
   /**
    * TODO.
    * @param time
@@ -91,6 +134,37 @@ public abstract class OcspStore implements Closeable {
       BigInteger serialNumber, boolean includeCertHash, boolean includeRit,
       boolean inheritCaRevocation) throws OcspStoreException;
 
+  /**
+   * Returns the status of the certificates issued by the same issuer. The default
+   * implementation calls
+   * {@link #getCertStatus(Date, RequestIssuer, BigInteger, boolean, boolean, boolean)}
+   * for each serial number.
+   * @param time
+   *          Time of the certificate status. Must not be {@code null}.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param serialNumbers
+   *          Serial numbers of the target certificates. Must not be {@code null}.
+   * @param includeCertHash
+   *          Whether to include the hash of target certificate in the response.
+   * @param includeRit
+   *          Whether to include the revocation invalidity time in the response.
+   * @param inheritCaRevocation
+   *          Whether to inherit CA revocation
+   * @return the certificate statuses in the order of the serial numbers. An entry is
+   *     {@code null} if the issuer is not known by this store.
+   */
+  public List<CertStatusInfo> getCertStatus(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation) throws OcspStoreException {
+    List<CertStatusInfo> ret = new ArrayList<>(serialNumbers.size());
+    for (BigInteger serialNumber : serialNumbers) {
+      ret.add(getCertStatus(time, reqIssuer, serialNumber, includeCertHash, includeRit,
+          inheritCaRevocation));
+    }
+    return ret;
+  }
+
   /**
    * TODO.
    * @param sourceConf
@@ -19,6 +19,9 @@ package org.xipki.ocsp.server;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.SignatureException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -31,6 +34,7 @@ import org.xipki.ocsp.server.type.ResponderID;
 import org.xipki.ocsp.server.type.ResponseData;
 import org.xipki.ocsp.server.type.SingleResponse;
 import org.xipki.ocsp.server.type.TaggedCertSequence;
+import org.xipki.security.BatchSigner;
 import org.xipki.security.ConcurrentBagEntrySigner;
 import org.xipki.security.ConcurrentContentSigner;
 import org.xipki.security.NoIdleSignerException;
@@ -49,6 +53,13 @@ public class OCSPRespBuilder {
   private static final byte[] successfulStatus = Hex.decode("0a0100");
   private static final byte[] responseTypeBasic = Hex.decode("06092b0601050507300101");
 
+  /**
+   * Larger TBSResponseData are encoded in buffers which are not reused.
+   */
+  private static final int MAX_TBS_BUFFER_SIZE = 64 * 1024;
+
+  private static final ThreadLocal<byte[]> TBS_BUFFERS = new ThreadLocal<>();
+
   private List<SingleResponse> list = new LinkedList<>();
   private Extensions responseExtensions = null;
   private ResponderID responderId;
@@ -90,10 +101,23 @@ public class OCSPRespBuilder {
   public byte[] buildOCSPResponse(ConcurrentContentSigner signer,
       TaggedCertSequence taggedCertSequence, Date producedAt)
       throws OCSPException, NoIdleSignerException {
+    return concat(buildOCSPResponseParts(signer, taggedCertSequence, producedAt));
+  }
+
+  /**
+   * Builds the response as parts without concatenating them. The TBSResponseData is encoded
+   * and signed in a buffer of the current thread, which is reused by the next response built
+   * by this thread. The returned parts do not share this buffer.
+   */
+  // CHECKSTYLE:SKIP
+  public ByteBuffer[] buildOCSPResponseParts(ConcurrentContentSigner signer,
+      TaggedCertSequence taggedCertSequence, Date producedAt)
+      throws OCSPException, NoIdleSignerException {
     ResponseData responseData = new ResponseData(0,
         responderId, producedAt, list, responseExtensions);
 
-    byte[] tbs = new byte[responseData.getEncodedLength()];
+    int tbsLen = responseData.getEncodedLength();
+    byte[] tbs = getTbsBuffer(tbsLen);
     responseData.write(tbs, 0);
 
     ConcurrentBagEntrySigner signer0 = signer.borrowSigner();
@@ -105,7 +129,7 @@ public class OCSPRespBuilder {
       XiContentSigner csigner0 = signer0.value();
       OutputStream sigOut = csigner0.getOutputStream();
       try {
-        sigOut.write(tbs);
+        sigOut.write(tbs, 0, tbsLen);
         sigOut.close();
       } catch (IOException ex) {
         throw new OCSPException("exception signing TBSRequest: " + ex.getMessage(), ex);
@@ -117,13 +141,58 @@ public class OCSPRespBuilder {
       signer.requiteSigner(signer0);
     }
 
+    // the parts may be retained after the next response is built by this thread
+    byte[] tbsCopy = (tbs == TBS_BUFFERS.get()) ? Arrays.copyOf(tbs, tbsLen) : tbs;
+    return buildOCSPResponseParts(tbsCopy, tbsLen, sigAlgId, signature, taggedCertSequence);
+  }
+
+  // CHECKSTYLE:SKIP
+  public byte[] buildOCSPResponse(BatchSigner signer,
+      TaggedCertSequence taggedCertSequence, Date producedAt)
+      throws OCSPException, NoIdleSignerException {
+    return concat(buildOCSPResponseParts(signer, taggedCertSequence, producedAt));
+  }
+
+  /**
+   * Builds the response as parts without concatenating them.
+   */
+  // CHECKSTYLE:SKIP
+  public ByteBuffer[] buildOCSPResponseParts(BatchSigner signer,
+      TaggedCertSequence taggedCertSequence, Date producedAt)
+      throws OCSPException, NoIdleSignerException {
+    ResponseData responseData = new ResponseData(0,
+        responderId, producedAt, list, responseExtensions);
+
+    // the batch signer requires the exact data, which is signed by another thread
+    byte[] tbs = new byte[responseData.getEncodedLength()];
+    responseData.write(tbs, 0);
+
+    byte[] signature;
+    try {
+      signature = signer.sign(tbs);
+    } catch (SignatureException ex) {
+      throw new OCSPException("exception signing TBSRequest: " + ex.getMessage(), ex);
+    }
+
+    return buildOCSPResponseParts(tbs, tbs.length, signer.getEncodedAlgorithmIdentifier(),
+        signature, taggedCertSequence);
+  }
+
+  /**
+   * Returns the parts of the response: the headers till the TBSResponseData, the
+   * TBSResponseData, the signatureAlgorithm, the header of the signature, the signature and
+   * the certs (if present).
+   */
+  // CHECKSTYLE:SKIP
+  private static ByteBuffer[] buildOCSPResponseParts(byte[] tbs, int tbsLen, byte[] sigAlgId,
+      byte[] signature, TaggedCertSequence taggedCertSequence) {
     // ----- Get the length -----
     // BasicOCSPResponse.signature
     int signatureBodyLen = signature.length + 1;
     int signatureLen = getLen(signatureBodyLen);
 
     // BasicOCSPResponse
-    int basicResponseBodyLen = tbs.length + sigAlgId.length + signatureLen;
+    int basicResponseBodyLen = tbsLen + sigAlgId.length + signatureLen;
     if (taggedCertSequence != null) {
       basicResponseBodyLen += taggedCertSequence.getEncodedLength();
     }
@@ -142,39 +211,73 @@ public class OCSPRespBuilder {
     int ocspResponseLen = getLen(ocspResponseBodyLen);
 
     // encode
-    byte[] out = new byte[ocspResponseLen];
+    byte[] header = new byte[ocspResponseLen - basicResponseBodyLen];
     int offset = 0;
-    offset += ASN1Type.writeHeader((byte) 0x30, ocspResponseBodyLen, out, offset);
+    offset += ASN1Type.writeHeader((byte) 0x30, ocspResponseBodyLen, header, offset);
     // OCSPResponse.responseStatus
-    offset += arraycopy(successfulStatus, out, offset);
+    offset += arraycopy(successfulStatus, header, offset);
 
     // OCSPResponse.[0]
-    offset += ASN1Type.writeHeader((byte) 0xA0, responseBytesLen, out, offset);
+    offset += ASN1Type.writeHeader((byte) 0xA0, responseBytesLen, header, offset);
 
     // OCSPResponse.[0]responseBytes
-    offset += ASN1Type.writeHeader((byte) 0x30, responseBytesBodyLen, out, offset);
+    offset += ASN1Type.writeHeader((byte) 0x30, responseBytesBodyLen, header, offset);
 
     // OCSPResponse.[0]responseBytes.responseType
-    offset += arraycopy(responseTypeBasic, out, offset);
+    offset += arraycopy(responseTypeBasic, header, offset);
 
     // OCSPResponse.[0]responseBytes.responseType
-    offset += ASN1Type.writeHeader((byte) 0x04, basicResponseLen, out, offset); // OCET STRING
+    offset += ASN1Type.writeHeader((byte) 0x04, basicResponseLen, header, offset); // OCET STRING
 
     // BasicOCSPResponse
-    offset += ASN1Type.writeHeader((byte) 0x30, basicResponseBodyLen, out, offset);
-    // BasicOCSPResponse.tbsResponseData
-    offset += arraycopy(tbs, out, offset);
-
-    // BasicOCSPResponse.signatureAlgorithm
-    offset += arraycopy(sigAlgId, out, offset);
+    offset += ASN1Type.writeHeader((byte) 0x30, basicResponseBodyLen, header, offset);
 
     // BasicOCSPResponse.signature
-    offset += ASN1Type.writeHeader((byte) 0x03, signatureBodyLen, out, offset);
-    out[offset++] = 0x00; // skipping bits
-    offset += arraycopy(signature, out, offset);
+    byte[] signatureHeader = new byte[signatureLen - signature.length];
+    offset = ASN1Type.writeHeader((byte) 0x03, signatureBodyLen, signatureHeader, 0);
+    signatureHeader[offset] = 0x00; // skipping bits
 
+    ByteBuffer[] parts = new ByteBuffer[(taggedCertSequence == null) ? 5 : 6];
+    parts[0] = ByteBuffer.wrap(header);
+    // BasicOCSPResponse.tbsResponseData
+    parts[1] = ByteBuffer.wrap(tbs, 0, tbsLen);
+    // BasicOCSPResponse.signatureAlgorithm
+    parts[2] = ByteBuffer.wrap(sigAlgId);
+    parts[3] = ByteBuffer.wrap(signatureHeader);
+    parts[4] = ByteBuffer.wrap(signature);
     if (taggedCertSequence != null) {
-      offset += taggedCertSequence.write(out, offset);
+      parts[5] = ByteBuffer.wrap(taggedCertSequence.getEncoded());
+    }
+    return parts;
+  }
+
+  private static byte[] getTbsBuffer(int len) {
+    byte[] buffer = TBS_BUFFERS.get();
+    if (buffer != null && buffer.length >= len) {
+      return buffer;
+    }
+
+    if (len > MAX_TBS_BUFFER_SIZE) {
+      return new byte[len];
+    }
+
+    buffer = new byte[Math.max(len, 4096)];
+    TBS_BUFFERS.set(buffer);
+    return buffer;
+  }
+
+  private static byte[] concat(ByteBuffer[] parts) {
+    int len = 0;
+    for (ByteBuffer part : parts) {
+      len += part.remaining();
+    }
+
+    byte[] out = new byte[len];
+    int offset = 0;
+    for (ByteBuffer part : parts) {
+      int partLen = part.remaining();
+      System.arraycopy(part.array(), part.arrayOffset() + part.position(), out, offset, partLen);
+      offset += partLen;
     }
     return out;
   }
@@ -375,6 +375,13 @@ public class OcspServerConf extends ValidatableConf {
      */
     private boolean inheritCaRevocation;
 
+    /**
+     * Whether to sign the responses of all certificates in advance and to store them in the
+     * response cache. Requires the responseCache and the master mode.<br/>
+     * optional. Default is false.
+     */
+    private boolean preSign;
+
     private String signer;
 
     private String request;
@@ -412,6 +419,14 @@ public class OcspServerConf extends ValidatableConf {
       this.inheritCaRevocation = inheritCaRevocation;
     }
 
+    public boolean isPreSign() {
+      return preSign;
+    }
+
+    public void setPreSign(boolean preSign) {
+      this.preSign = preSign;
+    }
+
     public String getSigner() {
       return signer;
     }
@@ -473,6 +488,33 @@ public class OcspServerConf extends ValidatableConf {
 
     private int validity = 86400;
 
+    /**
+     * Maximal size in bytes of the in-memory cache in front of the cache database.
+     * Set it to 0 to disable the in-memory cache.<br/>
+     * optional. Default is 64 MiB.
+     */
+    private int memoryCacheSize = 64 * 1024 * 1024;
+
+    /**
+     * Maximal number of responses waiting to be written to the cache database. If the queue
+     * is full, new responses are not written to the cache database.<br/>
+     * optional. Default is 10000.
+     */
+    private int writeQueueSize = 10000;
+
+    /**
+     * Interval in seconds to pre-sign the responses of the certificates whose status changed
+     * or whose cached responses are close to expiry.<br/>
+     * optional. Default is 300.
+     */
+    private int preSignInterval = 300;
+
+    /**
+     * Number of threads to pre-sign the responses.<br/>
+     * optional. Default is 2.
+     */
+    private int preSignThreads = 2;
+
     public Datasource getDatasource() {
       return datasource;
     }
@@ -489,6 +531,38 @@ public class OcspServerConf extends ValidatableConf {
       this.validity = validity;
     }
 
+    public int getMemoryCacheSize() {
+      return memoryCacheSize;
+    }
+
+    public void setMemoryCacheSize(int memoryCacheSize) {
+      this.memoryCacheSize = memoryCacheSize;
+    }
+
+    public int getWriteQueueSize() {
+      return writeQueueSize;
+    }
+
+    public void setWriteQueueSize(int writeQueueSize) {
+      this.writeQueueSize = writeQueueSize;
+    }
+
+    public int getPreSignInterval() {
+      return preSignInterval;
+    }
+
+    public void setPreSignInterval(int preSignInterval) {
+      this.preSignInterval = preSignInterval;
+    }
+
+    public int getPreSignThreads() {
+      return preSignThreads;
+    }
+
+    public void setPreSignThreads(int preSignThreads) {
+      this.preSignThreads = preSignThreads;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
       notNull(datasource, "datasource");
@@ -589,6 +663,22 @@ public class OcspServerConf extends ValidatableConf {
 
     private List<FileOrBinary> caCerts;
 
+    /**
+     * Maximal number of responses signed in one batch. While responses are being signed,
+     * the other responses are collected and signed in batches with one borrowed signer.
+     * Set it to 0 to sign each response separately. Ignored if the signer does not sign
+     * batches more efficiently than single responses.<br/>
+     * optional. Default is 0.
+     */
+    private int batchSize;
+
+    /**
+     * Maximal number of batches signed concurrently. At least the number of signers, e.g.
+     * the PKCS#11 sessions, is used.<br/>
+     * optional. Default is 4.
+     */
+    private int batchConcurrency = 4;
+
     public String getName() {
       return name;
     }
@@ -643,6 +733,22 @@ public class OcspServerConf extends ValidatableConf {
       this.caCerts = caCerts;
     }
 
+    public int getBatchSize() {
+      return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+    }
+
+    public int getBatchConcurrency() {
+      return batchConcurrency;
+    }
+
+    public void setBatchConcurrency(int batchConcurrency) {
+      this.batchConcurrency = batchConcurrency;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
       notEmpty(name, "name");
@@ -877,6 +983,14 @@ public class OcspServerConf extends ValidatableConf {
 
     private CaCerts caCerts;
 
+    /**
+     * Whether to keep the certificate status of all certificates in memory. If true,
+     * the OCSP requests are answered without querying the database, and the in-memory
+     * index is updated periodically from the database.<br/>
+     * optional. Default is false.
+     */
+    private boolean inMemoryIndex = false;
+
     public CaCerts getCaCerts() {
       return caCerts;
     }
@@ -885,6 +999,14 @@ public class OcspServerConf extends ValidatableConf {
       this.caCerts = caCerts;
     }
 
+    public boolean isInMemoryIndex() {
+      return inMemoryIndex;
+    }
+
+    public void setInMemoryIndex(boolean inMemoryIndex) {
+      this.inMemoryIndex = inMemoryIndex;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
     }
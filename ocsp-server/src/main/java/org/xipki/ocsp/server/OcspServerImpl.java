@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.InvalidAlgorithmParameterException;
@@ -36,6 +37,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -64,6 +66,7 @@ import org.xipki.ocsp.api.OcspStore;
 import org.xipki.ocsp.api.OcspStore.SourceConf;
 import org.xipki.ocsp.api.OcspStoreException;
 import org.xipki.ocsp.api.OcspStoreFactoryRegister;
+import org.xipki.ocsp.api.RequestIssuer;
 import org.xipki.ocsp.api.Responder;
 import org.xipki.ocsp.api.ResponderAndPath;
 import org.xipki.ocsp.server.OcspServerConf.EmbedCertsMode;
@@ -80,6 +83,7 @@ import org.xipki.ocsp.server.type.TaggedCertSequence;
 import org.xipki.ocsp.server.type.WritableOnlyExtension;
 import org.xipki.password.PasswordResolverException;
 import org.xipki.security.AlgorithmCode;
+import org.xipki.security.BatchSigner;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.CertpathValidationModel;
 import org.xipki.security.ConcurrentContentSigner;
@@ -171,6 +175,8 @@ public class OcspServerImpl implements OcspServer {
 
   private ResponseCacher responseCacher;
 
+  private ResponsePreSigner responsePreSigner;
+
   private OcspStoreFactoryRegister ocspStoreFactoryRegister;
 
   private Map<String, ResponderImpl> responders = new HashMap<>();
@@ -292,6 +298,10 @@ public class OcspServerImpl implements OcspServer {
     initialized.set(false);
 
     // reset
+    if (responsePreSigner != null) {
+      responsePreSigner.close();
+    }
+    responsePreSigner = null;
     responseCacher = null;
     responders.clear();
     signers.clear();
@@ -414,7 +424,8 @@ public class OcspServerImpl implements OcspServer {
       } finally {
         closeStream(dsStream);
       }
-      responseCacher = new ResponseCacher(datasource, master, cacheType.getValidity());
+      responseCacher = new ResponseCacher(datasource, master, cacheType.getValidity(),
+          cacheType.getMemoryCacheSize(), cacheType.getWriteQueueSize());
       responseCacher.init();
     }
 
@@ -543,11 +554,35 @@ public class OcspServerImpl implements OcspServer {
       list2.add(m.str);
     }
     this.servletPaths = list2;
+
+    // pre-signing of responses
+    if (responseCacher != null) {
+      Map<String, ResponderImpl> preSignResponders = new LinkedHashMap<>();
+      for (Map.Entry<String, ResponderImpl> entry : responders.entrySet()) {
+        if (entry.getValue().getResponderOption().isPreSign()) {
+          preSignResponders.put(entry.getKey(), entry.getValue());
+        }
+      }
+
+      if (!preSignResponders.isEmpty()) {
+        if (master) {
+          responsePreSigner = new ResponsePreSigner(this, responseCacher, preSignResponders,
+              cacheType.getPreSignInterval(), cacheType.getPreSignThreads());
+          responsePreSigner.init();
+        } else {
+          LOG.warn("pre-signing of responses is only supported in master mode, ignore it");
+        }
+      }
+    }
   } // method init0
 
   @Override
   public void close() {
     LOG.info("stopped OCSP Responder");
+    if (responsePreSigner != null) {
+      responsePreSigner.close();
+    }
+
     if (responseCacher != null) {
       responseCacher.close();
     }
@@ -702,6 +737,18 @@ public class OcspServerImpl implements OcspServer {
         cacheDbIssuerId = responseCacher.getIssuerId(certId.getIssuer());
         cacheDbSerialNumber = certId.getSerialNumber();
 
+        if (cacheDbIssuerId != null && responder.getResponderOption().isInheritCaRevocation()) {
+          CertRevocationInfo caRevInfo = null;
+          for (OcspStore store : responder.getStores()) {
+            caRevInfo = store.getIssuerRevocationInfo(certId.getIssuer());
+            if (caRevInfo != null) {
+              break;
+            }
+          }
+          responseCacher.updateIssuerRevocation(cacheDbIssuerId.intValue(),
+              (caRevInfo == null) ? null : caRevInfo.getRevocationTime());
+        }
+
         if (cacheDbIssuerId != null) {
           OcspRespWithCacheInfo cachedResp = responseCacher.getOcspResponse(
               cacheDbIssuerId.intValue(), cacheDbSerialNumber, cacheDbSigAlgCode);
@@ -731,13 +778,10 @@ public class OcspServerImpl implements OcspServer {
       ResponderID responderId = signer.getResponderId(repOpt.isResponderIdByName());
       OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
 
-      for (int i = 0; i < requestsSize; i++) {
-        OcspRespWithCacheInfo failureOcspResp = processCertReq(requestList.get(i),
-            builder, responder, reqOpt, repOpt, repControl);
-
-        if (failureOcspResp != null) {
-          return failureOcspResp;
-        }
+      OcspRespWithCacheInfo failureOcspResp = processCertReqs(requestList, builder, responder,
+          reqOpt, repOpt, repControl);
+      if (failureOcspResp != null) {
+        return failureOcspResp;
       }
 
       if (repControl.includeExtendedRevokeExtension) {
@@ -749,20 +793,13 @@ public class OcspServerImpl implements OcspServer {
         builder.setResponseExtensions(extns);
       }
 
-      TaggedCertSequence certsInResp;
-      EmbedCertsMode certsMode = repOpt.getEmbedCertsMode();
-      if (certsMode == EmbedCertsMode.SIGNER) {
-        certsInResp = signer.getSequenceOfCert();
-      } else if (certsMode == EmbedCertsMode.NONE) {
-        certsInResp = null;
-      } else {
-        // certsMode == EmbedCertsMode.SIGNER_AND_CA
-        certsInResp = signer.getSequenceOfCertChain();
-      }
+      TaggedCertSequence certsInResp = getCertsInResp(signer, repOpt);
 
-      byte[] encodeOcspResponse;
+      // the parts are concatenated only if the whole response is required
+      ByteBuffer[] encodeOcspResponseParts;
       try {
-        encodeOcspResponse = builder.buildOCSPResponse(concurrentSigner, certsInResp, new Date());
+        encodeOcspResponseParts = buildOcspResponseParts(builder, signer, concurrentSigner,
+            certsInResp);
       } catch (NoIdleSignerException ex) {
         return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
       } catch (OCSPException ex) {
@@ -770,68 +807,226 @@ public class OcspServerImpl implements OcspServer {
         return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
       }
 
+      ResponseCacheInfo cacheInfo = null;
+      if (viaGet && repControl.canCacheInfo) {
+        cacheInfo = new ResponseCacheInfo(repControl.cacheThisUpdate);
+        if (repControl.cacheNextUpdate != Long.MAX_VALUE) {
+          cacheInfo.setNextUpdate(repControl.cacheNextUpdate);
+        }
+      }
+
+      OcspRespWithCacheInfo ret = new OcspRespWithCacheInfo(encodeOcspResponseParts, cacheInfo);
+
       // cache response in database
       if (canCacheDb && repControl.canCacheInfo) {
         // Don't cache the response with status UNKNOWN, since this may result in DDoS
         // of storage
+        Long cacheNextUpdate = (repControl.cacheNextUpdate == Long.MAX_VALUE)
+            ? null : repControl.cacheNextUpdate;
         responseCacher.storeOcspResponse(cacheDbIssuerId.intValue(), cacheDbSerialNumber,
-            repControl.cacheThisUpdate, repControl.cacheNextUpdate, cacheDbSigAlgCode,
-            encodeOcspResponse);
+            repControl.cacheThisUpdate, cacheNextUpdate, cacheDbSigAlgCode,
+            ret.getResponse(), false);
       }
 
-      if (viaGet && repControl.canCacheInfo) {
-        ResponseCacheInfo cacheInfo = new ResponseCacheInfo(repControl.cacheThisUpdate);
-        if (repControl.cacheNextUpdate != Long.MAX_VALUE) {
-          cacheInfo.setNextUpdate(repControl.cacheNextUpdate);
-        }
-        return new OcspRespWithCacheInfo(encodeOcspResponse, cacheInfo);
-      } else {
-        return new OcspRespWithCacheInfo(encodeOcspResponse, null);
-      }
+      return ret;
     } catch (Throwable th) {
       LogUtil.error(LOG, th);
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
     }
   } // method ask
 
-  private OcspRespWithCacheInfo processCertReq(CertID certId, OCSPRespBuilder builder,
+  /**
+   * Builds and signs the response of a single certificate without consulting the cache, and
+   * stores it in the response cache.
+   * @param responder
+   *          Responder.
+   * @param reqIssuer
+   *          Issuer of the certificate.
+   * @param cacheIssuerId
+   *          Issuer id in the cache database.
+   * @param serialNumber
+   *          Serial number of the certificate.
+   * @return whether the response has been stored in the cache, {@code false} if the response
+   *         cannot be cached.
+   * @throws NoIdleSignerException
+   *           if no signer is idle.
+   * @throws OCSPException
+   *           if the response could not be built.
+   * @throws IOException
+   *           if the response could not be encoded.
+   */
+  boolean preSignResponse(ResponderImpl responder, RequestIssuer reqIssuer, int cacheIssuerId,
+      BigInteger serialNumber) throws NoIdleSignerException, OCSPException, IOException {
+    ResponderSigner signer = responder.getSigner();
+    OcspServerConf.ResponseOption repOpt = responder.getResponseOption();
+
+    OcspRespControl repControl = new OcspRespControl();
+    repControl.canCacheInfo = true;
+
+    ResponderID responderId = signer.getResponderId(repOpt.isResponderIdByName());
+    OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
+
+    OcspRespWithCacheInfo failureOcspResp = processCertReqs(
+        Collections.singletonList(new CertID(reqIssuer, serialNumber)), builder, responder,
+        responder.getRequestOption(), repOpt, repControl);
+    if (failureOcspResp != null || !repControl.canCacheInfo) {
+      return false;
+    }
+
+    if (repControl.includeExtendedRevokeExtension) {
+      List<Extension> respExtensions = new ArrayList<>(1);
+      respExtensions.add(extension_pkix_ocsp_extendedRevoke);
+      builder.setResponseExtensions(new Extensions(respExtensions));
+    }
+
+    ConcurrentContentSigner concurrentSigner = signer.getFirstSigner();
+    byte[] encodeOcspResponse = buildOcspResponse(builder, signer, concurrentSigner,
+        getCertsInResp(signer, repOpt));
+
+    Long cacheNextUpdate = (repControl.cacheNextUpdate == Long.MAX_VALUE)
+        ? null : repControl.cacheNextUpdate;
+    responseCacher.storeOcspResponse(cacheIssuerId, serialNumber, repControl.cacheThisUpdate,
+        cacheNextUpdate, concurrentSigner.getAlgorithmCode(), encodeOcspResponse, true);
+    return true;
+  } // method preSignResponse
+
+  private static byte[] buildOcspResponse(OCSPRespBuilder builder, ResponderSigner signer,
+      ConcurrentContentSigner concurrentSigner, TaggedCertSequence certsInResp)
+      throws OCSPException, NoIdleSignerException {
+    BatchSigner batchSigner = signer.getBatchSigner(concurrentSigner);
+    if (batchSigner == null) {
+      return builder.buildOCSPResponse(concurrentSigner, certsInResp, new Date());
+    } else {
+      return builder.buildOCSPResponse(batchSigner, certsInResp, new Date());
+    }
+  }
+
+  private static ByteBuffer[] buildOcspResponseParts(OCSPRespBuilder builder,
+      ResponderSigner signer, ConcurrentContentSigner concurrentSigner,
+      TaggedCertSequence certsInResp) throws OCSPException, NoIdleSignerException {
+    BatchSigner batchSigner = signer.getBatchSigner(concurrentSigner);
+    if (batchSigner == null) {
+      return builder.buildOCSPResponseParts(concurrentSigner, certsInResp, new Date());
+    } else {
+      return builder.buildOCSPResponseParts(batchSigner, certsInResp, new Date());
+    }
+  }
+
+  private static TaggedCertSequence getCertsInResp(ResponderSigner signer,
+      OcspServerConf.ResponseOption repOpt) {
+    EmbedCertsMode certsMode = repOpt.getEmbedCertsMode();
+    if (certsMode == EmbedCertsMode.SIGNER) {
+      return signer.getSequenceOfCert();
+    } else if (certsMode == EmbedCertsMode.NONE) {
+      return null;
+    } else {
+      // certsMode == EmbedCertsMode.SIGNER_AND_CA
+      return signer.getSequenceOfCertChain();
+    }
+  }
+
+  private OcspRespWithCacheInfo processCertReqs(List<CertID> certIds, OCSPRespBuilder builder,
       ResponderImpl responder, RequestOption reqOpt, OcspServerConf.ResponseOption repOpt,
       OcspRespControl repControl) throws IOException {
-    HashAlgo reqHashAlgo = certId.getIssuer().hashAlgorithm();
-    if (!reqOpt.allows(reqHashAlgo)) {
-      LOG.warn("CertID.hashAlgorithm {} not allowed", reqHashAlgo);
-      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+    for (CertID certId : certIds) {
+      HashAlgo reqHashAlgo = certId.getIssuer().hashAlgorithm();
+      if (!reqOpt.allows(reqHashAlgo)) {
+        LOG.warn("CertID.hashAlgorithm {} not allowed", reqHashAlgo);
+        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+      }
     }
 
-    CertStatusInfo certStatusInfo = null;
-    boolean exceptionOccurs = false;
+    CertStatusInfo[] certStatusInfos = getCertStatuses(certIds, responder, repOpt);
+    if (certStatusInfos == null) {
+      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
+    }
 
-    BigInteger serial = certId.getSerialNumber();
+    for (int i = 0; i < certStatusInfos.length; i++) {
+      processCertReq(certIds.get(i), certStatusInfos[i], builder, responder, repOpt,
+          repControl);
+    }
+    return null;
+  } // method processCertReqs
+
+  /**
+   * Retrieves the status of the certificates. The certificates of the same issuer are
+   * retrieved from each store with one call.
+   * @return the statuses in the order of the CertIDs, {@code null} if the status of any
+   *     certificate could not be retrieved due to errors.
+   */
+  private static CertStatusInfo[] getCertStatuses(List<CertID> certIds,
+      ResponderImpl responder, OcspServerConf.ResponseOption repOpt) {
+    final int size = certIds.size();
+    CertStatusInfo[] certStatusInfos = new CertStatusInfo[size];
+
+    Map<RequestIssuer, List<Integer>> issuerIndexes = new LinkedHashMap<>();
+    for (int i = 0; i < size; i++) {
+      issuerIndexes.computeIfAbsent(certIds.get(i).getIssuer(),
+          k -> new ArrayList<>(size)).add(i);
+    }
 
+    boolean inheritCaRevocation = responder.getResponderOption().isInheritCaRevocation();
     Date now = new Date();
-    for (OcspStore store : responder.getStores()) {
-      try {
-        certStatusInfo = store.getCertStatus(now, certId.getIssuer(), serial,
-            repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
-            responder.getResponderOption().isInheritCaRevocation());
-        if (certStatusInfo != null) {
+    for (Map.Entry<RequestIssuer, List<Integer>> entry : issuerIndexes.entrySet()) {
+      RequestIssuer issuer = entry.getKey();
+      List<Integer> indexes = entry.getValue();
+      boolean exceptionOccurs = false;
+
+      for (OcspStore store : responder.getStores()) {
+        List<CertStatusInfo> infos;
+        try {
+          if (indexes.size() == 1) {
+            infos = Collections.singletonList(store.getCertStatus(now, issuer,
+                certIds.get(indexes.get(0)).getSerialNumber(), repOpt.isIncludeCerthash(),
+                repOpt.isIncludeInvalidityDate(), inheritCaRevocation));
+          } else {
+            List<BigInteger> serials = new ArrayList<>(indexes.size());
+            for (Integer index : indexes) {
+              serials.add(certIds.get(index).getSerialNumber());
+            }
+            infos = store.getCertStatus(now, issuer, serials, repOpt.isIncludeCerthash(),
+                repOpt.isIncludeInvalidityDate(), inheritCaRevocation);
+          }
+        } catch (OcspStoreException ex) {
+          exceptionOccurs = true;
+          LogUtil.error(LOG, ex, "getCertStatus() of CertStatusStore " + store.getName());
+          continue;
+        }
+
+        // the certificates whose issuer is unknown by this store are tried in the next store
+        List<Integer> unresolvedIndexes = new ArrayList<>(indexes.size());
+        for (int i = 0; i < indexes.size(); i++) {
+          CertStatusInfo info = infos.get(i);
+          if (info == null) {
+            unresolvedIndexes.add(indexes.get(i));
+          } else {
+            certStatusInfos[indexes.get(i)] = info;
+          }
+        }
+
+        indexes = unresolvedIndexes;
+        if (indexes.isEmpty()) {
           break;
         }
-      } catch (OcspStoreException ex) {
-        exceptionOccurs = true;
-        LogUtil.error(LOG, ex, "getCertStatus() of CertStatusStore " + store.getName());
       }
-    }
 
-    if (certStatusInfo == null) {
-      if (exceptionOccurs) {
-        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
-      } else {
-        certStatusInfo = CertStatusInfo.getIssuerUnknownCertStatusInfo(new Date(), null);
+      if (!indexes.isEmpty()) {
+        if (exceptionOccurs) {
+          return null;
+        }
+
+        for (Integer index : indexes) {
+          certStatusInfos[index] = CertStatusInfo.getIssuerUnknownCertStatusInfo(new Date(), null);
+        }
       }
-    } // end if
+    }
 
-    // certStatusInfo may not be null in any case, since at least one store is configured
+    return certStatusInfos;
+  } // method getCertStatuses
+
+  private void processCertReq(CertID certId, CertStatusInfo certStatusInfo,
+      OCSPRespBuilder builder, ResponderImpl responder, OcspServerConf.ResponseOption repOpt,
+      OcspRespControl repControl) throws IOException {
     Date thisUpdate = certStatusInfo.getThisUpdate();
     if (thisUpdate == null) {
       thisUpdate = new Date();
@@ -923,9 +1118,7 @@ public class OcspServerImpl implements OcspServer {
     if (nextUpdate != null) {
       repControl.cacheNextUpdate = Math.min(repControl.cacheNextUpdate, nextUpdate.getTime());
     }
-
-    return null;
-  }
+  } // method processCertReq
 
   @Override
   public HealthCheckResult healthCheck(Responder responder2) {
@@ -952,6 +1145,20 @@ public class OcspServerImpl implements OcspServer {
     signerHealth.setHealthy(signerHealthy);
     result.addChildCheck(signerHealth);
 
+    if (responseCacher != null) {
+      HealthCheckResult cacheHealth = new HealthCheckResult();
+      cacheHealth.setName("ResponseCache");
+      // the response cache is optional, and does not affect the health of the responder.
+      cacheHealth.setHealthy(responseCacher.isOnService());
+      Map<String, Object> statuses = cacheHealth.getStatuses();
+      statuses.put("memoryCacheHits", responseCacher.getMemoryCacheHits());
+      statuses.put("memoryCacheMisses", responseCacher.getMemoryCacheMisses());
+      statuses.put("writeQueueDepth", responseCacher.getWriteQueueDepth());
+      statuses.put("droppedWrites", responseCacher.getDroppedWrites());
+      statuses.put("failedWrites", responseCacher.getFailedWrites());
+      result.addChildCheck(cacheHealth);
+    }
+
     result.setHealthy(healthy);
     return result;
   } // method healthCheck
@@ -1002,8 +1209,9 @@ public class OcspServerImpl implements OcspServer {
     }
 
     try {
-      return new ResponderSigner(singleSigners);
-    } catch (CertificateException | IOException ex) {
+      return new ResponderSigner(singleSigners, signerType.getBatchSize(),
+          signerType.getBatchConcurrency());
+    } catch (CertificateException | IOException | NoIdleSignerException ex) {
       throw new InvalidConfException(ex.getMessage(), ex);
     }
   } // method initSigner
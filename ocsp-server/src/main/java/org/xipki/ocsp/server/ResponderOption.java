@@ -43,6 +43,8 @@ class ResponderOption {
 
   private final boolean inheritCaRevocation;
 
+  private final boolean preSign;
+
   private final String requestOptionName;
 
   private final String responseOptionName;
@@ -68,6 +70,7 @@ class ResponderOption {
     this.requestOptionName = conf.getRequest();
     this.responseOptionName = conf.getResponse();
     this.inheritCaRevocation = conf.isInheritCaRevocation();
+    this.preSign = conf.isPreSign();
 
     List<String> list = new ArrayList<>(conf.getStores());
     this.storeNames = Collections.unmodifiableList(list);
@@ -94,6 +97,10 @@ class ResponderOption {
     return inheritCaRevocation;
   }
 
+  public boolean isPreSign() {
+    return preSign;
+  }
+
   public String getSignerName() {
     return signerName;
   }
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -30,10 +31,14 @@ import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.bouncycastle.asn1.pkcs.RSASSAPSSparams;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.asn1.x509.Certificate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xipki.ocsp.server.type.ResponderID;
 import org.xipki.ocsp.server.type.TaggedCertSequence;
+import org.xipki.security.BatchSigner;
 import org.xipki.security.ConcurrentContentSigner;
 import org.xipki.security.HashAlgo;
+import org.xipki.security.NoIdleSignerException;
 import org.xipki.util.Args;
 
 /**
@@ -44,8 +49,12 @@ import org.xipki.util.Args;
 
 class ResponderSigner {
 
+  private static final Logger LOG = LoggerFactory.getLogger(ResponderSigner.class);
+
   private final Map<String, ConcurrentContentSigner> algoSignerMap;
 
+  private final Map<ConcurrentContentSigner, BatchSigner> batchSignerMap;
+
   private final List<ConcurrentContentSigner> signers;
 
   private final TaggedCertSequence sequenceOfCert;
@@ -62,7 +71,8 @@ class ResponderSigner {
 
   private final boolean macSigner;
 
-  ResponderSigner(List<ConcurrentContentSigner> signers) throws CertificateException, IOException {
+  ResponderSigner(List<ConcurrentContentSigner> signers, int batchSize, int batchConcurrency)
+      throws CertificateException, IOException, NoIdleSignerException {
     this.signers = Args.notEmpty(signers, "signers");
     ConcurrentContentSigner firstSigner = signers.get(0);
     this.macSigner = firstSigner.isMac();
@@ -115,6 +125,18 @@ class ResponderSigner {
       String algoName = signer.getAlgorithmName();
       algoSignerMap.put(algoName, signer);
     }
+
+    batchSignerMap = new IdentityHashMap<>();
+    if (batchSize > 0) {
+      for (ConcurrentContentSigner signer : signers) {
+        if (signer.isBatchSignEfficient()) {
+          batchSignerMap.put(signer, new BatchSigner(signer, batchSize, batchConcurrency));
+        } else {
+          LOG.info("signer {} does not sign batches more efficiently, ignore batchSize",
+              signer.getName());
+        }
+      }
+    }
   } // constructor
 
   public boolean isMacSigner() {
@@ -140,6 +162,16 @@ class ResponderSigner {
     return null;
   }
 
+  /**
+   * Returns the batch signer of the given signer.
+   * @param signer
+   *          Signer of this responder.
+   * @return the batch signer, {@code null} if batch signing is not activated.
+   */
+  public BatchSigner getBatchSigner(ConcurrentContentSigner signer) {
+    return batchSignerMap.get(signer);
+  }
+
   public ResponderID getResponderId(boolean byName) {
     return byName ? responderIdByName :  responderIdByKey;
   }
@@ -24,15 +24,26 @@ import java.security.cert.X509Certificate;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import org.bouncycastle.crypto.Digest;
 import org.slf4j.Logger;
@@ -52,6 +63,7 @@ import org.xipki.util.Base64;
 import org.xipki.util.InvalidConfException;
 import org.xipki.util.LogUtil;
 import org.xipki.util.Args;
+import org.xipki.util.LruCache;
 import org.xipki.util.concurrent.ConcurrentBag;
 import org.xipki.util.concurrent.ConcurrentBagEntry;
 
@@ -77,11 +89,129 @@ class ResponseCacher implements Closeable {
   private static final String SQL_ADD_RESP = "INSERT INTO OCSP (ID,IID,IDENT,"
       + "THIS_UPDATE,NEXT_UPDATE,RESP) VALUES (?,?,?,?,?,?)";
 
+  private static final String SQL_SELECT_RESP_COLUMNS = "SELECT IDENT,RESP FROM OCSP WHERE 1=0";
+
   private static final String SQL_UPDATE_RESP = "UPDATE OCSP SET THIS_UPDATE=?,"
       + "NEXT_UPDATE=?,RESP=? WHERE ID=?";
 
+  private static final String SQL_ADD_PRESIGN = "INSERT INTO PRESIGN (NAME,LAST_RUN) VALUES (?,?)";
+
+  private static final String SQL_UPDATE_PRESIGN = "UPDATE PRESIGN SET LAST_RUN=? WHERE NAME=?";
+
+  /**
+   * Estimated memory consumption of a cached response in addition to the encoded response.
+   */
+  private static final int MEMORY_CACHE_ENTRY_OVERHEAD = 128;
+
+  private static final int WRITE_BATCH_SIZE = 100;
+
+  private static final int EXPIRING_RESP_PAGE_SIZE = 1000;
+
   private final ConcurrentBag<ConcurrentBagEntry<Digest>> idDigesters;
 
+  private static class ResponseCacheKey {
+
+    private final int issuerId;
+
+    private final BigInteger serialNumber;
+
+    private final AlgorithmCode sigAlg;
+
+    ResponseCacheKey(int issuerId, BigInteger serialNumber, AlgorithmCode sigAlg) {
+      this.issuerId = issuerId;
+      this.serialNumber = serialNumber;
+      this.sigAlg = sigAlg;
+    }
+
+    @Override
+    public int hashCode() {
+      return (31 * issuerId + serialNumber.hashCode()) * 31 + sigAlg.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof ResponseCacheKey)) {
+        return false;
+      }
+
+      ResponseCacheKey other = (ResponseCacheKey) obj;
+      return issuerId == other.issuerId && sigAlg == other.sigAlg
+          && serialNumber.equals(other.serialNumber);
+    }
+
+  } // class ResponseCacheKey
+
+  private static class MemoryCache extends LruCache<ResponseCacheKey, OcspRespWithCacheInfo> {
+
+    MemoryCache(int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected int sizeOf(ResponseCacheKey key, OcspRespWithCacheInfo value) {
+      return MEMORY_CACHE_ENTRY_OVERHEAD + value.getResponse().length;
+    }
+
+  } // class MemoryCache
+
+  private static class PendingResponse {
+
+    private final ResponseCacheKey key;
+
+    private final long thisUpdate;
+
+    private final Long nextUpdate;
+
+    private final byte[] response;
+
+    PendingResponse(ResponseCacheKey key, long thisUpdate, Long nextUpdate, byte[] response) {
+      this.key = key;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+      this.response = response;
+    }
+
+  } // class PendingResponse
+
+  /**
+   * Writes the queued responses to the cache database in batches. Runs in its own thread,
+   * so that the OCSP requests are never blocked by the cache database.
+   */
+  private class ResponseWriter implements Runnable {
+
+    @Override
+    public void run() {
+      List<PendingResponse> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+      while (!writerStopped || !writeQueue.isEmpty()) {
+        try {
+          ResponseCacheKey key = writeQueue.poll(1, TimeUnit.SECONDS);
+          while (key != null) {
+            PendingResponse resp = pendingWrites.remove(key);
+            if (resp != null) {
+              batch.add(resp);
+            }
+
+            key = (batch.size() < WRITE_BATCH_SIZE) ? writeQueue.poll() : null;
+          }
+
+          if (!batch.isEmpty()) {
+            writeResponses(batch);
+          }
+        } catch (InterruptedException ex) {
+          LOG.warn("ResponseWriter interrupted");
+          return;
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "error while writing the cached OCSP responses");
+        } finally {
+          batch.clear();
+        }
+      }
+    } // method run
+
+  } // class ResponseWriter
+
   private class IssuerUpdater implements Runnable {
 
     @Override
@@ -108,6 +238,16 @@ class ResponseCacher implements Closeable {
       inProcess = true;
       long maxThisUpdate = System.currentTimeMillis() / 1000 - validity;
       try {
+        if (memoryCache != null) {
+          // use snapshot() instead of get() to not change the access order
+          for (Map.Entry<ResponseCacheKey, OcspRespWithCacheInfo> entry
+              : memoryCache.snapshot().entrySet()) {
+            if (!isValid(entry.getKey().issuerId, entry.getValue().getCacheInfo())) {
+              memoryCache.remove(entry.getKey());
+            }
+          }
+        }
+
         int num = removeExpiredResponses(maxThisUpdate);
         LOG.info("removed {} response with thisUpdate < {}", num, maxThisUpdate);
       } catch (Throwable th) {
@@ -123,12 +263,50 @@ class ResponseCacher implements Closeable {
 
   private final String sqlSelectOcsp;
 
+  private final String sqlSelectPreSign;
+
+  private final String sqlSelectExpiringResp;
+
   private final boolean master;
 
   private final int validity;
 
   private final AtomicBoolean onService;
 
+  /**
+   * In-memory (level 1) cache in front of the cache database, {@code null} if disabled.
+   */
+  private final MemoryCache memoryCache;
+
+  /**
+   * Map of the issuer id to the time (in milliseconds) since which the cached responses are
+   * invalid because of change of the issuer's revocation status.
+   */
+  private final ConcurrentHashMap<Integer, Long> issuerInvalidationTimes =
+      new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<Integer, Long> issuerRevocationTimes =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Responses to be written to the cache database. Responses with the same key are coalesced,
+   * the key is contained at most once in {@link #writeQueue}.
+   */
+  private final ConcurrentHashMap<ResponseCacheKey, PendingResponse> pendingWrites =
+      new ConcurrentHashMap<>();
+
+  private final BlockingQueue<ResponseCacheKey> writeQueue;
+
+  private final AtomicLong droppedWrites = new AtomicLong(0);
+
+  private final AtomicLong failedWrites = new AtomicLong(0);
+
+  private final String sqlUpsertResp;
+
+  private volatile boolean writerStopped;
+
+  private Thread writerThread;
+
   private DataSourceWrapper datasource;
 
   private IssuerStore issuerStore;
@@ -139,13 +317,23 @@ class ResponseCacher implements Closeable {
 
   private ScheduledFuture<?> issuerUpdater;
 
-  ResponseCacher(DataSourceWrapper datasource, boolean master, int validity) {
+  ResponseCacher(DataSourceWrapper datasource, boolean master, int validity,
+      int memoryCacheSize, int writeQueueSize) {
     this.datasource = Args.notNull(datasource, "datasource");
     this.master = master;
     this.validity = Args.positive(validity, "validity");
+    this.memoryCache = (memoryCacheSize > 0) ? new MemoryCache(memoryCacheSize) : null;
+    this.writeQueue = new ArrayBlockingQueue<>(Args.positive(writeQueueSize, "writeQueueSize"));
+    this.sqlUpsertResp = datasource.buildUpsertSql("OCSP", "ID",
+        "IID", "IDENT", "THIS_UPDATE", "NEXT_UPDATE", "RESP");
     this.sqlSelectIssuerCert = datasource.buildSelectFirstSql(1, "CERT FROM ISSUER WHERE ID=?");
+    this.sqlSelectPreSign = datasource.buildSelectFirstSql(1,
+        "LAST_RUN FROM PRESIGN WHERE NAME=?");
     this.sqlSelectOcsp = datasource.buildSelectFirstSql(1,
         "IID,IDENT,THIS_UPDATE,NEXT_UPDATE,RESP FROM OCSP WHERE ID=?");
+    this.sqlSelectExpiringResp = datasource.buildSelectFirstSql(EXPIRING_RESP_PAGE_SIZE,
+        "ID ASC", "ID,IDENT FROM OCSP WHERE IID=? AND ID>? AND (THIS_UPDATE<? OR "
+        + "(NEXT_UPDATE IS NOT NULL AND NEXT_UPDATE<>0 AND NEXT_UPDATE<?))");
     this.onService = new AtomicBoolean(false);
 
     this.idDigesters = new ConcurrentBag<>();
@@ -159,9 +347,15 @@ class ResponseCacher implements Closeable {
     return onService.get() && issuerStore != null;
   }
 
-  void init() {
+  void init() throws InvalidConfException {
+    assertBinarySchema();
     updateCacheStore();
 
+    writerStopped = false;
+    writerThread = new Thread(new ResponseWriter(), "ocsp-response-cache-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+
     scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1);
     scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
 
@@ -176,6 +370,17 @@ class ResponseCacher implements Closeable {
 
   @Override
   public void close() {
+    if (writerThread != null) {
+      // write the remaining responses
+      writerStopped = true;
+      try {
+        writerThread.join(10000);
+      } catch (InterruptedException ex) {
+        LOG.error("interrupted: {}", ex.getMessage());
+      }
+      writerThread = null;
+    }
+
     if (datasource != null) {
       datasource.close();
       datasource = null;
@@ -204,6 +409,46 @@ class ResponseCacher implements Closeable {
     }
   }
 
+  /**
+   * Checks that the table OCSP uses binary columns IDENT and RESP. Cache databases
+   * created by the versions before 5.0.1 store them as Base64 text.
+   */
+  private void assertBinarySchema() throws InvalidConfException {
+    final String sql = SQL_SELECT_RESP_COLUMNS;
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+    try {
+      ps = datasource.prepareStatement(sql);
+      rs = ps.executeQuery();
+      ResultSetMetaData metaData = rs.getMetaData();
+      for (int i = 1; i <= metaData.getColumnCount(); i++) {
+        switch (metaData.getColumnType(i)) {
+          case Types.CHAR:
+          case Types.VARCHAR:
+          case Types.LONGVARCHAR:
+          case Types.NCHAR:
+          case Types.NVARCHAR:
+          case Types.CLOB:
+            throw new InvalidConfException("column OCSP." + metaData.getColumnName(i)
+                + " of the cache database is not binary, please re-initialize the cache"
+                + " database with the schema file ocsp-cache-init.xml");
+          default:
+            break;
+        }
+      }
+    } catch (SQLException ex) {
+      throw new InvalidConfException(datasource.translate(sql, ex).getMessage(), ex);
+    } catch (DataAccessException ex) {
+      throw new InvalidConfException(ex.getMessage(), ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  }
+
+  int getValidity() {
+    return validity;
+  }
+
   Integer getIssuerId(RequestIssuer reqIssuer) {
     IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
     return (issuer == null) ? null : issuer.getId();
@@ -254,8 +499,158 @@ class ResponseCacher implements Closeable {
     }
   }
 
+  /**
+   * Returns the start time of the last complete pre-signing run of the responder.
+   * @param responderName
+   *          Name of the responder. Must not be {@code null}.
+   * @return the start time in milliseconds, 0 if unknown.
+   */
+  long getPreSignLastRun(String responderName) {
+    final String sql = sqlSelectPreSign;
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+    try {
+      ps = datasource.prepareStatement(sql);
+      ps.setString(1, responderName);
+      rs = ps.executeQuery();
+      return rs.next() ? rs.getLong("LAST_RUN") * 1000 : 0;
+    } catch (SQLException ex) {
+      LogUtil.warn(LOG, datasource.translate(sql, ex),
+          "could not read the last pre-signing run of responder " + responderName);
+      return 0;
+    } catch (DataAccessException ex) {
+      LogUtil.warn(LOG, ex,
+          "could not read the last pre-signing run of responder " + responderName);
+      return 0;
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  }
+
+  /**
+   * Saves the start time of the last complete pre-signing run of the responder.
+   * @param responderName
+   *          Name of the responder. Must not be {@code null}.
+   * @param lastRun
+   *          Start time in milliseconds.
+   */
+  void storePreSignLastRun(String responderName, long lastRun) {
+    long lastRunSec = lastRun / 1000;
+    String sql = SQL_UPDATE_PRESIGN;
+    PreparedStatement ps = null;
+    try {
+      ps = datasource.prepareStatement(sql);
+      ps.setLong(1, lastRunSec);
+      ps.setString(2, responderName);
+      if (ps.executeUpdate() > 0) {
+        return;
+      }
+      datasource.releaseResources(ps, null);
+      ps = null;
+
+      sql = SQL_ADD_PRESIGN;
+      ps = datasource.prepareStatement(sql);
+      ps.setString(1, responderName);
+      ps.setLong(2, lastRunSec);
+      ps.executeUpdate();
+    } catch (SQLException ex) {
+      LogUtil.warn(LOG, datasource.translate(sql, ex),
+          "could not save the last pre-signing run of responder " + responderName);
+    } catch (DataAccessException ex) {
+      LogUtil.warn(LOG, ex,
+          "could not save the last pre-signing run of responder " + responderName);
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  }
+
+  /**
+   * Updates the revocation status of the issuer. If the status changed, all cached responses
+   * of this issuer produced before the change will be ignored.
+   * @param issuerId
+   *          Issuer id in the cache database.
+   * @param revocationTime
+   *          Revocation time of the issuer, {@code null} if the issuer is not revoked.
+   */
+  void updateIssuerRevocation(int issuerId, Date revocationTime) {
+    Long revTime = (revocationTime == null) ? null : revocationTime.getTime();
+    Long oldRevTime = issuerRevocationTimes.get(issuerId);
+    if (revTime == null ? oldRevTime == null : revTime.equals(oldRevTime)) {
+      return;
+    }
+
+    if (revTime == null) {
+      issuerRevocationTimes.remove(issuerId);
+      // issuer has been unrevoked
+      issuerInvalidationTimes.put(issuerId, System.currentTimeMillis());
+    } else {
+      issuerRevocationTimes.put(issuerId, revTime);
+      issuerInvalidationTimes.put(issuerId, Math.min(revTime, System.currentTimeMillis()));
+    }
+
+    if (memoryCache != null) {
+      int num = 0;
+      for (ResponseCacheKey key : memoryCache.keySnapshot()) {
+        if (key.issuerId == issuerId) {
+          memoryCache.remove(key);
+          num++;
+        }
+      }
+      LOG.info("revocation of issuer {} changed, removed {} cached responses", issuerId, num);
+    }
+  }
+
   OcspRespWithCacheInfo getOcspResponse(int issuerId, BigInteger serialNumber,
       AlgorithmCode sigAlg) throws DataAccessException {
+    ResponseCacheKey cacheKey = new ResponseCacheKey(issuerId, serialNumber, sigAlg);
+    if (memoryCache != null) {
+      OcspRespWithCacheInfo resp = memoryCache.get(cacheKey);
+      if (resp != null) {
+        if (isValid(issuerId, resp.getCacheInfo())) {
+          return resp;
+        }
+        memoryCache.remove(cacheKey);
+      }
+    }
+
+    // the response not yet written to the database is newer than the one in the database.
+    PendingResponse pending = pendingWrites.get(cacheKey);
+    if (pending != null) {
+      ResponseCacheInfo cacheInfo = new ResponseCacheInfo(pending.thisUpdate * 1000);
+      if (pending.nextUpdate != null) {
+        cacheInfo.setNextUpdate(pending.nextUpdate * 1000);
+      }
+
+      if (isValid(issuerId, cacheInfo)) {
+        return new OcspRespWithCacheInfo(pending.response, cacheInfo);
+      }
+    }
+
+    OcspRespWithCacheInfo resp = getOcspResponse0(issuerId, serialNumber, sigAlg);
+    if (resp != null && memoryCache != null) {
+      memoryCache.put(cacheKey, resp);
+    }
+    return resp;
+  }
+
+  private boolean isValid(int issuerId, ResponseCacheInfo cacheInfo) {
+    Long invalidationTime = issuerInvalidationTimes.get(issuerId);
+    if (invalidationTime != null && cacheInfo.getThisUpdate() < invalidationTime) {
+      return false;
+    }
+
+    long now = System.currentTimeMillis();
+    if (cacheInfo.getThisUpdate() < now - validity * 1000L) {
+      return false;
+    }
+
+    Long nextUpdate = cacheInfo.getNextUpdate();
+    // nextUpdate must be at least in 600 seconds
+    return nextUpdate == null || nextUpdate >= now + 600 * 1000L;
+  }
+
+  private OcspRespWithCacheInfo getOcspResponse0(int issuerId, BigInteger serialNumber,
+      AlgorithmCode sigAlg) throws DataAccessException {
     final String sql = sqlSelectOcsp;
     byte[] identBytes = buildIdent(serialNumber, sigAlg);
     long id = deriveId(issuerId, identBytes);
@@ -274,9 +669,8 @@ class ResponseCacher implements Closeable {
         return null;
       }
 
-      String ident = Base64.encodeToString(identBytes);
-      String dbIdent = rs.getString("IDENT");
-      if (!ident.equals(dbIdent)) {
+      byte[] dbIdent = rs.getBytes("IDENT");
+      if (!Arrays.equals(identBytes, dbIdent)) {
         return null;
       }
 
@@ -290,12 +684,17 @@ class ResponseCacher implements Closeable {
         }
       }
 
-      long thisUpdate = rs.getLong("THIS_UPDATE");
-      String b64Resp = rs.getString("RESP");
-      byte[] encoded = Base64.decodeFast(b64Resp);
+      // the OcspRespWithCacheInfo uses milliseconds, the database seconds.
+      long thisUpdate = rs.getLong("THIS_UPDATE") * 1000;
+      Long invalidationTime = issuerInvalidationTimes.get(issuerId);
+      if (invalidationTime != null && thisUpdate < invalidationTime) {
+        return null;
+      }
+
+      byte[] encoded = rs.getBytes("RESP");
       ResponseCacheInfo cacheInfo = new ResponseCacheInfo(thisUpdate);
       if (nextUpdate != 0) {
-        cacheInfo.setNextUpdate(nextUpdate);
+        cacheInfo.setNextUpdate(nextUpdate * 1000);
       }
       return new OcspRespWithCacheInfo(encoded, cacheInfo);
     } catch (SQLException ex) {
@@ -305,10 +704,205 @@ class ResponseCacher implements Closeable {
     }
   }
 
+  /**
+   * Stores the OCSP response in the memory cache and cache database.
+   * @param issuerId
+   *          Issuer id in the cache database.
+   * @param serialNumber
+   *          Serial number.
+   * @param thisUpdate
+   *          thisUpdate in milliseconds.
+   * @param nextUpdate
+   *          nextUpdate in milliseconds, {@code null} if not present.
+   * @param sigAlgCode
+   *          Code of the signature algorithm.
+   * @param response
+   *          The encoded response.
+   * @param preSigned
+   *          Whether the response is pre-signed. Pre-signed responses only replace the
+   *          existing entries in the memory cache, to keep the frequently requested ones.
+   */
   void storeOcspResponse(int issuerId, BigInteger serialNumber, long thisUpdate, Long nextUpdate,
-      AlgorithmCode sigAlgCode, byte[] response) {
-    byte[] identBytes = buildIdent(serialNumber, sigAlgCode);
-    String ident = Base64.encodeToString(identBytes);
+      AlgorithmCode sigAlgCode, byte[] response, boolean preSigned) {
+    ResponseCacheKey key = new ResponseCacheKey(issuerId, serialNumber, sigAlgCode);
+    if (memoryCache != null) {
+      ResponseCacheInfo cacheInfo = new ResponseCacheInfo(thisUpdate);
+      if (nextUpdate != null && nextUpdate > 0) {
+        cacheInfo.setNextUpdate(nextUpdate);
+      }
+
+      if (!preSigned || memoryCache.remove(key) != null) {
+        memoryCache.put(key, new OcspRespWithCacheInfo(response, cacheInfo));
+      }
+    }
+
+    Long nextUpdateInSec = (nextUpdate != null && nextUpdate > 0) ? nextUpdate / 1000 : null;
+    PendingResponse pending = new PendingResponse(key, thisUpdate / 1000, nextUpdateInSec,
+        response);
+
+    if (pendingWrites.put(key, pending) != null) {
+      // replaced the not yet written response with the same key
+      return;
+    }
+
+    boolean queued;
+    if (preSigned) {
+      // pre-signing runs in background, wait for the writer instead of dropping responses.
+      try {
+        queued = writeQueue.offer(key, 30, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        queued = false;
+      }
+    } else {
+      queued = writeQueue.offer(key);
+    }
+
+    // queue is full, the response will be not stored in the database.
+    while (!queued) {
+      if (pendingWrites.remove(key, pending)) {
+        droppedWrites.incrementAndGet();
+        return;
+      }
+
+      // replaced meanwhile by a newer response, whose caller relies on the key being queued
+      // by this call.
+      pending = pendingWrites.get(key);
+      queued = (pending == null) || writeQueue.offer(key);
+    }
+  }
+
+  /**
+   * Passes the serial numbers of the cached responses of the given issuer and signature
+   * algorithm, which will expire before the given times, to the consumer.
+   * @param issuerId
+   *          Issuer id in the cache database.
+   * @param sigAlgCode
+   *          Code of the signature algorithm.
+   * @param maxThisUpdate
+   *          Responses with thisUpdate before this time (in milliseconds) are passed.
+   * @param maxNextUpdate
+   *          Responses with nextUpdate before this time (in milliseconds) are passed.
+   * @param consumer
+   *          Consumer of the serial numbers.
+   */
+  void listExpiringResponses(int issuerId, AlgorithmCode sigAlgCode, long maxThisUpdate,
+      long maxNextUpdate, Consumer<BigInteger> consumer) throws DataAccessException {
+    final String sql = sqlSelectExpiringResp;
+    PreparedStatement ps = datasource.prepareStatement(sql);
+    ResultSet rs = null;
+    long maxId = 0;
+    try {
+      while (true) {
+        int idx = 1;
+        ps.setInt(idx++, issuerId);
+        ps.setLong(idx++, maxId);
+        ps.setLong(idx++, maxThisUpdate / 1000);
+        ps.setLong(idx++, maxNextUpdate / 1000);
+        rs = ps.executeQuery();
+
+        int num = 0;
+        while (rs.next()) {
+          num++;
+          maxId = Math.max(maxId, rs.getLong("ID"));
+          byte[] ident = rs.getBytes("IDENT");
+          // first byte is the code of signature algorithm, followed by the serial number.
+          if (ident[0] == sigAlgCode.getCode()) {
+            consumer.accept(new BigInteger(Arrays.copyOfRange(ident, 1, ident.length)));
+          }
+        }
+        rs.close();
+        rs = null;
+
+        if (num < EXPIRING_RESP_PAGE_SIZE) {
+          break;
+        }
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method listExpiringResponses
+
+  int getWriteQueueDepth() {
+    return writeQueue.size();
+  }
+
+  long getDroppedWrites() {
+    return droppedWrites.get();
+  }
+
+  long getFailedWrites() {
+    return failedWrites.get();
+  }
+
+  int getMemoryCacheHits() {
+    return (memoryCache == null) ? 0 : memoryCache.hitCount();
+  }
+
+  int getMemoryCacheMisses() {
+    return (memoryCache == null) ? 0 : memoryCache.missCount();
+  }
+
+  private void writeResponses(List<PendingResponse> responses) {
+    final String sql = sqlUpsertResp;
+    if (sql == null) {
+      for (PendingResponse resp : responses) {
+        writeResponse(resp);
+      }
+      return;
+    }
+
+    boolean batchFailed = false;
+    PreparedStatement ps = null;
+    try {
+      ps = datasource.prepareStatement(sql);
+      for (PendingResponse resp : responses) {
+        byte[] identBytes = buildIdent(resp.key.serialNumber, resp.key.sigAlg);
+        int idx = 1;
+        ps.setLong(idx++, deriveId(resp.key.issuerId, identBytes));
+        ps.setInt(idx++, resp.key.issuerId);
+        ps.setBytes(idx++, identBytes);
+        ps.setLong(idx++, resp.thisUpdate);
+        if (resp.nextUpdate != null) {
+          ps.setLong(idx++, resp.nextUpdate);
+        } else {
+          ps.setNull(idx++, Types.BIGINT);
+        }
+        ps.setBytes(idx++, resp.response);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+      LOG.debug("stored {} OCSP responses in the cache database", responses.size());
+    } catch (SQLException ex) {
+      batchFailed = true;
+      LogUtil.warn(LOG, datasource.translate(sql, ex), "could not store " + responses.size()
+          + " OCSP responses in the cache database in batch, store them one by one");
+    } catch (DataAccessException ex) {
+      batchFailed = true;
+      LogUtil.warn(LOG, ex, "could not store " + responses.size()
+          + " OCSP responses in the cache database in batch, store them one by one");
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+
+    if (batchFailed) {
+      // only the responses which cannot be written individually are lost
+      for (PendingResponse resp : responses) {
+        writeResponse(resp);
+      }
+    }
+  }
+
+  /**
+   * Stores the response via INSERT, and UPDATE if the INSERT failed. Used only if the
+   * database does not support the UPSERT statement.
+   */
+  private void writeResponse(PendingResponse resp) {
+    final int issuerId = resp.key.issuerId;
+    final BigInteger serialNumber = resp.key.serialNumber;
+    byte[] identBytes = buildIdent(serialNumber, resp.key.sigAlg);
     try {
       long id = deriveId(issuerId, identBytes);
 
@@ -317,20 +911,19 @@ class ResponseCacher implements Closeable {
         String sql = SQL_ADD_RESP;
         PreparedStatement ps = datasource.prepareStatement(conn, sql);
 
-        String b64Response = Base64.encodeToString(response);
         Boolean dataIntegrityViolationException = null;
         try {
           int idx = 1;
           ps.setLong(idx++, id);
           ps.setInt(idx++, issuerId);
-          ps.setString(idx++, ident);
-          ps.setLong(idx++, thisUpdate);
-          if (nextUpdate != null && nextUpdate > 0) {
-            ps.setLong(idx++, nextUpdate);
+          ps.setBytes(idx++, identBytes);
+          ps.setLong(idx++, resp.thisUpdate);
+          if (resp.nextUpdate != null) {
+            ps.setLong(idx++, resp.nextUpdate);
           } else {
-            ps.setNull(idx++, java.sql.Types.BIGINT);
+            ps.setNull(idx++, Types.BIGINT);
           }
-          ps.setString(idx++, b64Response);
+          ps.setBytes(idx++, resp.response);
           ps.execute();
         } catch (SQLException ex) {
           DataAccessException dex = datasource.translate(sql, ex);
@@ -344,7 +937,7 @@ class ResponseCacher implements Closeable {
         }
 
         if (dataIntegrityViolationException == null) {
-          LOG.debug("added cached OCSP response iid={}, ident={}", issuerId, ident);
+          LOG.debug("added cached OCSP response iid={}, serial={}", issuerId, serialNumber);
           return;
         }
 
@@ -352,13 +945,13 @@ class ResponseCacher implements Closeable {
         ps = datasource.prepareStatement(conn, sql);
         try {
           int idx = 1;
-          ps.setLong(idx++, thisUpdate);
-          if (nextUpdate != null && nextUpdate > 0) {
-            ps.setLong(idx++, nextUpdate);
+          ps.setLong(idx++, resp.thisUpdate);
+          if (resp.nextUpdate != null) {
+            ps.setLong(idx++, resp.nextUpdate);
           } else {
-            ps.setNull(idx++, java.sql.Types.BIGINT);
+            ps.setNull(idx++, Types.BIGINT);
           }
-          ps.setString(idx++, b64Response);
+          ps.setBytes(idx++, resp.response);
           ps.setLong(idx++, id);
           ps.executeUpdate();
         } catch (SQLException ex) {
@@ -370,9 +963,11 @@ class ResponseCacher implements Closeable {
         datasource.returnConnection(conn);
       }
     } catch (DataAccessException ex) {
-      LOG.info("could not cache OCSP response iid={}, ident={}", issuerId, ident);
+      failedWrites.incrementAndGet();
+      LOG.info("could not cache OCSP response iid={}, serial={}", issuerId, serialNumber);
       if (LOG.isDebugEnabled()) {
-        LOG.debug("could not cache OCSP response iid=" + issuerId + ", ident=" + ident, ex);
+        LOG.debug("could not cache OCSP response iid=" + issuerId
+            + ", serial=" + serialNumber, ex);
       }
     }
   }
@@ -0,0 +1,351 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.api.OcspStore;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.store.IssuerEntry;
+import org.xipki.security.AlgorithmCode;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.NoIdleSignerException;
+import org.xipki.security.util.X509Util;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Signs the OCSP responses in advance and stores them in the response cache, so that the
+ * responses are not signed on demand (see RFC 5019). The first run of a responder signs the
+ * responses of all certificates, the following runs only those of the certificates whose
+ * status changed and those whose cached responses are close to expiry. The start time of
+ * the last complete run is saved in the cache database, so that a restart does not require
+ * a new first run.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class ResponsePreSigner implements Closeable {
+
+  private class PreSignService implements Runnable {
+
+    @Override
+    public void run() {
+      try {
+        preSign();
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "error while pre-signing the OCSP responses");
+      }
+    }
+
+  } // class PreSignService
+
+  /**
+   * Tracks the completion of the submitted tasks. A task is tracked only if it has been
+   * accepted by the executor, a task fails if it throws an exception.
+   */
+  static class TaskTracker {
+
+    private final Executor executor;
+
+    private final Phaser phaser = new Phaser(1);
+
+    private final AtomicLong numRejected = new AtomicLong(0);
+
+    private final AtomicLong numFailed = new AtomicLong(0);
+
+    TaskTracker(Executor executor) {
+      this.executor = Args.notNull(executor, "executor");
+    }
+
+    /**
+     * Submits the task.
+     * @param task
+     *          The task. Must not be {@code null}.
+     * @return whether the task has been accepted by the executor.
+     */
+    boolean submit(Runnable task) {
+      phaser.register();
+      boolean submitted = false;
+      try {
+        executor.execute(() -> {
+          try {
+            task.run();
+          } catch (Throwable th) {
+            numFailed.incrementAndGet();
+            LogUtil.error(LOG, th, "error while executing pre-signing task");
+          } finally {
+            phaser.arriveAndDeregister();
+          }
+        });
+        submitted = true;
+      } catch (RejectedExecutionException ex) {
+        numRejected.incrementAndGet();
+      } finally {
+        if (!submitted) {
+          phaser.arriveAndDeregister();
+        }
+      }
+      return submitted;
+    }
+
+    /**
+     * Waits until all accepted tasks are completed. May be called only once.
+     * @throws InterruptedException
+     *           if interrupted while waiting.
+     */
+    void awaitCompletion() throws InterruptedException {
+      phaser.awaitAdvanceInterruptibly(phaser.arrive());
+    }
+
+    long getNumRejected() {
+      return numRejected.get();
+    }
+
+    long getNumFailed() {
+      return numFailed.get();
+    }
+
+  } // class TaskTracker
+
+  /**
+   * Runs the task in the caller thread if the queue is full, this limits the memory
+   * consumption. Rejects the task if the executor has been shut down.
+   */
+  static final RejectedExecutionHandler CALLER_RUNS_IF_NOT_SHUTDOWN = (task, executor) -> {
+    if (executor.isShutdown()) {
+      throw new RejectedExecutionException("executor has been shut down");
+    }
+    task.run();
+  };
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponsePreSigner.class);
+
+  /**
+   * Tolerance in seconds to detect the status changes. The update time in the database has
+   * the precision of seconds and is set by other hosts.
+   */
+  private static final long UPDATE_TIME_TOLERANCE = 60;
+
+  private static final HashAlgo[] CERTID_HASH_ALGOS =
+      {HashAlgo.SHA1, HashAlgo.SHA256, HashAlgo.SHA384, HashAlgo.SHA512};
+
+  private final OcspServerImpl server;
+
+  private final ResponseCacher responseCacher;
+
+  private final Map<String, ResponderImpl> responders;
+
+  private final int interval;
+
+  private final int threads;
+
+  private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+
+  private ThreadPoolExecutor signExecutor;
+
+  /**
+   * Map of the responder name to the start time in milliseconds of its last complete run,
+   * 0 if there is no such run.
+   */
+  private final Map<String, Long> lastRunStarts = new HashMap<>();
+
+  ResponsePreSigner(OcspServerImpl server, ResponseCacher responseCacher,
+      Map<String, ResponderImpl> responders, int interval, int threads) {
+    this.server = Args.notNull(server, "server");
+    this.responseCacher = Args.notNull(responseCacher, "responseCacher");
+    this.responders = Args.notEmpty(responders, "responders");
+    this.interval = Args.positive(interval, "interval");
+    this.threads = Args.positive(threads, "threads");
+  }
+
+  void init() {
+    signExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(threads * 100), CALLER_RUNS_IF_NOT_SHUTDOWN);
+
+    scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1);
+    scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
+    // fixed delay, the runs shall not overlap.
+    scheduledThreadPoolExecutor.scheduleWithFixedDelay(
+        new PreSignService(), 10, interval, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void close() {
+    if (scheduledThreadPoolExecutor != null) {
+      scheduledThreadPoolExecutor.shutdownNow();
+      scheduledThreadPoolExecutor = null;
+    }
+
+    if (signExecutor != null) {
+      signExecutor.shutdown();
+      try {
+        signExecutor.awaitTermination(10, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        LOG.error("interrupted: {}", ex.getMessage());
+      }
+      signExecutor = null;
+    }
+  }
+
+  private void preSign() {
+    if (!responseCacher.isOnService()) {
+      LOG.info("response cache is not on service, skip pre-signing the responses");
+      return;
+    }
+
+    for (Map.Entry<String, ResponderImpl> entry : responders.entrySet()) {
+      if (!preSign(entry.getKey(), entry.getValue())) {
+        return;
+      }
+    }
+  } // method preSign
+
+  /**
+   * Pre-signs the responses of a responder.
+   * @return {@code false} if interrupted, {@code true} otherwise.
+   */
+  private boolean preSign(String name, ResponderImpl responder) {
+    AlgorithmCode sigAlgCode = responder.getSigner().getFirstSigner().getAlgorithmCode();
+    HashAlgo hashAlgo = getCertIdHashAlgo(responder);
+    if (hashAlgo == null) {
+      LOG.warn("responder {} allows none of the hash algorithms SHA1, SHA256, SHA384 and "
+          + "SHA512 in CertID, skip pre-signing", name);
+      return true;
+    }
+
+    Long lastRunStart = lastRunStarts.get(name);
+    if (lastRunStart == null) {
+      lastRunStart = responseCacher.getPreSignLastRun(name);
+      lastRunStarts.put(name, lastRunStart);
+    }
+
+    final long start = System.currentTimeMillis();
+    final boolean fullRun = (lastRunStart == 0);
+    long updatedSince = fullRun ? 0 : lastRunStart / 1000 - UPDATE_TIME_TOLERANCE;
+
+    // refresh the responses before the ResponseCacher considers them as expired.
+    long refreshAhead = 2000L * interval;
+    long maxThisUpdate = start - responseCacher.getValidity() * 1000L + refreshAhead;
+    long maxNextUpdate = start + 600 * 1000L + refreshAhead;
+
+    final ThreadPoolExecutor executor = signExecutor;
+    final TaskTracker tracker = new TaskTracker(executor);
+    final AtomicLong numSigned = new AtomicLong(0);
+    final AtomicLong numSkipped = new AtomicLong(0);
+    boolean complete = true;
+
+    Set<Integer> processedIssuers = new HashSet<>();
+    for (OcspStore store : responder.getStores()) {
+      for (X509Certificate issuerCert : store.getIssuerCerts()) {
+        try {
+          final RequestIssuer reqIssuer = new RequestIssuer(hashAlgo,
+              new IssuerEntry(0, issuerCert).getEncodedHash(hashAlgo));
+          Integer id = responseCacher.getIssuerId(reqIssuer);
+          if (id == null) {
+            id = responseCacher.storeIssuer(issuerCert);
+          }
+
+          final int cacheIssuerId = id;
+          Consumer<BigInteger> submitter = serialNumber -> {
+            if (executor.isShutdown()) {
+              return;
+            }
+
+            tracker.submit(() -> {
+              try {
+                if (server.preSignResponse(responder, reqIssuer, cacheIssuerId, serialNumber)) {
+                  numSigned.incrementAndGet();
+                } else {
+                  numSkipped.incrementAndGet();
+                }
+              } catch (NoIdleSignerException | OCSPException | IOException ex) {
+                throw new IllegalStateException("could not pre-sign response of certificate "
+                    + LogUtil.formatCsn(serialNumber), ex);
+              }
+            });
+          };
+
+          store.listSerialNumbers(reqIssuer, updatedSince, submitter);
+          if (!fullRun && processedIssuers.add(cacheIssuerId)) {
+            responseCacher.listExpiringResponses(cacheIssuerId, sigAlgCode,
+                maxThisUpdate, maxNextUpdate, submitter);
+          }
+        } catch (CertificateEncodingException ex) {
+          LogUtil.error(LOG, ex, "could not encode issuer certificate");
+        } catch (Exception ex) {
+          complete = false;
+          LogUtil.error(LOG, ex, "could not pre-sign the responses of issuer "
+              + X509Util.getRfc4519Name(issuerCert.getSubjectX500Principal()));
+        }
+      }
+    }
+
+    // wait until all submitted responses are signed
+    try {
+      tracker.awaitCompletion();
+    } catch (InterruptedException ex) {
+      LOG.info("pre-signing of responses interrupted");
+      return false;
+    }
+
+    // the responses of the failed tasks will be signed again in the next run
+    if (complete && tracker.getNumRejected() == 0 && tracker.getNumFailed() == 0
+        && !executor.isShutdown()) {
+      lastRunStarts.put(name, start);
+      responseCacher.storePreSignLastRun(name, start);
+    }
+
+    LOG.info("pre-signed {} responses ({} skipped, {} failed) of responder {} in {} ms",
+        numSigned.get(), numSkipped.get(), tracker.getNumFailed(), name,
+        System.currentTimeMillis() - start);
+    return true;
+  } // method preSign
+
+  private static HashAlgo getCertIdHashAlgo(ResponderImpl responder) {
+    for (HashAlgo hashAlgo : CERTID_HASH_ALGOS) {
+      if (responder.getRequestOption().allows(hashAlgo)) {
+        return hashAlgo;
+      }
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,423 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongPredicate;
+
+import org.xipki.util.Args;
+
+/**
+ * In-memory index of the certificate status, keyed by (issuer id, serial number).
+ *
+ * <p>The entries are kept column-wise in primitive arrays of an open-addressing hash table
+ * with linear probing, only the serial number and the certificate hash are referenced
+ * objects. Lookups use optimistic reads and do not block as long as no writer is active.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class CertStatusIndex {
+
+  /**
+   * Status of a certificate, as stored in and returned by the index.
+   */
+  static class Entry {
+
+    private final long id;
+
+    private final int issuerId;
+
+    private final BigInteger serialNumber;
+
+    private final long notBefore;
+
+    private final long notAfter;
+
+    private final boolean revoked;
+
+    private final int reason;
+
+    private final long revTime;
+
+    private final long invalidityTime;
+
+    private final byte[] certHash;
+
+    /**
+     * Constructor.
+     * @param id
+     *          ID of the database entry.
+     * @param issuerId
+     *          Issuer id.
+     * @param serialNumber
+     *          Serial number. Must not be {@code null}.
+     * @param notBefore
+     *          notBefore in seconds, 0 if unknown.
+     * @param notAfter
+     *          notAfter in seconds, 0 if unknown.
+     * @param revoked
+     *          Whether the certificate is revoked.
+     * @param reason
+     *          Revocation reason.
+     * @param revTime
+     *          Revocation time in seconds.
+     * @param invalidityTime
+     *          Invalidity time in seconds, 0 if not present.
+     * @param certHash
+     *          Hash value of the certificate. Could be {@code null}.
+     */
+    Entry(long id, int issuerId, BigInteger serialNumber, long notBefore, long notAfter,
+        boolean revoked, int reason, long revTime, long invalidityTime, byte[] certHash) {
+      this.id = id;
+      this.issuerId = issuerId;
+      this.serialNumber = Args.notNull(serialNumber, "serialNumber");
+      this.notBefore = notBefore;
+      this.notAfter = notAfter;
+      this.revoked = revoked;
+      this.reason = reason;
+      this.revTime = revTime;
+      this.invalidityTime = invalidityTime;
+      this.certHash = certHash;
+    }
+
+    long getId() {
+      return id;
+    }
+
+    int getIssuerId() {
+      return issuerId;
+    }
+
+    BigInteger getSerialNumber() {
+      return serialNumber;
+    }
+
+    long getNotBefore() {
+      return notBefore;
+    }
+
+    long getNotAfter() {
+      return notAfter;
+    }
+
+    boolean isRevoked() {
+      return revoked;
+    }
+
+    int getReason() {
+      return reason;
+    }
+
+    long getRevTime() {
+      return revTime;
+    }
+
+    long getInvalidityTime() {
+      return invalidityTime;
+    }
+
+    byte[] getCertHash() {
+      return certHash;
+    }
+
+  } // class Entry
+
+  private static class Table {
+
+    private final int mask;
+
+    /**
+     * Serial numbers, {@code null} for the empty slots.
+     */
+    private final BigInteger[] serials;
+
+    private final int[] issuerIds;
+
+    private final long[] ids;
+
+    private final long[] notBefores;
+
+    private final long[] notAfters;
+
+    /**
+     * Revocation reasons, {@link #NOT_REVOKED} if not revoked.
+     */
+    private final byte[] reasons;
+
+    private final long[] revTimes;
+
+    private final long[] invalidityTimes;
+
+    private final byte[][] certHashes;
+
+    Table(int capacity) {
+      this.mask = capacity - 1;
+      this.serials = new BigInteger[capacity];
+      this.issuerIds = new int[capacity];
+      this.ids = new long[capacity];
+      this.notBefores = new long[capacity];
+      this.notAfters = new long[capacity];
+      this.reasons = new byte[capacity];
+      this.revTimes = new long[capacity];
+      this.invalidityTimes = new long[capacity];
+      this.certHashes = new byte[capacity][];
+    }
+
+    int capacity() {
+      return serials.length;
+    }
+
+    boolean match(int idx, int issuerId, BigInteger serialNumber) {
+      return issuerIds[idx] == issuerId && serialNumber.equals(serials[idx]);
+    }
+
+    void set(int idx, Entry entry) {
+      issuerIds[idx] = entry.issuerId;
+      ids[idx] = entry.id;
+      notBefores[idx] = entry.notBefore;
+      notAfters[idx] = entry.notAfter;
+      reasons[idx] = entry.revoked ? (byte) entry.reason : NOT_REVOKED;
+      revTimes[idx] = entry.revTime;
+      invalidityTimes[idx] = entry.invalidityTime;
+      certHashes[idx] = entry.certHash;
+      // the serial number marks the slot as used
+      serials[idx] = entry.serialNumber;
+    }
+
+    void move(int from, int to) {
+      issuerIds[to] = issuerIds[from];
+      ids[to] = ids[from];
+      notBefores[to] = notBefores[from];
+      notAfters[to] = notAfters[from];
+      reasons[to] = reasons[from];
+      revTimes[to] = revTimes[from];
+      invalidityTimes[to] = invalidityTimes[from];
+      certHashes[to] = certHashes[from];
+      serials[to] = serials[from];
+    }
+
+    void clear(int idx) {
+      serials[idx] = null;
+      certHashes[idx] = null;
+    }
+
+    Entry toEntry(int idx, BigInteger serialNumber) {
+      byte reason = reasons[idx];
+      boolean revoked = reason != NOT_REVOKED;
+      return new Entry(ids[idx], issuerIds[idx], serialNumber, notBefores[idx], notAfters[idx],
+          revoked, revoked ? reason : 0, revTimes[idx], invalidityTimes[idx], certHashes[idx]);
+    }
+
+  } // class Table
+
+  private static final int MIN_CAPACITY = 1024;
+
+  private static final byte NOT_REVOKED = -1;
+
+  private final StampedLock lock = new StampedLock();
+
+  private Table table;
+
+  private int size;
+
+  CertStatusIndex() {
+    this(MIN_CAPACITY);
+  }
+
+  CertStatusIndex(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    this.table = new Table(capacity);
+  }
+
+  Entry get(int issuerId, BigInteger serialNumber) {
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0) {
+      Entry entry = get0(issuerId, serialNumber);
+      if (lock.validate(stamp)) {
+        return entry;
+      }
+    }
+
+    stamp = lock.readLock();
+    try {
+      return get0(issuerId, serialNumber);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  private Entry get0(int issuerId, BigInteger serialNumber) {
+    Table tab = table;
+    int idx = hash(issuerId, serialNumber) & tab.mask;
+    // bounded by the capacity, the table may be modified concurrently in optimistic mode.
+    for (int i = 0; i < tab.capacity(); i++) {
+      if (tab.serials[idx] == null) {
+        return null;
+      } else if (tab.match(idx, issuerId, serialNumber)) {
+        return tab.toEntry(idx, serialNumber);
+      }
+      idx = (idx + 1) & tab.mask;
+    }
+    return null;
+  }
+
+  void put(Entry entry) {
+    Args.notNull(entry, "entry");
+    long stamp = lock.writeLock();
+    try {
+      if ((size + 1) * 4 > table.capacity() * 3) {
+        resize(table.capacity() << 1);
+      }
+
+      Table tab = table;
+      int idx = hash(entry.issuerId, entry.serialNumber) & tab.mask;
+      while (true) {
+        if (tab.serials[idx] == null) {
+          tab.set(idx, entry);
+          size++;
+          return;
+        } else if (tab.match(idx, entry.issuerId, entry.serialNumber)) {
+          tab.set(idx, entry);
+          return;
+        }
+        idx = (idx + 1) & tab.mask;
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  boolean remove(int issuerId, BigInteger serialNumber) {
+    long stamp = lock.writeLock();
+    try {
+      return remove0(issuerId, serialNumber);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Removes the entries whose database ID matches the filter.
+   * @param idFilter
+   *          Filter of the database IDs. Must not be {@code null}.
+   * @return number of removed entries.
+   */
+  int removeIf(LongPredicate idFilter) {
+    Args.notNull(idFilter, "idFilter");
+    long stamp = lock.writeLock();
+    try {
+      // collect first, the removal moves the entries.
+      Table tab = table;
+      List<Integer> indexes = new ArrayList<>();
+      for (int i = 0; i < tab.capacity(); i++) {
+        if (tab.serials[i] != null && idFilter.test(tab.ids[i])) {
+          indexes.add(i);
+        }
+      }
+
+      int[] issuerIds = new int[indexes.size()];
+      BigInteger[] serials = new BigInteger[indexes.size()];
+      for (int i = 0; i < issuerIds.length; i++) {
+        issuerIds[i] = tab.issuerIds[indexes.get(i)];
+        serials[i] = tab.serials[indexes.get(i)];
+      }
+
+      for (int i = 0; i < issuerIds.length; i++) {
+        remove0(issuerIds[i], serials[i]);
+      }
+      return issuerIds.length;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  private boolean remove0(int issuerId, BigInteger serialNumber) {
+    Table tab = table;
+    int mask = tab.mask;
+    int idx = hash(issuerId, serialNumber) & mask;
+    while (true) {
+      if (tab.serials[idx] == null) {
+        return false;
+      } else if (tab.match(idx, issuerId, serialNumber)) {
+        break;
+      }
+      idx = (idx + 1) & mask;
+    }
+
+    // backward shift deletion, no tombstones are required.
+    int hole = idx;
+    int next = (hole + 1) & mask;
+    while (tab.serials[next] != null) {
+      int home = hash(tab.issuerIds[next], tab.serials[next]) & mask;
+      // move the entry if its home slot is not in the cyclic interval (hole, next]
+      boolean move = (hole <= next) ? (home <= hole || home > next)
+          : (home <= hole && home > next);
+      if (move) {
+        tab.move(next, hole);
+        hole = next;
+      }
+      next = (next + 1) & mask;
+    }
+    tab.clear(hole);
+    size--;
+    return true;
+  }
+
+  int size() {
+    long stamp = lock.readLock();
+    try {
+      return size;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  private void resize(int newCapacity) {
+    Table oldTab = table;
+    Table newTab = new Table(newCapacity);
+    for (int i = 0; i < oldTab.capacity(); i++) {
+      BigInteger serial = oldTab.serials[i];
+      if (serial == null) {
+        continue;
+      }
+
+      int idx = hash(oldTab.issuerIds[i], serial) & newTab.mask;
+      while (newTab.serials[idx] != null) {
+        idx = (idx + 1) & newTab.mask;
+      }
+      newTab.set(idx, oldTab.toEntry(i, serial));
+    }
+    table = newTab;
+  }
+
+  private static int hash(int issuerId, BigInteger serialNumber) {
+    int h = 31 * issuerId + serialNumber.hashCode();
+    // spread the bits, the serial numbers are often sequential.
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+}
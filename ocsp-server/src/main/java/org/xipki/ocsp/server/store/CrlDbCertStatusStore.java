@@ -22,7 +22,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.security.cert.CertificateException;
-import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Date;
@@ -173,8 +172,6 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
       LOG.info("UPDATE_CERTSTORE: a newer CRL is available");
       updateCrlSuccessful = false;
 
-      X509CRL crl = X509Util.parseCrl(new File(crlFilename));
-
       File revFile = new File(crlFilename + ".revocation");
       CertRevocationInfo caRevInfo = null;
       if (revFile.exists()) {
@@ -199,7 +196,7 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
         }
       }
 
-      ImportCrl importCrl = new ImportCrl(datasource, useUpdateDatesFromCrl, crl, crlUrl,
+      ImportCrl importCrl = new ImportCrl(datasource, useUpdateDatesFromCrl, fullCrlFile, crlUrl,
           caCert, issuerCert, caRevInfo, certsDirName);
       updateCrlSuccessful = importCrl.importCrlToOcspDb();
       crlUpdated = true;
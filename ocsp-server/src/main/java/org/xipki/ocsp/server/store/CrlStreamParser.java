@@ -0,0 +1,471 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.PublicKey;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Enumerated;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.TBSCertList;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.xipki.security.CrlReason;
+import org.xipki.security.util.X509Util;
+import org.xipki.util.Args;
+import org.xipki.util.IoUtil;
+
+/**
+ * Parses the DER-encoded CRL without materializing the list of revoked certificates.
+ * The file is memory-mapped, only the header fields and the CRL extensions are decoded
+ * while parsing, and the revoked certificates are decoded one by one while iterating.
+ *
+ * <p>PEM-encoded files are converted to DER in memory.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class CrlStreamParser {
+
+  static class RevokedCert {
+
+    private final BigInteger serialNumber;
+
+    private final Date revocationDate;
+
+    private final CrlReason reason;
+
+    private final Date invalidityDate;
+
+    private final X500Name certificateIssuer;
+
+    RevokedCert(BigInteger serialNumber, Date revocationDate, CrlReason reason,
+        Date invalidityDate, X500Name certificateIssuer) {
+      this.serialNumber = serialNumber;
+      this.revocationDate = revocationDate;
+      this.reason = reason;
+      this.invalidityDate = invalidityDate;
+      this.certificateIssuer = certificateIssuer;
+    }
+
+    BigInteger getSerialNumber() {
+      return serialNumber;
+    }
+
+    Date getRevocationDate() {
+      return revocationDate;
+    }
+
+    CrlReason getReason() {
+      return reason;
+    }
+
+    Date getInvalidityDate() {
+      return invalidityDate;
+    }
+
+    /**
+     * Returns the certificate issuer of an indirect CRL.
+     * @return the certificate issuer, {@code null} if not specified by this or a previous
+     *         entry.
+     */
+    X500Name getCertificateIssuer() {
+      return certificateIssuer;
+    }
+
+  } // class RevokedCert
+
+  private class RevokedCertsIterator implements Iterator<RevokedCert> {
+
+    private int offset = revokedCertsOffset;
+
+    private X500Name certificateIssuer;
+
+    @Override
+    public boolean hasNext() {
+      return offset < revokedCertsEnd;
+    }
+
+    @Override
+    public RevokedCert next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      int[] tlv = readTlv(buffer, offset, revokedCertsEnd, TAG_SEQUENCE);
+      int entryEnd = tlv[1] + tlv[2];
+      TBSCertList.CRLEntry entry =
+          TBSCertList.CRLEntry.getInstance(readBytes(buffer, offset, entryEnd - offset));
+      offset = entryEnd;
+
+      BigInteger serialNumber = entry.getUserCertificate().getPositiveValue();
+      Date revocationDate = entry.getRevocationDate().getDate();
+      CrlReason reason = CrlReason.UNSPECIFIED;
+      Date invalidityDate = null;
+
+      Extensions extns = entry.getExtensions();
+      if (extns != null) {
+        ASN1Encodable value = extns.getExtensionParsedValue(Extension.reasonCode);
+        if (value != null) {
+          reason = CrlReason.forReasonCode(
+              ASN1Enumerated.getInstance(value).getValue().intValue());
+        }
+
+        value = extns.getExtensionParsedValue(Extension.invalidityDate);
+        if (value != null) {
+          try {
+            invalidityDate = ASN1GeneralizedTime.getInstance(value).getDate();
+          } catch (ParseException ex) {
+            throw new IllegalArgumentException("invalid extension invalidityDate of CRL entry "
+                + serialNumber, ex);
+          }
+        }
+
+        // the certificate issuer applies to this and the following entries.
+        value = extns.getExtensionParsedValue(Extension.certificateIssuer);
+        if (value != null) {
+          GeneralName[] names = GeneralNames.getInstance(value).getNames();
+          for (GeneralName name : names) {
+            if (name.getTagNo() == GeneralName.directoryName) {
+              certificateIssuer = X500Name.getInstance(name.getName());
+              break;
+            }
+          }
+        }
+      }
+
+      return new RevokedCert(serialNumber, revocationDate, reason, invalidityDate,
+          certificateIssuer);
+    }
+
+  } // class RevokedCertsIterator
+
+  private static final int TAG_INTEGER = 0x02;
+
+  private static final int TAG_BIT_STRING = 0x03;
+
+  private static final int TAG_SEQUENCE = 0x30;
+
+  private static final int TAG_UTC_TIME = 0x17;
+
+  private static final int TAG_GENERALIZED_TIME = 0x18;
+
+  private static final int TAG_CRL_EXTENSIONS = 0xA0;
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final ByteBuffer buffer;
+
+  private final int tbsCertListOffset;
+
+  private final int tbsCertListLength;
+
+  private final X500Name issuer;
+
+  private final Date thisUpdate;
+
+  private final Date nextUpdate;
+
+  private final int revokedCertsOffset;
+
+  private final int revokedCertsEnd;
+
+  private final Extensions crlExtensions;
+
+  private final AlgorithmIdentifier signatureAlgorithm;
+
+  private final byte[] signature;
+
+  CrlStreamParser(File crlFile) throws IOException {
+    Args.notNull(crlFile, "crlFile");
+    this.buffer = mapFile(IoUtil.expandFilepath(crlFile));
+
+    try {
+      // CertificateList
+      int[] tlv = readTlv(buffer, 0, buffer.limit(), TAG_SEQUENCE);
+      final int crlEnd = tlv[1] + tlv[2];
+
+      // tbsCertList
+      this.tbsCertListOffset = tlv[1];
+      tlv = readTlv(buffer, tbsCertListOffset, crlEnd, TAG_SEQUENCE);
+      this.tbsCertListLength = tlv[1] - tbsCertListOffset + tlv[2];
+      final int tbsEnd = tbsCertListOffset + tbsCertListLength;
+
+      int offset = tlv[1];
+      // version
+      tlv = readTlv(buffer, offset, tbsEnd, -1);
+      if (tlv[0] == TAG_INTEGER) {
+        offset = tlv[1] + tlv[2];
+        tlv = readTlv(buffer, offset, tbsEnd, -1);
+      }
+
+      // signature
+      checkTag(tlv, TAG_SEQUENCE, offset);
+      offset = tlv[1] + tlv[2];
+
+      // issuer
+      tlv = readTlv(buffer, offset, tbsEnd, TAG_SEQUENCE);
+      this.issuer = X500Name.getInstance(readBytes(buffer, offset, tlv[1] - offset + tlv[2]));
+      offset = tlv[1] + tlv[2];
+
+      // thisUpdate
+      tlv = readTlv(buffer, offset, tbsEnd, -1);
+      this.thisUpdate = readTime(tlv, offset);
+      offset = tlv[1] + tlv[2];
+
+      Date nextUpdate0 = null;
+      int revokedCertsOffset0 = 0;
+      int revokedCertsEnd0 = 0;
+      Extensions crlExtensions0 = null;
+
+      if (offset < tbsEnd) {
+        tlv = readTlv(buffer, offset, tbsEnd, -1);
+        // nextUpdate
+        if (tlv[0] == TAG_UTC_TIME || tlv[0] == TAG_GENERALIZED_TIME) {
+          nextUpdate0 = readTime(tlv, offset);
+          offset = tlv[1] + tlv[2];
+          tlv = (offset < tbsEnd) ? readTlv(buffer, offset, tbsEnd, -1) : null;
+        }
+
+        // revokedCertificates
+        if (tlv != null && tlv[0] == TAG_SEQUENCE) {
+          revokedCertsOffset0 = tlv[1];
+          revokedCertsEnd0 = tlv[1] + tlv[2];
+          offset = revokedCertsEnd0;
+          tlv = (offset < tbsEnd) ? readTlv(buffer, offset, tbsEnd, -1) : null;
+        }
+
+        // crlExtensions
+        if (tlv != null) {
+          checkTag(tlv, TAG_CRL_EXTENSIONS, offset);
+          crlExtensions0 = Extensions.getInstance(readBytes(buffer, tlv[1], tlv[2]));
+        }
+      }
+
+      this.nextUpdate = nextUpdate0;
+      this.revokedCertsOffset = revokedCertsOffset0;
+      this.revokedCertsEnd = revokedCertsEnd0;
+      this.crlExtensions = crlExtensions0;
+
+      // signatureAlgorithm
+      offset = tbsEnd;
+      tlv = readTlv(buffer, offset, crlEnd, TAG_SEQUENCE);
+      this.signatureAlgorithm =
+          AlgorithmIdentifier.getInstance(readBytes(buffer, offset, tlv[1] - offset + tlv[2]));
+      offset = tlv[1] + tlv[2];
+
+      // signatureValue
+      tlv = readTlv(buffer, offset, crlEnd, TAG_BIT_STRING);
+      this.signature = DERBitString.getInstance(
+          readBytes(buffer, offset, tlv[1] - offset + tlv[2])).getBytes();
+    } catch (IllegalArgumentException ex) {
+      throw new IOException("invalid CRL " + crlFile.getPath() + ": " + ex.getMessage(), ex);
+    }
+  }
+
+  X500Name getIssuer() {
+    return issuer;
+  }
+
+  Date getThisUpdate() {
+    return thisUpdate;
+  }
+
+  Date getNextUpdate() {
+    return nextUpdate;
+  }
+
+  /**
+   * Returns the value of the CRL extension.
+   * @param type
+   *          Type of the extension. Must not be {@code null}.
+   * @return the DER-encoded extension value (without the OCTET STRING wrapper), {@code null}
+   *         if not present.
+   */
+  byte[] getExtensionValue(ASN1ObjectIdentifier type) {
+    if (crlExtensions == null) {
+      return null;
+    }
+
+    Extension extn = crlExtensions.getExtension(type);
+    return (extn == null) ? null : extn.getExtnValue().getOctets();
+  }
+
+  BigInteger getCrlNumber() {
+    byte[] extnValue = getExtensionValue(Extension.cRLNumber);
+    return (extnValue == null) ? null : ASN1Integer.getInstance(extnValue).getPositiveValue();
+  }
+
+  BigInteger getBaseCrlNumber() {
+    byte[] extnValue = getExtensionValue(Extension.deltaCRLIndicator);
+    return (extnValue == null) ? null : ASN1Integer.getInstance(extnValue).getPositiveValue();
+  }
+
+  Iterator<RevokedCert> revokedCertificates() {
+    return new RevokedCertsIterator();
+  }
+
+  /**
+   * Verifies the signature of the CRL. The TBSCertList is passed to the verifier chunk by
+   * chunk.
+   * @param publicKey
+   *          Public key of the CRL issuer. Must not be {@code null}.
+   * @return whether the signature is valid.
+   * @throws IOException
+   *         if the verifier could not be created or fed.
+   */
+  boolean verifySignature(PublicKey publicKey) throws IOException {
+    Args.notNull(publicKey, "publicKey");
+    ContentVerifier verifier;
+    try {
+      ContentVerifierProvider cvp = new JcaContentVerifierProviderBuilder().build(publicKey);
+      verifier = cvp.get(signatureAlgorithm);
+    } catch (OperatorCreationException ex) {
+      throw new IOException("could not create verifier: " + ex.getMessage(), ex);
+    }
+
+    OutputStream out = verifier.getOutputStream();
+    ByteBuffer tbs = buffer.duplicate();
+    tbs.position(tbsCertListOffset);
+    tbs.limit(tbsCertListOffset + tbsCertListLength);
+    byte[] chunk = new byte[BUFFER_SIZE];
+    while (tbs.hasRemaining()) {
+      int len = Math.min(chunk.length, tbs.remaining());
+      tbs.get(chunk, 0, len);
+      out.write(chunk, 0, len);
+    }
+    out.close();
+
+    return verifier.verify(signature);
+  }
+
+  private static ByteBuffer mapFile(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("CRL file " + file.getPath() + " is too large");
+      }
+
+      ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      if (size > 0 && buf.get(0) == '-') {
+        // PEM encoded
+        byte[] bytes = new byte[(int) size];
+        buf.get(bytes);
+        return ByteBuffer.wrap(X509Util.toDerEncoded(bytes));
+      }
+      return buf;
+    }
+  }
+
+  private Date readTime(int[] tlv, int offset) {
+    if (tlv[0] != TAG_UTC_TIME && tlv[0] != TAG_GENERALIZED_TIME) {
+      throw new IllegalArgumentException("invalid tag " + Integer.toHexString(tlv[0])
+          + " at offset " + offset + ", expected UTCTime or GeneralizedTime");
+    }
+
+    byte[] encoded = readBytes(buffer, offset, tlv[1] - offset + tlv[2]);
+    try {
+      return Time.getInstance(ASN1Primitive.fromByteArray(encoded)).getDate();
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("invalid time at offset " + offset, ex);
+    }
+  }
+
+  private static void checkTag(int[] tlv, int expectedTag, int offset) {
+    if (tlv[0] != expectedTag) {
+      throw new IllegalArgumentException("invalid tag " + Integer.toHexString(tlv[0])
+          + " at offset " + offset + ", expected " + Integer.toHexString(expectedTag));
+    }
+  }
+
+  /**
+   * Reads the tag and length of the DER-encoded object.
+   * @return {tag, offset of the value, length of the value}
+   */
+  private static int[] readTlv(ByteBuffer buf, int offset, int end, int expectedTag) {
+    if ((long) offset + 2 > end) {
+      throw new IllegalArgumentException("unexpected end at offset " + offset);
+    }
+
+    int tag = buf.get(offset) & 0xFF;
+    if (expectedTag != -1 && tag != expectedTag) {
+      throw new IllegalArgumentException("invalid tag " + Integer.toHexString(tag)
+          + " at offset " + offset + ", expected " + Integer.toHexString(expectedTag));
+    }
+
+    int idx = offset + 1;
+    long len = buf.get(idx++) & 0xFF;
+    if (len > 0x7F) {
+      int numLenBytes = (int) len & 0x7F;
+      if (numLenBytes == 0) {
+        throw new IllegalArgumentException(
+            "indefinite length at offset " + offset + " is not allowed in DER");
+      }
+
+      if (numLenBytes > 4 || numLenBytes > end - idx) {
+        throw new IllegalArgumentException("invalid length at offset " + offset);
+      }
+
+      len = 0;
+      for (int i = 0; i < numLenBytes; i++) {
+        len = (len << 8) | (buf.get(idx++) & 0xFF);
+      }
+    }
+
+    // compare with the remaining bytes, idx + len may overflow
+    if (len > end - idx) {
+      throw new IllegalArgumentException("length " + len + " at offset " + offset
+          + " exceeds the remaining " + (end - idx) + " bytes");
+    }
+    return new int[]{tag, idx, (int) len};
+  }
+
+  private static byte[] readBytes(ByteBuffer buf, int offset, int len) {
+    byte[] bytes = new byte[len];
+    ByteBuffer dup = buf.duplicate();
+    dup.position(offset);
+    dup.get(bytes);
+    return bytes;
+  }
+
+}
@@ -26,11 +26,14 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +42,7 @@ import java.util.Set;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -99,6 +103,9 @@ public class DbCertStatusStore extends OcspStore {
     @Override
     public void run() {
       initIssuerStore();
+      if (inMemoryIndex) {
+        updateCertStatusIndex();
+      }
     }
 
   } // class StoreUpdateService
@@ -107,6 +114,18 @@ public class DbCertStatusStore extends OcspStore {
 
   private static final Logger LOG = LoggerFactory.getLogger(DbCertStatusStore.class);
 
+  private static final String CORE_SQL_CS_INDEX =
+      "ID,IID,SN,LUPDATE,NBEFORE,NAFTER,REV,RR,RT,RIT,HASH FROM CERT";
+
+  private static final int INDEX_LOAD_PAGE_SIZE = 1000;
+
+  /**
+   * Maximal number of serial numbers in the IN-list of a query.
+   */
+  private static final int BULK_SIZE = 50;
+
+  private static final int ID_PAGE_SIZE = 10000;
+
   private final AtomicBoolean storeUpdateInProcess = new AtomicBoolean(false);
 
   private String sqlCsNoRit;
@@ -129,6 +148,30 @@ public class DbCertStatusStore extends OcspStore {
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
+  private boolean inMemoryIndex;
+
+  private volatile CertStatusIndex certStatusIndex;
+
+  private boolean issuersChangedSinceIndexLoad;
+
+  private long indexMaxId;
+
+  private long indexMaxLastUpdate;
+
+  /**
+   * Number of rows in the table CERT with ID not greater than {@link #indexMaxId}, as far as
+   * known to the index. A different COUNT(*) indicates that rows have been deleted.
+   */
+  private long indexDbRows;
+
+  private String sqlCsIndexPage;
+
+  private String sqlCsIndexUpdate;
+
+  private String sqlIdPage;
+
+  private String sqlSnPage;
+
   protected List<Runnable> getScheduledServices() {
     return Collections.emptyList();
   }
@@ -178,7 +221,7 @@ public class DbCertStatusStore extends OcspStore {
             for (Integer id : newIds) {
               IssuerEntry entry = issuerStore.getIssuerForId(id);
               SimpleIssuerEntry newEntry = newIssuers.get(id);
-              if (newEntry.match(entry)) {
+              if (!newEntry.match(entry)) {
                 issuersUnchanged = false;
                 break;
               }
@@ -234,6 +277,7 @@ public class DbCertStatusStore extends OcspStore {
 
         initialized = false;
         this.issuerStore = new IssuerStore(caInfos);
+        this.issuersChangedSinceIndexLoad = true;
         LOG.info("Updated issuers: {}", name);
         initializationFailed = false;
         initialized = true;
@@ -241,13 +285,218 @@ public class DbCertStatusStore extends OcspStore {
         releaseDbResources(ps, rs);
       }
     } catch (Throwable th) {
-      storeUpdateInProcess.set(false);
       LogUtil.error(LOG, th, "could not executing initIssuerStore()");
       initializationFailed = true;
       initialized = true;
+    } finally {
+      storeUpdateInProcess.set(false);
     }
   } // method initIssuerStore
 
+  private synchronized void updateCertStatusIndex() {
+    if (initializationFailed) {
+      return;
+    }
+
+    try {
+      if (certStatusIndex == null || issuersChangedSinceIndexLoad) {
+        loadCertStatusIndex();
+      } else {
+        refreshCertStatusIndex();
+      }
+    } catch (Throwable th) {
+      // fall back to the database until the next successful full load.
+      certStatusIndex = null;
+      LogUtil.error(LOG, th, "could not update the certificate status index of store " + name);
+    }
+  } // method updateCertStatusIndex
+
+  private void loadCertStatusIndex() throws DataAccessException {
+    long start = System.currentTimeMillis();
+    issuersChangedSinceIndexLoad = false;
+    Set<Integer> issuerIds = issuerStore.getIds();
+
+    CertStatusIndex index = new CertStatusIndex(datasource.getCount(null, "CERT"));
+    long maxId = 0;
+    long maxLastUpdate = 0;
+    long dbRows = 0;
+
+    PreparedStatement ps = preparedStatement(sqlCsIndexPage);
+    ResultSet rs = null;
+    try {
+      while (true) {
+        ps.setLong(1, maxId);
+        rs = ps.executeQuery();
+
+        int num = 0;
+        while (rs.next()) {
+          num++;
+          dbRows++;
+          CertStatusIndex.Entry entry = toIndexEntry(rs);
+          maxId = Math.max(maxId, entry.getId());
+          maxLastUpdate = Math.max(maxLastUpdate, rs.getLong("LUPDATE"));
+          if (issuerIds.contains(entry.getIssuerId())) {
+            index.put(entry);
+          }
+        }
+        rs.close();
+        rs = null;
+
+        if (num < INDEX_LOAD_PAGE_SIZE) {
+          break;
+        }
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sqlCsIndexPage, ex);
+    } finally {
+      releaseDbResources(ps, rs);
+    }
+
+    this.indexMaxId = maxId;
+    this.indexMaxLastUpdate = maxLastUpdate;
+    this.indexDbRows = dbRows;
+    this.certStatusIndex = index;
+    LOG.info("loaded {} entries into the certificate status index of store {} in {} ms",
+        index.size(), name, System.currentTimeMillis() - start);
+  } // method loadCertStatusIndex
+
+  private void refreshCertStatusIndex() throws DataAccessException {
+    Set<Integer> issuerIds = issuerStore.getIds();
+    CertStatusIndex index = certStatusIndex;
+    long maxId = indexMaxId;
+    long maxLastUpdate = indexMaxLastUpdate;
+    long dbRows = indexDbRows;
+
+    PreparedStatement ps = preparedStatement(sqlCsIndexUpdate);
+    ResultSet rs = null;
+    int num = 0;
+    try {
+      long lastId = 0;
+      while (true) {
+        ps.setLong(1, lastId);
+        ps.setLong(2, indexMaxId);
+        // LUPDATE has the precision of seconds, entries of the same second are read again.
+        ps.setLong(3, indexMaxLastUpdate);
+        rs = ps.executeQuery();
+
+        int pageSize = 0;
+        while (rs.next()) {
+          pageSize++;
+          CertStatusIndex.Entry entry = toIndexEntry(rs);
+          lastId = entry.getId();
+          if (lastId > indexMaxId) {
+            dbRows++;
+          }
+          maxId = Math.max(maxId, lastId);
+          maxLastUpdate = Math.max(maxLastUpdate, rs.getLong("LUPDATE"));
+          if (issuerIds.contains(entry.getIssuerId())) {
+            index.put(entry);
+            num++;
+          }
+        }
+        rs.close();
+        rs = null;
+
+        if (pageSize < INDEX_LOAD_PAGE_SIZE) {
+          break;
+        }
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sqlCsIndexUpdate, ex);
+    } finally {
+      releaseDbResources(ps, rs);
+    }
+
+    this.indexMaxId = maxId;
+    this.indexMaxLastUpdate = maxLastUpdate;
+
+    int numRemoved = 0;
+    // rows are only added by the query above, hence a different number of rows means that
+    // some rows have been deleted. Only then all IDs are read.
+    if (datasource.getCount(null, "CERT") != dbRows) {
+      numRemoved = removeDeletedIndexEntries(index);
+    } else {
+      this.indexDbRows = dbRows;
+    }
+
+    LOG.debug("updated {} and removed {} entries in the certificate status index of store {}",
+        num, numRemoved, name);
+  } // method refreshCertStatusIndex
+
+  /**
+   * Removes the entries deleted from the database (e.g. by the import of a CRL, or by the
+   * removal of a certificate in the CA) from the index. The IDs are read from the primary
+   * key only.
+   */
+  private int removeDeletedIndexEntries(CertStatusIndex index) throws DataAccessException {
+    long[] ids = new long[Math.max(16, index.size())];
+    int numIds = 0;
+    long lastId = 0;
+
+    PreparedStatement ps = preparedStatement(sqlIdPage);
+    ResultSet rs = null;
+    try {
+      while (true) {
+        ps.setLong(1, lastId);
+        rs = ps.executeQuery();
+
+        int num = 0;
+        while (rs.next()) {
+          num++;
+          lastId = rs.getLong("ID");
+          if (numIds == ids.length) {
+            ids = Arrays.copyOf(ids, numIds * 2);
+          }
+          ids[numIds++] = lastId;
+        }
+        rs.close();
+        rs = null;
+
+        if (num < ID_PAGE_SIZE) {
+          break;
+        }
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sqlIdPage, ex);
+    } finally {
+      releaseDbResources(ps, rs);
+    }
+
+    // rows with ID greater than indexMaxId are not in the index yet, and are counted when
+    // they are read by the next refresh.
+    int dbRows = 0;
+    for (int i = 0; i < numIds; i++) {
+      if (ids[i] <= indexMaxId) {
+        dbRows++;
+      }
+    }
+    this.indexDbRows = dbRows;
+
+    // the IDs are read in ascending order
+    final long[] dbIds = ids;
+    final int numDbIds = numIds;
+    return index.removeIf(id -> Arrays.binarySearch(dbIds, 0, numDbIds, id) < 0);
+  } // method removeDeletedIndexEntries
+
+  private static CertStatusIndex.Entry toIndexEntry(ResultSet rs) throws SQLException {
+    boolean revoked = rs.getBoolean("REV");
+    int reason = 0;
+    long revTime = 0;
+    long invalTime = 0;
+    if (revoked) {
+      reason = rs.getInt("RR");
+      revTime = rs.getLong("RT");
+      invalTime = rs.getLong("RIT");
+    }
+
+    String b64CertHash = rs.getString("HASH");
+    byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
+
+    return new CertStatusIndex.Entry(rs.getLong("ID"), rs.getInt("IID"),
+        new BigInteger(rs.getString("SN"), 16), rs.getLong("NBEFORE"), rs.getLong("NAFTER"),
+        revoked, reason, revTime, invalTime, certHash);
+  }
+
   @Override
   public CertStatusInfo getCertStatus(Date time, RequestIssuer reqIssuer, BigInteger serialNumber,
       boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation)
@@ -256,15 +505,7 @@ public class DbCertStatusStore extends OcspStore {
       return CertStatusInfo.getUnknownCertStatusInfo(new Date(), null);
     }
 
-    if (!initialized) {
-      throw new OcspStoreException("initialization of CertStore is still in process");
-    }
-
-    if (initializationFailed) {
-      throw new OcspStoreException("initialization of CertStore failed");
-    }
-
-    String sql;
+    assertInitialized();
 
     try {
       IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
@@ -272,168 +513,301 @@ public class DbCertStatusStore extends OcspStore {
         return null;
       }
 
-      if (includeCertHash) {
-        sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
+      CertStatusIndex.Entry entry;
+      CertStatusIndex index = certStatusIndex;
+      if (index != null) {
+        entry = index.get(issuer.getId(), serialNumber);
       } else {
-        sql = includeRit ? sqlCs : sqlCsNoRit;
-      }
-
-      CrlInfo crlInfo = issuer.getCrlInfo();
+        String sql;
+        if (includeCertHash) {
+          sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
+        } else {
+          sql = includeRit ? sqlCs : sqlCsNoRit;
+        }
 
-      Date thisUpdate;
-      Date nextUpdate = null;
+        entry = null;
+        ResultSet rs = null;
+        PreparedStatement ps = datasource.prepareStatement(sql);
 
-      if (crlInfo != null && crlInfo.isUseCrlUpdates()) {
-        thisUpdate = crlInfo.getThisUpdate();
+        try {
+          ps.setInt(1, issuer.getId());
+          ps.setString(2, serialNumber.toString(16));
+          rs = ps.executeQuery();
 
-        // this.nextUpdate is still in the future (10 seconds buffer)
-        if (crlInfo.getNextUpdate().getTime() - System.currentTimeMillis() > 10 * 1000) {
-          nextUpdate = crlInfo.getNextUpdate();
+          if (rs.next()) {
+            entry = toEntry(rs, issuer.getId(), serialNumber, includeCertHash, includeRit);
+          }
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
+        } finally {
+          releaseDbResources(ps, rs);
         }
-      } else {
-        thisUpdate = new Date();
       }
 
-      ResultSet rs = null;
-      CertStatusInfo certStatusInfo = null;
+      return toCertStatusInfo(issuer, entry, time, includeCertHash, includeRit,
+          inheritCaRevocation);
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+  } // method getCertStatus
+
+  /**
+   * Retrieves the status of the certificates with one query per chunk of serial numbers.
+   */
+  @Override
+  public List<CertStatusInfo> getCertStatus(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation) throws OcspStoreException {
+    assertInitialized();
 
-      boolean unknown = true;
-      boolean ignore = false;
-      String certprofile = null;
-      String b64CertHash = null;
-      boolean revoked = false;
-      int reason = 0;
-      long revTime = 0;
-      long invalTime = 0;
+    final int size = serialNumbers.size();
+    List<CertStatusInfo> ret = new ArrayList<>(Collections.nCopies(size, null));
 
-      PreparedStatement ps = datasource.prepareStatement(sql);
+    IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
 
+    Map<BigInteger, CertStatusIndex.Entry> entries = new HashMap<>();
+    // the positive serial numbers without duplicates, in the order of the request
+    Set<BigInteger> uniqueSerials = new LinkedHashSet<>();
+    for (BigInteger serialNumber : serialNumbers) {
+      if (serialNumber.signum() == 1) {
+        uniqueSerials.add(serialNumber);
+      }
+    }
+    List<BigInteger> querySerials = new ArrayList<>(uniqueSerials);
+
+    CertStatusIndex index = certStatusIndex;
+    if (issuer != null && index != null) {
+      for (BigInteger serialNumber : querySerials) {
+        CertStatusIndex.Entry entry = index.get(issuer.getId(), serialNumber);
+        if (entry != null) {
+          entries.put(serialNumber, entry);
+        }
+      }
+    } else if (issuer != null) {
       try {
-        ps.setInt(1, issuer.getId());
-        ps.setString(2, serialNumber.toString(16));
-        rs = ps.executeQuery();
+        for (int from = 0; from < querySerials.size(); from += BULK_SIZE) {
+          List<BigInteger> chunk =
+              querySerials.subList(from, Math.min(from + BULK_SIZE, querySerials.size()));
+          getEntries(issuer.getId(), chunk, includeCertHash, includeRit, entries);
+        }
+      } catch (DataAccessException ex) {
+        throw new OcspStoreException(ex.getMessage(), ex);
+      }
+    }
 
-        if (rs.next()) {
-          unknown = false;
+    for (int i = 0; i < size; i++) {
+      BigInteger serialNumber = serialNumbers.get(i);
+      if (serialNumber.signum() != 1) { // non-positive serial number
+        ret.set(i, CertStatusInfo.getUnknownCertStatusInfo(new Date(), null));
+      } else if (issuer != null) {
+        ret.set(i, toCertStatusInfo(issuer, entries.get(serialNumber), time, includeCertHash,
+            includeRit, inheritCaRevocation));
+      }
+    }
 
-          long timeInSec = time.getTime() / 1000;
-          if (!ignore && ignoreNotYetValidCert) {
-            long notBeforeInSec = rs.getLong("NBEFORE");
-            if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
-              ignore = true;
-            }
-          }
+    return ret;
+  } // method getCertStatus
 
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("NAFTER");
-            if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
-              ignore = true;
-            }
-          }
+  private void getEntries(int issuerId, List<BigInteger> serialNumbers,
+      boolean includeCertHash, boolean includeRit, Map<BigInteger, CertStatusIndex.Entry> entries)
+      throws DataAccessException {
+    StringBuilder sb = new StringBuilder(100 + 3 * serialNumbers.size());
+    sb.append("SELECT SN,NBEFORE,NAFTER,REV,RR,RT");
+    if (includeRit) {
+      sb.append(",RIT");
+    }
+    if (includeCertHash) {
+      sb.append(",HASH");
+    }
+    sb.append(" FROM CERT WHERE IID=? AND SN IN (?");
+    for (int i = 1; i < serialNumbers.size(); i++) {
+      sb.append(",?");
+    }
+    sb.append(")");
 
-          if (!ignore) {
-            if (includeCertHash) {
-              b64CertHash = rs.getString("HASH");
-            }
+    final String sql = sb.toString();
+    ResultSet rs = null;
+    PreparedStatement ps = datasource.prepareStatement(sql);
 
-            revoked = rs.getBoolean("REV");
-            if (revoked) {
-              reason = rs.getInt("RR");
-              revTime = rs.getLong("RT");
-              if (includeRit) {
-                invalTime = rs.getLong("RIT");
-              }
-            }
-          }
-        } // end if (rs.next())
-      } catch (SQLException ex) {
-        throw datasource.translate(sql, ex);
-      } finally {
-        releaseDbResources(ps, rs);
+    try {
+      int idx = 1;
+      ps.setInt(idx++, issuerId);
+      for (BigInteger serialNumber : serialNumbers) {
+        ps.setString(idx++, serialNumber.toString(16));
       }
+      rs = ps.executeQuery();
 
-      if (unknown) {
-        if (unknownSerialAsGood) {
-          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo, null,
-              thisUpdate, nextUpdate, null);
-        } else {
-          certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
-        }
-      } else {
-        if (ignore) {
-          certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
-        } else {
-          byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
-          if (revoked) {
-            Date invTime = (invalTime == 0 || invalTime == revTime)
-                ? null : new Date(invalTime * 1000);
-            CertRevocationInfo revInfo = new CertRevocationInfo(reason,
-                new Date(revTime * 1000), invTime);
-            certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
-                certHashAlgo, certHash, thisUpdate, nextUpdate, certprofile);
-          } else {
-            certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
-                certHash, thisUpdate, nextUpdate, certprofile);
-          }
-        }
+      while (rs.next()) {
+        BigInteger serialNumber = new BigInteger(rs.getString("SN"), 16);
+        entries.put(serialNumber,
+            toEntry(rs, issuerId, serialNumber, includeCertHash, includeRit));
       }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseDbResources(ps, rs);
+    }
+  } // method getEntries
 
-      if (includeCrlId && crlInfo != null) {
-        certStatusInfo.setCrlId(crlInfo.getCrlId());
+  private void assertInitialized() throws OcspStoreException {
+    if (!initialized) {
+      throw new OcspStoreException("initialization of CertStore is still in process");
+    }
+
+    if (initializationFailed) {
+      throw new OcspStoreException("initialization of CertStore failed");
+    }
+  }
+
+  private static CertStatusIndex.Entry toEntry(ResultSet rs, int issuerId,
+      BigInteger serialNumber, boolean includeCertHash, boolean includeRit) throws SQLException {
+    boolean revoked = rs.getBoolean("REV");
+    int reason = 0;
+    long revTime = 0;
+    long invalTime = 0;
+    if (revoked) {
+      reason = rs.getInt("RR");
+      revTime = rs.getLong("RT");
+      if (includeRit) {
+        invalTime = rs.getLong("RIT");
       }
+    }
 
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store for ever
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(),
-                nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
-          }
+    byte[] certHash = null;
+    if (includeCertHash) {
+      String b64CertHash = rs.getString("HASH");
+      certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
+    }
+
+    return new CertStatusIndex.Entry(0, issuerId, serialNumber, rs.getLong("NBEFORE"),
+        rs.getLong("NAFTER"), revoked, reason, revTime, invalTime, certHash);
+  }
 
-          certStatusInfo.setArchiveCutOff(date);
+  /**
+   * Builds the status of a certificate.
+   * @param entry
+   *          Entry of the certificate, {@code null} if the certificate is unknown.
+   */
+  private CertStatusInfo toCertStatusInfo(IssuerEntry issuer, CertStatusIndex.Entry entry,
+      Date time, boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation) {
+    CrlInfo crlInfo = issuer.getCrlInfo();
+
+    Date thisUpdate;
+    Date nextUpdate = null;
+
+    if (crlInfo != null && crlInfo.isUseCrlUpdates()) {
+      thisUpdate = crlInfo.getThisUpdate();
+
+      // this.nextUpdate is still in the future (10 seconds buffer)
+      if (crlInfo.getNextUpdate().getTime() - System.currentTimeMillis() > 10 * 1000) {
+        nextUpdate = crlInfo.getNextUpdate();
+      }
+    } else {
+      thisUpdate = new Date();
+    }
+
+    CertStatusInfo certStatusInfo = null;
+
+    boolean ignore = false;
+    String certprofile = null;
+
+    long timeInSec = time.getTime() / 1000;
+    if (entry != null) {
+      if (ignoreNotYetValidCert) {
+        long notBeforeInSec = entry.getNotBefore();
+        if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
+          ignore = true;
         }
       }
 
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
+      if (!ignore && ignoreExpiredCert) {
+        long notAfterInSec = entry.getNotAfter();
+        if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
+          ignore = true;
+        }
       }
+    }
 
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD || certStatus == CertStatus.UNKNOWN) {
-        replaced = true;
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
-              caRevInfo.getRevocationTime())) {
-          replaced = true;
+    if (entry == null) {
+      if (unknownSerialAsGood) {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo, null,
+            thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+      }
+    } else {
+      if (ignore) {
+        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+      } else {
+        byte[] certHash = includeCertHash ? entry.getCertHash() : null;
+        if (entry.isRevoked()) {
+          long revTime = entry.getRevTime();
+          long invalTime = includeRit ? entry.getInvalidityTime() : 0;
+          Date invTime = (invalTime == 0 || invalTime == revTime)
+              ? null : new Date(invalTime * 1000);
+          CertRevocationInfo revInfo = new CertRevocationInfo(entry.getReason(),
+              new Date(revTime * 1000), invTime);
+          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
+              certHashAlgo, certHash, thisUpdate, nextUpdate, certprofile);
+        } else {
+          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
+              certHash, thisUpdate, nextUpdate, certprofile);
         }
       }
+    }
 
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
+    if (includeCrlId && crlInfo != null) {
+      certStatusInfo.setCrlId(crlInfo.getCrlId());
+    }
+
+    if (includeArchiveCutoff) {
+      if (retentionInterval != 0) {
+        Date date;
+        // expired certificate remains in status store for ever
+        if (retentionInterval < 0) {
+          date = issuer.getNotBefore();
         } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-              caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+          long nowInMs = System.currentTimeMillis();
+          long dateInMs = Math.max(issuer.getNotBefore().getTime(),
+              nowInMs - DAY * retentionInterval);
+          date = new Date(dateInMs);
         }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
+
+        certStatusInfo.setArchiveCutOff(date);
       }
+    }
+
+    if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
       return certStatusInfo;
-    } catch (DataAccessException ex) {
-      throw new OcspStoreException(ex.getMessage(), ex);
     }
 
-  } // method getCertStatus
+    CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
+    CertStatus certStatus = certStatusInfo.getCertStatus();
+    boolean replaced = false;
+    if (certStatus == CertStatus.GOOD || certStatus == CertStatus.UNKNOWN) {
+      replaced = true;
+    } else if (certStatus == CertStatus.REVOKED) {
+      if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
+            caRevInfo.getRevocationTime())) {
+        replaced = true;
+      }
+    }
+
+    if (replaced) {
+      CertRevocationInfo newRevInfo;
+      if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
+        newRevInfo = caRevInfo;
+      } else {
+        newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
+            caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+      }
+      certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
+          certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
+          certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
+          certStatusInfo.getCertprofile());
+    }
+    return certStatusInfo;
+  } // method toCertStatusInfo
 
   /**
    * Borrow Prepared Statement.
@@ -483,12 +857,15 @@ public class DbCertStatusStore extends OcspStore {
     }
 
     OcspServerConf.CaCerts caCerts = null;
+    boolean inMemoryIndex = false;
     if (conf != null) {
       OcspServerConf.DbSourceConf conf0 = ((OcspServerConf.SourceConfImpl) conf).getDbSource();
       if (conf0 != null) {
         caCerts = conf0.getCaCerts();
+        inMemoryIndex = conf0.isInMemoryIndex();
       }
     }
+    this.inMemoryIndex = inMemoryIndex;
 
     this.datasource = Args.notNull(datasource, "datasource");
 
@@ -502,6 +879,15 @@ public class DbCertStatusStore extends OcspStore {
     sqlCsNoRitWithCertHash = datasource.buildSelectFirstSql(1,
         "NBEFORE,NAFTER,REV,RR,RT,HASH FROM CERT WHERE IID=? AND SN=?");
 
+    sqlCsIndexPage = datasource.buildSelectFirstSql(INDEX_LOAD_PAGE_SIZE, "ID ASC",
+        CORE_SQL_CS_INDEX + " WHERE ID>?");
+    sqlCsIndexUpdate = datasource.buildSelectFirstSql(INDEX_LOAD_PAGE_SIZE, "ID ASC",
+        CORE_SQL_CS_INDEX + " WHERE ID>? AND (ID>? OR LUPDATE>=?)");
+    sqlIdPage = datasource.buildSelectFirstSql(ID_PAGE_SIZE, "ID ASC",
+        "ID FROM CERT WHERE ID>?");
+    sqlSnPage = datasource.buildSelectFirstSql(INDEX_LOAD_PAGE_SIZE, "ID ASC",
+        "ID,SN FROM CERT WHERE IID=? AND ID>? AND LUPDATE>=?");
+
     try {
       this.certHashAlgo = getCertHashAlgo(datasource);
     } catch (DataAccessException ex) {
@@ -529,6 +915,10 @@ public class DbCertStatusStore extends OcspStore {
     } // end try
 
     initIssuerStore();
+    this.certStatusIndex = null;
+    if (inMemoryIndex) {
+      updateCertStatusIndex();
+    }
 
     if (this.scheduledThreadPoolExecutor != null) {
       this.scheduledThreadPoolExecutor.shutdownNow();
@@ -575,6 +965,73 @@ public class DbCertStatusStore extends OcspStore {
     return (issuer == null) ? null : issuer.getCert();
   }
 
+  @Override
+  public CertRevocationInfo getIssuerRevocationInfo(RequestIssuer reqIssuer) {
+    IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+    return (issuer == null) ? null : issuer.getRevocationInfo();
+  }
+
+  @Override
+  public List<X509Certificate> getIssuerCerts() {
+    IssuerStore store = issuerStore;
+    if (store == null) {
+      return Collections.emptyList();
+    }
+
+    List<X509Certificate> certs = new LinkedList<>();
+    for (Integer id : store.getIds()) {
+      IssuerEntry issuer = store.getIssuerForId(id);
+      if (issuer != null) {
+        certs.add(issuer.getCert());
+      }
+    }
+    return certs;
+  }
+
+  @Override
+  public void listSerialNumbers(RequestIssuer reqIssuer, long updatedSince,
+      Consumer<BigInteger> consumer) throws OcspStoreException {
+    Integer issuerId = issuerStore.getIssuerIdForFp(reqIssuer);
+    if (issuerId == null) {
+      return;
+    }
+
+    final String sql = sqlSnPage;
+    try {
+      PreparedStatement ps = preparedStatement(sql);
+      ResultSet rs = null;
+      long maxId = 0;
+      try {
+        while (true) {
+          int idx = 1;
+          ps.setInt(idx++, issuerId);
+          ps.setLong(idx++, maxId);
+          ps.setLong(idx++, updatedSince);
+          rs = ps.executeQuery();
+
+          int num = 0;
+          while (rs.next()) {
+            num++;
+            maxId = Math.max(maxId, rs.getLong("ID"));
+            consumer.accept(new BigInteger(rs.getString("SN"), 16));
+          }
+          rs.close();
+          rs = null;
+
+          if (num < INDEX_LOAD_PAGE_SIZE) {
+            break;
+          }
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        releaseDbResources(ps, rs);
+      }
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+  } // method listSerialNumbers
+
   protected boolean isInitialized() {
     return initialized;
   }
@@ -21,14 +21,7 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.math.BigInteger;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
-import java.security.SignatureException;
-import java.security.cert.CRLException;
 import java.security.cert.CertificateEncodingException;
-import java.security.cert.X509CRL;
-import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -36,25 +29,23 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
-import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.Set;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
-import javax.security.auth.x500.X500Principal;
-
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1EncodableVector;
-import org.bouncycastle.asn1.ASN1GeneralizedTime;
 import org.bouncycastle.asn1.ASN1Integer;
-import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.ASN1Set;
 import org.bouncycastle.asn1.ASN1TaggedObject;
 import org.bouncycastle.asn1.DERGeneralizedTime;
 import org.bouncycastle.asn1.DERIA5String;
-import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.DERSequence;
 import org.bouncycastle.asn1.DERSet;
 import org.bouncycastle.asn1.DERTaggedObject;
@@ -62,12 +53,12 @@ import org.bouncycastle.asn1.DERUTF8String;
 import org.bouncycastle.asn1.ocsp.CrlID;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.Certificate;
-import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.TBSCertificate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.server.store.CrlStreamParser.RevokedCert;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.CrlReason;
 import org.xipki.security.HashAlgo;
@@ -106,9 +97,25 @@ public class ImportCrl {
 
   private static final String CORE_SQL_SELECT_ID_CERT = "ID FROM CERT WHERE IID=? AND SN=?";
 
+  /**
+   * Number of CRL entries written in one JDBC batch and one transaction.
+   */
+  private static final int BATCH_SIZE = 1000;
+
+  /**
+   * Number of serial numbers whose ids are retrieved in one query.
+   */
+  private static final int SELECT_IDS_SIZE = 100;
+
   private final String sqlSelectIdCert;
 
-  private final X509CRL crl;
+  private final String sqlSelectIdsCert;
+
+  private final CrlStreamParser crl;
+
+  private final Date thisUpdate;
+
+  private final Date nextUpdate;
 
   private final X509Certificate caCert;
 
@@ -127,8 +134,6 @@ public class ImportCrl {
 
   private final X500Name caSubject;
 
-  private final X500Principal x500PrincipalCaSubject;
-
   private final byte[] caSpki;
 
   private final String certsDirName;
@@ -141,19 +146,27 @@ public class ImportCrl {
   private PreparedStatement psInsertCert;
   private PreparedStatement psInsertCertRev;
   private PreparedStatement psSelectIdCert;
+  private PreparedStatement psSelectIdsCert;
   private PreparedStatement psUpdateCert;
   private PreparedStatement psUpdateCertRev;
 
-  public ImportCrl(DataSourceWrapper datasource, boolean useCrlUpdates, X509CRL crl, String crlUrl,
-      X509Certificate caCert, X509Certificate issuerCert, CertRevocationInfo caRevInfo,
-      String certsDirName) throws ImportCrlException, DataAccessException {
+  public ImportCrl(DataSourceWrapper datasource, boolean useCrlUpdates, File crlFile,
+      String crlUrl, X509Certificate caCert, X509Certificate issuerCert,
+      CertRevocationInfo caRevInfo, String certsDirName)
+      throws ImportCrlException, DataAccessException {
     this.datasource = Args.notNull(datasource, "datasource");
     this.certhashAlgo = DbCertStatusStore.getCertHashAlgo(datasource);
     this.useCrlUpdates = useCrlUpdates;
-    this.crl = Args.notNull(crl, "crl");
+    Args.notNull(crlFile, "crlFile");
+    try {
+      this.crl = new CrlStreamParser(crlFile);
+    } catch (IOException ex) {
+      throw new ImportCrlException("could not parse CRL " + crlFile.getPath(), ex);
+    }
+    this.thisUpdate = crl.getThisUpdate();
+    this.nextUpdate = crl.getNextUpdate();
     this.caCert = Args.notNull(caCert, "caCert");
-    this.x500PrincipalCaSubject = caCert.getSubjectX500Principal();
-    this.caSubject = X500Name.getInstance(x500PrincipalCaSubject.getEncoded());
+    this.caSubject = X500Name.getInstance(caCert.getSubjectX500Principal().getEncoded());
     try {
       this.caSpki = X509Util.extractSki(caCert);
     } catch (CertificateEncodingException ex) {
@@ -163,46 +176,47 @@ public class ImportCrl {
     this.certsDirName = certsDirName;
     this.caRevInfo = caRevInfo;
 
-    X500Principal issuer = crl.getIssuerX500Principal();
+    X500Name issuer = crl.getIssuer();
 
     boolean caAsCrlIssuer = true;
-    if (!x500PrincipalCaSubject.equals(issuer)) {
+    if (!caSubject.equals(issuer)) {
       caAsCrlIssuer = false;
       if (issuerCert == null) {
         throw new IllegalArgumentException("issuerCert may not be null");
       }
 
-      if (!issuerCert.getSubjectX500Principal().equals(issuer)) {
+      X500Name issuerCertSubject =
+          X500Name.getInstance(issuerCert.getSubjectX500Principal().getEncoded());
+      if (!issuerCertSubject.equals(issuer)) {
         throw new IllegalArgumentException("issuerCert and CRL do not match");
       }
     }
 
     // Verify the signature
     X509Certificate crlSignerCert = caAsCrlIssuer ? caCert : issuerCert;
+    boolean signatureValid;
     try {
-      crl.verify(crlSignerCert.getPublicKey());
-    } catch (SignatureException | NoSuchProviderException | InvalidKeyException | CRLException
-        | NoSuchAlgorithmException ex) {
+      signatureValid = crl.verifySignature(crlSignerCert.getPublicKey());
+    } catch (IOException ex) {
       throw new ImportCrlException("could not verify signature of CRL", ex);
     }
 
-    byte[] octetString = crl.getExtensionValue(Extension.cRLNumber.getId());
-    if (octetString == null) {
+    if (!signatureValid) {
+      throw new ImportCrlException("invalid signature of CRL");
+    }
+
+    this.crlNumber = crl.getCrlNumber();
+    if (crlNumber == null) {
       throw new IllegalArgumentException("CRL without CRLNumber is not supported");
     }
-    ASN1Integer asn1CrlNumber
-        = ASN1Integer.getInstance(DEROctetString.getInstance(octetString).getOctets());
-    this.crlNumber = asn1CrlNumber.getPositiveValue();
+    ASN1Integer asn1CrlNumber = new ASN1Integer(crlNumber);
 
-    octetString = crl.getExtensionValue(Extension.deltaCRLIndicator.getId());
-    this.isDeltaCrl = (octetString != null);
+    this.baseCrlNumber = crl.getBaseCrlNumber();
+    this.isDeltaCrl = (baseCrlNumber != null);
     if (this.isDeltaCrl) {
       LOG.info("The CRL is a DeltaCRL");
-      byte[] extnValue = DEROctetString.getInstance(octetString).getOctets();
-      this.baseCrlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue();
     } else {
       LOG.info("The CRL is a full CRL");
-      this.baseCrlNumber = null;
     }
 
     // Construct CrlID
@@ -212,48 +226,84 @@ public class ImportCrl {
     }
 
     vec.add(new DERTaggedObject(true, 1, asn1CrlNumber));
-    vec.add(new DERTaggedObject(true, 2, new DERGeneralizedTime(crl.getThisUpdate())));
+    vec.add(new DERTaggedObject(true, 2, new DERGeneralizedTime(thisUpdate)));
     this.crlId = CrlID.getInstance(new DERSequence(vec));
 
     this.sqlSelectIdCert = datasource.buildSelectFirstSql(1, CORE_SQL_SELECT_ID_CERT);
+
+    StringBuilder sb = new StringBuilder("SELECT ID,SN FROM CERT WHERE IID=? AND SN IN (?");
+    for (int i = 1; i < SELECT_IDS_SIZE; i++) {
+      sb.append(",?");
+    }
+    this.sqlSelectIdsCert = sb.append(")").toString();
   }
 
   public boolean importCrlToOcspDb() {
     Connection conn = null;
+    Boolean origAutoCommit = null;
     try {
       conn = datasource.getConnection();
+      // the entries are committed in batches of BATCH_SIZE
+      origAutoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
 
       // CHECKSTYLE:SKIP
       Date startTime = new Date();
       // CHECKSTYLE:SKIP
       int caId = importCa(conn);
+      commit(conn);
 
       psDeleteCert = datasource.prepareStatement(conn, SQL_DELETE_CERT);
       psInsertCert = datasource.prepareStatement(conn, SQL_INSERT_CERT);
       psInsertCertRev = datasource.prepareStatement(conn, SQL_INSERT_CERT_REV);
       psSelectIdCert = datasource.prepareStatement(conn, sqlSelectIdCert);
+      psSelectIdsCert = datasource.prepareStatement(conn, sqlSelectIdsCert);
       psUpdateCert = datasource.prepareStatement(conn, SQL_UPDATE_CERT);
       psUpdateCertRev = datasource.prepareStatement(conn, SQL_UPDATE_CERT_REV);
 
       importEntries(conn, caId);
       deleteEntriesNotUpdatedSince(conn, startTime);
+      commit(conn);
 
       return true;
     } catch (Throwable th) {
       LogUtil.error(LOG, th, "could not import CRL to OCSP database");
+      if (origAutoCommit != null) {
+        try {
+          conn.rollback();
+        } catch (SQLException ex) {
+          LogUtil.warn(LOG, ex, "could not rollback the transaction");
+        }
+      }
+      return false;
+    } finally {
       releaseResources(psDeleteCert, null);
       releaseResources(psInsertCert, null);
       releaseResources(psInsertCertRev, null);
       releaseResources(psSelectIdCert, null);
+      releaseResources(psSelectIdsCert, null);
       releaseResources(psUpdateCert, null);
       releaseResources(psUpdateCertRev, null);
 
       if (conn != null) {
+        if (origAutoCommit != null) {
+          try {
+            conn.setAutoCommit(origAutoCommit);
+          } catch (SQLException ex) {
+            LogUtil.warn(LOG, ex, "could not restore the auto-commit mode");
+          }
+        }
         datasource.returnConnection(conn);
       }
     }
+  }
 
-    return false;
+  private void commit(Connection conn) throws DataAccessException {
+    try {
+      conn.commit();
+    } catch (SQLException ex) {
+      throw datasource.translate("COMMIT", ex);
+    }
   }
 
   private int importCa(Connection conn)
@@ -298,8 +348,7 @@ public class ImportCrl {
         throw new ImportCrlException("Given CRL is a deltaCRL for the full CRL with number "
             + baseCrlNumber + ", please import this full CRL first.");
       } else {
-        crlInfo = new CrlInfo(crlNumber, null, useCrlUpdates, crl.getThisUpdate(),
-            crl.getNextUpdate(), crlId);
+        crlInfo = new CrlInfo(crlNumber, null, useCrlUpdates, thisUpdate, nextUpdate, crlId);
       }
     } else {
       if (crlNumber.compareTo(crlInfo.getCrlNumber()) < 0) {
@@ -322,8 +371,8 @@ public class ImportCrl {
 
       crlInfo.setCrlNumber(crlNumber);
       crlInfo.setBaseCrlNumber(isDeltaCrl ? baseCrlNumber : null);
-      crlInfo.setThisUpdate(crl.getThisUpdate());
-      crlInfo.setNextUpdate(crl.getNextUpdate());
+      crlInfo.setThisUpdate(thisUpdate);
+      crlInfo.setNextUpdate(nextUpdate);
     }
 
     ps = null;
@@ -380,95 +429,39 @@ public class ImportCrl {
     AtomicLong maxId = new AtomicLong(datasource.getMax(conn, "CERT", "ID"));
 
     // import the revoked information
-    Set<? extends X509CRLEntry> revokedCertList = crl.getRevokedCertificates();
-    if (revokedCertList != null) {
-      for (X509CRLEntry c : revokedCertList) {
-        X500Principal issuer = c.getCertificateIssuer();
-        BigInteger serial = c.getSerialNumber();
-
-        if (issuer != null) {
-          if (!x500PrincipalCaSubject.equals(issuer)) {
-            throw new ImportCrlException("invalid CRLEntry for certificate number " + serial);
-          }
-        }
-
-        Date rt = c.getRevocationDate();
-        Date rit = null;
-        byte[] extnValue = c.getExtensionValue(Extension.invalidityDate.getId());
-        if (extnValue != null) {
-          extnValue = extractCoreValue(extnValue);
-          ASN1GeneralizedTime genTime = DERGeneralizedTime.getInstance(extnValue);
-          try {
-            rit = genTime.getDate();
-          } catch (ParseException ex) {
-            throw new ImportCrlException(ex.getMessage(), ex);
-          }
-
-          if (rt.equals(rit)) {
-            rit = null;
-          }
+    Iterator<RevokedCert> revokedCerts = crl.revokedCertificates();
+    List<RevokedCert> batch = new ArrayList<>(BATCH_SIZE);
+    long numEntries = 0;
+    while (revokedCerts.hasNext()) {
+      RevokedCert c = revokedCerts.next();
+      X500Name issuer = c.getCertificateIssuer();
+      if (issuer != null) {
+        if (!caSubject.equals(issuer)) {
+          throw new ImportCrlException("invalid CRLEntry for certificate number "
+              + c.getSerialNumber());
         }
+      }
 
-        CrlReason reason = CrlReason.fromReason(c.getRevocationReason());
-
-        String sql = null;
-        try {
-          if (reason == CrlReason.REMOVE_FROM_CRL) {
-            if (!isDeltaCrl) {
-              LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
-            }
-
-            // delete the entry
-            sql = SQL_DELETE_CERT;
-            psDeleteCert.setInt(1, caId);
-            psDeleteCert.setString(2, serial.toString(16));
-            psDeleteCert.executeUpdate();
-            continue;
-          }
-
-          Long id = getId(caId, serial);
-          PreparedStatement ps;
-          int offset = 1;
-
-          if (id == null) {
-            sql = SQL_INSERT_CERT_REV;
-            id = maxId.incrementAndGet();
-            ps = psInsertCertRev;
-            ps.setLong(offset++, id);
-            ps.setInt(offset++, caId);
-            ps.setString(offset++, serial.toString(16));
-          } else {
-            sql = SQL_UPDATE_CERT_REV;
-            ps = psUpdateCertRev;
-          }
-
-          ps.setInt(offset++, 1);
-          ps.setInt(offset++, reason.getCode());
-          ps.setLong(offset++, rt.getTime() / 1000);
-          if (rit != null) {
-            ps.setLong(offset++, rit.getTime() / 1000);
-          } else {
-            ps.setNull(offset++, Types.BIGINT);
-          }
-          ps.setLong(offset++, System.currentTimeMillis() / 1000);
-
-          if (ps == psUpdateCertRev) {
-            ps.setLong(offset++, id);
-          }
-
-          ps.executeUpdate();
-        } catch (SQLException ex) {
-          throw datasource.translate(sql, ex);
-        }
+      batch.add(c);
+      if (batch.size() == BATCH_SIZE) {
+        importRevokedCerts(conn, caId, maxId, batch);
+        numEntries += batch.size();
+        batch.clear();
+        LOG.debug("imported {} CRL entries", numEntries);
       }
     }
 
+    if (!batch.isEmpty()) {
+      importRevokedCerts(conn, caId, maxId, batch);
+      numEntries += batch.size();
+    }
+    LOG.info("imported {} CRL entries", numEntries);
+
     // import the certificates
 
     // extract the certificate
-    byte[] extnValue = crl.getExtensionValue(ObjectIdentifiers.id_xipki_ext_crlCertset.getId());
+    byte[] extnValue = crl.getExtensionValue(ObjectIdentifiers.id_xipki_ext_crlCertset);
     if (extnValue != null) {
-      extnValue = extractCoreValue(extnValue);
       ASN1Set asn1Set = DERSet.getInstance(extnValue);
       final int n = asn1Set.size();
 
@@ -564,8 +557,142 @@ public class ImportCrl {
 
   }
 
-  private static byte[] extractCoreValue(byte[] encodedExtensionValue) {
-    return ASN1OctetString.getInstance(encodedExtensionValue).getOctets();
+  /**
+   * Writes the revoked certificates in JDBC batches and commits them.
+   */
+  private void importRevokedCerts(Connection conn, int caId, AtomicLong maxId,
+      List<RevokedCert> revokedCerts) throws DataAccessException {
+    List<BigInteger> serials = new ArrayList<>(revokedCerts.size());
+    for (RevokedCert c : revokedCerts) {
+      if (c.getReason() != CrlReason.REMOVE_FROM_CRL) {
+        serials.add(c.getSerialNumber());
+      }
+    }
+
+    Map<BigInteger, Long> ids = getIds(caId, serials);
+    long lupdate = System.currentTimeMillis() / 1000;
+
+    boolean hasDelete = false;
+    boolean hasInsert = false;
+    boolean hasUpdate = false;
+
+    String sql = null;
+    try {
+      for (RevokedCert c : revokedCerts) {
+        BigInteger serial = c.getSerialNumber();
+        CrlReason reason = c.getReason();
+
+        if (reason == CrlReason.REMOVE_FROM_CRL) {
+          if (!isDeltaCrl) {
+            LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
+          }
+
+          // delete the entry
+          sql = SQL_DELETE_CERT;
+          psDeleteCert.setInt(1, caId);
+          psDeleteCert.setString(2, serial.toString(16));
+          psDeleteCert.addBatch();
+          hasDelete = true;
+          continue;
+        }
+
+        Date rt = c.getRevocationDate();
+        Date rit = c.getInvalidityDate();
+        if (rt.equals(rit)) {
+          rit = null;
+        }
+
+        Long id = ids.get(serial);
+        PreparedStatement ps;
+        int offset = 1;
+
+        if (id == null) {
+          sql = SQL_INSERT_CERT_REV;
+          id = maxId.incrementAndGet();
+          // a serial number occurring twice shall not be inserted twice
+          ids.put(serial, id);
+          ps = psInsertCertRev;
+          ps.setLong(offset++, id);
+          ps.setInt(offset++, caId);
+          ps.setString(offset++, serial.toString(16));
+          hasInsert = true;
+        } else {
+          sql = SQL_UPDATE_CERT_REV;
+          ps = psUpdateCertRev;
+          hasUpdate = true;
+        }
+
+        ps.setInt(offset++, 1);
+        ps.setInt(offset++, reason.getCode());
+        ps.setLong(offset++, rt.getTime() / 1000);
+        if (rit != null) {
+          ps.setLong(offset++, rit.getTime() / 1000);
+        } else {
+          ps.setNull(offset++, Types.BIGINT);
+        }
+        ps.setLong(offset++, lupdate);
+
+        if (ps == psUpdateCertRev) {
+          ps.setLong(offset++, id);
+        }
+
+        ps.addBatch();
+      }
+
+      if (hasDelete) {
+        sql = SQL_DELETE_CERT;
+        psDeleteCert.executeBatch();
+      }
+
+      if (hasInsert) {
+        sql = SQL_INSERT_CERT_REV;
+        psInsertCertRev.executeBatch();
+      }
+
+      if (hasUpdate) {
+        sql = SQL_UPDATE_CERT_REV;
+        psUpdateCertRev.executeBatch();
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    }
+
+    commit(conn);
+  }
+
+  /**
+   * Retrieves the ids of the given serial numbers, {@link #SELECT_IDS_SIZE} serial numbers
+   * per query.
+   */
+  private Map<BigInteger, Long> getIds(int caId, List<BigInteger> serialNumbers)
+      throws DataAccessException {
+    Map<BigInteger, Long> ids = new HashMap<>();
+    final int n = serialNumbers.size();
+    for (int from = 0; from < n; from += SELECT_IDS_SIZE) {
+      int to = Math.min(n, from + SELECT_IDS_SIZE);
+      ResultSet rs = null;
+      try {
+        psSelectIdsCert.setInt(1, caId);
+        String sn = null;
+        for (int i = 0; i < SELECT_IDS_SIZE; i++) {
+          // fill the remaining parameters with the last serial number
+          if (from + i < to) {
+            sn = serialNumbers.get(from + i).toString(16);
+          }
+          psSelectIdsCert.setString(2 + i, sn);
+        }
+
+        rs = psSelectIdsCert.executeQuery();
+        while (rs.next()) {
+          ids.put(new BigInteger(rs.getString("SN"), 16), rs.getLong("ID"));
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sqlSelectIdsCert, ex);
+      } finally {
+        releaseResources(null, rs);
+      }
+    }
+    return ids;
   }
 
   private Long getId(int caId, BigInteger serialNumber)
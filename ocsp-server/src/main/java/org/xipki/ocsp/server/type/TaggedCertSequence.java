@@ -56,6 +56,14 @@ public class TaggedCertSequence extends ASN1Type {
     return encodedLen;
   }
 
+  /**
+   * Returns the encoded sequence. The returned array must not be modified.
+   * @return the encoded sequence.
+   */
+  public byte[] getEncoded() {
+    return encoded;
+  }
+
   @Override
   public int write(byte[] out, int offset) {
     return arraycopy(encoded, out, offset);
@@ -0,0 +1,158 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ocsp.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.junit.Test;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.type.CertID;
+import org.xipki.ocsp.server.type.ResponderID;
+import org.xipki.security.BatchSigner;
+import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.DfltConcurrentContentSigner;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.XiContentSigner;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class OCSPRespBuilderTest {
+
+  /**
+   * Signer whose signature is the SHA-256 hash of the data.
+   */
+  private static class HashSigner implements XiContentSigner {
+
+    private static final AlgorithmIdentifier ALGID =
+        new AlgorithmIdentifier(X9ObjectIdentifiers.ecdsa_with_SHA256);
+
+    private final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+    @Override
+    public AlgorithmIdentifier getAlgorithmIdentifier() {
+      return ALGID;
+    }
+
+    @Override
+    public byte[] getEncodedAlgorithmIdentifier() {
+      try {
+        return ALGID.getEncoded();
+      } catch (Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      stream.reset();
+      return stream;
+    }
+
+    @Override
+    public byte[] getSignature() {
+      return HashAlgo.SHA256.hash(stream.toByteArray());
+    }
+
+  } // class HashSigner
+
+  private static final byte[] CERTSTATUS_GOOD = new byte[]{(byte) 0x80, 0x00};
+
+  private static final Date PRODUCED_AT = new Date(1500000000000L);
+
+  @Test
+  public void testResponseParts() throws Exception {
+    ConcurrentContentSigner signer = newSigner();
+    BatchSigner batchSigner = new BatchSigner(signer, 4, 1);
+
+    // the TBSResponseData of the first response is encoded in the buffer of this thread
+    ByteBuffer[] parts = newBuilder(1, 1).buildOCSPResponseParts(signer, null, PRODUCED_AT);
+    OcspRespWithCacheInfo resp = new OcspRespWithCacheInfo(parts, null);
+
+    // the second response overwrites the buffer of this thread
+    byte[] other = newBuilder(2, 10).buildOCSPResponse(signer, null, PRODUCED_AT);
+
+    // encoded without buffer
+    byte[] expected = newBuilder(1, 1).buildOCSPResponse(batchSigner, null, PRODUCED_AT);
+    Assert.assertFalse("different responses", Arrays.equals(expected, other));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    resp.writeResponse(out);
+    Assert.assertTrue("written response", Arrays.equals(expected, out.toByteArray()));
+    Assert.assertEquals("response length", expected.length, resp.getResponseLength());
+    Assert.assertTrue("response", Arrays.equals(expected, resp.getResponse()));
+
+    BasicOCSPResp basicResp = (BasicOCSPResp) new OCSPResp(expected).getResponseObject();
+    Assert.assertEquals("single responses", 1, basicResp.getResponses().length);
+    Assert.assertTrue("signature", Arrays.equals(
+        HashAlgo.SHA256.hash(basicResp.getTBSResponseData()), basicResp.getSignature()));
+  }
+
+  @Test
+  public void testLargeResponse() throws Exception {
+    ConcurrentContentSigner signer = newSigner();
+    BatchSigner batchSigner = new BatchSigner(signer, 4, 1);
+
+    // larger than the minimal buffer of 4 KB
+    ByteBuffer[] parts = newBuilder(1, 100).buildOCSPResponseParts(signer, null, PRODUCED_AT);
+    newBuilder(2, 100).buildOCSPResponse(signer, null, PRODUCED_AT);
+
+    byte[] expected = newBuilder(1, 100).buildOCSPResponse(batchSigner, null, PRODUCED_AT);
+    Assert.assertTrue("response",
+        Arrays.equals(expected, new OcspRespWithCacheInfo(parts, null).getResponse()));
+  }
+
+  private static OCSPRespBuilder newBuilder(int firstSerial, int numSerials) throws Exception {
+    OCSPRespBuilder builder = new OCSPRespBuilder(new ResponderID(new X500Name("CN=responder")));
+    // issuerNameHash and issuerKeyHash, both OCTET STRING
+    byte[] hashData = new byte[44];
+    Arrays.fill(hashData, (byte) 1);
+    hashData[0] = hashData[22] = 0x04;
+    hashData[1] = hashData[23] = 20;
+    RequestIssuer issuer = new RequestIssuer(HashAlgo.SHA1, hashData);
+    for (int i = 0; i < numSerials; i++) {
+      builder.addResponse(new CertID(issuer, BigInteger.valueOf(firstSerial + i)),
+          CERTSTATUS_GOOD, PRODUCED_AT, null, null);
+    }
+    return builder;
+  }
+
+  private static ConcurrentContentSigner newSigner() throws Exception {
+    List<XiContentSigner> signers = new ArrayList<>(1);
+    signers.add(new HashSigner());
+    return new DfltConcurrentContentSigner(false, signers);
+  }
+
+}
@@ -0,0 +1,339 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ocsp.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.security.AlgorithmCode;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class ResponseCacherTest {
+
+  /**
+   * Cache database in memory, accessed via JDBC. The table OCSP is written only by the UPSERT
+   * (MERGE) statement, all queries return empty results.
+   */
+  private static class MemoryDatabase implements Driver {
+
+    /**
+     * The column RESP of the table OCSP by ID.
+     */
+    private final Map<Long, byte[]> responses = new HashMap<>();
+
+    /**
+     * Sizes of the executed batches.
+     */
+    private final List<Integer> batchSizes = new ArrayList<>();
+
+    synchronized Map<Long, byte[]> getResponses() {
+      return new HashMap<>(responses);
+    }
+
+    synchronized List<Integer> getBatchSizes() {
+      return new ArrayList<>(batchSizes);
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) {
+      return acceptsURL(url) ? proxy(Connection.class, this::invokeConnection) : null;
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+      return JDBC_URL.equals(url);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+      return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+      return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+      return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+      return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+      throw new SQLFeatureNotSupportedException();
+    }
+
+    private Object invokeConnection(Object conn, Method method, Object[] args) {
+      switch (method.getName()) {
+        case "createStatement":
+          return proxy(Statement.class, (stmt, stmtMethod, stmtArgs) ->
+              "executeQuery".equals(stmtMethod.getName())
+                  ? emptyResultSet() : defaultValue(stmt, stmtMethod, stmtArgs));
+        case "prepareStatement":
+          return ((String) args[0]).startsWith("MERGE INTO OCSP ")
+              ? prepareUpsert() : proxy(PreparedStatement.class, (ps, psMethod, psArgs) ->
+                  "executeQuery".equals(psMethod.getName())
+                      ? emptyResultSet() : defaultValue(ps, psMethod, psArgs));
+        case "getAutoCommit":
+        case "isValid":
+          return true;
+        default:
+          return defaultValue(conn, method, args);
+      }
+    }
+
+    private PreparedStatement prepareUpsert() {
+      Map<Integer, Object> params = new HashMap<>();
+      List<Map<Integer, Object>> batch = new ArrayList<>();
+      return proxy(PreparedStatement.class, (ps, psMethod, psArgs) -> {
+        String name = psMethod.getName();
+        if (name.equals("setNull")) {
+          params.put((Integer) psArgs[0], null);
+        } else if (name.startsWith("set") && psArgs.length == 2) {
+          params.put((Integer) psArgs[0], psArgs[1]);
+        } else if (name.equals("addBatch")) {
+          batch.add(new HashMap<>(params));
+        } else if (name.equals("executeBatch")) {
+          int[] counts = new int[batch.size()];
+          synchronized (this) {
+            batchSizes.add(batch.size());
+            // column 1: ID, column 6: RESP
+            for (int i = 0; i < counts.length; i++) {
+              responses.put((Long) batch.get(i).get(1), (byte[]) batch.get(i).get(6));
+              counts[i] = 1;
+            }
+          }
+          batch.clear();
+          return counts;
+        } else {
+          return defaultValue(ps, psMethod, psArgs);
+        }
+        return null;
+      });
+    }
+
+    private static ResultSet emptyResultSet() {
+      return proxy(ResultSet.class, (rs, rsMethod, rsArgs) ->
+          "getMetaData".equals(rsMethod.getName())
+              ? proxy(ResultSetMetaData.class, ResponseCacherTest::defaultValue)
+              : defaultValue(rs, rsMethod, rsArgs));
+    }
+
+  } // class MemoryDatabase
+
+  private static final String JDBC_URL = "jdbc:h2:mem:responsecachertest";
+
+  private static final int ISSUER_ID = 1;
+
+  private static final AlgorithmCode SIG_ALG = AlgorithmCode.SHA256WITHECDSA;
+
+  private MemoryDatabase database;
+
+  private DataSourceWrapper datasource;
+
+  private ResponseCacher cacher;
+
+  @Before
+  public void openDatabase() throws Exception {
+    database = new MemoryDatabase();
+    DriverManager.registerDriver(database);
+
+    Properties conf = new Properties();
+    conf.setProperty("jdbcUrl", JDBC_URL);
+    conf.setProperty("maximumPoolSize", "2");
+    datasource = new DataSourceFactory().createDataSource("ocspcache", conf, null);
+  }
+
+  @After
+  public void closeDatabase() throws Exception {
+    if (cacher != null) {
+      // closes the datasource as well
+      cacher.close();
+    } else {
+      datasource.close();
+    }
+    DriverManager.deregisterDriver(database);
+  }
+
+  @Test
+  public void testWriteBehind() throws Exception {
+    cacher = new ResponseCacher(datasource, true, 86400, 0, 1000);
+    cacher.init();
+
+    final int num = 250;
+    for (int i = 1; i <= num; i++) {
+      store(i, response(i));
+    }
+
+    awaitWritten(num);
+    Assert.assertEquals("written responses", num, database.getResponses().size());
+    Assert.assertEquals("writeQueueDepth", 0, cacher.getWriteQueueDepth());
+    Assert.assertEquals("droppedWrites", 0, cacher.getDroppedWrites());
+    Assert.assertEquals("failedWrites", 0, cacher.getFailedWrites());
+
+    int sum = 0;
+    for (int size : database.getBatchSizes()) {
+      Assert.assertTrue("batch size " + size, size > 0 && size <= 100);
+      sum += size;
+    }
+    Assert.assertEquals("written in batches", num, sum);
+  }
+
+  @Test
+  public void testCoalescing() throws Exception {
+    cacher = new ResponseCacher(datasource, true, 86400, 0, 10);
+
+    // the writer is not started yet, the responses stay in the queue
+    store(1, response(1));
+    store(1, response(2));
+    store(2, response(3));
+    Assert.assertEquals("writeQueueDepth", 2, cacher.getWriteQueueDepth());
+
+    // the newest pending response is returned without querying the database
+    assertResponse(1, response(2));
+    assertResponse(2, response(3));
+
+    cacher.init();
+    awaitWritten(2);
+    Assert.assertEquals("written responses", 2, database.getResponses().size());
+    Assert.assertTrue("newest response written",
+        database.getResponses().values().stream().anyMatch(
+            resp -> Arrays.equals(response(2), resp)));
+    Assert.assertFalse("replaced response written",
+        database.getResponses().values().stream().anyMatch(
+            resp -> Arrays.equals(response(1), resp)));
+  }
+
+  @Test
+  public void testDrop() throws Exception {
+    cacher = new ResponseCacher(datasource, true, 86400, 0, 1);
+
+    store(1, response(1));
+    // queue is full
+    store(2, response(2));
+    Assert.assertEquals("droppedWrites", 1, cacher.getDroppedWrites());
+    Assert.assertNull("dropped response", get(2));
+
+    // replaces the queued response, nothing is dropped
+    store(1, response(3));
+    Assert.assertEquals("droppedWrites", 1, cacher.getDroppedWrites());
+    assertResponse(1, response(3));
+
+    cacher.init();
+    awaitWritten(1);
+    Assert.assertEquals("written responses", 1, database.getResponses().size());
+
+    // the queue has space again
+    store(2, response(4));
+    awaitWritten(2);
+    Assert.assertEquals("droppedWrites", 1, cacher.getDroppedWrites());
+  }
+
+  private void store(int serial, byte[] response) {
+    cacher.storeOcspResponse(ISSUER_ID, BigInteger.valueOf(serial),
+        System.currentTimeMillis(), null, SIG_ALG, response, false);
+  }
+
+  private OcspRespWithCacheInfo get(int serial) throws Exception {
+    return cacher.getOcspResponse(ISSUER_ID, BigInteger.valueOf(serial), SIG_ALG);
+  }
+
+  private void assertResponse(int serial, byte[] expected) throws Exception {
+    OcspRespWithCacheInfo resp = get(serial);
+    Assert.assertNotNull("response " + serial, resp);
+    Assert.assertTrue("response " + serial, Arrays.equals(expected, resp.getResponse()));
+  }
+
+  private void awaitWritten(int num) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (database.getResponses().size() < num && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+  }
+
+  private static byte[] response(int value) {
+    return new byte[]{0x30, 0x03, 0x02, 0x01, (byte) value};
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return (T) Proxy.newProxyInstance(ResponseCacherTest.class.getClassLoader(),
+        new Class<?>[]{type}, handler);
+  }
+
+  private static Object defaultValue(Object obj, Method method, Object[] args) {
+    switch (method.getName()) {
+      case "toString":
+        return method.getDeclaringClass().getSimpleName() + "@" + System.identityHashCode(obj);
+      case "hashCode":
+        return System.identityHashCode(obj);
+      case "equals":
+        return obj == args[0];
+      default:
+        break;
+    }
+
+    Class<?> type = method.getReturnType();
+    if (type == boolean.class) {
+      return false;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == long.class) {
+      return 0L;
+    } else {
+      return null;
+    }
+  }
+
+}
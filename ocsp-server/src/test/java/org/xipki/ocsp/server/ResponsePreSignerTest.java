@@ -0,0 +1,126 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.xipki.ocsp.server.ResponsePreSigner.TaskTracker;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class ResponsePreSignerTest {
+
+  @Test
+  public void testAllTasksCompleted() throws Exception {
+    ThreadPoolExecutor executor = newExecutor(2, 2);
+    try {
+      TaskTracker tracker = new TaskTracker(executor);
+      AtomicInteger num = new AtomicInteger(0);
+      for (int i = 0; i < 1000; i++) {
+        final int idx = i;
+        // the queue is full most of the time, some tasks run in the caller thread
+        Assert.assertTrue("submitted", tracker.submit(() -> {
+          if (idx % 10 == 0) {
+            throw new IllegalStateException("failing task " + idx);
+          }
+          num.incrementAndGet();
+        }));
+      }
+
+      awaitCompletion(tracker);
+      Assert.assertEquals("completed tasks", 900, num.get());
+      Assert.assertEquals("failed tasks", 100, tracker.getNumFailed());
+      Assert.assertEquals("rejected tasks", 0, tracker.getNumRejected());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testShutdownExecutor() throws Exception {
+    ThreadPoolExecutor executor = newExecutor(1, 1);
+    CountDownLatch blocker = new CountDownLatch(1);
+    TaskTracker tracker = new TaskTracker(executor);
+
+    Assert.assertTrue("submitted", tracker.submit(() -> await(blocker)));
+    Assert.assertTrue("queued", tracker.submit(() -> { }));
+    executor.shutdown();
+
+    Assert.assertFalse("submitted after shutdown", tracker.submit(() -> { }));
+    Assert.assertEquals("rejected tasks", 1, tracker.getNumRejected());
+
+    blocker.countDown();
+    awaitCompletion(tracker);
+  }
+
+  @Test
+  public void testExecutorShutdownBeforeSubmit() throws Exception {
+    ThreadPoolExecutor executor = newExecutor(1, 1);
+    executor.shutdown();
+    TaskTracker tracker = new TaskTracker(executor);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertFalse("submitted after shutdown", tracker.submit(() -> { }));
+    }
+
+    Assert.assertEquals("rejected tasks", 10, tracker.getNumRejected());
+    Assert.assertEquals("failed tasks", 0, tracker.getNumFailed());
+    awaitCompletion(tracker);
+  }
+
+  private static ThreadPoolExecutor newExecutor(int threads, int queueSize) {
+    return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(queueSize),
+        ResponsePreSigner.CALLER_RUNS_IF_NOT_SHUTDOWN);
+  }
+
+  private static void awaitCompletion(TaskTracker tracker) throws Exception {
+    ExecutorService waiter = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> future = waiter.submit(() -> {
+        tracker.awaitCompletion();
+        return null;
+      });
+      future.get(10, TimeUnit.SECONDS);
+    } finally {
+      waiter.shutdownNow();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CertStatusIndexTest {
+
+  @Test
+  public void testPutGet() {
+    CertStatusIndex index = new CertStatusIndex();
+    byte[] hash = new byte[]{1, 2, 3};
+    index.put(new CertStatusIndex.Entry(7, 1, BigInteger.TEN, 100, 200, true, 6, 150, 140, hash));
+    index.put(new CertStatusIndex.Entry(8, 2, BigInteger.TEN, 100, 200, false, 0, 0, 0, null));
+
+    CertStatusIndex.Entry entry = index.get(1, BigInteger.TEN);
+    Assert.assertNotNull("entry", entry);
+    Assert.assertEquals("id", 7, entry.getId());
+    Assert.assertEquals("notBefore", 100, entry.getNotBefore());
+    Assert.assertEquals("notAfter", 200, entry.getNotAfter());
+    Assert.assertTrue("revoked", entry.isRevoked());
+    Assert.assertEquals("reason", 6, entry.getReason());
+    Assert.assertEquals("revTime", 150, entry.getRevTime());
+    Assert.assertEquals("invalidityTime", 140, entry.getInvalidityTime());
+    Assert.assertSame("certHash", hash, entry.getCertHash());
+
+    entry = index.get(2, BigInteger.TEN);
+    Assert.assertEquals("id", 8, entry.getId());
+    Assert.assertFalse("revoked", entry.isRevoked());
+    Assert.assertNull("certHash", entry.getCertHash());
+
+    Assert.assertNull("unknown issuer", index.get(3, BigInteger.TEN));
+    Assert.assertNull("unknown serial", index.get(1, BigInteger.ONE));
+
+    // the reason 0 (unspecified) of revoked certificates must be kept
+    index.put(new CertStatusIndex.Entry(7, 1, BigInteger.TEN, 100, 200, true, 0, 150, 0, null));
+    entry = index.get(1, BigInteger.TEN);
+    Assert.assertTrue("revoked", entry.isRevoked());
+    Assert.assertEquals("reason", 0, entry.getReason());
+    Assert.assertEquals("size after update", 2, index.size());
+  }
+
+  @Test
+  public void testRandomOperations() {
+    // more entries than the initial capacity, the table is resized several times
+    CertStatusIndex index = new CertStatusIndex();
+    Map<String, Long> expected = new HashMap<>();
+    Random random = new Random(1);
+
+    for (int i = 0; i < 100000; i++) {
+      int issuerId = 1 + random.nextInt(3);
+      // small serial numbers to provoke updates, removals and collisions
+      BigInteger serial = BigInteger.valueOf(1 + random.nextInt(5000));
+      String key = issuerId + ":" + serial;
+
+      if (random.nextInt(3) == 0) {
+        boolean removed = index.remove(issuerId, serial);
+        Assert.assertEquals("remove " + key, expected.remove(key) != null, removed);
+      } else {
+        index.put(newEntry(i, issuerId, serial));
+        expected.put(key, (long) i);
+      }
+    }
+
+    assertContent(index, expected);
+  }
+
+  @Test
+  public void testRemoveIf() {
+    CertStatusIndex index = new CertStatusIndex();
+    Map<String, Long> expected = new HashMap<>();
+    List<Long> removedIds = new ArrayList<>();
+    for (int i = 1; i <= 5000; i++) {
+      BigInteger serial = BigInteger.valueOf(i).shiftLeft(64);
+      index.put(newEntry(i, 1, serial));
+      if (i % 3 == 0) {
+        removedIds.add((long) i);
+      } else {
+        expected.put("1:" + serial, (long) i);
+      }
+    }
+
+    int num = index.removeIf(id -> id % 3 == 0);
+    Assert.assertEquals("number of removed entries", removedIds.size(), num);
+    assertContent(index, expected);
+  }
+
+  private static CertStatusIndex.Entry newEntry(long id, int issuerId, BigInteger serial) {
+    return new CertStatusIndex.Entry(id, issuerId, serial, 0, 0, false, 0, 0, 0, null);
+  }
+
+  private static void assertContent(CertStatusIndex index, Map<String, Long> expected) {
+    Assert.assertEquals("size", expected.size(), index.size());
+    for (int issuerId = 1; issuerId <= 3; issuerId++) {
+      for (int i = 1; i <= 5000; i++) {
+        for (BigInteger serial : new BigInteger[]{BigInteger.valueOf(i),
+            BigInteger.valueOf(i).shiftLeft(64)}) {
+          String key = issuerId + ":" + serial;
+          CertStatusIndex.Entry entry = index.get(issuerId, serial);
+          Long id = expected.get(key);
+          if (id == null) {
+            Assert.assertNull("entry " + key, entry);
+          } else {
+            Assert.assertNotNull("entry " + key, entry);
+            Assert.assertEquals("id of " + key, id.longValue(), entry.getId());
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,234 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+
+import org.bouncycastle.asn1.ASN1Enumerated;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509CRLEntryHolder;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Test;
+import org.xipki.ocsp.server.store.CrlStreamParser.RevokedCert;
+import org.xipki.security.CrlReason;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CrlStreamParserTest {
+
+  private static final X500Name ISSUER = new X500Name("CN=CRL Issuer,O=xipki");
+
+  private static final X500Name CERT_ISSUER = new X500Name("CN=Other CA,O=xipki");
+
+  // 2040-01-01 and 2060-01-01, encoded as UTCTime and GeneralizedTime
+  private static final long UTC_TIME = 2208988800000L;
+
+  private static final long GENERALIZED_TIME = 2840140800000L;
+
+  @Test
+  public void testCrlWithEntries() throws Exception {
+    KeyPair keypair = generateKeypair();
+    X509v2CRLBuilder builder = new X509v2CRLBuilder(ISSUER, new Date(UTC_TIME));
+    builder.setNextUpdate(new Date(GENERALIZED_TIME));
+    builder.addExtension(Extension.cRLNumber, false, new ASN1Integer(42));
+
+    // enough entries to have lengths in long form of 1, 2 and 3 bytes
+    for (int i = 1; i <= 3000; i++) {
+      BigInteger serial = BigInteger.valueOf(i).shiftLeft(i % 80);
+      Date revTime = new Date((i % 2 == 0) ? UTC_TIME : GENERALIZED_TIME);
+      ExtensionsGenerator extnGen = new ExtensionsGenerator();
+      if (i % 3 != 0) {
+        extnGen.addExtension(Extension.reasonCode, false,
+            CRLReason.lookup(i % 3 == 1 ? CRLReason.keyCompromise : CRLReason.superseded));
+      }
+
+      if (i % 5 == 0) {
+        extnGen.addExtension(Extension.invalidityDate, false,
+            new ASN1GeneralizedTime(new Date(UTC_TIME - i * 1000L)));
+      }
+
+      if (i == 2000) {
+        extnGen.addExtension(Extension.certificateIssuer, true,
+            new GeneralNames(new GeneralName(CERT_ISSUER)));
+      }
+
+      if (extnGen.isEmpty()) {
+        builder.addCRLEntry(serial, revTime, CRLReason.unspecified);
+      } else {
+        builder.addCRLEntry(serial, revTime, extnGen.generate());
+      }
+    }
+
+    X509CRLHolder expected = builder.build(
+        new JcaContentSignerBuilder("SHA256withECDSA").build(keypair.getPrivate()));
+    File file = writeTempFile(expected.getEncoded());
+    try {
+      CrlStreamParser parser = new CrlStreamParser(file);
+      Assert.assertEquals("issuer", ISSUER, parser.getIssuer());
+      Assert.assertEquals("thisUpdate", new Date(UTC_TIME), parser.getThisUpdate());
+      Assert.assertEquals("nextUpdate", new Date(GENERALIZED_TIME), parser.getNextUpdate());
+      Assert.assertEquals("crlNumber", BigInteger.valueOf(42), parser.getCrlNumber());
+      Assert.assertNull("baseCrlNumber", parser.getBaseCrlNumber());
+      Assert.assertTrue("signature", parser.verifySignature(keypair.getPublic()));
+
+      Iterator<?> expectedEntries = expected.getRevokedCertificates().iterator();
+      Iterator<RevokedCert> entries = parser.revokedCertificates();
+      X500Name certIssuer = null;
+      int num = 0;
+      while (expectedEntries.hasNext()) {
+        X509CRLEntryHolder expectedEntry = (X509CRLEntryHolder) expectedEntries.next();
+        Assert.assertTrue("hasNext", entries.hasNext());
+        RevokedCert entry = entries.next();
+        num++;
+
+        String desc = "entry " + num;
+        Assert.assertEquals(desc + " serial",
+            expectedEntry.getSerialNumber(), entry.getSerialNumber());
+        Assert.assertEquals(desc + " revocationDate",
+            expectedEntry.getRevocationDate(), entry.getRevocationDate());
+
+        Extension extn = expectedEntry.getExtension(Extension.reasonCode);
+        int reasonCode = (extn == null) ? CRLReason.unspecified
+            : ASN1Enumerated.getInstance(extn.getParsedValue()).getValue().intValue();
+        Assert.assertEquals(desc + " reason", CrlReason.forReasonCode(reasonCode),
+            entry.getReason());
+
+        extn = expectedEntry.getExtension(Extension.invalidityDate);
+        Date invalidityDate = (extn == null) ? null
+            : ASN1GeneralizedTime.getInstance(extn.getParsedValue()).getDate();
+        Assert.assertEquals(desc + " invalidityDate", invalidityDate, entry.getInvalidityDate());
+
+        // the certificate issuer applies to this and the following entries
+        extn = expectedEntry.getExtension(Extension.certificateIssuer);
+        if (extn != null) {
+          certIssuer = X500Name.getInstance(
+              GeneralNames.getInstance(extn.getParsedValue()).getNames()[0].getName());
+        }
+        Assert.assertEquals(desc + " certificateIssuer", certIssuer,
+            entry.getCertificateIssuer());
+      }
+
+      Assert.assertFalse("hasNext", entries.hasNext());
+      Assert.assertEquals("number of entries", 3000, num);
+      Assert.assertEquals("certificateIssuer", CERT_ISSUER, certIssuer);
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testEmptyCrl() throws Exception {
+    KeyPair keypair = generateKeypair();
+    X509v2CRLBuilder builder = new X509v2CRLBuilder(ISSUER, new Date(GENERALIZED_TIME));
+    X509CRLHolder expected = builder.build(
+        new JcaContentSignerBuilder("SHA256withECDSA").build(keypair.getPrivate()));
+
+    File file = writeTempFile(expected.getEncoded());
+    try {
+      CrlStreamParser parser = new CrlStreamParser(file);
+      Assert.assertEquals("thisUpdate", new Date(GENERALIZED_TIME), parser.getThisUpdate());
+      Assert.assertNull("nextUpdate", parser.getNextUpdate());
+      Assert.assertNull("crlNumber", parser.getCrlNumber());
+      Assert.assertFalse("hasNext", parser.revokedCertificates().hasNext());
+      Assert.assertTrue("signature", parser.verifySignature(keypair.getPublic()));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testTruncatedCrl() throws Exception {
+    KeyPair keypair = generateKeypair();
+    X509v2CRLBuilder builder = new X509v2CRLBuilder(ISSUER, new Date(UTC_TIME));
+    for (int i = 1; i <= 100; i++) {
+      builder.addCRLEntry(BigInteger.valueOf(i), new Date(UTC_TIME), CRLReason.keyCompromise);
+    }
+    byte[] encoded = builder.build(
+        new JcaContentSignerBuilder("SHA256withECDSA").build(keypair.getPrivate())).getEncoded();
+
+    for (int len : new int[]{0, 1, 2, 10, encoded.length / 2, encoded.length - 1}) {
+      assertInvalid("truncated to " + len, Arrays.copyOf(encoded, len));
+    }
+  }
+
+  @Test
+  public void testInvalidLengths() throws Exception {
+    // indefinite length
+    assertInvalid("indefinite length", new byte[]{0x30, (byte) 0x80, 0x02, 0x01, 0x01, 0, 0});
+    // 5 length bytes
+    assertInvalid("5 length bytes", new byte[]{0x30, (byte) 0x85, 1, 0, 0, 0, 0, 0});
+    // length 0x7FFFFFFF, offset + length overflows int
+    assertInvalid("overflowing length",
+        new byte[]{0x30, (byte) 0x84, 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x30, 0});
+    // length 0xFFFFFFFF
+    assertInvalid("negative length", new byte[]{0x30, (byte) 0x84,
+        (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x30, 0});
+    // length beyond the outer sequence
+    assertInvalid("inner length", new byte[]{0x30, 0x04, 0x30, 0x05, 0x02, 0x01});
+  }
+
+  private static void assertInvalid(String desc, byte[] encoded) throws IOException {
+    File file = writeTempFile(encoded);
+    try {
+      new CrlStreamParser(file);
+      Assert.fail(desc + ": IOException expected");
+    } catch (IOException ex) {
+      // expected
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static KeyPair generateKeypair() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(new ECGenParameterSpec("secp256r1"));
+    return kpGen.generateKeyPair();
+  }
+
+  private static File writeTempFile(byte[] content) throws IOException {
+    File file = File.createTempFile("crl-", ".crl");
+    file.deleteOnExit();
+    Files.write(file.toPath(), content);
+    return file;
+  }
+
+}
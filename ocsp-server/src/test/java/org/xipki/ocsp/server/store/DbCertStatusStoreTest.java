@@ -0,0 +1,395 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ocsp.server.store;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.api.CertStatus;
+import org.xipki.ocsp.api.CertStatusInfo;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.Base64;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class DbCertStatusStoreTest {
+
+  /**
+   * OCSP database in memory with one issuer, accessed via JDBC. Only the statements used by
+   * the initialization and by the bulk query of the certificate status are supported.
+   */
+  private static class MemoryDatabase implements Driver {
+
+    /**
+     * The column REV of the table CERT by SN.
+     */
+    private final Map<String, Boolean> certs = new HashMap<>();
+
+    /**
+     * Serial numbers of the IN-lists of the executed queries.
+     */
+    private final List<List<BigInteger>> queries = new ArrayList<>();
+
+    synchronized List<List<BigInteger>> getQueries() {
+      return new ArrayList<>(queries);
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) {
+      return acceptsURL(url) ? proxy(Connection.class, this::invokeConnection) : null;
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+      return JDBC_URL.equals(url);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+      return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+      return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+      return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+      return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+      throw new SQLFeatureNotSupportedException();
+    }
+
+    private Object invokeConnection(Object conn, Method method, Object[] args)
+        throws SQLException {
+      switch (method.getName()) {
+        case "createStatement":
+          return proxy(Statement.class, (stmt, stmtMethod, stmtArgs) -> {
+            if (!"executeQuery".equals(stmtMethod.getName())) {
+              return defaultValue(stmt, stmtMethod, stmtArgs);
+            } else if (!"SELECT VALUE2 FROM DBSCHEMA WHERE NAME='CERTHASH_ALGO'"
+                .equals(stmtArgs[0])) {
+              throw new SQLFeatureNotSupportedException((String) stmtArgs[0]);
+            }
+            return resultSet(new String[]{"VALUE2"}, new Object[][]{{"SHA256"}});
+          });
+        case "prepareStatement":
+          return prepareStatement((String) args[0]);
+        case "getAutoCommit":
+        case "isValid":
+          return true;
+        default:
+          return defaultValue(conn, method, args);
+      }
+    }
+
+    private PreparedStatement prepareStatement(String sql) throws SQLException {
+      Map<Integer, Object> params = new HashMap<>();
+      ResultSetSupplier supplier;
+      if (sql.equals("SELECT ID,NBEFORE,REV_INFO,S1C,CERT,CRL_INFO FROM ISSUER")) {
+        supplier = () -> resultSet(new String[]{"ID", "S1C", "CERT"}, new Object[][]{{ISSUER_ID,
+          HashAlgo.SHA1.base64Hash(encodedCaCert), Base64.encodeToString(encodedCaCert)}});
+      } else if (sql.startsWith("SELECT SN,NBEFORE,NAFTER,REV,RR,RT FROM CERT WHERE IID=? AND "
+          + "SN IN (")) {
+        supplier = () -> selectCerts(params);
+      } else {
+        throw new SQLFeatureNotSupportedException(sql);
+      }
+
+      return proxy(PreparedStatement.class, (ps, psMethod, psArgs) -> {
+        String name = psMethod.getName();
+        if (name.startsWith("set") && psArgs.length == 2) {
+          params.put((Integer) psArgs[0], psArgs[1]);
+          return null;
+        } else if (name.equals("executeQuery")) {
+          return supplier.get();
+        } else {
+          return defaultValue(ps, psMethod, psArgs);
+        }
+      });
+    }
+
+    private synchronized ResultSet selectCerts(Map<Integer, Object> params) throws SQLException {
+      // column 1: IID, columns 2 ...: SN
+      if ((Integer) params.get(1) != ISSUER_ID) {
+        throw new SQLException("unknown issuer " + params.get(1));
+      }
+
+      List<BigInteger> serials = new ArrayList<>();
+      List<Object[]> rows = new ArrayList<>();
+      for (int i = 2; i <= params.size(); i++) {
+        String serial = (String) params.get(i);
+        serials.add(new BigInteger(serial, 16));
+        Boolean revoked = certs.get(serial);
+        if (revoked != null) {
+          rows.add(new Object[]{serial, revoked, revoked ? REV_TIME : 0L});
+        }
+      }
+      queries.add(serials);
+      return resultSet(new String[]{"SN", "REV", "RT"}, rows.toArray(new Object[0][]));
+    }
+
+  } // class MemoryDatabase
+
+  private interface ResultSetSupplier {
+
+    ResultSet get() throws SQLException;
+
+  } // interface ResultSetSupplier
+
+  private static final String JDBC_URL = "jdbc:h2:mem:dbcertstatusstoretest";
+
+  private static final int ISSUER_ID = 1;
+
+  private static final long REV_TIME = 1500000000L;
+
+  private static X509Certificate caCert;
+
+  private static byte[] encodedCaCert;
+
+  private MemoryDatabase database;
+
+  private DbCertStatusStore store;
+
+  private RequestIssuer reqIssuer;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(new ECGenParameterSpec("secp256r1"));
+    KeyPair keypair = kpGen.generateKeyPair();
+
+    X500Name subject = new X500Name("CN=ca1");
+    JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(subject,
+        BigInteger.ONE, new Date(), new Date(System.currentTimeMillis() + 86400000L), subject,
+        keypair.getPublic());
+    caCert = new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(
+            keypair.getPrivate())));
+    encodedCaCert = caCert.getEncoded();
+  }
+
+  @Before
+  public void openStore() throws Exception {
+    database = new MemoryDatabase();
+    DriverManager.registerDriver(database);
+
+    Properties conf = new Properties();
+    conf.setProperty("jdbcUrl", JDBC_URL);
+    conf.setProperty("maximumPoolSize", "1");
+    DataSourceWrapper datasource =
+        new DataSourceFactory().createDataSource("ocsp", conf, null);
+
+    store = new DbCertStatusStore();
+    store.setName("store1");
+    // closes the datasource as well
+    store.init(null, datasource);
+    reqIssuer = new RequestIssuer(HashAlgo.SHA1,
+        new IssuerEntry(ISSUER_ID, caCert).getEncodedHash(HashAlgo.SHA1));
+  }
+
+  @After
+  public void closeStore() throws Exception {
+    store.close();
+    DriverManager.deregisterDriver(database);
+  }
+
+  @Test
+  public void testBulkCertStatus() throws Exception {
+    for (int i = 1; i <= 200; i += 2) {
+      database.certs.put(Integer.toHexString(i), i % 3 == 0);
+    }
+
+    // serial numbers 1 to 120, each requested twice, and the non-positive serial number 0
+    List<BigInteger> serials = new ArrayList<>();
+    for (int i = 1; i <= 120; i++) {
+      serials.add(BigInteger.valueOf(i));
+    }
+    serials.add(BigInteger.ZERO);
+    for (int i = 120; i >= 1; i--) {
+      serials.add(BigInteger.valueOf(i));
+    }
+
+    List<CertStatusInfo> infos =
+        store.getCertStatus(new Date(), reqIssuer, serials, false, false, false);
+    Assert.assertEquals("infos", serials.size(), infos.size());
+    for (int i = 0; i < serials.size(); i++) {
+      int serial = serials.get(i).intValue();
+      CertStatus expected;
+      if (serial == 0 || serial % 2 == 0) {
+        expected = CertStatus.UNKNOWN;
+      } else {
+        expected = (serial % 3 == 0) ? CertStatus.REVOKED : CertStatus.GOOD;
+      }
+      Assert.assertEquals("status of " + serial, expected, infos.get(i).getCertStatus());
+    }
+
+    // each serial number is queried once, in the order of the request, 50 per query
+    List<List<BigInteger>> queries = database.getQueries();
+    Assert.assertEquals("queries", 3, queries.size());
+    Assert.assertEquals("serials in query 1", 50, queries.get(0).size());
+    Assert.assertEquals("serials in query 2", 50, queries.get(1).size());
+    Assert.assertEquals("serials in query 3", 20, queries.get(2).size());
+
+    List<BigInteger> queriedSerials = new ArrayList<>();
+    for (List<BigInteger> query : queries) {
+      queriedSerials.addAll(query);
+    }
+    Assert.assertEquals("queried serials", serials.subList(0, 120), queriedSerials);
+  }
+
+  @Test
+  public void testDuplicateSerials() throws Exception {
+    database.certs.put("5", true);
+
+    List<BigInteger> serials = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      serials.add(BigInteger.valueOf(5));
+    }
+
+    List<CertStatusInfo> infos =
+        store.getCertStatus(new Date(), reqIssuer, serials, false, false, false);
+    Set<CertStatus> statuses = new HashSet<>();
+    for (CertStatusInfo info : infos) {
+      statuses.add(info.getCertStatus());
+    }
+    Assert.assertEquals("infos", 1000, infos.size());
+    Assert.assertEquals("statuses", 1, statuses.size());
+    Assert.assertEquals("status", CertStatus.REVOKED, infos.get(0).getCertStatus());
+
+    List<List<BigInteger>> queries = database.getQueries();
+    Assert.assertEquals("queries", 1, queries.size());
+    Assert.assertEquals("serials in query", 1, queries.get(0).size());
+  }
+
+  private static ResultSet resultSet(String[] columns, Object[][] rows) {
+    final int[] index = {-1};
+    return proxy(ResultSet.class, (rs, rsMethod, rsArgs) -> {
+      String name = rsMethod.getName();
+      if (name.equals("next")) {
+        return ++index[0] < rows.length;
+      } else if (!name.startsWith("get") || rsArgs == null || !(rsArgs[0] instanceof String)) {
+        return defaultValue(rs, rsMethod, rsArgs);
+      }
+
+      // columns not in the result are NULL
+      Object value = null;
+      for (int i = 0; i < columns.length; i++) {
+        if (columns[i].equals(rsArgs[0])) {
+          value = rows[index[0]][i];
+        }
+      }
+
+      if (value == null) {
+        return defaultValue(rs, rsMethod, rsArgs);
+      } else if (name.equals("getInt")) {
+        return ((Number) value).intValue();
+      } else if (name.equals("getLong")) {
+        return ((Number) value).longValue();
+      } else {
+        return value;
+      }
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return (T) Proxy.newProxyInstance(DbCertStatusStoreTest.class.getClassLoader(),
+        new Class<?>[]{type}, handler);
+  }
+
+  private static Object defaultValue(Object obj, Method method, Object[] args) {
+    switch (method.getName()) {
+      case "toString":
+        return method.getDeclaringClass().getSimpleName() + "@" + System.identityHashCode(obj);
+      case "hashCode":
+        return System.identityHashCode(obj);
+      case "equals":
+        return obj == args[0];
+      default:
+        break;
+    }
+
+    Class<?> type = method.getReturnType();
+    if (type == boolean.class) {
+      return false;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == long.class) {
+      return 0L;
+    } else {
+      return null;
+    }
+  }
+
+}
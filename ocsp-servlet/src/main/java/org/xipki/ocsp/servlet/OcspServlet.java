@@ -92,16 +92,17 @@ public class OcspServlet extends HttpServlet {
 
       OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, reqContent,
           false);
-      if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
+      if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponseLength() == 0) {
         LOG.error("processRequest returned null, this should not happen");
         sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        return;
       }
 
-      byte[] encodedOcspResp = ocspRespWithCacheInfo.getResponse();
+      // the response is written part by part
       resp.setStatus(HttpServletResponse.SC_OK);
       resp.setContentType(CT_RESPONSE);
-      resp.setContentLength(encodedOcspResp.length);
-      resp.getOutputStream().write(encodedOcspResp);
+      resp.setContentLength(ocspRespWithCacheInfo.getResponseLength());
+      ocspRespWithCacheInfo.writeResponse(resp.getOutputStream());
     } catch (Throwable th) {
       if (th instanceof EOFException) {
         LogUtil.warn(LOG, th, "Connection reset by peer");
@@ -19,6 +19,7 @@ package org.xipki.p11proxy.servlet;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -49,6 +50,10 @@ public class HttpProxyServlet extends HttpServlet {
 
   private LocalP11CryptServicePool localP11CryptServicePool;
 
+  private Executor executor;
+
+  private int parallelism = 1;
+
   public HttpProxyServlet() {
     responder = new P11ProxyResponder();
   }
@@ -65,7 +70,8 @@ public class HttpProxyServlet extends HttpServlet {
       }
 
       byte[] requestBytes = IoUtil.read(req.getInputStream());
-      byte[] responseBytes = responder.processRequest(localP11CryptServicePool, requestBytes);
+      byte[] responseBytes = responder.processRequests(localP11CryptServicePool, requestBytes,
+          executor, parallelism);
       resp.setStatus(HttpServletResponse.SC_OK);
       resp.setContentType(RESPONSE_MIMETYPE);
       resp.setContentLength(responseBytes.length);
@@ -87,6 +93,16 @@ public class HttpProxyServlet extends HttpServlet {
     this.localP11CryptServicePool = localP11CryptServicePool;
   }
 
+  /**
+   * Sets the executor to process the messages of one request in parallel.
+   * @param executor the executor, {@code null} to process the messages sequentially.
+   * @param parallelism maximal number of threads used for one request.
+   */
+  public void setExecutor(Executor executor, int parallelism) {
+    this.executor = executor;
+    this.parallelism = Math.max(1, parallelism);
+  }
+
   private static void sendError(HttpServletResponse resp, int status) {
     resp.setStatus(status);
     resp.setContentLength(0);
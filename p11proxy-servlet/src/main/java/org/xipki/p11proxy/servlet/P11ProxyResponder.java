@@ -22,10 +22,15 @@ import java.security.InvalidKeyException;
 import java.security.PublicKey;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1Integer;
@@ -106,6 +111,7 @@ public class P11ProxyResponder {
   public P11ProxyResponder() {
     Set<Short> tmpVersions = new HashSet<>();
     tmpVersions.add(P11ProxyConstants.VERSION_V1_0);
+    tmpVersions.add(P11ProxyConstants.VERSION_V1_1);
     this.versions = Collections.unmodifiableSet(tmpVersions);
   }
 
@@ -113,6 +119,99 @@ public class P11ProxyResponder {
     return versions;
   }
 
+  /**
+   * Processes the messages in one HTTP request. In version 1.1, the request may contain
+   * several messages, which are processed in parallel.
+   * @param pool pool of the PKCS#11 crypt services.
+   * @param requests the messages.
+   * @param executor executor to process the messages in parallel, {@code null} to process
+   *          them in the current thread.
+   * @param parallelism maximal number of threads of the executor used for one request.
+   * @return the response messages in the same order.
+   */
+  public byte[] processRequests(LocalP11CryptServicePool pool, byte[] requests,
+      Executor executor, int parallelism) {
+    List<byte[]> messages = splitRequests(requests);
+    if (messages == null) {
+      // single message, or invalid, see processRequest
+      return processRequest(pool, requests);
+    }
+
+    final int n = messages.size();
+    final byte[][] responses = new byte[n][];
+    final AtomicInteger nextIndex = new AtomicInteger(0);
+    final CountDownLatch processed = new CountDownLatch(n);
+
+    Runnable worker = () -> {
+      int index;
+      while ((index = nextIndex.getAndIncrement()) < n) {
+        try {
+          responses[index] = processRequest(pool, messages.get(index));
+        } finally {
+          processed.countDown();
+        }
+      }
+    };
+
+    // the current thread processes the messages as well.
+    int helpers = (executor == null) ? 0 : Math.min(n, parallelism) - 1;
+    for (int i = 0; i < helpers; i++) {
+      try {
+        executor.execute(worker);
+      } catch (RejectedExecutionException ex) {
+        break;
+      }
+    }
+
+    worker.run();
+    try {
+      processed.await();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while processing the requests", ex);
+    }
+
+    int len = 0;
+    for (byte[] response : responses) {
+      len += response.length;
+    }
+
+    byte[] ret = new byte[len];
+    int offset = 0;
+    for (byte[] response : responses) {
+      System.arraycopy(response, 0, ret, offset, response.length);
+      offset += response.length;
+    }
+    return ret;
+  } // method processRequests
+
+  private List<byte[]> splitRequests(byte[] requests) {
+    if (requests.length < 10
+        || IoUtil.parseShort(requests, 0) != P11ProxyConstants.VERSION_V1_1) {
+      return null;
+    }
+
+    List<byte[]> messages = new ArrayList<>();
+    int offset = 0;
+    while (offset < requests.length) {
+      if (requests.length - offset < 10) {
+        return null;
+      }
+
+      long len = 10L + (IoUtil.parseInt(requests, offset + 6) & 0xFFFFFFFFL);
+      if (offset + len > requests.length) {
+        return null;
+      }
+
+      byte[] message = new byte[(int) len];
+      System.arraycopy(requests, offset, message, 0, message.length);
+      messages.add(message);
+      offset += message.length;
+    }
+
+    return messages.size() < 2 ? null : messages;
+  } // method splitRequests
+
   /**
    * The request is constructed as follows.
    * <pre>
@@ -18,6 +18,8 @@
 package org.xipki.p11proxy.servlet;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -45,10 +47,14 @@ public class ProxyServletFilter implements Filter {
 
   private static final Logger LOG = LoggerFactory.getLogger(ProxyServletFilter.class);
 
+  private static final String INIT_PARAM_THREADS = "threads";
+
   private Securities securities;
 
   private HttpProxyServlet servlet;
 
+  private ExecutorService executor;
+
   @Override
   public void init(FilterConfig filterConfig) throws ServletException {
     securities = new Securities();
@@ -68,12 +74,30 @@ public class ProxyServletFilter implements Filter {
           "could not initialize LocalP11CryptServicePool: " + ex.getMessage(), ex);
     }
 
+    // threads to process the messages of one request in parallel
+    String str = filterConfig.getInitParameter(INIT_PARAM_THREADS);
+    int threads;
+    try {
+      threads = (str == null) ? Runtime.getRuntime().availableProcessors()
+          : Integer.parseInt(str.trim());
+    } catch (NumberFormatException ex) {
+      throw new ServletException("invalid init-param " + INIT_PARAM_THREADS + ": " + str);
+    }
+
     servlet = new HttpProxyServlet();
     servlet.setLocalP11CryptServicePool(pool);
+    if (threads > 1) {
+      executor = Executors.newFixedThreadPool(threads);
+      servlet.setExecutor(executor, threads);
+    }
   }
 
   @Override
   public void destroy() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+
     if (securities != null) {
       securities.close();
     }
@@ -0,0 +1,163 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.p11proxy.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.xipki.security.pkcs11.proxy.P11ProxyConstants;
+import org.xipki.util.IoUtil;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class P11ProxyResponderTest {
+
+  private static final short VERSION_UNKNOWN = 0x0200;
+
+  private static final short MODULE_ID = 1;
+
+  // no module is available
+  private final LocalP11CryptServicePool pool = new LocalP11CryptServicePool();
+
+  private final P11ProxyResponder responder = new P11ProxyResponder();
+
+  @Test
+  public void testSingleMessage() throws Exception {
+    byte[] request = message(P11ProxyConstants.VERSION_V1_1, 1,
+        P11ProxyConstants.ACTION_GET_SLOT_IDS, null);
+    List<byte[]> responses = split(responder.processRequests(pool, request, null, 1));
+    Assert.assertEquals("responses", 1, responses.size());
+    assertResponse(responses.get(0), P11ProxyConstants.VERSION_V1_1, 1,
+        P11ProxyConstants.RC_UNKNOWN_MODULE, P11ProxyConstants.ACTION_GET_SLOT_IDS);
+  }
+
+  @Test
+  public void testMultipleMessages() throws Exception {
+    ByteArrayOutputStream requests = new ByteArrayOutputStream();
+    // content is not permitted
+    requests.write(message(P11ProxyConstants.VERSION_V1_1, 1,
+        P11ProxyConstants.ACTION_GET_SERVER_CAPS, new byte[]{5, 0}));
+    requests.write(message(P11ProxyConstants.VERSION_V1_1, 2,
+        P11ProxyConstants.ACTION_GET_SLOT_IDS, null));
+    requests.write(message(VERSION_UNKNOWN, 3, P11ProxyConstants.ACTION_GET_SLOT_IDS, null));
+    // messages of version 1.0 may follow the first message of version 1.1
+    requests.write(message(P11ProxyConstants.VERSION_V1_0, 4,
+        P11ProxyConstants.ACTION_GET_SLOT_IDS, null));
+
+    List<byte[]> responses = split(
+        responder.processRequests(pool, requests.toByteArray(), null, 1));
+    Assert.assertEquals("responses", 4, responses.size());
+    assertResponse(responses.get(0), P11ProxyConstants.VERSION_V1_1, 1,
+        P11ProxyConstants.RC_BAD_REQUEST, P11ProxyConstants.ACTION_GET_SERVER_CAPS);
+    assertResponse(responses.get(1), P11ProxyConstants.VERSION_V1_1, 2,
+        P11ProxyConstants.RC_UNKNOWN_MODULE, P11ProxyConstants.ACTION_GET_SLOT_IDS);
+    assertResponse(responses.get(2), P11ProxyConstants.VERSION_V1_0, 3,
+        P11ProxyConstants.RC_UNSUPPORTED_VERSION, P11ProxyConstants.ACTION_GET_SLOT_IDS);
+    assertResponse(responses.get(3), P11ProxyConstants.VERSION_V1_0, 4,
+        P11ProxyConstants.RC_UNKNOWN_MODULE, P11ProxyConstants.ACTION_GET_SLOT_IDS);
+  }
+
+  @Test
+  public void testParallelMessages() throws Exception {
+    final int n = 500;
+    ByteArrayOutputStream requests = new ByteArrayOutputStream();
+    for (int i = 0; i < n; i++) {
+      requests.write(message(P11ProxyConstants.VERSION_V1_1, i,
+          (i % 2 == 0) ? P11ProxyConstants.ACTION_GET_SLOT_IDS
+              : P11ProxyConstants.ACTION_GET_SERVER_CAPS, null));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<byte[]> responses;
+    try {
+      responses = split(responder.processRequests(pool, requests.toByteArray(), executor, 4));
+    } finally {
+      executor.shutdown();
+    }
+
+    Assert.assertEquals("responses", n, responses.size());
+    for (int i = 0; i < n; i++) {
+      assertResponse(responses.get(i), P11ProxyConstants.VERSION_V1_1, i,
+          P11ProxyConstants.RC_UNKNOWN_MODULE, (i % 2 == 0)
+              ? P11ProxyConstants.ACTION_GET_SLOT_IDS : P11ProxyConstants.ACTION_GET_SERVER_CAPS);
+    }
+  }
+
+  @Test
+  public void testTruncatedMessages() throws Exception {
+    byte[] message = message(P11ProxyConstants.VERSION_V1_1, 1,
+        P11ProxyConstants.ACTION_GET_SLOT_IDS, null);
+    byte[] requests = new byte[2 * message.length - 1];
+    System.arraycopy(message, 0, requests, 0, message.length);
+    System.arraycopy(message, 0, requests, message.length, message.length - 1);
+
+    // processed as one invalid message
+    List<byte[]> responses = split(responder.processRequests(pool, requests, null, 1));
+    Assert.assertEquals("responses", 1, responses.size());
+    assertResponse(responses.get(0), P11ProxyConstants.VERSION_V1_1, 1,
+        P11ProxyConstants.RC_BAD_REQUEST, P11ProxyConstants.ACTION_GET_SLOT_IDS);
+  }
+
+  private static byte[] message(short version, int transactionId, short action,
+      byte[] content) {
+    int contentLen = (content == null) ? 0 : content.length;
+    byte[] message = new byte[14 + contentLen];
+    IoUtil.writeShort(version, message, 0);
+    IoUtil.writeInt(transactionId, message, 2);
+    IoUtil.writeInt(4 + contentLen, message, 6);
+    IoUtil.writeShort(action, message, 10);
+    IoUtil.writeShort(MODULE_ID, message, 12);
+    if (content != null) {
+      System.arraycopy(content, 0, message, 14, contentLen);
+    }
+    return message;
+  }
+
+  private static List<byte[]> split(byte[] responses) {
+    List<byte[]> messages = new ArrayList<>();
+    int offset = 0;
+    while (offset < responses.length) {
+      Assert.assertTrue("response too short", responses.length - offset >= 10);
+      int len = 10 + IoUtil.parseInt(responses, offset + 6);
+      Assert.assertTrue("message length", offset + len <= responses.length);
+      byte[] message = new byte[len];
+      System.arraycopy(responses, offset, message, 0, len);
+      messages.add(message);
+      offset += len;
+    }
+    return messages;
+  }
+
+  private static void assertResponse(byte[] response, short version, int transactionId,
+      short rc, short action) {
+    Assert.assertEquals("version", version, IoUtil.parseShort(response, 0));
+    Assert.assertEquals("transactionId", transactionId, IoUtil.parseInt(response, 2));
+    Assert.assertEquals("rc", rc, IoUtil.parseShort(response, 10));
+    Assert.assertEquals("action", action, IoUtil.parseShort(response, 12));
+  }
+
+}
@@ -29,6 +29,7 @@ import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.util.Enumeration;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -209,7 +210,15 @@ public class BenchmarkHttpClient {
 
   public static interface ResponseHandler {
 
-    void onComplete(FullHttpResponse response);
+    /**
+     * Called if a response is received.
+     * @param response
+     *          The response.
+     * @param startNanos
+     *          Start time of the request, as passed to
+     *          {@link BenchmarkHttpClient#send(FullHttpRequest, long)}.
+     */
+    void onComplete(FullHttpResponse response, long startNanos);
 
     void onError();
 
@@ -259,7 +268,10 @@ public class BenchmarkHttpClient {
     public void channelRead0(ChannelHandlerContext ctx, FullHttpResponse resp) {
       try {
         decrementPendingRequests();
-        responseHandler.onComplete(resp);
+        // the responses are received in the order of the requests
+        Long startNanos = startTimes.poll();
+        responseHandler.onComplete(resp,
+            (startNanos == null) ? System.nanoTime() : startNanos.longValue());
       } catch (Throwable th) {
         LOG.error("unexpected error", th);
       }
@@ -292,6 +304,8 @@ public class BenchmarkHttpClient {
 
   private int pendingRequests = 0;
 
+  private final ConcurrentLinkedQueue<Long> startTimes = new ConcurrentLinkedQueue<>();
+
   private String host;
 
   private int port;
@@ -403,6 +417,19 @@ public class BenchmarkHttpClient {
   }
 
   public void send(FullHttpRequest request) throws HttpClientException {
+    send(request, System.nanoTime());
+  }
+
+  /**
+   * Sends the request.
+   * @param request
+   *          The request.
+   * @param startNanos
+   *          Start time of the request, see {@link System#nanoTime()}.
+   * @throws HttpClientException
+   *           if the request could not be sent.
+   */
+  public void send(FullHttpRequest request, long startNanos) throws HttpClientException {
     request.headers().add(HttpHeaderNames.HOST, hostHeader);
     if (!channel.isActive()) {
       throw new HttpClientException("channel is not active");
@@ -414,6 +441,7 @@ public class BenchmarkHttpClient {
       throw new HttpClientException("sending poll is full");
     }
     incrementPendingRequests();
+    startTimes.add(startNanos);
     ChannelFuture future = this.channel.writeAndFlush(request);
     future.awaitUninterruptibly();
   }
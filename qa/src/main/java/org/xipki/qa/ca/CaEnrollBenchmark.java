@@ -177,12 +177,13 @@ public class CaEnrollBenchmark extends BenchmarkExecutor implements ResponseHand
     public void run() {
       while (!stop() && getErrorAccout() < 1) {
         try {
+          long startNanos = nextStartTime();
           PKIMessage certReq = nextCertRequest();
           if (certReq == null) {
             break;
           }
 
-          testNext(certReq);
+          testNext(certReq, startNanos);
         } catch (HttpClientException | CertificateException | IOException ex) {
           LOG.warn("exception", ex);
           account(1, 1);
@@ -199,14 +200,15 @@ public class CaEnrollBenchmark extends BenchmarkExecutor implements ResponseHand
       }
     }
 
-    private void testNext(PKIMessage certReq) throws HttpClientException, IOException {
+    private void testNext(PKIMessage certReq, long startNanos)
+        throws HttpClientException, IOException {
       byte[] encoded = certReq.getEncoded();
       ByteBuf content = Unpooled.wrappedBuffer(encoded);
       FullHttpRequest httpReq = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
           HttpMethod.POST, conf.caUrl, content);
       httpReq.headers().addInt(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes())
         .add(HttpHeaderNames.CONTENT_TYPE, REQUEST_MIMETYPE);
-      httpClient.send(httpReq);
+      httpClient.send(httpReq, startNanos);
     } // method testNext
 
   } // class Testor
@@ -334,7 +336,7 @@ public class CaEnrollBenchmark extends BenchmarkExecutor implements ResponseHand
   }
 
   @Override
-  public void onComplete(FullHttpResponse response) {
+  public void onComplete(FullHttpResponse response, long startNanos) {
     boolean success;
     try {
       success = onComplete0(response);
@@ -343,7 +345,7 @@ public class CaEnrollBenchmark extends BenchmarkExecutor implements ResponseHand
       success = false;
     }
 
-    account(1, success ? 0 : 1);
+    account(1, success ? 0 : 1, startNanos);
   }
 
   private boolean onComplete0(FullHttpResponse response) {
@@ -163,6 +163,11 @@ class OcspBenchRequestor {
   }
 
   public void ask(BigInteger[] serialNumbers) throws OcspRequestorException, HttpClientException {
+    ask(serialNumbers, System.nanoTime());
+  }
+
+  public void ask(BigInteger[] serialNumbers, long startNanos)
+      throws OcspRequestorException, HttpClientException {
     byte[] ocspReq = buildRequest(serialNumbers);
     int size = ocspReq.length;
 
@@ -187,7 +192,7 @@ class OcspBenchRequestor {
     }
     request.headers().add("Content-Type", "application/ocsp-request");
 
-    httpClient.send(request);
+    httpClient.send(request, startNanos);
   } // method ask
 
   private byte[] buildRequest(BigInteger[] serialNumbers) throws OcspRequestorException {
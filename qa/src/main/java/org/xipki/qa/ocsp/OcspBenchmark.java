@@ -64,7 +64,7 @@ public class OcspBenchmark extends BenchmarkExecutor implements ResponseHandler
         }
 
         try {
-          requestor.ask(new BigInteger[]{sn});
+          requestor.ask(new BigInteger[]{sn}, nextStartTime());
         } catch (Throwable th) {
           LOG.warn("{}: {}", th.getClass().getName(), th.getMessage());
           account(1, 1);
@@ -129,7 +129,7 @@ public class OcspBenchmark extends BenchmarkExecutor implements ResponseHandler
   }
 
   @Override
-  public void onComplete(FullHttpResponse response) {
+  public void onComplete(FullHttpResponse response, long startNanos) {
     boolean success;
     try {
       success = onComplete0(response);
@@ -138,7 +138,7 @@ public class OcspBenchmark extends BenchmarkExecutor implements ResponseHandler
       success = false;
     }
 
-    account(1, success ? 0 : 1);
+    account(1, success ? 0 : 1, startNanos);
   }
 
   @Override
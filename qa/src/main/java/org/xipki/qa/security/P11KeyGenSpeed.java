@@ -117,12 +117,13 @@ public abstract class P11KeyGenSpeed extends BenchmarkExecutor {
     @Override
     public void run() {
       while (!stop() && getErrorAccout() < 1) {
+        long startNanos = nextStartTime();
         try {
           genKeypair();
-          account(1, 0);
+          account(1, 0, startNanos);
         } catch (Exception ex) {
           LOG.error("P11KeyGenSpeed.Testor.run()", ex);
-          account(1, 1);
+          account(1, 1, startNanos);
         }
       }
     }
@@ -229,12 +229,13 @@ public abstract class P11SignSpeed extends BenchmarkExecutor {
     @Override
     public void run() {
       while (!stop() && getErrorAccout() < 1) {
+        long startNanos = nextStartTime(batch);
         try {
           signer.sign(data);
-          account(batch, 0);
+          account(batch, 0, startNanos);
         } catch (Exception ex) {
           LOG.error("P11SignSpeed.Testor.run()", ex);
-          account(batch, batch);
+          account(batch, batch, startNanos);
         }
       }
     }
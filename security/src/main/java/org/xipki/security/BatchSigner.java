@@ -0,0 +1,269 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.security.SignatureException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.RuntimeOperatorException;
+import org.xipki.util.Args;
+
+/**
+ * Signs the data of concurrent callers in batches via
+ * {@link ConcurrentContentSigner#sign(byte[][])}, so that a signer is borrowed only once per
+ * batch.
+ *
+ * <p>No thread is started and no delay is added: if fewer than {@code maxConcurrentBatches}
+ * batches are being signed, the caller signs its data together with at most
+ * {@code maxBatchSize - 1} pending entries of other callers. Otherwise it waits until
+ * either its data has been taken in the batch of another caller, or a batch has been
+ * finished. A caller signs at most one batch.
+ *
+ * <p>Use it only if {@link ConcurrentContentSigner#isBatchSignEfficient()} is {@code true}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class BatchSigner {
+
+  private static class SignRequest {
+
+    private final byte[] data;
+
+    private final CompletableFuture<byte[]> signature = new CompletableFuture<>();
+
+    // whether the request has been taken in a batch, guarded by the lock on pendingRequests
+    private boolean polled;
+
+    SignRequest(byte[] data) {
+      this.data = data;
+    }
+
+  } // class SignRequest
+
+  private final ConcurrentContentSigner signer;
+
+  private final int maxBatchSize;
+
+  private final int maxConcurrentBatches;
+
+  private final AlgorithmIdentifier algorithmIdentifier;
+
+  private final byte[] encodedAlgorithmIdentifier;
+
+  private final ArrayDeque<SignRequest> pendingRequests = new ArrayDeque<>();
+
+  private int activeBatches;
+
+  private final AtomicLong batchCount = new AtomicLong(0);
+
+  private final AtomicLong signCount = new AtomicLong(0);
+
+  /**
+   * Constructor.
+   * @param signer
+   *          Signer to sign the batches. Must not be {@code null}.
+   * @param maxBatchSize
+   *          Maximal number of entries signed in one batch.
+   * @param maxConcurrentBatches
+   *          Maximal number of batches signed concurrently. If it is less than
+   *          {@link ConcurrentContentSigner#getParallelism()} of {@code signer}, the latter
+   *          is used, so that all signers are used.
+   * @throws NoIdleSignerException
+   *         If no idle signer is available to retrieve the algorithm identifier.
+   */
+  public BatchSigner(ConcurrentContentSigner signer, int maxBatchSize, int maxConcurrentBatches)
+      throws NoIdleSignerException {
+    this.signer = Args.notNull(signer, "signer");
+    this.maxBatchSize = Args.positive(maxBatchSize, "maxBatchSize");
+    this.maxConcurrentBatches = Math.max(
+        Args.positive(maxConcurrentBatches, "maxConcurrentBatches"), signer.getParallelism());
+
+    ConcurrentBagEntrySigner signer0 = signer.borrowSigner();
+    try {
+      this.algorithmIdentifier = signer0.value().getAlgorithmIdentifier();
+      this.encodedAlgorithmIdentifier = signer0.value().getEncodedAlgorithmIdentifier();
+    } finally {
+      signer.requiteSigner(signer0);
+    }
+  }
+
+  public ConcurrentContentSigner getSigner() {
+    return signer;
+  }
+
+  public AlgorithmIdentifier getAlgorithmIdentifier() {
+    return algorithmIdentifier;
+  }
+
+  public byte[] getEncodedAlgorithmIdentifier() {
+    return encodedAlgorithmIdentifier;
+  }
+
+  public int getMaxConcurrentBatches() {
+    return maxConcurrentBatches;
+  }
+
+  public long getBatchCount() {
+    return batchCount.get();
+  }
+
+  public long getSignCount() {
+    return signCount.get();
+  }
+
+  /**
+   * Sign the data.
+   * @param data
+   *          Data to be signed. Must not be {@code null}.
+   * @return the signature
+   * @throws NoIdleSignerException
+   *         If no idle signer is available
+   * @throws SignatureException
+   *         if could not sign the data.
+   */
+  public byte[] sign(byte[] data) throws NoIdleSignerException, SignatureException {
+    SignRequest request = new SignRequest(Args.notNull(data, "data"));
+
+    List<SignRequest> batch = null;
+    synchronized (pendingRequests) {
+      pendingRequests.add(request);
+      while (!request.polled) {
+        if (activeBatches < maxConcurrentBatches) {
+          activeBatches++;
+          batch = pollBatch(request);
+          break;
+        }
+
+        try {
+          pendingRequests.wait();
+        } catch (InterruptedException ex) {
+          pendingRequests.remove(request);
+          Thread.currentThread().interrupt();
+          throw new SignatureException("interrupted while waiting for the signature", ex);
+        }
+      }
+    }
+
+    if (batch != null) {
+      try {
+        signBatch(batch);
+      } finally {
+        synchronized (pendingRequests) {
+          activeBatches--;
+          pendingRequests.notifyAll();
+        }
+      }
+    }
+
+    // wait until the batch containing the request has been signed
+    try {
+      return request.signature.join();
+    } catch (CompletionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof NoIdleSignerException) {
+        throw (NoIdleSignerException) cause;
+      } else if (cause instanceof SignatureException) {
+        throw (SignatureException) cause;
+      } else {
+        throw new SignatureException(cause.getMessage(), cause);
+      }
+    }
+  }
+
+  /**
+   * Returns a {@link ContentSigner} whose signature is computed by this batch signer. The
+   * returned object must be used only once. Errors are thrown as
+   * {@link RuntimeOperatorException} in {@link ContentSigner#getSignature()}.
+   * @return the content signer.
+   */
+  public ContentSigner newContentSigner() {
+    return new ContentSigner() {
+
+      private final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+      @Override
+      public AlgorithmIdentifier getAlgorithmIdentifier() {
+        return algorithmIdentifier;
+      }
+
+      @Override
+      public OutputStream getOutputStream() {
+        return stream;
+      }
+
+      @Override
+      public byte[] getSignature() {
+        try {
+          return sign(stream.toByteArray());
+        } catch (NoIdleSignerException | SignatureException ex) {
+          throw new RuntimeOperatorException(ex.getMessage(), ex);
+        }
+      }
+
+    };
+  }
+
+  // must be called with the lock on pendingRequests. Returns the request together with the
+  // oldest pending requests.
+  private List<SignRequest> pollBatch(SignRequest request) {
+    pendingRequests.remove(request);
+    request.polled = true;
+    int size = Math.min(maxBatchSize - 1, pendingRequests.size());
+    List<SignRequest> batch = new ArrayList<>(size + 1);
+    batch.add(request);
+    for (int i = 0; i < size; i++) {
+      SignRequest pendingRequest = pendingRequests.poll();
+      pendingRequest.polled = true;
+      batch.add(pendingRequest);
+    }
+    return batch;
+  }
+
+  private void signBatch(List<SignRequest> batch) {
+    final int size = batch.size();
+    byte[][] data = new byte[size][];
+    for (int i = 0; i < size; i++) {
+      data[i] = batch.get(i).data;
+    }
+
+    try {
+      byte[][] signatures = signer.sign(data);
+      for (int i = 0; i < size; i++) {
+        batch.get(i).signature.complete(signatures[i]);
+      }
+      batchCount.incrementAndGet();
+      signCount.addAndGet(size);
+    } catch (Throwable th) {
+      for (SignRequest request : batch) {
+        request.signature.completeExceptionally(th);
+      }
+    }
+  }
+
+}
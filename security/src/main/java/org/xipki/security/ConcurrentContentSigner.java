@@ -132,6 +132,26 @@ public interface ConcurrentContentSigner extends Closeable {
 
   void requiteSigner(ConcurrentBagEntrySigner signer);
 
+  /**
+   * Returns the number of the signer instances, which can sign concurrently.
+   * @return the number of the signer instances.
+   * @since 5.0.1
+   */
+  default int getParallelism() {
+    return 1;
+  }
+
+  /**
+   * Returns whether {@link #sign(byte[][])} signs the data with less effort than signing
+   * them one by one via {@link #sign(byte[])}, e.g. because the signing device computes
+   * several signatures in one operation.
+   * @return whether signing in batches is more efficient.
+   * @since 5.0.1
+   */
+  default boolean isBatchSignEfficient() {
+    return false;
+  }
+
   boolean isHealthy();
 
 }
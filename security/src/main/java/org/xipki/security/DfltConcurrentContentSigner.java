@@ -69,6 +69,8 @@ public class DfltConcurrentContentSigner implements ConcurrentContentSigner {
 
   private final AlgorithmCode algorithmCode;
 
+  private final boolean batchSignEfficient;
+
   private PublicKey publicKey;
 
   private X509Certificate[] certificateChain;
@@ -105,9 +107,15 @@ public class DfltConcurrentContentSigner implements ConcurrentContentSigner {
     this.algorithmName = AlgorithmUtil.getSigOrMacAlgoName(algorithmIdentifier);
     this.algorithmCode = AlgorithmUtil.getSigOrMacAlgoCode(algorithmIdentifier);
 
+    boolean batchEfficient = true;
     for (XiContentSigner signer : signers) {
       this.signers.add(new ConcurrentBagEntrySigner(signer));
+      if (!(signer instanceof XiBatchContentSigner)
+          || !((XiBatchContentSigner) signer).isBatchSignEfficient()) {
+        batchEfficient = false;
+      }
     }
+    this.batchSignEfficient = batchEfficient;
 
     this.signingKey = signingKey;
     this.name = "defaultSigner-" + NAME_INDEX.getAndIncrement();
@@ -172,6 +180,16 @@ public class DfltConcurrentContentSigner implements ConcurrentContentSigner {
     signers.requite(signer);
   }
 
+  @Override
+  public int getParallelism() {
+    return signers.size();
+  }
+
+  @Override
+  public boolean isBatchSignEfficient() {
+    return batchSignEfficient;
+  }
+
   @Override
   public void initialize(String conf, PasswordResolver passwordResolver)
       throws XiSecurityException {
@@ -289,6 +307,9 @@ public class DfltConcurrentContentSigner implements ConcurrentContentSigner {
 
     try {
       XiContentSigner xiSigner = signer.value();
+      if (xiSigner instanceof XiBatchContentSigner) {
+        return ((XiBatchContentSigner) xiSigner).sign(data);
+      }
 
       for (int i = 0; i < data.length; i++) {
         OutputStream signatureStream = xiSigner.getOutputStream();
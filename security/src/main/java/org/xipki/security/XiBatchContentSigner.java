@@ -0,0 +1,48 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security;
+
+import java.security.SignatureException;
+
+/**
+ * {@link XiContentSigner} which can sign several data in one operation.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public interface XiBatchContentSigner extends XiContentSigner {
+
+  /**
+   * Returns whether {@link #sign(byte[][])} signs the data with less effort than signing
+   * them one by one.
+   * @return whether signing in batches is more efficient.
+   */
+  boolean isBatchSignEfficient();
+
+  /**
+   * Signs the data.
+   * @param data
+   *          Data to be signed. Must not be {@code null}.
+   * @return the signatures, in the same order as {@code data}.
+   * @throws SignatureException
+   *           if any of the data could not be signed.
+   */
+  byte[][] sign(byte[][] data) throws SignatureException;
+
+}
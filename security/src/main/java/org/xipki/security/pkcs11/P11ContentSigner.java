@@ -23,6 +23,7 @@ import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.InvalidKeyException;
 import java.security.SecureRandom;
+import java.security.SignatureException;
 import java.security.interfaces.RSAPublicKey;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -46,7 +47,7 @@ import org.bouncycastle.crypto.signers.PSSSigner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.security.HashAlgo;
-import org.xipki.security.XiContentSigner;
+import org.xipki.security.XiBatchContentSigner;
 import org.xipki.security.XiSecurityException;
 import org.xipki.security.util.GMUtil;
 import org.xipki.security.util.SignerUtil;
@@ -60,7 +61,7 @@ import iaik.pkcs.pkcs11.constants.PKCS11Constants;
  * @author Lijun Liao
  *
  */
-abstract class P11ContentSigner implements XiContentSigner {
+abstract class P11ContentSigner implements XiBatchContentSigner {
 
   private static final Logger LOG = LoggerFactory.getLogger(P11ContentSigner.class);
 
@@ -72,6 +73,8 @@ abstract class P11ContentSigner implements XiContentSigner {
 
   protected final byte[] encodedAlgorithmIdentifier;
 
+  private final boolean batchSignEfficient;
+
   P11ContentSigner(P11CryptService cryptService, P11IdentityId identityId,
       AlgorithmIdentifier signatureAlgId)
       throws XiSecurityException, P11TokenException {
@@ -83,6 +86,7 @@ abstract class P11ContentSigner implements XiContentSigner {
     } catch (IOException ex) {
       throw new XiSecurityException("could not encode AlgorithmIdentifier", ex);
     }
+    this.batchSignEfficient = cryptService.getIdentity(identityId).isBatchSignEfficient();
   }
 
   @Override
@@ -95,6 +99,54 @@ abstract class P11ContentSigner implements XiContentSigner {
     return Arrays.copyOf(encodedAlgorithmIdentifier, encodedAlgorithmIdentifier.length);
   }
 
+  @Override
+  public boolean isBatchSignEfficient() {
+    return batchSignEfficient;
+  }
+
+  /**
+   * Signs the data with one call of {@link P11Identity#sign(long, P11Params, byte[][])}.
+   */
+  @Override
+  public byte[][] sign(byte[][] data) throws SignatureException {
+    try {
+      byte[][] dataToSign = new byte[data.length][];
+      for (int i = 0; i < data.length; i++) {
+        getOutputStream().write(data[i]);
+        dataToSign[i] = getDataToSign();
+      }
+
+      byte[][] signatures = cryptService.getIdentity(identityId).sign(
+          getMechanism(), getParameters(), dataToSign);
+      for (int i = 0; i < signatures.length; i++) {
+        signatures[i] = toSignature(signatures[i]);
+      }
+      return signatures;
+    } catch (IOException | XiSecurityException | P11TokenException ex) {
+      LogUtil.warn(LOG, ex, "could not sign");
+      throw new SignatureException(ex.getClass().getName() + ": " + ex.getMessage(), ex);
+    }
+  }
+
+  abstract long getMechanism();
+
+  P11Params getParameters() {
+    return null;
+  }
+
+  /**
+   * Returns the data to be passed to the PKCS#11 device for the content written to
+   * {@link #getOutputStream()}, and resets the stream.
+   */
+  abstract byte[] getDataToSign() throws XiSecurityException;
+
+  /**
+   * Converts the signature returned by the PKCS#11 device to the final signature.
+   */
+  byte[] toSignature(byte[] p11Signature) throws XiSecurityException {
+    return p11Signature;
+  }
+
   // CHECKSTYLE:SKIP
   static class DSA extends P11ContentSigner {
 
@@ -173,7 +225,7 @@ abstract class P11ContentSigner implements XiContentSigner {
     public byte[] getSignature() {
       try {
         byte[] plainSignature = getPlainSignature();
-        return plain ? plainSignature : SignerUtil.dsaSigPlainToX962(plainSignature);
+        return toSignature(plainSignature);
       } catch (XiSecurityException ex) {
         LogUtil.warn(LOG, ex);
         throw new RuntimeCryptoException("XiSecurityException: " + ex.getMessage());
@@ -183,7 +235,13 @@ abstract class P11ContentSigner implements XiContentSigner {
       }
     }
 
-    private byte[] getPlainSignature() throws XiSecurityException, P11TokenException {
+    @Override
+    long getMechanism() {
+      return mechanism;
+    }
+
+    @Override
+    byte[] getDataToSign() {
       byte[] dataToSign;
       if (outputStream instanceof ByteArrayOutputStream) {
         dataToSign = ((ByteArrayOutputStream) outputStream).toByteArray();
@@ -192,8 +250,16 @@ abstract class P11ContentSigner implements XiContentSigner {
         dataToSign = ((DigestOutputStream) outputStream).digest();
         ((DigestOutputStream) outputStream).reset();
       }
+      return dataToSign;
+    }
+
+    @Override
+    byte[] toSignature(byte[] plainSignature) throws XiSecurityException {
+      return plain ? plainSignature : SignerUtil.dsaSigPlainToX962(plainSignature);
+    }
 
-      return cryptService.getIdentity(identityId).sign(mechanism, null, dataToSign);
+    private byte[] getPlainSignature() throws XiSecurityException, P11TokenException {
+      return cryptService.getIdentity(identityId).sign(mechanism, null, getDataToSign());
     }
 
   }
@@ -280,7 +346,7 @@ abstract class P11ContentSigner implements XiContentSigner {
     public byte[] getSignature() {
       try {
         byte[] plainSignature = getPlainSignature();
-        return plain ? plainSignature : SignerUtil.dsaSigPlainToX962(plainSignature);
+        return toSignature(plainSignature);
       } catch (XiSecurityException ex) {
         LogUtil.warn(LOG, ex);
         throw new RuntimeCryptoException("XiSecurityException: " + ex.getMessage());
@@ -290,7 +356,13 @@ abstract class P11ContentSigner implements XiContentSigner {
       }
     }
 
-    private byte[] getPlainSignature() throws XiSecurityException, P11TokenException {
+    @Override
+    long getMechanism() {
+      return mechanism;
+    }
+
+    @Override
+    byte[] getDataToSign() {
       byte[] dataToSign;
       if (outputStream instanceof ByteArrayOutputStream) {
         dataToSign = ((ByteArrayOutputStream) outputStream).toByteArray();
@@ -299,8 +371,16 @@ abstract class P11ContentSigner implements XiContentSigner {
         dataToSign = ((DigestOutputStream) outputStream).digest();
         ((DigestOutputStream) outputStream).reset();
       }
+      return dataToSign;
+    }
+
+    @Override
+    byte[] toSignature(byte[] plainSignature) throws XiSecurityException {
+      return plain ? plainSignature : SignerUtil.dsaSigPlainToX962(plainSignature);
+    }
 
-      return cryptService.getIdentity(identityId).sign(mechanism, null, dataToSign);
+    private byte[] getPlainSignature() throws XiSecurityException, P11TokenException {
+      return cryptService.getIdentity(identityId).sign(mechanism, null, getDataToSign());
     }
   }
 
@@ -349,9 +429,7 @@ abstract class P11ContentSigner implements XiContentSigner {
     @Override
     public byte[] getSignature() {
       try {
-        byte[] dataToSign = outputStream.toByteArray();
-        outputStream.reset();
-        return cryptService.getIdentity(identityId).sign(mechanism, null, dataToSign);
+        return cryptService.getIdentity(identityId).sign(mechanism, null, getDataToSign());
       } catch (P11TokenException ex) {
         LogUtil.warn(LOG, ex);
         throw new RuntimeCryptoException("P11TokenException: " + ex.getMessage());
@@ -361,6 +439,18 @@ abstract class P11ContentSigner implements XiContentSigner {
       }
     }
 
+    @Override
+    long getMechanism() {
+      return mechanism;
+    }
+
+    @Override
+    byte[] getDataToSign() {
+      byte[] dataToSign = outputStream.toByteArray();
+      outputStream.reset();
+      return dataToSign;
+    }
+
   }
 
   // CHECKSTYLE:SKIP
@@ -456,6 +546,21 @@ abstract class P11ContentSigner implements XiContentSigner {
 
     @Override
     public byte[] getSignature() {
+      try {
+        return cryptService.getIdentity(identityId).sign(mechanism, null, getDataToSign());
+      } catch (XiSecurityException | P11TokenException ex) {
+        LogUtil.error(LOG, ex, "could not sign");
+        throw new RuntimeCryptoException("SignerException: " + ex.getMessage());
+      }
+    }
+
+    @Override
+    long getMechanism() {
+      return mechanism;
+    }
+
+    @Override
+    byte[] getDataToSign() throws XiSecurityException {
       byte[] dataToSign;
       if (outputStream instanceof ByteArrayOutputStream) {
         dataToSign = ((ByteArrayOutputStream) outputStream).toByteArray();
@@ -468,16 +573,10 @@ abstract class P11ContentSigner implements XiContentSigner {
         System.arraycopy(hashValue, 0, dataToSign, digestPkcsPrefix.length, hashValue.length);
       }
 
-      try {
-        if (mechanism == PKCS11Constants.CKM_RSA_X_509) {
-          dataToSign = SignerUtil.EMSA_PKCS1_v1_5_encoding(dataToSign, modulusBitLen);
-        }
-
-        return cryptService.getIdentity(identityId).sign(mechanism, null, dataToSign);
-      } catch (XiSecurityException | P11TokenException ex) {
-        LogUtil.error(LOG, ex, "could not sign");
-        throw new RuntimeCryptoException("SignerException: " + ex.getMessage());
+      if (mechanism == PKCS11Constants.CKM_RSA_X_509) {
+        dataToSign = SignerUtil.EMSA_PKCS1_v1_5_encoding(dataToSign, modulusBitLen);
       }
+      return dataToSign;
     }
 
   }
@@ -626,15 +725,8 @@ abstract class P11ContentSigner implements XiContentSigner {
         }
       }
 
-      byte[] dataToSign;
-      if (outputStream instanceof ByteArrayOutputStream) {
-        dataToSign = ((ByteArrayOutputStream) outputStream).toByteArray();
-      } else {
-        dataToSign = ((DigestOutputStream) outputStream).digest();
-      }
-
       try {
-        return cryptService.getIdentity(identityId).sign(mechanism, parameters, dataToSign);
+        return cryptService.getIdentity(identityId).sign(mechanism, parameters, getDataToSign());
       } catch (P11TokenException ex) {
         LogUtil.warn(LOG, ex, "could not sign");
         throw new RuntimeCryptoException("SignerException: " + ex.getMessage());
@@ -642,6 +734,56 @@ abstract class P11ContentSigner implements XiContentSigner {
 
     }
 
+    @Override
+    public boolean isBatchSignEfficient() {
+      // the PSS encoding invokes the PKCS#11 device once per signature
+      return !(outputStream instanceof PSSSignerOutputStream) && super.isBatchSignEfficient();
+    }
+
+    @Override
+    public byte[][] sign(byte[][] data) throws SignatureException {
+      if (!(outputStream instanceof PSSSignerOutputStream)) {
+        return super.sign(data);
+      }
+
+      byte[][] signatures = new byte[data.length][];
+      for (int i = 0; i < data.length; i++) {
+        try {
+          getOutputStream().write(data[i]);
+          signatures[i] = ((PSSSignerOutputStream) outputStream).generateSignature();
+        } catch (IOException | CryptoException ex) {
+          LogUtil.warn(LOG, ex, "could not sign");
+          throw new SignatureException(ex.getClass().getName() + ": " + ex.getMessage(), ex);
+        }
+      }
+      return signatures;
+    }
+
+    @Override
+    long getMechanism() {
+      return mechanism;
+    }
+
+    @Override
+    P11Params getParameters() {
+      return parameters;
+    }
+
+    @Override
+    byte[] getDataToSign() {
+      if (outputStream instanceof ByteArrayOutputStream) {
+        byte[] dataToSign = ((ByteArrayOutputStream) outputStream).toByteArray();
+        ((ByteArrayOutputStream) outputStream).reset();
+        return dataToSign;
+      } else if (outputStream instanceof DigestOutputStream) {
+        byte[] dataToSign = ((DigestOutputStream) outputStream).digest();
+        ((DigestOutputStream) outputStream).reset();
+        return dataToSign;
+      } else {
+        throw new IllegalStateException("the PSS encoding is computed by the PSSSigner");
+      }
+    }
+
   }
 
   static class SM2 extends P11ContentSigner {
@@ -718,7 +860,7 @@ abstract class P11ContentSigner implements XiContentSigner {
     public byte[] getSignature() {
       try {
         byte[] plainSignature = getPlainSignature();
-        return SignerUtil.dsaSigPlainToX962(plainSignature);
+        return toSignature(plainSignature);
       } catch (XiSecurityException ex) {
         LogUtil.warn(LOG, ex);
         throw new RuntimeCryptoException("XiSecurityException: " + ex.getMessage());
@@ -728,22 +870,41 @@ abstract class P11ContentSigner implements XiContentSigner {
       }
     }
 
-    private byte[] getPlainSignature() throws XiSecurityException, P11TokenException {
+    @Override
+    long getMechanism() {
+      return mechanism;
+    }
+
+    @Override
+    P11Params getParameters() {
+      // the real message is signed by the mechanism CKM_VENDOR_SM2_SM3
+      return (outputStream instanceof ByteArrayOutputStream)
+          ? new P11Params.P11ByteArrayParams(GMUtil.getDefaultIDA()) : null;
+    }
+
+    @Override
+    byte[] getDataToSign() {
       byte[] dataToSign;
-      P11Params.P11ByteArrayParams params;
       if (outputStream instanceof ByteArrayOutputStream) {
         // dataToSign is the real message
-        params = new P11Params.P11ByteArrayParams(GMUtil.getDefaultIDA());
         dataToSign = ((ByteArrayOutputStream) outputStream).toByteArray();
       } else {
         // dataToSign is Hash(Z||Real Message)
-        params = null;
         dataToSign = ((DigestOutputStream) outputStream).digest();
       }
 
       reset();
+      return dataToSign;
+    }
+
+    @Override
+    byte[] toSignature(byte[] plainSignature) throws XiSecurityException {
+      return SignerUtil.dsaSigPlainToX962(plainSignature);
+    }
 
-      return cryptService.getIdentity(identityId).sign(mechanism, params, dataToSign);
+    private byte[] getPlainSignature() throws XiSecurityException, P11TokenException {
+      return cryptService.getIdentity(identityId).sign(mechanism, getParameters(),
+          getDataToSign());
     }
   }
 
@@ -118,6 +118,71 @@ public abstract class P11Identity implements Comparable<P11Identity> {
   protected abstract byte[] sign0(long mechanism, P11Params parameters, byte[] content)
       throws P11TokenException;
 
+  /**
+   * Signs the contents with the same mechanism and parameters.
+   *
+   * @param mechanism
+   *          mechanism to sign the contents.
+   * @param parameters
+   *          Parameters. Could be {@code null}.
+   * @param contents
+   *          Contents to be signed. Must not be {@code null}.
+   * @return signatures, in the same order as {@code contents}.
+   * @throws P11TokenException
+   *         if PKCS#11 token error occurs.
+   * @since 5.0.1
+   */
+  public byte[][] sign(long mechanism, P11Params parameters, byte[][] contents)
+      throws P11TokenException {
+    Args.notNull(contents, "contents");
+    for (byte[] content : contents) {
+      Args.notNull(content, "content");
+    }
+    slot.assertMechanismSupported(mechanism);
+    if (!supportsMechanism(mechanism, parameters)) {
+      throw new P11UnsupportedMechanismException(mechanism, id);
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("sign {} contents with mechanism {}", contents.length,
+          Functions.getMechanismDescription(mechanism));
+    }
+    return sign0(mechanism, parameters, contents);
+  }
+
+  /**
+   * Signs the contents. The default implementation signs them one by one via
+   * {@link #sign0(long, P11Params, byte[])}.
+   *
+   * @param mechanism
+   *          mechanism to sign the contents.
+   * @param parameters
+   *          Parameters. Could be {@code null}.
+   * @param contents
+   *          Contents to be signed. Must not be {@code null}.
+   * @return signatures.
+   * @throws P11TokenException
+   *         if PKCS#11 token error occurs.
+   * @since 5.0.1
+   */
+  protected byte[][] sign0(long mechanism, P11Params parameters, byte[][] contents)
+      throws P11TokenException {
+    byte[][] signatures = new byte[contents.length][];
+    for (int i = 0; i < contents.length; i++) {
+      signatures[i] = sign0(mechanism, parameters, contents[i]);
+    }
+    return signatures;
+  }
+
+  /**
+   * Returns whether {@link #sign(long, P11Params, byte[][])} signs the contents with less
+   * effort than signing them one by one.
+   * @return whether signing in batches is more efficient.
+   * @since 5.0.1
+   */
+  public boolean isBatchSignEfficient() {
+    return false;
+  }
+
   public byte[] digestSecretKey(long mechanism) throws P11TokenException, XiSecurityException {
     slot.assertMechanismSupported(mechanism);
     if (LOG.isDebugEnabled()) {
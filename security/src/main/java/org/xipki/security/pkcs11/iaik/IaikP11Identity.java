@@ -95,6 +95,18 @@ class IaikP11Identity extends P11Identity {
     return ((IaikP11Slot) slot).sign(mechanism, parameters, content, this);
   }
 
+  @Override
+  protected byte[][] sign0(long mechanism, P11Params parameters, byte[][] contents)
+      throws P11TokenException {
+    return ((IaikP11Slot) slot).sign(mechanism, parameters, contents, this);
+  }
+
+  @Override
+  public boolean isBatchSignEfficient() {
+    // all contents are signed within one session
+    return true;
+  }
+
   Key getSigningKey() {
     return signingKey;
   }
@@ -422,6 +422,16 @@ class IaikP11Slot extends P11Slot {
   byte[] sign(long mechanism, P11Params parameters, byte[] content, IaikP11Identity identity)
       throws P11TokenException {
     Args.notNull(content, "content");
+    return sign(mechanism, parameters, new byte[][]{content}, identity)[0];
+  }
+
+  /**
+   * Signs all contents within one borrowed session, so that the session and the login are
+   * shared by the whole batch.
+   */
+  byte[][] sign(long mechanism, P11Params parameters, byte[][] contents,
+      IaikP11Identity identity) throws P11TokenException {
+    Args.notNull(contents, "contents");
     assertMechanismSupported(mechanism);
 
     int expectedSignatureLen;
@@ -449,27 +459,34 @@ class IaikP11Slot extends P11Slot {
     Mechanism mechanismObj = getMechanism(mechanism, parameters);
     Key signingKey = identity.getSigningKey();
 
+    byte[][] signatures = new byte[contents.length][];
     ConcurrentBagEntry<Session> session0 = borrowSession();
     try {
       Session session = session0.value();
-      try {
-        return sign0(session, expectedSignatureLen, mechanismObj, content, signingKey);
-      } catch (PKCS11Exception ex) {
-        long errorCode = ex.getErrorCode();
-        if (errorCode == PKCS11Constants.CKR_USER_NOT_LOGGED_IN) {
-          LOG.info("sign ended with ERROR CKR_USER_NOT_LOGGED_IN, login and then retry it");
-          // force the login
-          forceLogin(session);
-          return sign0(session, expectedSignatureLen, mechanismObj, content, signingKey);
-        } else {
-          throw ex;
+      for (int i = 0; i < contents.length; i++) {
+        try {
+          signatures[i] = sign0(session, expectedSignatureLen, mechanismObj, contents[i],
+              signingKey);
+        } catch (PKCS11Exception ex) {
+          long errorCode = ex.getErrorCode();
+          if (errorCode == PKCS11Constants.CKR_USER_NOT_LOGGED_IN) {
+            LOG.info("sign ended with ERROR CKR_USER_NOT_LOGGED_IN, login and then retry it");
+            // force the login
+            forceLogin(session);
+            signatures[i] = sign0(session, expectedSignatureLen, mechanismObj, contents[i],
+                signingKey);
+          } else {
+            throw ex;
+          }
         }
-      } finally {
-        sessions.requite(session0);
       }
     } catch (TokenException ex) {
       throw new P11TokenException(ex.getMessage(), ex);
+    } finally {
+      sessions.requite(session0);
     }
+
+    return signatures;
   }
 
   private byte[] sign0(Session session, int expectedSignatureLen, Mechanism mechanism,
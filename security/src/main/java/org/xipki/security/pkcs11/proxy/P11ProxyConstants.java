@@ -30,6 +30,13 @@ public class P11ProxyConstants {
 
   public static final short VERSION_V1_0             = 0x0100;
 
+  /**
+   * As {@link #VERSION_V1_0}, but one HTTP request may contain several messages, and the
+   * HTTP response contains the response messages in the same order.
+   * @since 5.0.1
+   */
+  public static final short VERSION_V1_1             = 0x0101;
+
   /* Return Code */
   public static final short RC_SUCCESS               = 0x0000;
 
@@ -30,9 +30,18 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -59,13 +68,31 @@ import org.xipki.util.http.HostnameVerifiers;
 import org.xipki.util.http.SSLContextBuilder;
 
 /**
- * TODO.
+ * PKCS#11 module of a remote PKCS#11 proxy.
+ *
+ * <p>If the server supports the version 1.1, the concurrent requests are sent in one HTTP
+ * request over at most {@code maxConnections} persistent (keep-alive) connections: while
+ * some requests are in flight, the next requests are collected and sent together, at most
+ * {@code maxMessages} in one HTTP request.
+ *
  * @author Lijun Liao
  * @since 2.0.0
  */
 
 public class ProxyP11Module extends P11Module {
 
+  private static class PendingRequest {
+
+    private final byte[] request;
+
+    private final CompletableFuture<byte[]> response = new CompletableFuture<>();
+
+    PendingRequest(byte[] request) {
+      this.request = request;
+    }
+
+  } // class PendingRequest
+
   public static final String TYPE = "proxy";
 
   private static final String PROP_URL = "url";
@@ -84,6 +111,18 @@ public class ProxyP11Module extends P11Module {
 
   private static final String PROP_SSL_HOStNAMEVERIFIER = "ssl.hostnameVerifier";
 
+  private static final String PROP_MAX_CONNECTIONS = "maxConnections";
+
+  private static final String PROP_MAX_MESSAGES = "maxMessages";
+
+  // the number of idle connections to a server kept alive by the JDK (http.maxConnections).
+  private static final int DFLT_MAX_CONNECTIONS = 5;
+
+  private static final int DFLT_MAX_MESSAGES = 100;
+
+  // a waiting request tries to send the pending requests after this time.
+  private static final long SEND_WAIT_MS = 5;
+
   private static final Logger LOG = LoggerFactory.getLogger(ProxyP11Module.class);
 
   private static final String REQUEST_MIMETYPE = "application/x-xipki-pkcs11";
@@ -92,7 +131,15 @@ public class ProxyP11Module extends P11Module {
 
   private final Random random = new Random();
 
-  private final short version = P11ProxyConstants.VERSION_V1_0;
+  private final Queue<PendingRequest> pendingRequests = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger numSenders = new AtomicInteger(0);
+
+  private volatile short version = P11ProxyConstants.VERSION_V1_0;
+
+  private int maxConnections;
+
+  private int maxMessages;
 
   private final String description;
 
@@ -138,6 +185,20 @@ public class ProxyP11Module extends P11Module {
       throw new P11TokenException("invalid module: " + moduleStr);
     }
 
+    try {
+      String str = confPairs.value(PROP_MAX_CONNECTIONS);
+      maxConnections = (str == null) ? DFLT_MAX_CONNECTIONS : Integer.parseInt(str.trim());
+      str = confPairs.value(PROP_MAX_MESSAGES);
+      maxMessages = (str == null) ? DFLT_MAX_MESSAGES : Integer.parseInt(str.trim());
+    } catch (NumberFormatException ex) {
+      throw new P11TokenException("invalid " + PROP_MAX_CONNECTIONS + " or " + PROP_MAX_MESSAGES);
+    }
+
+    if (maxConnections < 1 || maxMessages < 1) {
+      throw new P11TokenException(PROP_MAX_CONNECTIONS + " and " + PROP_MAX_MESSAGES
+          + " must be positive");
+    }
+
     String sslStoreType = confPairs.value(PROP_SSL_STORETYPE);
     String sslKeystore = confPairs.value(PROP_SSL_KEYSTORE);
     String sslKeystorePassword = confPairs.value(PROP_SSL_KEYSTOREPASSWORD);
@@ -195,6 +256,8 @@ public class ProxyP11Module extends P11Module {
   }
 
   public void refresh() throws P11TokenException {
+    // the server capabilities are requested in the version 1.0
+    this.version = P11ProxyConstants.VERSION_V1_0;
     byte[] resp = send(P11ProxyConstants.ACTION_GET_SERVER_CAPS, null);
 
     ProxyMessage.ServerCaps caps;
@@ -204,9 +267,12 @@ public class ProxyP11Module extends P11Module {
       throw new P11TokenException("response is a valid Asn1ServerCaps", ex);
     }
 
-    if (!caps.getVersions().contains(version)) {
+    if (caps.getVersions().contains(P11ProxyConstants.VERSION_V1_1)) {
+      this.version = P11ProxyConstants.VERSION_V1_1;
+    } else if (!caps.getVersions().contains(P11ProxyConstants.VERSION_V1_0)) {
       throw new P11TokenException("Server does not support any version supported by the client");
     }
+    LOG.info("PKCS#11 proxy {}: version 0x{}", serverUrl, Integer.toHexString(version));
     this.readOnly = caps.isReadOnly();
 
     resp = send(P11ProxyConstants.ACTION_GET_SLOT_IDS, null);
@@ -263,8 +329,116 @@ public class ProxyP11Module extends P11Module {
     }
   }
 
+  /**
+   * Sends one request message and returns the response message.
+   * @param request the request message.
+   * @return the response message.
+   * @throws IOException if the request could not be sent or the response is invalid.
+   */
   protected byte[] send(byte[] request) throws IOException {
     Args.notNull(request, "request");
+    if (IoUtil.parseShort(request, 0) != P11ProxyConstants.VERSION_V1_1) {
+      return post(request);
+    }
+
+    PendingRequest pending = new PendingRequest(request);
+    pendingRequests.add(pending);
+
+    while (true) {
+      if (numSenders.incrementAndGet() <= maxConnections) {
+        try {
+          // send until the own request is sent, the response may be received by another thread.
+          while (!pending.response.isDone() && sendPendingRequests()) {
+            // do nothing
+          }
+        } finally {
+          numSenders.decrementAndGet();
+        }
+      } else {
+        numSenders.decrementAndGet();
+      }
+
+      try {
+        return pending.response.get(SEND_WAIT_MS, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException ex) {
+        // all connections are busy, try again
+      } catch (ExecutionException ex) {
+        Throwable cause = ex.getCause();
+        throw (cause instanceof IOException) ? (IOException) cause
+            : new IOException(cause.getMessage(), cause);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new IOException("interrupted while waiting for the response", ex);
+      }
+    }
+  } // method send
+
+  /**
+   * Sends the pending requests, at most {@code maxMessages}, in one HTTP request.
+   * @return {@code false} if there was no pending request.
+   */
+  private boolean sendPendingRequests() {
+    List<PendingRequest> batch = new ArrayList<>(Math.min(16, maxMessages));
+    int len = 0;
+    PendingRequest pending;
+    while (batch.size() < maxMessages && (pending = pendingRequests.poll()) != null) {
+      batch.add(pending);
+      len += pending.request.length;
+    }
+
+    if (batch.isEmpty()) {
+      return false;
+    }
+
+    byte[] requests;
+    if (batch.size() == 1) {
+      requests = batch.get(0).request;
+    } else {
+      requests = new byte[len];
+      int offset = 0;
+      for (PendingRequest m : batch) {
+        System.arraycopy(m.request, 0, requests, offset, m.request.length);
+        offset += m.request.length;
+      }
+    }
+
+    List<byte[]> responses = new ArrayList<>(batch.size());
+    try {
+      byte[] response = post(requests);
+      int offset = 0;
+      for (int i = 0; i < batch.size(); i++) {
+        if (response.length - offset < 10) {
+          throw new IOException("response too short");
+        }
+
+        long msgLen = 10L + (IoUtil.parseInt(response, offset + 6) & 0xFFFFFFFFL);
+        if (offset + msgLen > response.length) {
+          throw new IOException("message length unmatch");
+        }
+
+        byte[] msg = new byte[(int) msgLen];
+        System.arraycopy(response, offset, msg, 0, msg.length);
+        responses.add(msg);
+        offset += msg.length;
+      }
+
+      if (offset != response.length) {
+        throw new IOException("response contains more messages than the request");
+      }
+    } catch (IOException | RuntimeException ex) {
+      for (PendingRequest m : batch) {
+        m.response.completeExceptionally(ex);
+      }
+      return true;
+    }
+
+    for (int i = 0; i < batch.size(); i++) {
+      batch.get(i).response.complete(responses.get(i));
+    }
+    return true;
+  } // method sendPendingRequests
+
+  private byte[] post(byte[] request) throws IOException {
     HttpURLConnection httpUrlConnection = IoUtil.openHttpConn(serverUrl);
 
     if (httpUrlConnection instanceof HttpsURLConnection) {
@@ -291,16 +465,10 @@ public class ProxyP11Module extends P11Module {
 
     if (httpUrlConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
       try {
-        try {
-          InputStream is = httpUrlConnection.getInputStream();
-          if (is != null) {
-            is.close();
-          }
-        } catch (IOException ex) {
-          InputStream errStream = httpUrlConnection.getErrorStream();
-          if (errStream != null) {
-            errStream.close();
-          }
+        // read the error stream completely, so that the connection can be reused.
+        InputStream errStream = httpUrlConnection.getErrorStream();
+        if (errStream != null) {
+          IoUtil.read(errStream);
         }
       } catch (Throwable th) {
         // ignore it
@@ -348,7 +516,7 @@ public class ProxyP11Module extends P11Module {
     } finally {
       inputstream.close();
     }
-  } // method send
+  } // method post
 
   /**
    * The request is constructed as follows.
@@ -365,6 +533,7 @@ public class ProxyP11Module extends P11Module {
    * @throws P11TokenException If error occurred.
    */
   public byte[] send(short action, ASN1Object content) throws P11TokenException {
+    final short version = this.version;
     byte[] encodedContent;
     if (content == null) {
       encodedContent = null;
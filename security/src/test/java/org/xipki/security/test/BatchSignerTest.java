@@ -0,0 +1,239 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+import org.bouncycastle.operator.RuntimeOperatorException;
+import org.junit.Test;
+import org.xipki.security.BatchSigner;
+import org.xipki.security.DfltConcurrentContentSigner;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.XiBatchContentSigner;
+import org.xipki.security.XiContentSigner;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class BatchSignerTest {
+
+  /**
+   * Signer whose signature is the SHA-256 hash of the data. Data starting with 0 cannot be
+   * signed.
+   */
+  private static class HashSigner implements XiContentSigner {
+
+    private static final AlgorithmIdentifier ALGID =
+        new AlgorithmIdentifier(X9ObjectIdentifiers.ecdsa_with_SHA256);
+
+    private final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+    private final Map<Thread, AtomicInteger> signaturesPerThread;
+
+    HashSigner(Map<Thread, AtomicInteger> signaturesPerThread) {
+      this.signaturesPerThread = signaturesPerThread;
+    }
+
+    @Override
+    public AlgorithmIdentifier getAlgorithmIdentifier() {
+      return ALGID;
+    }
+
+    @Override
+    public byte[] getEncodedAlgorithmIdentifier() {
+      try {
+        return ALGID.getEncoded();
+      } catch (Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      stream.reset();
+      return stream;
+    }
+
+    @Override
+    public byte[] getSignature() {
+      signaturesPerThread.computeIfAbsent(Thread.currentThread(), t -> new AtomicInteger())
+          .incrementAndGet();
+      byte[] data = stream.toByteArray();
+      if (data.length > 0 && data[0] == 0) {
+        throw new RuntimeOperatorException("could not sign");
+      }
+
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      return HashAlgo.SHA256.hash(data);
+    }
+
+  } // class HashSigner
+
+  /**
+   * {@link HashSigner} which signs the data of a batch in one operation.
+   */
+  private static class BatchHashSigner extends HashSigner implements XiBatchContentSigner {
+
+    private final AtomicInteger batchSignCount;
+
+    BatchHashSigner(Map<Thread, AtomicInteger> signaturesPerThread,
+        AtomicInteger batchSignCount) {
+      super(signaturesPerThread);
+      this.batchSignCount = batchSignCount;
+    }
+
+    @Override
+    public boolean isBatchSignEfficient() {
+      return true;
+    }
+
+    @Override
+    public byte[][] sign(byte[][] data) throws SignatureException {
+      batchSignCount.incrementAndGet();
+      byte[][] signatures = new byte[data.length][];
+      for (int i = 0; i < data.length; i++) {
+        try {
+          getOutputStream().write(data[i]);
+          signatures[i] = getSignature();
+        } catch (IOException | RuntimeOperatorException ex) {
+          throw new SignatureException(ex.getMessage(), ex);
+        }
+      }
+      return signatures;
+    }
+
+  } // class BatchHashSigner
+
+  private final Map<Thread, AtomicInteger> signaturesPerThread = new ConcurrentHashMap<>();
+
+  @Test
+  public void testConcurrentSign() throws Exception {
+    final int maxBatchSize = 4;
+    final int threads = 16;
+    final int signsPerThread = 100;
+
+    BatchSigner batchSigner = new BatchSigner(newSigner(2), maxBatchSize, 1);
+    Assert.assertEquals("maxConcurrentBatches", 2, batchSigner.getMaxConcurrentBatches());
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Integer>> futures = new ArrayList<>(threads);
+      for (int i = 0; i < threads; i++) {
+        final int threadIdx = i;
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < signsPerThread; j++) {
+            byte[] data = new byte[]{1, (byte) threadIdx, (byte) j};
+            byte[] signature = batchSigner.sign(data);
+            Assert.assertTrue("signature", Arrays.equals(HashAlgo.SHA256.hash(data), signature));
+          }
+          return signsPerThread;
+        }));
+      }
+
+      for (Future<Integer> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    Assert.assertEquals("signCount", threads * signsPerThread, batchSigner.getSignCount());
+    Assert.assertTrue("batchCount", batchSigner.getBatchCount() < batchSigner.getSignCount());
+
+    // each caller signs at most one batch per call
+    for (AtomicInteger num : signaturesPerThread.values()) {
+      Assert.assertTrue("signatures per thread", num.get() <= signsPerThread * maxBatchSize);
+    }
+  }
+
+  @Test
+  public void testSignError() throws Exception {
+    BatchSigner batchSigner = new BatchSigner(newSigner(1), 4, 1);
+    try {
+      batchSigner.sign(new byte[]{0, 1});
+      Assert.fail("SignatureException expected");
+    } catch (SignatureException ex) {
+      // expected
+    }
+
+    byte[] data = new byte[]{1, 1};
+    Assert.assertTrue("signature after error",
+        Arrays.equals(HashAlgo.SHA256.hash(data), batchSigner.sign(data)));
+  }
+
+  @Test
+  public void testBatchContentSigner() throws Exception {
+    Assert.assertFalse("batchSignEfficient", newSigner(1).isBatchSignEfficient());
+
+    AtomicInteger batchSignCount = new AtomicInteger();
+    List<XiContentSigner> signers = new ArrayList<>(1);
+    signers.add(new BatchHashSigner(signaturesPerThread, batchSignCount));
+    DfltConcurrentContentSigner signer = new DfltConcurrentContentSigner(false, signers);
+    Assert.assertTrue("batchSignEfficient", signer.isBatchSignEfficient());
+
+    byte[][] data = new byte[][]{{1, 1}, {1, 2}, {1, 3}};
+    byte[][] signatures = signer.sign(data);
+    Assert.assertEquals("batchSignCount", 1, batchSignCount.get());
+    for (int i = 0; i < data.length; i++) {
+      Assert.assertTrue("signature " + i,
+          Arrays.equals(HashAlgo.SHA256.hash(data[i]), signatures[i]));
+    }
+
+    BatchSigner batchSigner = new BatchSigner(signer, 4, 1);
+    try {
+      batchSigner.sign(new byte[]{0, 1});
+      Assert.fail("SignatureException expected");
+    } catch (SignatureException ex) {
+      // expected
+    }
+    Assert.assertEquals("batchSignCount", 2, batchSignCount.get());
+  }
+
+  private DfltConcurrentContentSigner newSigner(int parallelism) throws Exception {
+    List<XiContentSigner> signers = new ArrayList<>(parallelism);
+    for (int i = 0; i < parallelism; i++) {
+      signers.add(new HashSigner(signaturesPerThread));
+    }
+    return new DfltConcurrentContentSigner(false, signers);
+  }
+
+}
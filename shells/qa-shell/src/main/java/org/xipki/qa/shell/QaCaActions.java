@@ -270,6 +270,17 @@ public class QaCaActions {
             + "0 for implemention default")
     private Integer queueSize = 0;
 
+    @Option(name = "--rate",
+        description = "target number of operations per second (open-loop)\n"
+            + "0 for closed-loop")
+    private Integer rate = 0;
+
+    @Option(name = "--result-file",
+        description = "file to save the throughput and latencies per second\n"
+            + "(JSON if it ends with .json, CSV otherwise)")
+    @Completion(FileCompleter.class)
+    private String resultFile;
+
     @Override
     protected Object execute0() throws Exception {
       if (numThreads < 1) {
@@ -309,6 +320,8 @@ public class QaCaActions {
 
       benchmark.setDuration(duration);
       benchmark.setThreads(numThreads);
+      benchmark.setRate(rate);
+      benchmark.setResultFile(resultFile);
       benchmark.execute();
 
       return null;
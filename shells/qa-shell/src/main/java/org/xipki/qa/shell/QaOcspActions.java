@@ -507,6 +507,17 @@ public class QaOcspActions {
             + "0 for implemention default")
     private Integer queueSize = 0;
 
+    @Option(name = "--rate",
+        description = "target number of operations per second (open-loop)\n"
+            + "0 for closed-loop")
+    private Integer rate = 0;
+
+    @Option(name = "--result-file",
+        description = "file to save the throughput and latencies per second\n"
+            + "(JSON if it ends with .json, CSV otherwise)")
+    @Completion(FileCompleter.class)
+    private String resultFile;
+
     @Override
     protected Object execute0() throws Exception {
       int ii = 0;
@@ -575,6 +586,8 @@ public class QaOcspActions {
             serialNumberIterator, maxRequests, queueSize, description.toString());
         loadTest.setDuration(duration);
         loadTest.setThreads(numThreads);
+        loadTest.setRate(rate);
+        loadTest.setResultFile(resultFile);
         loadTest.execute();
       } finally {
         if (serialNumberIterator instanceof FileBigIntegerIterator) {
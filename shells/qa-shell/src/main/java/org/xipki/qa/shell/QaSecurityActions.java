@@ -26,6 +26,7 @@ import org.apache.karaf.shell.api.action.Completion;
 import org.apache.karaf.shell.api.action.Option;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.apache.karaf.shell.support.completers.FileCompleter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.qa.security.P11KeyGenSpeed;
@@ -124,6 +125,17 @@ public class QaSecurityActions {
     @Option(name = "--thread", description = "number of threads")
     private Integer numThreads = 5;
 
+    @Option(name = "--rate",
+        description = "target number of operations per second (open-loop)\n"
+            + "0 for closed-loop")
+    private Integer rate = 0;
+
+    @Option(name = "--result-file",
+        description = "file to save the throughput and latencies per second\n"
+            + "(JSON if it ends with .json, CSV otherwise)")
+    @Completion(FileCompleter.class)
+    private String resultFile;
+
     protected abstract BenchmarkExecutor getTester() throws Exception;
 
     @Override
@@ -131,6 +143,8 @@ public class QaSecurityActions {
       BenchmarkExecutor tester = getTester();
       tester.setDuration(duration);
       tester.setThreads(getNumThreads());
+      tester.setRate(rate);
+      tester.setResultFile(resultFile);
 
       tester.execute();
       return null;
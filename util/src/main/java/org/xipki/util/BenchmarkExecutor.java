@@ -17,14 +17,19 @@
 
 package org.xipki.util;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * TODO.
@@ -34,12 +39,35 @@ import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class BenchmarkExecutor {
 
+  private static class IntervalResult {
+
+    private final long elapsedTimeMs;
+
+    private final long account;
+
+    private final long speed;
+
+    private final long[] latencies;
+
+    IntervalResult(long elapsedTimeMs, long account, long speed, long[] latencies) {
+      this.elapsedTimeMs = elapsedTimeMs;
+      this.account = account;
+      this.speed = speed;
+      this.latencies = latencies;
+    }
+
+  } // class IntervalResult
+
   public static final String PROPKEY_BENCHMARK = "org.xipki.benchmark";
 
   private static final int DEFAULT_DURATION = 30; // 30 seconds
 
   private static final int DEFAULT_THREADS = 25;
 
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+  private static final String[] LATENCY_NAMES = {"p50", "p90", "p99", "p99.9", "max"};
+
   private boolean interrupted;
 
   private String description;
@@ -54,6 +82,28 @@ public abstract class BenchmarkExecutor {
 
   private String unit = "";
 
+  /**
+   * Target number of operations per second in open-loop mode, 0 for closed-loop.
+   */
+  private int rate;
+
+  private String resultFile;
+
+  private final AtomicLong numScheduled = new AtomicLong(0);
+
+  private long startNanos;
+
+  // latencies in microseconds
+  private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+  private final LatencyHistogram intervalLatencyHistogram = new LatencyHistogram();
+
+  private final List<IntervalResult> intervalResults = new ArrayList<>();
+
+  private long lastIntervalTimeMs;
+
+  private long lastIntervalAccount;
+
   public BenchmarkExecutor(String description) {
     this.description = Args.notNull(description, "description");
     this.processLog = new ProcessLog(0);
@@ -93,6 +143,9 @@ public abstract class BenchmarkExecutor {
     }
     sb.append("threads: ").append(threads).append("\n");
     sb.append("duration: ").append(StringUtil.formatTime(duration, false)).append("\n");
+    if (rate > 0) {
+      sb.append("rate: ").append(rate).append(" ").append(unit).append("/s\n");
+    }
     sb.append("unit: ").append(unit);
 
     System.out.println(sb.toString());
@@ -121,6 +174,14 @@ public abstract class BenchmarkExecutor {
     printStatus();
     printSummary();
 
+    if (resultFile != null) {
+      try {
+        writeResult();
+      } catch (IOException ex) {
+        System.err.println("could not write result to " + resultFile + ": " + ex.getMessage());
+      }
+    }
+
     close();
     System.getProperties().remove(PROPKEY_BENCHMARK);
   } // method test
@@ -173,6 +234,31 @@ public abstract class BenchmarkExecutor {
     }
   }
 
+  /**
+   * Sets the target number of operations per second. If positive, the operations are started
+   * at a fixed rate (open-loop), independent of the duration of the previous operations, and
+   * the latency of an operation is measured from its scheduled start time.
+   * @param rate
+   *          Operations per second. 0 or negative for closed-loop.
+   */
+  public void setRate(int rate) {
+    this.rate = Math.max(0, rate);
+  }
+
+  public int getRate() {
+    return rate;
+  }
+
+  /**
+   * Sets the file the results are written to after the execution, in JSON format if the name
+   * ends with ".json", and in CSV format otherwise.
+   * @param resultFile
+   *          The result file. {@code null} to not write the results.
+   */
+  public void setResultFile(String resultFile) {
+    this.resultFile = resultFile;
+  }
+
   public long getErrorAccout() {
     return errorAccount.get();
   }
@@ -184,12 +270,62 @@ public abstract class BenchmarkExecutor {
     }
   }
 
+  /**
+   * Accounts the operations and records their latency.
+   * @param all
+   *          Number of operations.
+   * @param failed
+   *          Number of failed operations.
+   * @param startNanos
+   *          Start time of the operations, as returned by {@link #nextStartTime(int)}.
+   */
+  public void account(int all, int failed, long startNanos) {
+    long latency = (System.nanoTime() - startNanos) / 1000;
+    int realAll = getRealAccount(all);
+    latencyHistogram.record(latency, realAll);
+    intervalLatencyHistogram.record(latency, realAll);
+    account(all, failed);
+  }
+
+  protected long nextStartTime() {
+    return nextStartTime(1);
+  }
+
+  /**
+   * Returns the start time of the next operations. In open-loop mode, waits till the
+   * scheduled start time of the operations, which may be already in the past if the
+   * previous operations took longer than scheduled.
+   * @param numOps
+   *          Number of operations to be started.
+   * @return the (scheduled) start time in nanoseconds, see {@link System#nanoTime()}.
+   */
+  protected long nextStartTime(int numOps) {
+    if (rate <= 0) {
+      return System.nanoTime();
+    }
+
+    long num = numScheduled.getAndAdd(numOps);
+    long scheduledNanos = startNanos + num * 1000000000L / rate;
+    long delay;
+    while ((delay = scheduledNanos - System.nanoTime()) > 0 && !stop()) {
+      LockSupport.parkNanos(delay);
+    }
+    return scheduledNanos;
+  }
+
   public int getThreads() {
     return threads;
   }
 
   protected void resetStartTime() {
     processLog.reset();
+    startNanos = System.nanoTime();
+    numScheduled.set(0);
+    latencyHistogram.getAndReset();
+    intervalLatencyHistogram.getAndReset();
+    intervalResults.clear();
+    lastIntervalTimeMs = processLog.startTimeMs();
+    lastIntervalAccount = 0;
   }
 
   protected boolean stop() {
@@ -203,6 +339,19 @@ public abstract class BenchmarkExecutor {
 
   protected void printStatus() {
     processLog.printStatus();
+
+    long nowMs = System.currentTimeMillis();
+    if (nowMs - lastIntervalTimeMs < 900) {
+      return;
+    }
+
+    long account = processLog.numProcessed();
+    long intervalAccount = account - lastIntervalAccount;
+    long speed = intervalAccount * 1000 / (nowMs - lastIntervalTimeMs);
+    intervalResults.add(new IntervalResult(nowMs - processLog.startTimeMs(), intervalAccount,
+        speed, getLatencies(intervalLatencyHistogram.getAndReset())));
+    lastIntervalTimeMs = nowMs;
+    lastIntervalAccount = account;
   }
 
   public void setUnit(String unit) {
@@ -223,6 +372,122 @@ public abstract class BenchmarkExecutor {
         "\n    average: ", averageText, " ", unit, "/s\n");
 
     System.out.println(msg);
+
+    if (latencyHistogram.getCount() > 0) {
+      long[] latencies = getLatencies(latencyHistogram);
+      StringBuilder sb = new StringBuilder("    latency:");
+      for (int i = 0; i < latencies.length; i++) {
+        sb.append(i == 0 ? " " : ", ").append(LATENCY_NAMES[i]).append(" ")
+          .append(formatMs(latencies[i]));
+      }
+      sb.append(" ms\n");
+      System.out.println(sb.toString());
+    }
+  }
+
+  private static long[] getLatencies(LatencyHistogram histogram) {
+    long[] latencies = new long[PERCENTILES.length + 1];
+    for (int i = 0; i < PERCENTILES.length; i++) {
+      latencies[i] = histogram.getValueAtPercentile(PERCENTILES[i]);
+    }
+    latencies[PERCENTILES.length] = histogram.getMax();
+    return latencies;
+  }
+
+  private static String formatMs(long micros) {
+    return String.format(Locale.ROOT, "%.3f", micros / 1000.0);
+  }
+
+  private void writeResult() throws IOException {
+    String text = resultFile.toLowerCase(Locale.ROOT).endsWith(".json")
+        ? buildJsonResult() : buildCsvResult();
+    File file = new File(IoUtil.expandFilepath(resultFile));
+    IoUtil.save(file, text.getBytes(StandardCharsets.UTF_8));
+    System.out.println("saved result to " + file.getPath());
+  }
+
+  private String buildJsonResult() {
+    StringBuilder sb = new StringBuilder(200 + intervalResults.size() * 120);
+    sb.append("{\n  \"description\": \"").append(escapeJson(description))
+      .append("\",\n  \"unit\": \"").append(escapeJson(unit))
+      .append("\",\n  \"threads\": ").append(threads)
+      .append(",\n  \"rate\": ").append(rate)
+      .append(",\n  \"startedAt\": ").append(processLog.startTimeMs())
+      .append(",\n  \"finishedAt\": ").append(processLog.endTimeMs())
+      .append(",\n  \"duration\": ").append(processLog.totalElapsedTime())
+      .append(",\n  \"account\": ").append(processLog.numProcessed())
+      .append(",\n  \"failed\": ").append(errorAccount.get())
+      .append(",\n  \"average\": ").append(processLog.totalAverageSpeed())
+      .append(",\n  \"latencyUnit\": \"us\"")
+      .append(",\n  \"latency\": ");
+    appendJsonLatencies(sb, getLatencies(latencyHistogram));
+    sb.append(",\n  \"intervals\": [");
+    for (int i = 0; i < intervalResults.size(); i++) {
+      IntervalResult result = intervalResults.get(i);
+      sb.append(i == 0 ? "\n" : ",\n")
+        .append("    {\"time\": ").append(result.elapsedTimeMs)
+        .append(", \"account\": ").append(result.account)
+        .append(", \"speed\": ").append(result.speed)
+        .append(", \"latency\": ");
+      appendJsonLatencies(sb, result.latencies);
+      sb.append("}");
+    }
+    sb.append("\n  ]\n}\n");
+    return sb.toString();
+  }
+
+  private static void appendJsonLatencies(StringBuilder sb, long[] latencies) {
+    sb.append("{");
+    for (int i = 0; i < latencies.length; i++) {
+      sb.append(i == 0 ? "\"" : ", \"").append(LATENCY_NAMES[i]).append("\": ")
+        .append(latencies[i]);
+    }
+    sb.append("}");
+  }
+
+  private static String escapeJson(String text) {
+    StringBuilder sb = new StringBuilder(text.length() + 10);
+    for (int i = 0; i < text.length(); i++) {
+      char ch = text.charAt(i);
+      if (ch == '"' || ch == '\\') {
+        sb.append('\\').append(ch);
+      } else if (ch == '\n') {
+        sb.append("\\n");
+      } else if (ch < 0x20) {
+        sb.append(String.format("\\u%04x", (int) ch));
+      } else {
+        sb.append(ch);
+      }
+    }
+    return sb.toString();
+  }
+
+  private String buildCsvResult() {
+    StringBuilder sb = new StringBuilder(200 + intervalResults.size() * 60);
+    sb.append("time,account,speed");
+    for (String name : LATENCY_NAMES) {
+      sb.append(",").append(name).append("_us");
+    }
+    sb.append("\n");
+
+    for (IntervalResult result : intervalResults) {
+      sb.append(result.elapsedTimeMs).append(",").append(result.account).append(",")
+        .append(result.speed);
+      appendCsvLatencies(sb, result.latencies);
+    }
+
+    // the overall result
+    sb.append("total,").append(processLog.numProcessed()).append(",")
+      .append(processLog.totalAverageSpeed());
+    appendCsvLatencies(sb, getLatencies(latencyHistogram));
+    return sb.toString();
+  }
+
+  private static void appendCsvLatencies(StringBuilder sb, long[] latencies) {
+    for (long latency : latencies) {
+      sb.append(",").append(latency);
+    }
+    sb.append("\n");
   }
 
   protected static long getSecureIndex() {
@@ -0,0 +1,189 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values, like latencies in microseconds. As in the
+ * HdrHistogram, the values are counted in buckets whose width grows with the value, so that
+ * the relative error of the reported values is below 1/64 of the value.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class LatencyHistogram {
+
+  // values below 2^SUB_BITS are counted exactly
+  private static final int SUB_BITS = 7;
+
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+
+  private static final int HALF_SUB_COUNT = SUB_COUNT / 2;
+
+  private static final int NUM_BUCKETS = SUB_COUNT + (64 - SUB_BITS) * HALF_SUB_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+
+  private final AtomicLong count = new AtomicLong(0);
+
+  private final AtomicLong sum = new AtomicLong(0);
+
+  private final AtomicLong max = new AtomicLong(0);
+
+  public void record(long value) {
+    record(value, 1);
+  }
+
+  /**
+   * Records a value several times.
+   * @param value
+   *          The value. Negative values are recorded as 0.
+   * @param times
+   *          How often the value is recorded.
+   */
+  public void record(long value, long times) {
+    if (times <= 0) {
+      return;
+    }
+
+    long val = Math.max(0, value);
+    counts.addAndGet(index(val), times);
+    count.addAndGet(times);
+    sum.addAndGet(val * times);
+
+    long oldMax = max.get();
+    while (val > oldMax && !max.compareAndSet(oldMax, val)) {
+      oldMax = max.get();
+    }
+  }
+
+  /**
+   * Adds the values of the other histogram to this histogram.
+   * @param other
+   *          The other histogram. Must not be {@code null}.
+   */
+  public void add(LatencyHistogram other) {
+    Args.notNull(other, "other");
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      long num = other.counts.get(i);
+      if (num != 0) {
+        counts.addAndGet(i, num);
+      }
+    }
+
+    count.addAndGet(other.count.get());
+    sum.addAndGet(other.sum.get());
+
+    long otherMax = other.max.get();
+    long oldMax = max.get();
+    while (otherMax > oldMax && !max.compareAndSet(oldMax, otherMax)) {
+      oldMax = max.get();
+    }
+  }
+
+  /**
+   * Moves the recorded values to a new histogram and resets this histogram. Values recorded
+   * concurrently are either in the returned histogram or in this histogram.
+   * @return the histogram of the values recorded since the creation or the last reset.
+   */
+  public LatencyHistogram getAndReset() {
+    LatencyHistogram ret = new LatencyHistogram();
+    long num = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      long bucketCount = counts.getAndSet(i, 0);
+      if (bucketCount != 0) {
+        ret.counts.set(i, bucketCount);
+        num += bucketCount;
+      }
+    }
+
+    count.addAndGet(-num);
+    ret.count.set(num);
+    ret.sum.set(sum.getAndSet(0));
+    ret.max.set(max.getAndSet(0));
+    return ret;
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long num = count.get();
+    return (num == 0) ? 0 : (double) sum.get() / num;
+  }
+
+  /**
+   * Returns the value at the given percentile.
+   * @param percentile
+   *          The percentile, between 0 and 100.
+   * @return the largest value which is counted in the same bucket as the value at the
+   *     percentile, but not greater than the maximal value. 0 if no value is recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    long num = count.get();
+    if (num == 0) {
+      return 0;
+    }
+
+    double pct = Math.min(Math.max(percentile, 0.0), 100.0);
+    long rank = Math.max(1, (long) Math.ceil(pct / 100.0 * num));
+
+    long maxValue = max.get();
+    long accumulated = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      accumulated += counts.get(i);
+      if (accumulated >= rank) {
+        return Math.min(highestValue(i), maxValue);
+      }
+    }
+    return maxValue;
+  }
+
+  private static int index(long value) {
+    if (value < SUB_COUNT) {
+      return (int) value;
+    }
+
+    // value >>> shift is in [HALF_SUB_COUNT, SUB_COUNT)
+    int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+    return SUB_COUNT + (shift - 1) * HALF_SUB_COUNT
+        + (int) (value >>> shift) - HALF_SUB_COUNT;
+  }
+
+  private static long highestValue(int index) {
+    if (index < SUB_COUNT) {
+      return index;
+    }
+
+    int idx = index - SUB_COUNT;
+    int shift = idx / HALF_SUB_COUNT + 1;
+    long lowestValue = (long) (idx % HALF_SUB_COUNT + HALF_SUB_COUNT) << shift;
+    long highest = lowestValue + (1L << shift) - 1;
+    // the last bucket may overflow
+    return (highest < lowestValue) ? Long.MAX_VALUE : highest;
+  }
+
+}
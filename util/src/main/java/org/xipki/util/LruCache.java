@@ -18,29 +18,67 @@
 
 package org.xipki.util;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * LRU cache. The entries are distributed to segments by the hash code of the key. Each segment
+ * has its own lock and its own share of the maximal size, and evicts its own least recently
+ * accessed entries, so that an access locks only the segment of the key and concurrent
+ * accesses to different segments do not block each other.
+ *
+ * <p>The number of segments is chosen by the expected concurrency, but each segment gets at
+ * least {@link #MIN_SEGMENT_SIZE} units of the maximal size, so that small caches have only
+ * one segment and evict exactly the least recently accessed entry. An entry whose size alone
+ * exceeds the share of its segment is evicted immediately.
+ *
+ * @param <K> type of the key
+ * @param <V> type of the value
+ */
+
 public class LruCache<K, V> {
 
-  private final LinkedHashMap<K, V> map;
+  private static class Segment<K, V> {
+
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<>(0, 0.75f, true);
 
-  /** Size of this cache in units. Not necessarily the number of elements. */
-  private int size;
+    /** Size of this segment in units. Not necessarily the number of elements. */
+    private int size;
 
-  private int maxSize;
+    /** Maximal size of this segment in units. */
+    private int maxSize;
 
-  private int putCount;
+    private int putCount;
 
-  private int createCount;
+    private int createCount;
 
-  private int evictionCount;
+    private int evictionCount;
 
-  private int hitCount;
+    private int hitCount;
 
-  private int missCount;
+    private int missCount;
+
+  } // class Segment
+
+  private static final int MAX_SEGMENTS = 16;
+
+  /**
+   * Minimal share of the maximal size per segment.
+   */
+  private static final int MIN_SEGMENT_SIZE = 16;
+
+  private final Segment<K, V>[] segments;
+
+  private final int segmentMask;
+
+  private final int segmentShift;
+
+  private volatile int maxSize;
 
   /**
    * TODO.
@@ -49,8 +87,36 @@ public class LruCache<K, V> {
    *     this is the maximum sum of the sizes of the entries in this cache.
    */
   public LruCache(int maxSize) {
+    this(maxSize, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * TODO.
+   * @param maxSize for caches that do not override {@link #sizeOf}, this is
+   *     the maximum number of entries in the cache. For all other caches,
+   *     this is the maximum sum of the sizes of the entries in this cache.
+   * @param concurrencyLevel the estimated number of threads accessing the cache concurrently.
+   *     The number of segments is the next power of two, at most 16, and limited so that
+   *     each segment gets at least 16 units of {@code maxSize}.
+   */
+  @SuppressWarnings("unchecked")
+  public LruCache(int maxSize, int concurrencyLevel) {
     this.maxSize = Args.positive(maxSize, "maxSize");
-    this.map = new LinkedHashMap<>(0, 0.75f, true);
+    Args.positive(concurrencyLevel, "concurrencyLevel");
+
+    int num = 1;
+    while (num < MAX_SEGMENTS && num < concurrencyLevel
+        && maxSize / (num * 2) >= MIN_SEGMENT_SIZE) {
+      num *= 2;
+    }
+
+    this.segments = new Segment[num];
+    this.segmentMask = num - 1;
+    this.segmentShift = 32 - Integer.numberOfTrailingZeros(num);
+    for (int i = 0; i < num; i++) {
+      segments[i] = new Segment<>();
+      segments[i].maxSize = segmentShare(maxSize, i);
+    }
   }
 
   /**
@@ -59,10 +125,16 @@ public class LruCache<K, V> {
    * @param maxSize the new maximum size.
    */
   public void resize(int maxSize) {
-    synchronized (this) {
-      this.maxSize = Args.positive(maxSize, "maxSize");
+    this.maxSize = Args.positive(maxSize, "maxSize");
+    for (int i = 0; i < segments.length; i++) {
+      Segment<K, V> segment = segments[i];
+      List<Map.Entry<K, V>> evicted;
+      synchronized (segment) {
+        segment.maxSize = segmentShare(maxSize, i);
+        evicted = evict(segment, segment.maxSize);
+      }
+      notifyEvicted(evicted);
     }
-    trimToSize(maxSize);
   }
 
   /**
@@ -80,14 +152,14 @@ public class LruCache<K, V> {
       throw new NullPointerException("key == null");
     }
 
-    V mapValue;
-    synchronized (this) {
-      mapValue = map.get(key);
-      if (mapValue != null) {
-        hitCount++;
-        return mapValue;
+    Segment<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      V value = segment.map.get(key);
+      if (value != null) {
+        segment.hitCount++;
+        return value;
       }
-      missCount++;
+      segment.missCount++;
     }
 
     /*
@@ -102,15 +174,16 @@ public class LruCache<K, V> {
       return null;
     }
 
-    synchronized (this) {
-      createCount++;
-      mapValue = map.put(key, createdValue);
-
-      if (mapValue != null) {
-        // There was a conflict so undo that last put
-        map.put(key, mapValue);
-      } else {
-        size += safeSizeOf(key, createdValue);
+    V mapValue;
+    List<Map.Entry<K, V>> evicted = null;
+    synchronized (segment) {
+      segment.createCount++;
+      mapValue = segment.map.get(key);
+      if (mapValue == null) {
+        // There was no conflict, add the created value
+        segment.map.put(key, createdValue);
+        addSize(segment, safeSizeOf(key, createdValue));
+        evicted = evict(segment, segment.maxSize);
       }
     }
 
@@ -118,7 +191,7 @@ public class LruCache<K, V> {
       entryRemoved(false, key, createdValue, mapValue);
       return mapValue;
     } else {
-      trimToSize(maxSize);
+      notifyEvicted(evicted);
       return createdValue;
     }
   }
@@ -135,21 +208,25 @@ public class LruCache<K, V> {
       throw new NullPointerException("key == null || value == null");
     }
 
+    Segment<K, V> segment = segmentFor(key);
     V previous;
-    synchronized (this) {
-      putCount++;
-      size += safeSizeOf(key, value);
-      previous = map.put(key, value);
+    List<Map.Entry<K, V>> evicted;
+    synchronized (segment) {
+      segment.putCount++;
+      int delta = safeSizeOf(key, value);
+      previous = segment.map.put(key, value);
       if (previous != null) {
-        size -= safeSizeOf(key, previous);
+        delta -= safeSizeOf(key, previous);
       }
+      addSize(segment, delta);
+      evicted = evict(segment, segment.maxSize);
     }
 
     if (previous != null) {
       entryRemoved(false, key, previous, value);
     }
 
-    trimToSize(maxSize);
+    notifyEvicted(evicted);
     return previous;
   }
 
@@ -161,28 +238,13 @@ public class LruCache<K, V> {
    *            to evict even 0-sized elements.
    */
   public void trimToSize(int maxSize) {
-    while (true) {
-      K key;
-      V value;
-      synchronized (this) {
-        if (size < 0 || (map.isEmpty() && size != 0)) {
-          throw new IllegalStateException(getClass().getName()
-              + ".sizeOf() is reporting inconsistent results!");
-        }
-
-        if (size <= maxSize || map.isEmpty()) {
-          break;
-        }
-
-        Map.Entry<K, V> toEvict = map.entrySet().iterator().next();
-        key = toEvict.getKey();
-        value = toEvict.getValue();
-        map.remove(key);
-        size -= safeSizeOf(key, value);
-        evictionCount++;
+    for (int i = 0; i < segments.length; i++) {
+      Segment<K, V> segment = segments[i];
+      List<Map.Entry<K, V>> evicted;
+      synchronized (segment) {
+        evicted = evict(segment, (maxSize < 0) ? maxSize : segmentShare(maxSize, i));
       }
-
-      entryRemoved(true, key, value, null);
+      notifyEvicted(evicted);
     }
   }
 
@@ -196,11 +258,12 @@ public class LruCache<K, V> {
       throw new NullPointerException("key == null");
     }
 
+    Segment<K, V> segment = segmentFor(key);
     V previous;
-    synchronized (this) {
-      previous = map.remove(key);
+    synchronized (segment) {
+      previous = segment.map.remove(key);
       if (previous != null) {
-        size -= safeSizeOf(key, previous);
+        addSize(segment, -safeSizeOf(key, previous));
       }
     }
 
@@ -276,6 +339,7 @@ public class LruCache<K, V> {
     return 1;
   }
 
+
   /**
    * Clear the cache, calling {@link #entryRemoved} on each removed entry.
    */
@@ -289,7 +353,13 @@ public class LruCache<K, V> {
    * the sizes of the entries in this cache.
    * @return the size
    */
-  public final synchronized int size() {
+  public final int size() {
+    int size = 0;
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        size += segment.size;
+      }
+    }
     return size;
   }
 
@@ -299,7 +369,7 @@ public class LruCache<K, V> {
    * maximum sum of the sizes of the entries in this cache.
    * @return the maximal size
    */
-  public final synchronized int maxSize() {
+  public final int maxSize() {
     return maxSize;
   }
 
@@ -308,8 +378,14 @@ public class LruCache<K, V> {
    * already present in the cache.
    * @return the number of times
    */
-  public final synchronized int hitCount() {
-    return hitCount;
+  public final int hitCount() {
+    int count = 0;
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        count += segment.hitCount;
+      }
+    }
+    return count;
   }
 
   /**
@@ -318,57 +394,162 @@ public class LruCache<K, V> {
    * @return the number of times returned null or required a new value to be
    *         created
    */
-  public final synchronized int missCount() {
-    return missCount;
+  public final int missCount() {
+    int count = 0;
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        count += segment.missCount;
+      }
+    }
+    return count;
   }
 
   /**
    * Returns the number of times {@link #create(Object)} returned a value.
    * @return the number of times {@link #create(Object)} returned a value.
    */
-  public final synchronized int createCount() {
-    return createCount;
+  public final int createCount() {
+    int count = 0;
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        count += segment.createCount;
+      }
+    }
+    return count;
   }
 
   /**
    * Returns the number of times {@link #put} was called.
    * @return the number of times {@link #put} was called.
    */
-  public final synchronized int putCount() {
-    return putCount;
+  public final int putCount() {
+    int count = 0;
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        count += segment.putCount;
+      }
+    }
+    return count;
   }
 
   /**
    * Returns the number of values that have been evicted.
    * @return the number of values that have been evicted.
    */
-  public final synchronized int evictionCount() {
-    return evictionCount;
+  public final int evictionCount() {
+    int count = 0;
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        count += segment.evictionCount;
+      }
+    }
+    return count;
   }
 
+
   /**
    * TODO.
    * @return a copy of the current contents of the cache, ordered from least
-   *      recently accessed to most recently accessed.
+   *      recently accessed to most recently accessed within each segment.
    */
-  public final synchronized Map<K, V> snapshot() {
-    return new LinkedHashMap<>(map);
+  public final Map<K, V> snapshot() {
+    Map<K, V> map = new LinkedHashMap<>();
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        map.putAll(segment.map);
+      }
+    }
+    return map;
   }
 
   /**
    * TODO.
    * @return a copy of the keys of the current contents of the cache.
    */
-  public final synchronized Set<K> keySnapshot() {
-    return new HashSet<>(map.keySet());
+  public final Set<K> keySnapshot() {
+    Set<K> keys = new HashSet<>();
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        keys.addAll(segment.map.keySet());
+      }
+    }
+    return keys;
   }
 
   @Override
-  public final synchronized String toString() {
-    int accesses = hitCount + missCount;
-    int hitPercent = (accesses == 0) ? 0 : (100 * hitCount / accesses);
+  public final String toString() {
+    int hits = hitCount();
+    int misses = missCount();
+    int accesses = hits + misses;
+    int hitPercent = (accesses == 0) ? 0 : (100 * hits / accesses);
     return String.format("LruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
-        maxSize, hitCount, missCount, hitPercent);
+        maxSize, hits, misses, hitPercent);
+  }
+
+  private Segment<K, V> segmentFor(K key) {
+    if (segmentMask == 0) {
+      return segments[0];
+    }
+
+    // use the high bits of the mixed hash code, the low bits are used by the hash table of
+    // the segment.
+    return segments[(key.hashCode() * 0x9E3779B9) >>> segmentShift];
+  }
+
+  /**
+   * Returns the share of the segment with the given index of the size, so that the shares of
+   * all segments add up to the size.
+   */
+  private int segmentShare(int size, int index) {
+    int share = size / segments.length;
+    return (index < size % segments.length) ? share + 1 : share;
+  }
+
+  /**
+   * Changes the size of the segment. Must be called with the lock on the segment.
+   * @param segment the segment
+   * @param delta the change of the size
+   */
+  private void addSize(Segment<K, V> segment, int delta) {
+    segment.size += delta;
+    if (segment.size < 0 || (segment.map.isEmpty() && segment.size != 0)) {
+      throw new IllegalStateException(getClass().getName()
+          + ".sizeOf() is reporting inconsistent results!");
+    }
+  }
+
+  /**
+   * Removes the least recently accessed entries of the segment until its size is at or below
+   * the given size. Must be called with the lock on the segment.
+   * @param segment the segment
+   * @param maxSize the maximal size of the segment.
+   * @return the evicted entries, {@code null} if no entry has been evicted.
+   */
+  private List<Map.Entry<K, V>> evict(Segment<K, V> segment, int maxSize) {
+    List<Map.Entry<K, V>> evicted = null;
+    Iterator<Map.Entry<K, V>> it = segment.map.entrySet().iterator();
+    while (segment.size > maxSize && it.hasNext()) {
+      Map.Entry<K, V> eldest = it.next();
+      it.remove();
+      addSize(segment, -safeSizeOf(eldest.getKey(), eldest.getValue()));
+      segment.evictionCount++;
+      if (evicted == null) {
+        evicted = new ArrayList<>(2);
+      }
+      evicted.add(eldest);
+    }
+    return evicted;
+  }
+
+  /**
+   * Calls {@link #entryRemoved} for the evicted entries. Must be called without any lock.
+   */
+  private void notifyEvicted(List<Map.Entry<K, V>> evicted) {
+    if (evicted != null) {
+      for (Map.Entry<K, V> entry : evicted) {
+        entryRemoved(true, entry.getKey(), entry.getValue(), null);
+      }
+    }
   }
 
 }
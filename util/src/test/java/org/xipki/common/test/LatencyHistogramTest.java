@@ -0,0 +1,83 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.common.test;
+
+import org.junit.Test;
+import org.xipki.util.LatencyHistogram;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 10000; i++) {
+      histogram.record(i);
+    }
+
+    Assert.assertEquals("count", 10000, histogram.getCount());
+    Assert.assertEquals("max", 10000, histogram.getMax());
+    Assert.assertEquals("mean", 5000.5, histogram.getMean(), 0.001);
+    assertNear("p50", 5000, histogram.getValueAtPercentile(50));
+    assertNear("p99", 9900, histogram.getValueAtPercentile(99));
+    assertNear("p99.9", 9990, histogram.getValueAtPercentile(99.9));
+    Assert.assertEquals("p100", 10000, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(3, 90);
+    histogram.record(100, 10);
+
+    Assert.assertEquals("p50", 3, histogram.getValueAtPercentile(50));
+    Assert.assertEquals("p90", 3, histogram.getValueAtPercentile(90));
+    Assert.assertEquals("p91", 100, histogram.getValueAtPercentile(91));
+  }
+
+  @Test
+  public void testGetAndReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(1000);
+    histogram.record(Long.MAX_VALUE);
+
+    LatencyHistogram interval = histogram.getAndReset();
+    Assert.assertEquals("interval count", 2, interval.getCount());
+    Assert.assertEquals("interval max", Long.MAX_VALUE, interval.getMax());
+    Assert.assertEquals("count after reset", 0, histogram.getCount());
+    Assert.assertEquals("p50 after reset", 0, histogram.getValueAtPercentile(50));
+
+    histogram.record(10);
+    histogram.add(interval);
+    Assert.assertEquals("count after add", 3, histogram.getCount());
+    Assert.assertEquals("max after add", Long.MAX_VALUE, histogram.getMax());
+  }
+
+  private static void assertNear(String desc, long expected, long actual) {
+    Assert.assertTrue(desc + ": expected " + expected + ", but was " + actual,
+        Math.abs(actual - expected) <= expected / 64 + 1);
+  }
+
+}
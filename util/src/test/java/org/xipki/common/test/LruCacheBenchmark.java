@@ -0,0 +1,189 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.common.test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.xipki.util.LruCache;
+
+/**
+ * Compares the throughput of {@link LruCache} with that of a cache guarded by one lock, as
+ * {@link LruCache} was before 5.0.1, under 1 to 64 threads. 90% of the operations are
+ * {@code get()}, the others are {@code put()}. The keys are skewed towards small numbers, and
+ * twice as many keys as the cache can hold are used.
+ *
+ * <p>Usage: {@code LruCacheBenchmark [maxSize [seconds per run]]}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class LruCacheBenchmark {
+
+  private interface Cache {
+
+    Integer get(Integer key);
+
+    Integer put(Integer key, Integer value);
+
+  } // interface Cache
+
+  /**
+   * The cache with one lock, as {@link LruCache} was before 5.0.1.
+   */
+  private static class SynchronizedCache implements Cache {
+
+    private final LinkedHashMap<Integer, Integer> map = new LinkedHashMap<>(0, 0.75f, true);
+
+    private final int maxSize;
+
+    private int hitCount;
+
+    private int missCount;
+
+    private int putCount;
+
+    SynchronizedCache(int maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    public synchronized Integer get(Integer key) {
+      Integer value = map.get(key);
+      if (value != null) {
+        hitCount++;
+      } else {
+        missCount++;
+      }
+      return value;
+    }
+
+    @Override
+    public Integer put(Integer key, Integer value) {
+      Integer previous;
+      synchronized (this) {
+        putCount++;
+        previous = map.put(key, value);
+      }
+
+      // the eldest entries were removed in separate locks, see LruCache.trimToSize()
+      while (true) {
+        synchronized (this) {
+          if (map.size() <= maxSize) {
+            break;
+          }
+          Map.Entry<Integer, Integer> toEvict = map.entrySet().iterator().next();
+          map.remove(toEvict.getKey());
+        }
+      }
+      return previous;
+    }
+
+  } // class SynchronizedCache
+
+  private static class StripedCache implements Cache {
+
+    private final LruCache<Integer, Integer> cache;
+
+    StripedCache(int maxSize) {
+      this.cache = new LruCache<>(maxSize);
+    }
+
+    @Override
+    public Integer get(Integer key) {
+      return cache.get(key);
+    }
+
+    @Override
+    public Integer put(Integer key, Integer value) {
+      return cache.put(key, value);
+    }
+
+  } // class StripedCache
+
+  private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+  public static void main(String[] args) throws InterruptedException {
+    int maxSize = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+    int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+    System.out.println("maxSize: " + maxSize + ", duration per run: " + seconds + " s");
+    System.out.println(String.format("%8s  %16s  %16s", "threads", "synchronized", "striped"));
+
+    for (int threads : THREADS) {
+      long synchronizedOps = run(new SynchronizedCache(maxSize), maxSize, threads, seconds);
+      long stripedOps = run(new StripedCache(maxSize), maxSize, threads, seconds);
+      System.out.println(String.format("%8d  %12d op/s  %12d op/s",
+          threads, synchronizedOps, stripedOps));
+    }
+  }
+
+  private static long run(final Cache cache, int maxSize, int threads, int seconds)
+      throws InterruptedException {
+    final int numKeys = 2 * maxSize;
+    // warm up the cache
+    for (int i = 0; i < numKeys; i++) {
+      cache.put(nextKey(numKeys), i);
+    }
+
+    final AtomicBoolean stop = new AtomicBoolean(false);
+    final LongAdder ops = new LongAdder();
+
+    Thread[] workers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      workers[i] = new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long count = 0;
+        while (!stop.get()) {
+          Integer key = nextKey(numKeys);
+          if (random.nextInt(10) == 0) {
+            cache.put(key, key);
+          } else if (cache.get(key) == null) {
+            cache.put(key, key);
+          }
+          count++;
+        }
+        ops.add(count);
+      });
+    }
+
+    for (Thread worker : workers) {
+      worker.start();
+    }
+
+    Thread.sleep(seconds * 1000L);
+    stop.set(true);
+
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    return ops.sum() / seconds;
+  }
+
+  private static Integer nextKey(int numKeys) {
+    double rnd = ThreadLocalRandom.current().nextDouble();
+    // skewed distribution: smaller keys are accessed more frequently
+    return (int) (numKeys * rnd * rnd);
+  }
+
+}
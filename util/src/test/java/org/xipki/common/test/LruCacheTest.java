@@ -0,0 +1,210 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.common.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.xipki.util.LruCache;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class LruCacheTest {
+
+  private static class StringCache extends LruCache<String, String> {
+
+    private final List<String> evicted = new ArrayList<>();
+
+    StringCache(int maxSize, int concurrencyLevel) {
+      super(maxSize, concurrencyLevel);
+    }
+
+    @Override
+    protected int sizeOf(String key, String value) {
+      return value.length();
+    }
+
+    @Override
+    protected synchronized void entryRemoved(boolean evicted, String key, String oldValue,
+        String newValue) {
+      if (evicted) {
+        this.evicted.add(key);
+      }
+    }
+
+    @Override
+    protected String create(String key) {
+      return key.startsWith("new-") ? key.substring(4) : null;
+    }
+
+  } // class StringCache
+
+  @Test
+  public void testEvictionOrder() {
+    for (int concurrencyLevel : new int[]{1, 16}) {
+      StringCache cache = new StringCache(3, concurrencyLevel);
+      cache.put("a", "1");
+      cache.put("b", "1");
+      cache.put("c", "1");
+      cache.get("a");
+      cache.put("d", "1");
+      cache.put("c", "1");
+      cache.put("e", "1");
+
+      String desc = "concurrencyLevel " + concurrencyLevel;
+      Assert.assertEquals(desc + " evicted", Arrays.asList("b", "a"), cache.evicted);
+      Assert.assertEquals(desc + " snapshot", Arrays.asList("d", "c", "e"),
+          new ArrayList<>(cache.snapshot().keySet()));
+      Assert.assertEquals(desc + " evictionCount", 2, cache.evictionCount());
+    }
+  }
+
+  @Test
+  public void testMaxSizeOverSegments() {
+    // a small cache has only one segment, even with a high concurrency level
+    LruCache<Integer, Integer> cache = new LruCache<>(5, 16);
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, i);
+    }
+
+    Assert.assertEquals("size", 5, cache.size());
+    Assert.assertEquals("keys", Arrays.asList(95, 96, 97, 98, 99),
+        new ArrayList<>(cache.snapshot().keySet()));
+
+    cache.resize(2);
+    Assert.assertEquals("keys after resize", Arrays.asList(98, 99),
+        new ArrayList<>(cache.snapshot().keySet()));
+
+    cache.evictAll();
+    Assert.assertEquals("size after evictAll", 0, cache.size());
+    Assert.assertEquals("evictionCount", 100, cache.evictionCount());
+  }
+
+  @Test
+  public void testSizeOf() {
+    StringCache cache = new StringCache(10, 16);
+    cache.put("a", "xxxx");
+    cache.put("b", "xxxx");
+    Assert.assertEquals("size", 8, cache.size());
+
+    cache.put("c", "xxxxxx");
+    Assert.assertEquals("evicted", Arrays.asList("a"), cache.evicted);
+    Assert.assertEquals("size", 10, cache.size());
+
+    // replaced entry
+    cache.put("b", "x");
+    Assert.assertEquals("size after replacement", 7, cache.size());
+
+    cache.remove("c");
+    Assert.assertEquals("size after removal", 1, cache.size());
+
+    // an entry larger than the cache is evicted immediately
+    cache.put("d", "xxxxxxxxxxx");
+    Assert.assertNull("oversized entry", cache.get("d"));
+    Assert.assertEquals("size", 0, cache.size());
+    Assert.assertEquals("evicted", Arrays.asList("a", "b", "d"), cache.evicted);
+  }
+
+  @Test
+  public void testSegments() {
+    // 4 segments with 16 entries each
+    StringCache cache = new StringCache(64, 16);
+    for (int i = 0; i < 1000; i++) {
+      cache.put("key-" + i, "x");
+      Assert.assertTrue("size", cache.size() <= 64);
+    }
+
+    Assert.assertEquals("size", 64, cache.size());
+    Assert.assertEquals("evictionCount", 1000 - 64, cache.evictionCount());
+    Assert.assertEquals("evicted", 1000 - 64, cache.evicted.size());
+
+    // the recently added entries of each segment are kept
+    for (int i = 990; i < 1000; i++) {
+      Assert.assertEquals("key-" + i, "x", cache.get("key-" + i));
+    }
+
+    cache.resize(32);
+    Assert.assertTrue("size after resize", cache.size() <= 32);
+    Assert.assertEquals("size of the snapshot", cache.size(), cache.snapshot().size());
+  }
+
+  @Test
+  public void testCounters() {
+    StringCache cache = new StringCache(100, 4);
+    cache.put("a", "1");
+    cache.put("a", "2");
+    Assert.assertEquals("a", "2", cache.get("a"));
+    Assert.assertEquals("created", "b", cache.get("new-b"));
+    Assert.assertEquals("cached", "b", cache.get("new-b"));
+    Assert.assertNull("not created", cache.get("c"));
+
+    Assert.assertEquals("putCount", 2, cache.putCount());
+    Assert.assertEquals("hitCount", 2, cache.hitCount());
+    Assert.assertEquals("missCount", 2, cache.missCount());
+    Assert.assertEquals("createCount", 1, cache.createCount());
+    Assert.assertEquals("evictionCount", 0, cache.evictionCount());
+    Assert.assertEquals("size", 2, cache.size());
+  }
+
+  @Test
+  public void testConcurrentAccess() throws Exception {
+    final int maxSize = 100;
+    final LruCache<Integer, String> cache = new LruCache<Integer, String>(maxSize, 8) {
+      @Override
+      protected int sizeOf(Integer key, String value) {
+        return value.length();
+      }
+    };
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      final Random random = new Random(i);
+      Thread thread = new Thread(() -> {
+        for (int j = 0; j < 20000; j++) {
+          int key = random.nextInt(200);
+          if (cache.get(key) == null) {
+            cache.put(key, (key % 2 == 0) ? "x" : "xxx");
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    int size = 0;
+    for (Integer key : cache.snapshot().keySet()) {
+      size += (key % 2 == 0) ? 1 : 3;
+    }
+    Assert.assertEquals("size", size, cache.size());
+    Assert.assertTrue("size " + size + " > maxSize", size <= maxSize);
+  }
+
+}